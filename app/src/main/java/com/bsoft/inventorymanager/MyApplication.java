@@ -3,14 +3,31 @@ package com.bsoft.inventorymanager;
 import android.app.Application;
 import dagger.hilt.android.HiltAndroidApp;
 
+import com.bsoft.inventorymanager.images.ImageBlobStore;
+import com.bsoft.inventorymanager.images.ImageLoader;
+import com.bsoft.inventorymanager.repositories.BarcodeResolver;
+import com.bsoft.inventorymanager.utils.ImageCacheHelper;
+import com.bsoft.inventorymanager.utils.OfflineSyncHelper;
+
 import com.google.firebase.FirebaseApp;
 import com.google.firebase.appcheck.BuildConfig;
 import com.google.firebase.appcheck.FirebaseAppCheck;
 import com.google.firebase.appcheck.debug.DebugAppCheckProviderFactory;
 
+import javax.inject.Inject;
+
 @HiltAndroidApp
 public class MyApplication extends Application {
 
+    @Inject
+    BarcodeResolver barcodeResolver;
+
+    @Inject
+    ImageBlobStore imageBlobStore;
+
+    @Inject
+    OfflineSyncHelper offlineSyncHelper;
+
     @Override
     public void onCreate() {
         super.onCreate();
@@ -21,5 +38,13 @@ public class MyApplication extends Application {
             firebaseAppCheck.installAppCheckProviderFactory(
                     DebugAppCheckProviderFactory.getInstance());
         }
+
+        // Index the cached products so the first scan does not wait for Firestore
+        barcodeResolver.warm();
+        // Before any screen binds an image
+        ImageCacheHelper.initialize(this);
+        ImageLoader.initialize(imageBlobStore);
+        // Replay sales and stock changes recorded while offline or before the last process died
+        offlineSyncHelper.start();
     }
 }
@@ -7,7 +7,6 @@ import android.net.Uri
 import android.os.Build
 import android.os.Bundle
 import android.provider.MediaStore
-import android.util.Base64
 import android.view.LayoutInflater
 import android.view.View
 import android.view.ViewGroup
@@ -20,24 +19,29 @@ import androidx.activity.result.contract.ActivityResultContracts
 import androidx.fragment.app.setFragmentResult
 import androidx.lifecycle.ViewModelProvider
 import com.bsoft.inventorymanager.R
+import com.bsoft.inventorymanager.images.ImageBlobStore
+import com.bsoft.inventorymanager.images.ImageLoader
 import com.bsoft.inventorymanager.model.Customer
 import com.bsoft.inventorymanager.viewmodels.CustomerViewModel
 import com.google.android.material.bottomsheet.BottomSheetDialogFragment
 import dagger.hilt.android.AndroidEntryPoint
 import kotlinx.serialization.encodeToString
 import kotlinx.serialization.json.Json
-import java.io.ByteArrayOutputStream
+import javax.inject.Inject
 import java.io.IOException
 
 @AndroidEntryPoint
 class AddEditCustomerSheet : BottomSheetDialogFragment() {
 
+    @Inject
+    lateinit var imageBlobStore: ImageBlobStore
+
     private lateinit var viewModel: CustomerViewModel
     private var currentCustomer: Customer? = null
     
     private lateinit var itemImageView: ImageView
     private var imageUri: Uri? = null
-    private var imageBase64: String? = null
+    private var photoValue: String? = null
 
     private lateinit var requestPermissionLauncher: ActivityResultLauncher<String>
     private lateinit var takePictureLauncher: ActivityResultLauncher<Uri>
@@ -65,7 +69,7 @@ class AddEditCustomerSheet : BottomSheetDialogFragment() {
         arguments?.getString(ARG_CUSTOMER_JSON)?.let { json ->
             try {
                 currentCustomer = Json.decodeFromString<Customer>(json)
-                imageBase64 = currentCustomer?.photo
+                photoValue = currentCustomer?.photo
             } catch (e: Exception) {
                 e.printStackTrace()
             }
@@ -106,13 +110,7 @@ class AddEditCustomerSheet : BottomSheetDialogFragment() {
             saveButton.text = "Save"
 
             if (!customer.photo.isNullOrEmpty()) {
-                try {
-                    val decodedString = Base64.decode(customer.photo, Base64.DEFAULT)
-                    val decodedByte = android.graphics.BitmapFactory.decodeByteArray(decodedString, 0, decodedString.size)
-                    itemImageView.setImageBitmap(decodedByte)
-                } catch (e: Exception) {
-                    e.printStackTrace()
-                }
+                ImageLoader.load(itemImageView, customer.documentId, customer.photo, false, R.drawable.ic_customer, R.drawable.ic_customer)
             }
         } ?: run {
             saveButton.text = "Add"
@@ -142,7 +140,7 @@ class AddEditCustomerSheet : BottomSheetDialogFragment() {
                 contactNumber = phone,
                 address = address,
                 age = age,
-                photo = imageBase64,
+                photo = photoValue,
                 isActive = true
             ) ?: Customer(
                 documentId = "", // Firestore will generate if empty, or repo handles it
@@ -150,7 +148,7 @@ class AddEditCustomerSheet : BottomSheetDialogFragment() {
                 contactNumber = phone,
                 address = address,
                 age = age,
-                photo = imageBase64,
+                photo = photoValue,
                 isActive = true
             )
 
@@ -229,11 +227,8 @@ class AddEditCustomerSheet : BottomSheetDialogFragment() {
         try {
             val bitmap = getBitmapFromUri(uri)
             itemImageView.setImageBitmap(bitmap)
-            val resizedBitmap = resizeBitmap(bitmap, 100, 100)
-            val baos = ByteArrayOutputStream()
-            resizedBitmap.compress(Bitmap.CompressFormat.JPEG, 80, baos)
-            val data = baos.toByteArray()
-            this.imageBase64 = Base64.encodeToString(data, Base64.DEFAULT)
+            // Stored once, by content; the customer document only keeps the reference
+            this.photoValue = imageBlobStore.put(bitmap).value()
         } catch (e: IOException) {
             Toast.makeText(context, "Failed to process image", Toast.LENGTH_SHORT).show()
         }
@@ -247,18 +242,4 @@ class AddEditCustomerSheet : BottomSheetDialogFragment() {
             MediaStore.Images.Media.getBitmap(requireContext().contentResolver, uri)
         }
     }
-
-    private fun resizeBitmap(bitmap: Bitmap, maxWidth: Int, maxHeight: Int): Bitmap {
-        var width = bitmap.width
-        var height = bitmap.height
-        val bitmapRatio = width.toFloat() / height.toFloat()
-        if (bitmapRatio > 1) {
-            width = maxWidth
-            height = (width / bitmapRatio).toInt()
-        } else {
-            height = maxHeight
-            width = (height * bitmapRatio).toInt()
-        }
-        return Bitmap.createScaledBitmap(bitmap, width, height, true)
-    }
 }
@@ -7,7 +7,6 @@ import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.provider.MediaStore;
-import android.util.Base64;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -21,11 +20,12 @@ import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import com.bsoft.inventorymanager.R;
+import com.bsoft.inventorymanager.images.ImageBlobStore;
+import com.bsoft.inventorymanager.images.ImageLoader;
 import com.bsoft.inventorymanager.model.Person;
 import com.google.android.material.bottomsheet.BottomSheetDialogFragment;
 import com.google.firebase.firestore.FirebaseFirestore;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.Serializable;
 
@@ -36,7 +36,8 @@ public abstract class BaseAddEditSheet<T extends Person> extends BottomSheetDial
 
     protected ImageView itemImageView;
     protected Uri imageUri;
-    protected String imageBase64;
+    // Image field value: a blob reference, or whatever the document already held
+    protected String photoValue;
 
     private ActivityResultLauncher<String> requestPermissionLauncher;
     private ActivityResultLauncher<Uri> takePictureLauncher;
@@ -90,11 +91,9 @@ public abstract class BaseAddEditSheet<T extends Person> extends BottomSheetDial
             saveButton.setText("Save");
 
             if (currentItem.getPhoto() != null && !currentItem.getPhoto().isEmpty()) {
-                byte[] decodedString = Base64.decode(currentItem.getPhoto(), Base64.DEFAULT);
-                Bitmap decodedByte = android.graphics.BitmapFactory.decodeByteArray(decodedString, 0,
-                        decodedString.length);
-                itemImageView.setImageBitmap(decodedByte);
-                this.imageBase64 = currentItem.getPhoto();
+                ImageLoader.load(itemImageView, currentItem.getDocumentId(), currentItem.getPhoto(), false,
+                        R.drawable.ic_customer, R.drawable.ic_customer);
+                this.photoValue = currentItem.getPhoto();
             }
         } else {
             saveButton.setText("Add");
@@ -127,7 +126,7 @@ public abstract class BaseAddEditSheet<T extends Person> extends BottomSheetDial
             currentItem.setContactNumber(phone);
             currentItem.setAddress(address);
             currentItem.setAge(age);
-            currentItem.setPhoto(imageBase64);
+            currentItem.setPhoto(photoValue);
             currentItem.setActive(true);
 
             onSave(currentItem);
@@ -164,11 +163,8 @@ public abstract class BaseAddEditSheet<T extends Person> extends BottomSheetDial
         try {
             Bitmap bitmap = getBitmapFromUri(uri);
             itemImageView.setImageBitmap(bitmap);
-            Bitmap resizedBitmap = resizeBitmap(bitmap, 100, 100);
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            resizedBitmap.compress(Bitmap.CompressFormat.JPEG, 80, baos);
-            byte[] data = baos.toByteArray();
-            this.imageBase64 = Base64.encodeToString(data, Base64.DEFAULT);
+            // Stored once, by content; the document only keeps the reference
+            this.photoValue = new ImageBlobStore(db).put(bitmap).value();
         } catch (IOException e) {
             Toast.makeText(getContext(), "Failed to process image", Toast.LENGTH_SHORT).show();
         }
@@ -189,18 +185,4 @@ public abstract class BaseAddEditSheet<T extends Person> extends BottomSheetDial
             return MediaStore.Images.Media.getBitmap(requireContext().getContentResolver(), uri);
         }
     }
-
-    private Bitmap resizeBitmap(Bitmap bitmap, int maxWidth, int maxHeight) {
-        int width = bitmap.getWidth();
-        int height = bitmap.getHeight();
-        float bitmapRatio = (float) width / (float) height;
-        if (bitmapRatio > 1) {
-            width = maxWidth;
-            height = (int) (width / bitmapRatio);
-        } else {
-            height = maxHeight;
-            width = (int) (height * bitmapRatio);
-        }
-        return Bitmap.createScaledBitmap(bitmap, width, height, true);
-    }
 }
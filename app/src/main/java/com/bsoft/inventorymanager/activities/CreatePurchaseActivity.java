@@ -126,7 +126,7 @@ public class CreatePurchaseActivity extends BaseActivity
         viewModel.getError().observe(this, this::showErrorToast);
 
         viewModel.getPurchaseSuccess().observe(this, purchaseId -> {
-            showSuccessToast("Purchase saved successfully!");
+            showSuccessToast("Purchase queued for sync");
             finish();
         });
 
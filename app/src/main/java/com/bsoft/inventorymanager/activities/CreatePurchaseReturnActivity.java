@@ -24,22 +24,30 @@ import com.bsoft.inventorymanager.models.PurchaseItem;
 import com.bsoft.inventorymanager.models.PurchaseReturn;
 import com.bsoft.inventorymanager.models.PurchaseReturnItem;
 import com.bsoft.inventorymanager.activities.PaymentSheet;
+import com.bsoft.inventorymanager.sync.OutboxOperation;
+import com.bsoft.inventorymanager.sync.OutboxWrite;
 import com.google.firebase.Timestamp;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.firestore.CollectionReference;
-import com.google.firebase.firestore.DocumentReference;
-import com.google.firebase.firestore.FieldValue;
 import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.Transaction;
 import com.bsoft.inventorymanager.utils.FinancialCalculator;
+import com.bsoft.inventorymanager.utils.OfflineSyncHelper;
 
 import java.util.ArrayList;
 import java.util.List;
 
+import javax.inject.Inject;
+
+import dagger.hilt.android.AndroidEntryPoint;
+
+@AndroidEntryPoint
 public class CreatePurchaseReturnActivity extends BaseActivity
         implements SelectedProductsAdapter.OnProductInteractionListener, PaymentSheet.PaymentSheetListener {
     private static final String TAG = "CreatePurchaseReturn";
 
+    @Inject
+    OfflineSyncHelper offlineSyncHelper;
+
     private Spinner supplierSpinner;
     private Button finalizeReturnButton;
     private RecyclerView selectedProductsRecyclerView;
@@ -53,7 +61,6 @@ public class CreatePurchaseReturnActivity extends BaseActivity
 
     private final FirebaseFirestore db = FirebaseFirestore.getInstance();
     private final CollectionReference purchasesCollection = db.collection("purchases");
-    private final CollectionReference productsCollection = db.collection("products");
     private final CollectionReference returnsCollection = db.collection("purchase_returns");
 
     private String originalPurchaseId;
@@ -236,17 +243,15 @@ public class CreatePurchaseReturnActivity extends BaseActivity
     private void processReturnTransaction(String paymentMethod, double refundAmount, String notes) {
         showLoadingIndicator("Processing Return...");
 
-        db.runTransaction((Transaction.Function<Void>) transaction -> {
-            // 1. Re-read Purchase
-            DocumentReference purchaseRef = purchasesCollection.document(originalPurchaseId);
-            Purchase freshPurchase = transaction.get(purchaseRef).toObject(Purchase.class);
-            if (freshPurchase == null) {
+        List<OutboxWrite> writes = new ArrayList<>();
+        String returnId = returnsCollection.document().getId();
+        try {
+            // 1. Validate against the purchase as loaded; the replay checks again against the server
+            if (originalPurchase == null) {
                 throw new ArithmeticException("Purchase not found.");
             }
-
-            // 2. Validate quantities
             List<PurchaseReturnItem> returnItems = new ArrayList<>();
-            List<PurchaseItem> freshItems = freshPurchase.getItems();
+            List<PurchaseItem> loadedItems = originalPurchase.getItems();
 
             double creditTotal = 0;
 
@@ -256,7 +261,7 @@ public class CreatePurchaseReturnActivity extends BaseActivity
 
                 String pid = selection.getProduct().getDocumentId();
                 PurchaseItem purchaseItem = null;
-                for (PurchaseItem pi : freshItems) {
+                for (PurchaseItem pi : loadedItems) {
                     if (pi.getProductId().equals(pid)) {
                         purchaseItem = pi;
                         break;
@@ -274,8 +279,9 @@ public class CreatePurchaseReturnActivity extends BaseActivity
                             + selection.getProduct().getName() + ". Only " + maxReturnable + " remaining.");
                 }
 
-                // 3. Update PurchaseItem returned qty
-                purchaseItem.setReturnedQuantity(purchaseItem.getReturnedQuantity() + selection.getQuantityInSale());
+                // 2. Update PurchaseItem returned qty, never past the purchased quantity
+                writes.add(OutboxWrite.incrementItem("purchases", originalPurchaseId, "items", "productId", pid,
+                        "returnedQuantity", selection.getQuantityInSale(), "quantity"));
 
                 // Add to Return Doc List
                 PurchaseReturnItem returnItem = new PurchaseReturnItem();
@@ -289,57 +295,50 @@ public class CreatePurchaseReturnActivity extends BaseActivity
                 creditTotal = FinancialCalculator.add(creditTotal,
                         FinancialCalculator.multiply(returnItem.getPricePerItem(), returnItem.getQuantity()));
 
-                // 4. Update Product Inventory (DECREASE Stock)
-                DocumentReference productRef = productsCollection.document(pid);
-                Product productInDb = transaction.get(productRef).toObject(Product.class);
-                if (productInDb == null) {
-                    throw new ArithmeticException(
-                            "Product " + selection.getProduct().getName() + " not found in inventory.");
-                }
-
-                int currentStock = productInDb.getQuantity();
-                if (currentStock < selection.getQuantityInSale()) {
-                    throw new ArithmeticException("Insufficient stock for " + selection.getProduct().getName() +
-                            ". Current: " + currentStock + ", Trying to Return: " + selection.getQuantityInSale());
-                }
-
-                transaction.update(productRef, "quantity", FieldValue.increment(-selection.getQuantityInSale()));
+                // 3. Update Product Inventory (DECREASE Stock); insufficient stock is a conflict at replay
+                writes.add(OutboxWrite.stock(pid, -selection.getQuantityInSale()));
             }
 
             if (returnItems.isEmpty()) {
                 throw new ArithmeticException("No items selected for return.");
             }
 
-            // 5. Update Purchase Document
-            // Recalibrate the totalAmount of the original purchase
-            freshPurchase.setTotalAmount(FinancialCalculator.subtract(freshPurchase.getTotalAmount(), creditTotal));
-            transaction.set(purchaseRef, freshPurchase);
+            // 4. Recalibrate the totalAmount of the original purchase
+            writes.add(OutboxWrite.increment("purchases", originalPurchaseId, "totalAmount", -creditTotal));
 
-            // 6. Create Return Document
-            DocumentReference returnRef = returnsCollection.document();
+            // 5. Create Return Document
             PurchaseReturn purchaseReturn = new PurchaseReturn();
-            purchaseReturn.setDocumentId(returnRef.getId());
+            purchaseReturn.setDocumentId(returnId);
             purchaseReturn.setOriginalPurchaseId(originalPurchaseId);
-            purchaseReturn.setSupplierId(freshPurchase.getSupplierId());
-            purchaseReturn.setSupplierName(freshPurchase.getSupplierName());
+            purchaseReturn.setSupplierId(originalPurchase.getSupplierId());
+            purchaseReturn.setSupplierName(originalPurchase.getSupplierName());
             purchaseReturn.setReturnDate(Timestamp.now());
             purchaseReturn.setUserId(FirebaseAuth.getInstance().getUid());
             purchaseReturn.setItems(returnItems);
             purchaseReturn.setTotalCreditAmount(creditTotal);
 
-            transaction.set(returnRef, purchaseReturn);
-
-            return null;
-        }).addOnSuccessListener(aVoid -> {
-            hideLoadingIndicator();
-            showSuccessToast("Return Processed Successfully");
-            setResult(Activity.RESULT_OK);
-            finish();
-        }).addOnFailureListener(e -> {
+            writes.add(0, OutboxWrite.set("purchase_returns", returnId, purchaseReturn));
+        } catch (ArithmeticException e) {
             hideLoadingIndicator();
-            if (e instanceof ArithmeticException) {
-                showErrorToast(e.getMessage());
-            } else {
+            showErrorToast(e.getMessage());
+            return;
+        }
+
+        OutboxOperation operation = new OutboxOperation(
+                OutboxOperation.keyForCreate(OutboxOperation.Type.PURCHASE_RETURN, returnId),
+                OutboxOperation.Type.PURCHASE_RETURN, writes);
+        offlineSyncHelper.enqueue(operation, new OfflineSyncHelper.EnqueueCallback() {
+            @Override
+            public void onQueued() {
+                hideLoadingIndicator();
+                showSuccessToast("Return queued for sync");
+                setResult(Activity.RESULT_OK);
+                finish();
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                hideLoadingIndicator();
                 showErrorToast("Error processing return: " + e.getMessage());
             }
         });
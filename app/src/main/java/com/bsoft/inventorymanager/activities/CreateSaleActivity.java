@@ -235,6 +235,11 @@ public class CreateSaleActivity extends BaseActivity
             finish();
         });
 
+        viewModel.getSaleQueued().observe(this, saleId -> {
+            showSuccessToast("Sale queued for sync");
+            finish();
+        });
+
         GmsBarcodeScannerOptions options = new GmsBarcodeScannerOptions.Builder()
                 .setBarcodeFormats(Barcode.FORMAT_ALL_FORMATS)
                 .build();
@@ -26,15 +26,15 @@ import com.bsoft.inventorymanager.models.SaleItem;
 import com.bsoft.inventorymanager.models.SaleReturn;
 import com.bsoft.inventorymanager.models.SaleReturnItem;
 import com.bsoft.inventorymanager.activities.PaymentSheet;
+import com.bsoft.inventorymanager.sync.OutboxOperation;
+import com.bsoft.inventorymanager.sync.OutboxWrite;
 import com.bsoft.inventorymanager.utils.FinancialCalculator;
+import com.bsoft.inventorymanager.utils.OfflineSyncHelper;
 import com.google.firebase.Timestamp;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
 import com.google.firebase.firestore.CollectionReference;
-import com.google.firebase.firestore.DocumentReference;
-import com.google.firebase.firestore.FieldValue;
 import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.Transaction;
 import com.google.firebase.firestore.WriteBatch;
 
 import java.util.ArrayList;
@@ -42,10 +42,18 @@ import java.util.Date;
 import java.util.List;
 import java.util.stream.Collectors;
 
+import javax.inject.Inject;
+
+import dagger.hilt.android.AndroidEntryPoint;
+
+@AndroidEntryPoint
 public class CreateSaleReturnActivity extends BaseActivity
         implements SelectedProductsAdapter.OnProductInteractionListener, PaymentSheet.PaymentSheetListener {
     private static final String TAG = "CreateSaleReturn";
 
+    @Inject
+    OfflineSyncHelper offlineSyncHelper;
+
     private Spinner customerSpinner;
     private Button finalizeReturnButton;
     private RecyclerView selectedProductsRecyclerView;
@@ -59,7 +67,6 @@ public class CreateSaleReturnActivity extends BaseActivity
 
     private final FirebaseFirestore db = FirebaseFirestore.getInstance();
     private final CollectionReference salesCollection = db.collection("sales");
-    private final CollectionReference productsCollection = db.collection("products");
     private final CollectionReference returnsCollection = db.collection("sales_returns");
 
     private String originalSaleId;
@@ -263,19 +270,15 @@ public class CreateSaleReturnActivity extends BaseActivity
     private void processReturnTransaction(String paymentMethod, double refundAmount, String notes) {
         showLoadingIndicator("Processing Return...");
 
-        db.runTransaction((Transaction.Function<Void>) transaction -> {
-            // 1. Re-read the Sale to ensure up-to-date returnedQuantities (Concurrency
-            // Safety)
-            DocumentReference saleRef = salesCollection.document(originalSaleId);
-            Sale freshSale = transaction.get(saleRef).toObject(Sale.class);
-            if (freshSale == null) {
+        List<OutboxWrite> writes = new ArrayList<>();
+        String returnId = returnsCollection.document().getId();
+        try {
+            // 1. Validate against the sale as loaded; the replay checks again against the server
+            if (originalSale == null) {
                 throw new ArithmeticException("Sale not found.");
             }
-            freshSale.setDocumentId(originalSaleId);
-
-            // 2. Validate quantities again
             List<SaleReturnItem> returnItems = new ArrayList<>();
-            List<SaleItem> freshItems = freshSale.getItems();
+            List<SaleItem> loadedItems = originalSale.getItems();
 
             double refundTotal = 0;
             double costReduction = 0;
@@ -285,9 +288,9 @@ public class CreateSaleReturnActivity extends BaseActivity
                     continue;
 
                 String pid = selection.getProduct().getDocumentId();
-                // Find matching item in fresh sale
+                // Find matching item in the sale
                 SaleItem saleItem = null;
-                for (SaleItem si : freshItems) {
+                for (SaleItem si : loadedItems) {
                     if (si.getProductId().equals(pid)) {
                         saleItem = si;
                         break;
@@ -305,8 +308,9 @@ public class CreateSaleReturnActivity extends BaseActivity
                             + selection.getProduct().getName() + ". Only " + maxReturnable + " remaining.");
                 }
 
-                // 3. Update SaleItem returned quantity
-                saleItem.setReturnedQuantity(saleItem.getReturnedQuantity() + selection.getQuantityInSale());
+                // 2. Update SaleItem returned quantity, never past the sold quantity
+                writes.add(OutboxWrite.incrementItem("sales", originalSaleId, "items", "productId", pid,
+                        "returnedQuantity", selection.getQuantityInSale(), "quantity"));
 
                 // Add to Return Doc List
                 SaleReturnItem returnItem = new SaleReturnItem();
@@ -323,59 +327,55 @@ public class CreateSaleReturnActivity extends BaseActivity
                 costReduction = FinancialCalculator.add(costReduction,
                         FinancialCalculator.multiply(saleItem.getCostPrice(), selection.getQuantityInSale()));
 
-                // 4. Update Product Inventory (Increase Stock)
-                DocumentReference productRef = productsCollection.document(pid);
-                transaction.update(productRef, "quantity", FieldValue.increment(selection.getQuantityInSale()));
+                // 3. Update Product Inventory (Increase Stock)
+                writes.add(OutboxWrite.stock(pid, selection.getQuantityInSale()));
             }
 
             if (returnItems.isEmpty()) {
                 throw new ArithmeticException("No items selected for return.");
             }
 
-            // 5. Update Sale Document with recalibrated financial fields
-            double currentTotalCost = freshSale.getTotalCost() != null ? freshSale.getTotalCost() : 0.0;
-            double currentTotalProfit = freshSale.getTotalProfit() != null ? freshSale.getTotalProfit() : 0.0;
-
-            // totalAmount in Sale usually represents the total paid by customer (including
-            // tax/discount)
-            // If we refund the items, we should ideally reduce the Sale's totalAmount too
-            // but the prompt focused on cost/profit desync.
-            freshSale.setTotalCost(FinancialCalculator.subtract(currentTotalCost, costReduction));
-
+            // 4. Recalibrate the Sale's financial fields by delta, so concurrent changes are kept
             // Profit reduction = Refunded Amount - Cost of Refunded Items
             double profitReduction = FinancialCalculator.subtract(refundTotal, costReduction);
-            freshSale.setTotalProfit(FinancialCalculator.subtract(currentTotalProfit, profitReduction));
-
+            writes.add(OutboxWrite.increment("sales", originalSaleId, "totalCost", -costReduction));
+            writes.add(OutboxWrite.increment("sales", originalSaleId, "totalProfit", -profitReduction));
             // Also reduce the totalAmount to reflect the refund
-            freshSale.setTotalAmount(FinancialCalculator.subtract(freshSale.getTotalAmount(), refundTotal));
-
-            transaction.set(saleRef, freshSale); // Saves the updated items list and recalibrated fields
+            writes.add(OutboxWrite.increment("sales", originalSaleId, "totalAmount", -refundTotal));
 
-            // 6. Create Return Document
-            DocumentReference returnRef = returnsCollection.document();
+            // 5. Create Return Document
             SaleReturn saleReturn = new SaleReturn();
-            saleReturn.setDocumentId(returnRef.getId());
+            saleReturn.setDocumentId(returnId);
             saleReturn.setOriginalSaleId(originalSaleId);
-            saleReturn.setCustomerId(freshSale.getCustomerId());
-            saleReturn.setCustomerName(freshSale.getCustomerName());
+            saleReturn.setCustomerId(originalSale.getCustomerId());
+            saleReturn.setCustomerName(originalSale.getCustomerName());
             saleReturn.setReturnDate(Timestamp.now());
             saleReturn.setUserId(FirebaseAuth.getInstance().getUid());
             saleReturn.setItems(returnItems);
             saleReturn.setTotalRefundAmount(refundTotal);
 
-            transaction.set(returnRef, saleReturn);
-
-            return null;
-        }).addOnSuccessListener(aVoid -> {
-            hideLoadingIndicator();
-            showSuccessToast("Return Processed Successfully");
-            setResult(Activity.RESULT_OK);
-            finish();
-        }).addOnFailureListener(e -> {
+            writes.add(0, OutboxWrite.set("sales_returns", returnId, saleReturn));
+        } catch (ArithmeticException e) {
             hideLoadingIndicator();
-            if (e instanceof ArithmeticException) {
-                showErrorToast(e.getMessage());
-            } else {
+            showErrorToast(e.getMessage());
+            return;
+        }
+
+        OutboxOperation operation = new OutboxOperation(
+                OutboxOperation.keyForCreate(OutboxOperation.Type.SALE_RETURN, returnId),
+                OutboxOperation.Type.SALE_RETURN, writes);
+        offlineSyncHelper.enqueue(operation, new OfflineSyncHelper.EnqueueCallback() {
+            @Override
+            public void onQueued() {
+                hideLoadingIndicator();
+                showSuccessToast("Return queued for sync");
+                setResult(Activity.RESULT_OK);
+                finish();
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                hideLoadingIndicator();
                 showErrorToast("Error processing return: " + e.getMessage());
             }
         });
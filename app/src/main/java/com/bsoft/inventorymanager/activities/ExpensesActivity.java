@@ -121,7 +121,7 @@ public class ExpensesActivity extends BaseActivity
             @Override
             public void onSuccess() {
                 hideLoadingIndicator();
-                Toast.makeText(ExpensesActivity.this, "Expense saved", Toast.LENGTH_SHORT).show();
+                Toast.makeText(ExpensesActivity.this, "Expense queued for sync", Toast.LENGTH_SHORT).show();
                 viewModel.refreshData();
             }
 
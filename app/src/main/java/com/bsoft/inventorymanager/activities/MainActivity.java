@@ -1,35 +1,46 @@
 package com.bsoft.inventorymanager.activities;
 
+import android.app.AlertDialog;
 import android.os.Bundle;
+import android.text.format.DateUtils;
 import android.view.View;
 import android.widget.ProgressBar;
+import android.widget.TextView;
+import android.widget.Toast;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.lifecycle.ViewModelProvider;
 import androidx.navigation.NavController;
 import androidx.navigation.fragment.NavHostFragment;
 import androidx.navigation.ui.NavigationUI;
 import com.bsoft.inventorymanager.R;
-import com.bsoft.inventorymanager.utils.ImageCacheHelper;
+import com.bsoft.inventorymanager.sync.Outbox;
+import com.bsoft.inventorymanager.sync.OutboxOperation;
+import com.bsoft.inventorymanager.utils.OfflineSyncHelper;
 import com.bsoft.inventorymanager.viewmodels.MainViewModel;
 import com.google.android.material.bottomnavigation.BottomNavigationView;
 
+import javax.inject.Inject;
+
 import dagger.hilt.android.AndroidEntryPoint;
 
 @AndroidEntryPoint
 public class MainActivity extends AppCompatActivity {
 
+    @Inject
+    OfflineSyncHelper offlineSyncHelper;
+
     private MainViewModel mainViewModel;
     private ProgressBar progressBar;
+    private TextView syncStatusBanner;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_main);
 
-        // Initialize utilities
-        ImageCacheHelper.initialize(this);
-
         progressBar = findViewById(R.id.main_progress_bar);
+        syncStatusBanner = findViewById(R.id.sync_status_banner);
+        syncStatusBanner.setOnClickListener(v -> showSyncConflicts());
 
         mainViewModel = new ViewModelProvider(this).get(MainViewModel.class);
 
@@ -51,7 +62,60 @@ public class MainActivity extends AppCompatActivity {
             }
         });
 
+        offlineSyncHelper.getStatus().observe(this, this::showSyncStatus);
+
         // You can also observe the other LiveData objects (products, sales, etc.) here
         // if you need to react to data changes at the Activity level.
     }
+
+    private void showSyncStatus(Outbox.Stats stats) {
+        if (stats.conflicts > 0) {
+            syncStatusBanner.setText(stats.conflicts + " queued operation(s) could not be synced. Tap to review.");
+        } else if (stats.depth > 0) {
+            syncStatusBanner.setText(stats.depth + " operation(s) queued, waiting to sync.");
+        } else {
+            syncStatusBanner.setVisibility(View.GONE);
+            return;
+        }
+        syncStatusBanner.setVisibility(View.VISIBLE);
+    }
+
+    private void showSyncConflicts() {
+        offlineSyncHelper.getConflicts(conflicts -> {
+            if (isFinishing())
+                return;
+            if (conflicts.isEmpty()) {
+                Toast.makeText(this, "Nothing to review; queued operations sync automatically.", Toast.LENGTH_SHORT).show();
+                return;
+            }
+            String[] labels = new String[conflicts.size()];
+            for (int i = 0; i < conflicts.size(); i++) {
+                OutboxOperation operation = conflicts.get(i);
+                labels[i] = operation.getType().name().replace('_', ' ') + ", queued "
+                        + DateUtils.getRelativeTimeSpanString(operation.getCreatedAt());
+            }
+            new AlertDialog.Builder(this)
+                    .setTitle("Operations not synced")
+                    .setItems(labels, (dialog, which) -> showSyncConflict(conflicts.get(which)))
+                    .setNegativeButton("Close", null)
+                    .show();
+        });
+    }
+
+    private void showSyncConflict(OutboxOperation operation) {
+        new AlertDialog.Builder(this)
+                .setTitle(operation.getType().name().replace('_', ' '))
+                .setMessage(operation.getConflict()
+                        + "\n\nApply anyway records it even if stock goes below zero. Discard drops it for good.")
+                .setPositiveButton("Apply anyway", (dialog, which) ->
+                        offlineSyncHelper.resolveConflict(operation.getKey(), true))
+                .setNegativeButton("Discard", (dialog, which) -> new AlertDialog.Builder(this)
+                        .setMessage("Discard this operation? It will never reach the server.")
+                        .setPositiveButton("Discard", (confirm, button) ->
+                                offlineSyncHelper.resolveConflict(operation.getKey(), false))
+                        .setNegativeButton("Cancel", null)
+                        .show())
+                .setNeutralButton("Later", null)
+                .show();
+    }
 }
@@ -5,14 +5,12 @@ import android.app.AlertDialog;
 import android.content.ContentValues;
 import android.content.Intent;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.ImageDecoder;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.provider.MediaStore;
 import android.text.TextUtils;
-import android.util.Base64;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -33,15 +31,17 @@ import androidx.recyclerview.widget.RecyclerView;
 
 import com.bsoft.inventorymanager.R;
 import com.bsoft.inventorymanager.adapters.ProductAdapter;
+import com.bsoft.inventorymanager.images.ImageBlobStore;
+import com.bsoft.inventorymanager.images.ImageLoader;
+import com.bsoft.inventorymanager.images.ImageRef;
 import com.bsoft.inventorymanager.models.ApiProduct;
 // [KMP MIGRATION] Use shared Product model
 import com.bsoft.inventorymanager.model.Product;
-import com.bsoft.inventorymanager.models.ProductResponse;
-import com.bsoft.inventorymanager.network.ProductApiService;
-import com.bsoft.inventorymanager.network.RetrofitClient;
+import com.bsoft.inventorymanager.repositories.BarcodeResolver;
 import com.bsoft.inventorymanager.utils.ErrorHandler;
 import com.bsoft.inventorymanager.utils.FinancialCalculator;
 import com.bsoft.inventorymanager.utils.InputValidator;
+import com.bsoft.inventorymanager.utils.ModelMappers;
 import com.bsoft.inventorymanager.utils.SecurityManager;
 import com.bumptech.glide.Glide;
 import com.google.android.material.appbar.MaterialToolbar;
@@ -56,7 +56,6 @@ import com.google.firebase.firestore.QueryDocumentSnapshot;
 import com.google.mlkit.vision.codescanner.GmsBarcodeScanner;
 import com.google.mlkit.vision.codescanner.GmsBarcodeScanning;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashSet;
@@ -64,16 +63,19 @@ import java.util.List;
 import java.util.Set;
 import java.util.regex.Pattern;
 
-import retrofit2.Call;
-import retrofit2.Callback;
-import retrofit2.Response;
 
 import dagger.hilt.android.AndroidEntryPoint;
+import javax.inject.Inject;
 
 @AndroidEntryPoint
 public class ProductActivity extends AppCompatActivity {
 
     private static final String TAG = "ProductActivity";
+
+    @Inject
+    BarcodeResolver barcodeResolver;
+    @Inject
+    ImageBlobStore imageBlobStore;
     private ProductAdapter adapter;
     private final List<Product> productList = new ArrayList<>();
     private final List<String> brandList = new ArrayList<>();
@@ -123,6 +125,7 @@ public class ProductActivity extends AppCompatActivity {
 
         db = FirebaseFirestore.getInstance();
         productsCollection = db.collection("products");
+        barcodeResolver.start();
 
         RecyclerView productsRecyclerView = findViewById(R.id.productsRecyclerView);
         FloatingActionButton addProductFab = findViewById(R.id.addProductFab);
@@ -332,30 +335,12 @@ public class ProductActivity extends AppCompatActivity {
             etWholesalePrice.setText(String.valueOf(initialProductData.getWholesalePrice()));
             etDealerPrice.setText(String.valueOf(initialProductData.getDealerPrice()));
 
-            if (initialProductData.getImageUrl() != null && !initialProductData.getImageUrl().isEmpty()) {
-                if (initialProductData.getImageUrl().startsWith("http")) {
-                    this.apiImageUrl = initialProductData.getImageUrl();
-                    if (dialogProductImage != null) {
-                        Glide.with(this)
-                                .load(this.apiImageUrl)
-                                .placeholder(R.drawable.ic_product)
-                                .error(R.drawable.ic_product_error)
-                                .into(dialogProductImage);
-                    }
-                } else {
-                    try {
-                        byte[] decodedString = Base64.decode(initialProductData.getImageUrl(), Base64.DEFAULT);
-                        Bitmap decodedByte = BitmapFactory.decodeByteArray(decodedString, 0, decodedString.length);
-                        if (dialogProductImage != null)
-                            dialogProductImage.setImageBitmap(decodedByte);
-                    } catch (IllegalArgumentException e) {
-                        if (dialogProductImage != null)
-                            Glide.with(this).load(R.drawable.ic_product_error).into(dialogProductImage);
-                    }
-                }
-            } else {
-                if (dialogProductImage != null)
-                    Glide.with(this).load(R.drawable.ic_product).into(dialogProductImage);
+            if (ImageRef.isUrl(initialProductData.getImageUrl())) {
+                this.apiImageUrl = initialProductData.getImageUrl();
+            }
+            if (dialogProductImage != null) {
+                ImageLoader.load(dialogProductImage, initialProductData.getDocumentId(), initialProductData.getImageUrl(),
+                        false, R.drawable.ic_product, R.drawable.ic_product_error);
             }
         } else {
             if (dialogProductImage != null)
@@ -409,93 +394,67 @@ public class ProductActivity extends AppCompatActivity {
         }
         this.productFromScan = null; // Reset before check
 
-        productsCollection.document(barcodeValue).get()
-                .addOnSuccessListener(documentSnapshot -> {
-                    if (documentSnapshot.exists()) {
-                        Product productFromFirebase = documentSnapshot.toObject(Product.class);
-                        if (productFromFirebase != null) {
-                            productFromFirebase.setDocumentId(documentSnapshot.getId()); // ID is barcodeValue
-                            this.productFromScan = productFromFirebase; // Store for save operation
+        barcodeResolver.findInInventory(barcodeValue, new BarcodeResolver.InventoryCallback() {
+            @Override
+            public void onFound(com.bsoft.inventorymanager.models.Product product) {
+                Product productFromFirebase = ModelMappers.INSTANCE.toShared(product);
+                productFromScan = productFromFirebase; // Store for save operation
 
-                            if (loadingDialog != null && loadingDialog.isShowing()) {
-                                loadingDialog.dismiss();
-                            }
-                            Toast.makeText(ProductActivity.this, "Product found in your inventory.", Toast.LENGTH_SHORT)
-                                    .show();
+                if (loadingDialog != null && loadingDialog.isShowing()) {
+                    loadingDialog.dismiss();
+                }
+                Toast.makeText(ProductActivity.this, "Product found in your inventory.", Toast.LENGTH_SHORT)
+                        .show();
 
-                            if (etProductCode != null)
-                                etProductCode.setText(productFromFirebase.getProductCode());
-                            if (etProductName != null)
-                                etProductName.setText(productFromFirebase.getName());
-                            if (actvBrand != null)
-                                actvBrand.setText(productFromFirebase.getBrand());
-                            if (actvCategory != null)
-                                actvCategory.setText(productFromFirebase.getCategory());
-
-                            // Populate other fields from productFromFirebase as needed, e.g., stocks,
-                            // prices
-                            // TextInputEditText etStocks = dialogView.findViewById(R.id.et_stocks);
-                            // if (etStocks != null)
-                            // etStocks.setText(String.valueOf(productFromFirebase.getQuantity()));
-                            // ... and so on for other fields ...
-
-                            this.imageUri = null;
-                            this.apiImageUrl = null;
-
-                            if (productFromFirebase.getImageUrl() != null
-                                    && !productFromFirebase.getImageUrl().isEmpty()) {
-                                if (dialogProductImage != null) {
-                                    if (productFromFirebase.getImageUrl().startsWith("http")) {
-                                        this.apiImageUrl = productFromFirebase.getImageUrl();
-                                        Glide.with(this)
-                                                .load(this.apiImageUrl)
-                                                .placeholder(R.drawable.ic_product)
-                                                .error(R.drawable.ic_product_error)
-                                                .into(dialogProductImage);
-                                    } else {
-                                        try {
-                                            byte[] decodedString = Base64.decode(productFromFirebase.getImageUrl(),
-                                                    Base64.DEFAULT);
-                                            Bitmap decodedByte = BitmapFactory.decodeByteArray(decodedString, 0,
-                                                    decodedString.length);
-                                            dialogProductImage.setImageBitmap(decodedByte);
-                                        } catch (IllegalArgumentException e) {
-                                            Glide.with(this).load(R.drawable.ic_product_error).into(dialogProductImage);
-                                            Log.e(TAG, "Error decoding Base64 image from Firebase: " + e.getMessage());
-                                        }
-                                    }
-                                }
-                            } else {
-                                if (dialogProductImage != null) {
-                                    Glide.with(this).load(R.drawable.ic_product).into(dialogProductImage);
-                                }
-                            }
-                            // The dialog title and button text might need to be updated here
-                            // to reflect "Edit Product" if it was "Add Product".
-                            // This requires access to the AlertDialog instance or recreating parts of it.
-                            // For now, this logic is deferred.
-                        } else {
-                            if (loadingDialog != null && loadingDialog.isShowing()) {
-                                loadingDialog.dismiss();
-                            }
-                            Log.w(TAG, "Product exists in Firebase but failed to parse. Barcode: " + barcodeValue
-                                    + ". Querying API.");
-                            fetchProductDetails(barcodeValue);
-                        }
-                    } else {
-                        Log.i(TAG, "Product with barcode " + barcodeValue + " not found in Firebase. Querying API.");
-                        fetchProductDetails(barcodeValue); // loadingDialog kept visible
-                    }
-                })
-                .addOnFailureListener(e -> {
-                    if (loadingDialog != null && loadingDialog.isShowing()) {
-                        loadingDialog.dismiss();
-                    }
-                    Log.e(TAG, "Error querying Firebase for barcode " + barcodeValue, e);
-                    Toast.makeText(ProductActivity.this, "Error checking inventory. Trying online...",
-                            Toast.LENGTH_SHORT).show();
-                    fetchProductDetails(barcodeValue);
-                });
+                if (etProductCode != null)
+                    etProductCode.setText(productFromFirebase.getProductCode());
+                if (etProductName != null)
+                    etProductName.setText(productFromFirebase.getName());
+                if (actvBrand != null)
+                    actvBrand.setText(productFromFirebase.getBrand());
+                if (actvCategory != null)
+                    actvCategory.setText(productFromFirebase.getCategory());
+
+                // Populate other fields from productFromFirebase as needed, e.g., stocks,
+                // prices
+                // TextInputEditText etStocks = dialogView.findViewById(R.id.et_stocks);
+                // if (etStocks != null)
+                // etStocks.setText(String.valueOf(productFromFirebase.getQuantity()));
+                // ... and so on for other fields ...
+
+                imageUri = null;
+                apiImageUrl = null;
+
+                if (ImageRef.isUrl(productFromFirebase.getImageUrl())) {
+                    apiImageUrl = productFromFirebase.getImageUrl();
+                }
+                if (dialogProductImage != null) {
+                    ImageLoader.load(dialogProductImage, productFromFirebase.getDocumentId(), productFromFirebase.getImageUrl(),
+                            false, R.drawable.ic_product, R.drawable.ic_product_error);
+                }
+                // The dialog title and button text might need to be updated here
+                // to reflect "Edit Product" if it was "Add Product".
+                // This requires access to the AlertDialog instance or recreating parts of it.
+                // For now, this logic is deferred.
+            }
+
+            @Override
+            public void onNotFound() {
+                Log.i(TAG, "Product with barcode " + barcodeValue + " not found in inventory. Querying API.");
+                fetchProductDetails(barcodeValue); // loadingDialog kept visible
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                if (loadingDialog != null && loadingDialog.isShowing()) {
+                    loadingDialog.dismiss();
+                }
+                Log.e(TAG, "Error querying Firebase for barcode " + barcodeValue, e);
+                Toast.makeText(ProductActivity.this, "Error checking inventory. Trying online...",
+                        Toast.LENGTH_SHORT).show();
+                fetchProductDetails(barcodeValue);
+            }
+        });
     }
 
     private void fetchProductDetails(String barcode) {
@@ -507,84 +466,67 @@ public class ProductActivity extends AppCompatActivity {
         }
         this.productFromScan = null; // API result is not from existing scan
 
-        ProductApiService apiService = RetrofitClient.getClient().create(ProductApiService.class);
-        Call<ProductResponse> call = apiService.getProductByBarcode(barcode);
-
-        call.enqueue(new Callback<ProductResponse>() {
+        barcodeResolver.lookupExternal(barcode, new BarcodeResolver.ExternalCallback() {
             @Override
-            public void onResponse(Call<ProductResponse> call, Response<ProductResponse> response) {
+            public void onFound(ApiProduct apiProduct) {
                 if (loadingDialog != null && loadingDialog.isShowing())
                     loadingDialog.dismiss();
-                if (response.isSuccessful() && response.body() != null && response.body().getStatus() == 1) {
-                    ApiProduct apiProduct = response.body().getProduct();
-                    if (apiProduct != null) {
-                        if (etProductCode != null)
-                            etProductCode.setText(barcode); // Use the scanned barcode
-
-                        String productName = apiProduct.getProductName();
-                        String brand = apiProduct.getBrands();
-                        String categories = apiProduct.getCategories();
-                        ProductActivity.this.apiImageUrl = apiProduct.getImageUrl();
-
-                        if (etProductName != null) {
-                            if (productName != null && !productName.isEmpty()) {
-                                if (brand != null && !brand.isEmpty()) {
-                                    String pattern = "(?i)" + Pattern.quote(brand);
-                                    String cleanProductName = productName.replaceAll(pattern, "").trim();
-                                    etProductName.setText(cleanProductName);
-                                    if (actvBrand != null)
-                                        actvBrand.setText(brand);
-                                } else {
-                                    etProductName.setText(productName);
-                                }
-                            } else if (brand != null && !brand.isEmpty() && actvBrand != null) {
+                if (etProductCode != null)
+                    etProductCode.setText(barcode); // Use the scanned barcode
+
+                String productName = apiProduct.getProductName();
+                String brand = apiProduct.getBrands();
+                String categories = apiProduct.getCategories();
+                ProductActivity.this.apiImageUrl = apiProduct.getImageUrl();
+
+                if (etProductName != null) {
+                    if (productName != null && !productName.isEmpty()) {
+                        if (brand != null && !brand.isEmpty()) {
+                            String pattern = "(?i)" + Pattern.quote(brand);
+                            String cleanProductName = productName.replaceAll(pattern, "").trim();
+                            etProductName.setText(cleanProductName);
+                            if (actvBrand != null)
                                 actvBrand.setText(brand);
-                            }
-
-                            if (categories != null && !categories.isEmpty() && actvCategory != null) {
-                                actvCategory.setText(categories.split(",")[0].trim());
-                            }
-
-                            if (ProductActivity.this.apiImageUrl != null && !ProductActivity.this.apiImageUrl.isEmpty()
-                                    && dialogProductImage != null) {
-                                Glide.with(ProductActivity.this)
-                                        .load(ProductActivity.this.apiImageUrl)
-                                        .placeholder(R.drawable.ic_product)
-                                        .error(R.drawable.ic_product_error)
-                                        .into(dialogProductImage);
-                                ProductActivity.this.imageUri = null;
-                            }
-                            Toast.makeText(ProductActivity.this, "Product details found online.", Toast.LENGTH_SHORT)
-                                    .show();
                         } else {
-                            Toast.makeText(ProductActivity.this, "Product details found, but dialog not ready.",
-                                    Toast.LENGTH_LONG).show();
+                            etProductName.setText(productName);
                         }
-                    } else {
-                        if (etProductCode != null)
-                            etProductCode.setText(barcode);
-                        Toast.makeText(ProductActivity.this, "Product not found online. Please enter details manually.",
-                                Toast.LENGTH_LONG).show();
+                    } else if (brand != null && !brand.isEmpty() && actvBrand != null) {
+                        actvBrand.setText(brand);
                     }
-                } else {
-                    if (etProductCode != null)
-                        etProductCode.setText(barcode);
-                    String message = "Product not found online (or API error).";
-                    if (response.body() != null && response.body().getStatus() == 0) {
-                        message = "Product not found in the online database.";
-                    } else if (response.errorBody() != null) {
-                        try {
-                            Log.e(TAG, "API Error: " + response.code() + " " + response.errorBody().string());
-                        } catch (IOException e) {
-                            Log.e(TAG, "Error reading error body", e);
-                        }
+
+                    if (categories != null && !categories.isEmpty() && actvCategory != null) {
+                        actvCategory.setText(categories.split(",")[0].trim());
                     }
-                    Toast.makeText(ProductActivity.this, message, Toast.LENGTH_LONG).show();
+
+                    if (ProductActivity.this.apiImageUrl != null && !ProductActivity.this.apiImageUrl.isEmpty()
+                            && dialogProductImage != null) {
+                        Glide.with(ProductActivity.this)
+                                .load(ProductActivity.this.apiImageUrl)
+                                .placeholder(R.drawable.ic_product)
+                                .error(R.drawable.ic_product_error)
+                                .into(dialogProductImage);
+                        ProductActivity.this.imageUri = null;
+                    }
+                    Toast.makeText(ProductActivity.this, "Product details found online.", Toast.LENGTH_SHORT)
+                            .show();
+                } else {
+                    Toast.makeText(ProductActivity.this, "Product details found, but dialog not ready.",
+                            Toast.LENGTH_LONG).show();
                 }
             }
 
             @Override
-            public void onFailure(Call<ProductResponse> call, Throwable t) {
+            public void onNotFound() {
+                if (loadingDialog != null && loadingDialog.isShowing())
+                    loadingDialog.dismiss();
+                if (etProductCode != null)
+                    etProductCode.setText(barcode);
+                Toast.makeText(ProductActivity.this, "Product not found in the online database.",
+                        Toast.LENGTH_LONG).show();
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
                 if (loadingDialog != null && loadingDialog.isShowing())
                     loadingDialog.dismiss();
                 if (etProductCode != null)
@@ -657,11 +599,8 @@ public class ProductActivity extends AppCompatActivity {
         if (imageUri != null) {
             try {
                 Bitmap bitmap = getBitmapFromUri(imageUri);
-                Bitmap resizedBitmap = resizeBitmap(bitmap, 100, 100);
-                ByteArrayOutputStream baos = new ByteArrayOutputStream();
-                resizedBitmap.compress(Bitmap.CompressFormat.JPEG, 80, baos);
-                byte[] data = baos.toByteArray();
-                imageIdentifierToSave = Base64.encodeToString(data, Base64.DEFAULT);
+                // Stored once, by content; the product document only keeps the reference
+                imageIdentifierToSave = imageBlobStore.put(bitmap).value();
                 this.apiImageUrl = null;
             } catch (IOException e) {
                 ErrorHandler.handleGeneralError(this, e, "processing image");
@@ -872,20 +811,6 @@ public class ProductActivity extends AppCompatActivity {
         }
     }
 
-    private Bitmap resizeBitmap(Bitmap bitmap, int maxWidth, int maxHeight) {
-        int width = bitmap.getWidth();
-        int height = bitmap.getHeight();
-        float bitmapRatio = (float) width / (float) height;
-        if (bitmapRatio > 1) {
-            width = maxWidth;
-            height = (int) (width / bitmapRatio);
-        } else {
-            height = maxHeight;
-            width = (int) (height * bitmapRatio);
-        }
-        return Bitmap.createScaledBitmap(bitmap, width, height, true);
-    }
-
     private void showDeleteConfirmationDialog(Product product) {
         // Security check: Verify user has permission to delete products
         if (!SecurityManager.validateAccess(this, SecurityManager.PERMISSION_CAN_DELETE_PRODUCTS, "delete products")) {
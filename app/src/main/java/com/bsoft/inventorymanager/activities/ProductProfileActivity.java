@@ -1,10 +1,7 @@
 package com.bsoft.inventorymanager.activities;
 
 import android.content.DialogInterface;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.Bundle;
-import android.util.Base64;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.widget.Button;
@@ -19,20 +16,30 @@ import androidx.lifecycle.ViewModelProvider;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import com.bsoft.inventorymanager.R;
+import com.bsoft.inventorymanager.images.ImageLoader;
 import com.bsoft.inventorymanager.adapters.ActivityEventAdapter;
 import com.bsoft.inventorymanager.models.Damage;
 import com.bsoft.inventorymanager.models.Product;
+import com.bsoft.inventorymanager.sync.OutboxOperation;
+import com.bsoft.inventorymanager.sync.OutboxWrite;
+import com.bsoft.inventorymanager.utils.OfflineSyncHelper;
 import com.bsoft.inventorymanager.viewmodels.ActivityFeedViewModel;
-import com.bumptech.glide.Glide;
 import com.google.firebase.Timestamp;
 import com.google.firebase.auth.FirebaseAuth;
-import com.google.firebase.firestore.DocumentReference;
-import com.google.firebase.firestore.FieldValue;
 import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.WriteBatch;
 
+import java.util.Arrays;
+
+import javax.inject.Inject;
+
+import dagger.hilt.android.AndroidEntryPoint;
+
+@AndroidEntryPoint
 public class ProductProfileActivity extends AppCompatActivity {
 
+    @Inject
+    OfflineSyncHelper offlineSyncHelper;
+
     private ActivityFeedViewModel viewModel;
     private ActivityEventAdapter eventAdapter;
     private Product currentProduct;
@@ -99,18 +106,8 @@ public class ProductProfileActivity extends AppCompatActivity {
         wholesalePrice.setText(String.format("Wholesale Price: %.2f", product.getWholesalePrice()));
         dealerPrice.setText(String.format("Dealer Price: %.2f", product.getDealerPrice()));
 
-        String imageUrl = product.getImageUrl();
-        if (imageUrl != null && !imageUrl.isEmpty()) {
-            if (imageUrl.startsWith("http")) {
-                Glide.with(this).load(imageUrl).into(photo);
-            } else {
-                byte[] decodedString = Base64.decode(imageUrl, Base64.DEFAULT);
-                Bitmap decodedByte = BitmapFactory.decodeByteArray(decodedString, 0, decodedString.length);
-                photo.setImageBitmap(decodedByte);
-            }
-        } else {
-            photo.setImageResource(R.drawable.ic_product);
-        }
+        ImageLoader.load(photo, product.getDocumentId(), product.getImageUrl(), false,
+                R.drawable.ic_product, R.drawable.ic_product_error);
     }
 
     private void showRecordDamageDialog() {
@@ -137,22 +134,30 @@ public class ProductProfileActivity extends AppCompatActivity {
                     }
 
                     String userId = FirebaseAuth.getInstance().getCurrentUser().getUid();
-                    FirebaseFirestore db = FirebaseFirestore.getInstance();
-                    WriteBatch batch = db.batch();
+                    String damageId = FirebaseFirestore.getInstance().collection("damages").document().getId();
 
                     // 1. Create a new document in the 'damages' collection
-                    DocumentReference damageRef = db.collection("damages").document();
                     Damage damage = new Damage(currentProduct.getDocumentId(), currentProduct.getName(), quantity, reason, userId, Timestamp.now());
-                    batch.set(damageRef, damage);
 
                     // 2. Decrement the stock quantity of the product
-                    DocumentReference productRef = db.collection("products").document(currentProduct.getDocumentId());
-                    batch.update(productRef, "quantity", FieldValue.increment(-quantity));
-
-                    // Commit the batch
-                    batch.commit()
-                            .addOnSuccessListener(aVoid -> Toast.makeText(this, "Damage recorded and stock updated", Toast.LENGTH_SHORT).show())
-                            .addOnFailureListener(e -> Toast.makeText(this, "Error: " + e.getMessage(), Toast.LENGTH_SHORT).show());
+                    OutboxOperation operation = new OutboxOperation(
+                            OutboxOperation.keyForCreate(OutboxOperation.Type.DAMAGE, damageId),
+                            OutboxOperation.Type.DAMAGE,
+                            Arrays.asList(OutboxWrite.set("damages", damageId, damage),
+                                    OutboxWrite.stock(currentProduct.getDocumentId(), -quantity)));
+
+                    // Applied together once online
+                    offlineSyncHelper.enqueue(operation, new OfflineSyncHelper.EnqueueCallback() {
+                        @Override
+                        public void onQueued() {
+                            Toast.makeText(ProductProfileActivity.this, "Damage queued for sync", Toast.LENGTH_SHORT).show();
+                        }
+
+                        @Override
+                        public void onFailure(Exception e) {
+                            Toast.makeText(ProductProfileActivity.this, "Error: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+                        }
+                    });
                 })
                 .setNegativeButton("Cancel", null)
                 .show();
@@ -1,9 +1,6 @@
 package com.bsoft.inventorymanager.activities;
 
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.Bundle;
-import android.util.Base64;
 import android.widget.ImageView;
 import android.widget.TextView;
 import androidx.appcompat.app.AppCompatActivity;
@@ -11,6 +8,7 @@ import androidx.lifecycle.ViewModelProvider;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import com.bsoft.inventorymanager.R;
+import com.bsoft.inventorymanager.images.ImageLoader;
 import com.bsoft.inventorymanager.adapters.ActivityEventAdapter;
 import com.bsoft.inventorymanager.model.Supplier;
 import com.bsoft.inventorymanager.viewmodels.ActivityFeedViewModel;
@@ -72,9 +70,8 @@ public class SupplierProfileActivity extends AppCompatActivity {
                 supplier.getSupplyFrequency()));
 
         if (supplier.getPhoto() != null && !supplier.getPhoto().isEmpty()) {
-            byte[] decodedString = Base64.decode(supplier.getPhoto(), Base64.DEFAULT);
-            Bitmap decodedByte = BitmapFactory.decodeByteArray(decodedString, 0, decodedString.length);
-            photo.setImageBitmap(decodedByte);
+            ImageLoader.load(photo, supplier.getDocumentId(), supplier.getPhoto(), false,
+                    R.drawable.ic_customer, R.drawable.ic_customer);
         }
     }
 }
@@ -2,8 +2,6 @@ package com.bsoft.inventorymanager.adapters;
 
 import android.content.Context;
 import android.content.Intent;
-import android.graphics.BitmapFactory;
-import android.util.Base64;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -13,6 +11,7 @@ import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 import com.bsoft.inventorymanager.R;
+import com.bsoft.inventorymanager.images.ImageLoader;
 import com.bsoft.inventorymanager.activities.CustomerProfileActivity;
 import com.bsoft.inventorymanager.model.Customer;
 import java.util.List;
@@ -50,13 +49,8 @@ public class CustomerAdapter extends RecyclerView.Adapter<CustomerAdapter.Custom
         holder.textViewCustomerPhone.setText(
                 String.format("Phone: %s", customer.getContactNumber() != null ? customer.getContactNumber() : "N/A"));
 
-        if (customer.getPhoto() != null && !customer.getPhoto().isEmpty()) {
-            byte[] decodedString = Base64.decode(customer.getPhoto(), Base64.DEFAULT);
-            holder.imageViewCustomer
-                    .setImageBitmap(BitmapFactory.decodeByteArray(decodedString, 0, decodedString.length));
-        } else {
-            holder.imageViewCustomer.setImageResource(R.drawable.ic_customer);
-        }
+        ImageLoader.load(holder.imageViewCustomer, customer.getDocumentId(), customer.getPhoto(), true,
+                R.drawable.ic_customer, R.drawable.ic_customer);
 
         holder.itemView.setOnClickListener(v -> {
             Context context = v.getContext();
@@ -89,6 +83,12 @@ public class CustomerAdapter extends RecyclerView.Adapter<CustomerAdapter.Custom
         return customerList == null ? 0 : customerList.size();
     }
 
+    @Override
+    public void onViewRecycled(@NonNull CustomerViewHolder holder) {
+        super.onViewRecycled(holder);
+        ImageLoader.cancel(holder.imageViewCustomer);
+    }
+
     static class CustomerViewHolder extends RecyclerView.ViewHolder {
         TextView textViewCustomerName, textViewCustomerAddress, textViewCustomerAge, textViewCustomerPhone;
         ImageButton buttonEditCustomer, buttonDeleteCustomer;
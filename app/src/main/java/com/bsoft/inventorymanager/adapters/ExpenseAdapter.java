@@ -19,7 +19,7 @@ import java.util.Locale;
 
 public class ExpenseAdapter extends RecyclerView.Adapter<ExpenseAdapter.ExpenseViewHolder> {
 
-    private final List<Expense> expenses = new ArrayList<>();
+    private List<Expense> expenses = new ArrayList<>();
     private final OnExpenseInteractionListener listener;
     private final SimpleDateFormat dateFormat = new SimpleDateFormat("dd MMM yyyy", Locale.US);
 
@@ -34,8 +34,8 @@ public class ExpenseAdapter extends RecyclerView.Adapter<ExpenseAdapter.ExpenseV
     }
 
     public void setExpenses(List<Expense> newExpenses) {
-        this.expenses.clear();
-        this.expenses.addAll(newExpenses);
+        // Repository lists are immutable, keep the reference instead of copying every page
+        this.expenses = newExpenses;
         notifyDataSetChanged();
     }
 
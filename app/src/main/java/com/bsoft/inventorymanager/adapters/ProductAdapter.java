@@ -2,9 +2,6 @@ package com.bsoft.inventorymanager.adapters;
 
 import android.content.Context;
 import android.content.Intent;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.util.Base64;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -16,10 +13,10 @@ import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.bsoft.inventorymanager.R;
+import com.bsoft.inventorymanager.images.ImageLoader;
 import com.bsoft.inventorymanager.activities.ProductProfileActivity;
 // [KMP MIGRATION] Use shared Product model
 import com.bsoft.inventorymanager.model.Product;
-import com.bumptech.glide.Glide;
 
 import java.util.List;
 import java.util.Locale;
@@ -71,26 +68,8 @@ public class ProductAdapter extends RecyclerView.Adapter<ProductAdapter.ViewHold
         holder.textViewProductCostPrice
                 .setText(String.format(Locale.getDefault(), "Cost: %.2f", product.getPurchasePrice()));
 
-        String imageUrl = product.getImageUrl();
-        if (imageUrl != null && !imageUrl.isEmpty()) {
-            if (imageUrl.startsWith("http")) {
-                Glide.with(holder.itemView.getContext())
-                        .load(imageUrl)
-                        .placeholder(R.drawable.ic_product)
-                        .error(R.drawable.ic_product_error)
-                        .into(holder.ivProductImageItem);
-            } else {
-                try {
-                    byte[] decodedString = Base64.decode(imageUrl, Base64.DEFAULT);
-                    Bitmap decodedByte = BitmapFactory.decodeByteArray(decodedString, 0, decodedString.length);
-                    holder.ivProductImageItem.setImageBitmap(decodedByte);
-                } catch (IllegalArgumentException e) {
-                    holder.ivProductImageItem.setImageResource(R.drawable.ic_product_error);
-                }
-            }
-        } else {
-            holder.ivProductImageItem.setImageResource(R.drawable.ic_product);
-        }
+        ImageLoader.load(holder.ivProductImageItem, product.getDocumentId(), product.getImageUrl(), true,
+                R.drawable.ic_product, R.drawable.ic_product_error);
 
         holder.itemView.setOnClickListener(v -> {
             Context context = v.getContext();
@@ -127,6 +106,12 @@ public class ProductAdapter extends RecyclerView.Adapter<ProductAdapter.ViewHold
         notifyItemRemoved(position);
     }
 
+    @Override
+    public void onViewRecycled(@NonNull ViewHolder holder) {
+        super.onViewRecycled(holder);
+        ImageLoader.cancel(holder.ivProductImageItem);
+    }
+
     public static class ViewHolder extends RecyclerView.ViewHolder {
         TextView productNameTextView, availableCountTextView;
         TextView textViewProductCode, textViewProductBrand, textViewProductCategory, textViewProductMrp,
@@ -1,6 +1,5 @@
 package com.bsoft.inventorymanager.adapters;
 
-import android.util.Base64;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -10,6 +9,7 @@ import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 import com.bsoft.inventorymanager.R;
+import com.bsoft.inventorymanager.images.ImageLoader;
 import com.bsoft.inventorymanager.model.Customer;
 import com.bumptech.glide.Glide;
 import com.bumptech.glide.load.resource.bitmap.CenterCrop;
@@ -59,6 +59,7 @@ public class SelectableCustomerAdapter extends RecyclerView.Adapter<SelectableCu
             if (currentCustomer.getPhoto() != null && !currentCustomer.getPhoto().isEmpty()) {
                 String imageString = currentCustomer.getPhoto();
                 if (imageString.startsWith("http://") || imageString.startsWith("https://")) {
+                    ImageLoader.cancel(holder.customerImageView);
                     Glide.with(holder.itemView.getContext())
                             .load(imageString)
                             .transform(new CenterCrop(), new RoundedCorners(16))
@@ -66,20 +67,12 @@ public class SelectableCustomerAdapter extends RecyclerView.Adapter<SelectableCu
                             .error(R.drawable.ic_product_error)
                             .into(holder.customerImageView);
                 } else {
-                    try {
-                        byte[] imageBytes = Base64.decode(imageString, Base64.DEFAULT);
-                        Glide.with(holder.itemView.getContext())
-                                .asBitmap()
-                                .load(imageBytes)
-                                .transform(new CenterCrop(), new RoundedCorners(16))
-                                .placeholder(R.drawable.ic_product_error)
-                                .error(R.drawable.ic_product_error)
-                                .into(holder.customerImageView);
-                    } catch (IllegalArgumentException e) {
-                        holder.customerImageView.setImageResource(R.drawable.ic_product_error);
-                    }
+                    // Blob reference, or legacy inline Base64
+                    ImageLoader.load(holder.customerImageView, currentCustomer.getDocumentId(), imageString, true,
+                            R.drawable.ic_product_error, R.drawable.ic_product_error);
                 }
             } else {
+                ImageLoader.cancel(holder.customerImageView);
                 holder.customerImageView.setImageResource(R.drawable.ic_product_error);
             }
 
@@ -98,6 +91,7 @@ public class SelectableCustomerAdapter extends RecyclerView.Adapter<SelectableCu
             holder.customerNameTextView.setText("Unknown Customer");
             holder.customerPhoneTextView.setText("No Data");
             holder.customerAddressTextView.setText("No Address");
+            ImageLoader.cancel(holder.customerImageView);
             holder.customerImageView.setImageResource(R.drawable.ic_product_error);
             holder.customerRatingBar.setVisibility(View.GONE);
             holder.customerRatingText.setVisibility(View.GONE);
@@ -123,6 +117,12 @@ public class SelectableCustomerAdapter extends RecyclerView.Adapter<SelectableCu
         notifyDataSetChanged();
     }
 
+    @Override
+    public void onViewRecycled(@NonNull CustomerViewHolder holder) {
+        super.onViewRecycled(holder);
+        ImageLoader.cancel(holder.customerImageView);
+    }
+
     static class CustomerViewHolder extends RecyclerView.ViewHolder {
         TextView customerNameTextView;
         TextView customerPhoneTextView;
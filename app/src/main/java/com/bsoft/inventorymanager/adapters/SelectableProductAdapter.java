@@ -1,7 +1,6 @@
 package com.bsoft.inventorymanager.adapters;
 
 import android.content.Context;
-import android.util.Base64;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -10,6 +9,7 @@ import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 import com.bsoft.inventorymanager.R;
+import com.bsoft.inventorymanager.images.ImageLoader;
 import com.bsoft.inventorymanager.models.Product;
 import com.bumptech.glide.Glide;
 import com.bumptech.glide.load.resource.bitmap.CenterCrop;
@@ -67,9 +67,10 @@ public class SelectableProductAdapter extends RecyclerView.Adapter<SelectablePro
         // Load product image if available
         if (currentProduct.getImageUrl() != null && !currentProduct.getImageUrl().isEmpty()) {
             String imageString = currentProduct.getImageUrl();
-            // Check if the image string is a URL or a Base64 string
+            // Check if the image string is a URL or stored image data
             if (imageString.startsWith("http://") || imageString.startsWith("https://")) {
                 // It's a URL, load it directly
+                ImageLoader.cancel(holder.productImageView);
                 Glide.with(holder.itemView.getContext())
                         .load(imageString)
                         .transform(new CenterCrop(), new RoundedCorners(16))
@@ -77,22 +78,12 @@ public class SelectableProductAdapter extends RecyclerView.Adapter<SelectablePro
                         .error(R.drawable.ic_product_error)
                         .into(holder.productImageView);
             } else {
-                // It's a Base64 string, decode it first
-                try {
-                    byte[] imageBytes = Base64.decode(imageString, Base64.DEFAULT);
-                    Glide.with(holder.itemView.getContext())
-                            .asBitmap()
-                            .load(imageBytes)
-                            .transform(new CenterCrop(), new RoundedCorners(16))
-                            .placeholder(R.drawable.ic_product_error)
-                            .error(R.drawable.ic_product_error)
-                            .into(holder.productImageView);
-                } catch (IllegalArgumentException e) {
-                    // If decoding fails, show an error image
-                    holder.productImageView.setImageResource(R.drawable.ic_product_error);
-                }
+                // Blob reference, or legacy inline Base64
+                ImageLoader.load(holder.productImageView, currentProduct.getDocumentId(), imageString, true,
+                        R.drawable.ic_product_error, R.drawable.ic_product_error);
             }
         } else {
+            ImageLoader.cancel(holder.productImageView);
             holder.productImageView.setImageResource(R.drawable.ic_product_error);
         }
 
@@ -158,6 +149,12 @@ public class SelectableProductAdapter extends RecyclerView.Adapter<SelectablePro
         notifyDataSetChanged(); // Consider DiffUtil for better performance
     }
 
+    @Override
+    public void onViewRecycled(@NonNull ProductViewHolder holder) {
+        super.onViewRecycled(holder);
+        ImageLoader.cancel(holder.productImageView);
+    }
+
     static class ProductViewHolder extends RecyclerView.ViewHolder {
         TextView nameTextView;
         TextView brandTextView;
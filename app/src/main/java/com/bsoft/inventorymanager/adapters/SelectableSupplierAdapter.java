@@ -1,6 +1,5 @@
 package com.bsoft.inventorymanager.adapters;
 
-import android.util.Base64;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -10,6 +9,7 @@ import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 import com.bsoft.inventorymanager.R;
+import com.bsoft.inventorymanager.images.ImageLoader;
 import com.bsoft.inventorymanager.model.Supplier;
 import com.bumptech.glide.Glide;
 import com.bumptech.glide.load.resource.bitmap.CenterCrop;
@@ -64,6 +64,7 @@ public class SelectableSupplierAdapter extends RecyclerView.Adapter<SelectableSu
             if (currentSupplier.getPhoto() != null && !currentSupplier.getPhoto().isEmpty()) {
                 String imageString = currentSupplier.getPhoto();
                 if (imageString.startsWith("http://") || imageString.startsWith("https://")) {
+                    ImageLoader.cancel(holder.supplierImageView);
                     Glide.with(holder.itemView.getContext())
                             .load(imageString)
                             .transform(new CenterCrop(), new RoundedCorners(16))
@@ -71,20 +72,12 @@ public class SelectableSupplierAdapter extends RecyclerView.Adapter<SelectableSu
                             .error(R.drawable.ic_product_error)
                             .into(holder.supplierImageView);
                 } else {
-                    try {
-                        byte[] imageBytes = Base64.decode(imageString, Base64.DEFAULT);
-                        Glide.with(holder.itemView.getContext())
-                                .asBitmap()
-                                .load(imageBytes)
-                                .transform(new CenterCrop(), new RoundedCorners(16))
-                                .placeholder(R.drawable.ic_product_error)
-                                .error(R.drawable.ic_product_error)
-                                .into(holder.supplierImageView);
-                    } catch (IllegalArgumentException e) {
-                        holder.supplierImageView.setImageResource(R.drawable.ic_product_error);
-                    }
+                    // Blob reference, or legacy inline Base64
+                    ImageLoader.load(holder.supplierImageView, currentSupplier.getDocumentId(), imageString, true,
+                            R.drawable.ic_product_error, R.drawable.ic_product_error);
                 }
             } else {
+                ImageLoader.cancel(holder.supplierImageView);
                 holder.supplierImageView.setImageResource(R.drawable.ic_product_error);
             }
 
@@ -103,6 +96,7 @@ public class SelectableSupplierAdapter extends RecyclerView.Adapter<SelectableSu
             holder.supplierNameTextView.setText("Unknown Supplier");
             holder.supplierPhoneTextView.setText("No Data");
             holder.supplierAddressTextView.setText("No Address");
+            ImageLoader.cancel(holder.supplierImageView);
             holder.supplierImageView.setImageResource(R.drawable.ic_product_error);
             holder.supplierRatingBar.setVisibility(View.GONE);
             holder.supplierRatingText.setVisibility(View.GONE);
@@ -120,6 +114,12 @@ public class SelectableSupplierAdapter extends RecyclerView.Adapter<SelectableSu
         return suppliers != null ? suppliers.size() : 0;
     }
 
+    @Override
+    public void onViewRecycled(@NonNull SupplierViewHolder holder) {
+        super.onViewRecycled(holder);
+        ImageLoader.cancel(holder.supplierImageView);
+    }
+
     static class SupplierViewHolder extends RecyclerView.ViewHolder {
         TextView supplierNameTextView;
         TextView supplierPhoneTextView;
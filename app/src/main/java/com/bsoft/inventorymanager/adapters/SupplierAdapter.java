@@ -2,8 +2,6 @@ package com.bsoft.inventorymanager.adapters;
 
 import android.content.Context;
 import android.content.Intent;
-import android.graphics.BitmapFactory;
-import android.util.Base64;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -13,6 +11,7 @@ import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 import com.bsoft.inventorymanager.R;
+import com.bsoft.inventorymanager.images.ImageLoader;
 import com.bsoft.inventorymanager.activities.SupplierProfileActivity;
 import com.bsoft.inventorymanager.model.Supplier;
 import java.util.List;
@@ -50,17 +49,8 @@ public class SupplierAdapter extends RecyclerView.Adapter<SupplierAdapter.Suppli
         holder.textViewSupplierPhone.setText(
                 String.format("Phone: %s", supplier.getContactNumber() != null ? supplier.getContactNumber() : "N/A"));
 
-        if (supplier.getPhoto() != null && !supplier.getPhoto().isEmpty()) {
-            try {
-                byte[] decodedString = Base64.decode(supplier.getPhoto(), Base64.DEFAULT);
-                holder.imageViewSupplier
-                        .setImageBitmap(BitmapFactory.decodeByteArray(decodedString, 0, decodedString.length));
-            } catch (Exception e) {
-                holder.imageViewSupplier.setImageResource(R.drawable.ic_customer);
-            }
-        } else {
-            holder.imageViewSupplier.setImageResource(R.drawable.ic_customer);
-        }
+        ImageLoader.load(holder.imageViewSupplier, supplier.getDocumentId(), supplier.getPhoto(), true,
+                R.drawable.ic_customer, R.drawable.ic_customer);
 
         holder.itemView.setOnClickListener(v -> {
             Context context = v.getContext();
@@ -93,6 +83,12 @@ public class SupplierAdapter extends RecyclerView.Adapter<SupplierAdapter.Suppli
         return supplierList == null ? 0 : supplierList.size();
     }
 
+    @Override
+    public void onViewRecycled(@NonNull SupplierViewHolder holder) {
+        super.onViewRecycled(holder);
+        ImageLoader.cancel(holder.imageViewSupplier);
+    }
+
     static class SupplierViewHolder extends RecyclerView.ViewHolder {
         TextView textViewSupplierName, textViewSupplierAddress, textViewSupplierAge, textViewSupplierPhone;
         ImageButton buttonEditSupplier, buttonDeleteSupplier;
@@ -1,14 +1,26 @@
 package com.bsoft.inventorymanager.di;
 
+import android.content.Context;
+
+import com.bsoft.inventorymanager.cache.MasterDataCache;
+import com.bsoft.inventorymanager.cache.MasterDataCaches;
+import com.bsoft.inventorymanager.cache.MasterDataSync;
 import com.bsoft.inventorymanager.network.ProductApiService;
 import com.bsoft.inventorymanager.network.RetrofitClient;
+import com.bsoft.inventorymanager.repositories.BarcodeResolver;
+import com.bsoft.inventorymanager.reports.cache.DashboardStatsCache;
+import com.bsoft.inventorymanager.sync.Outbox;
+import com.bsoft.inventorymanager.utils.OfflineSyncHelper;
 import com.google.firebase.firestore.FirebaseFirestore;
 
+import java.io.File;
+
 import javax.inject.Singleton;
 
 import dagger.Module;
 import dagger.Provides;
 import dagger.hilt.InstallIn;
+import dagger.hilt.android.qualifiers.ApplicationContext;
 import dagger.hilt.components.SingletonComponent;
 
 @Module
@@ -29,8 +41,41 @@ public class AppModule {
 
     @Provides
     @Singleton
-    public ProductApiService provideProductApiService() {
-        return RetrofitClient.getClient().create(ProductApiService.class);
+    public ProductApiService provideProductApiService(@ApplicationContext Context context) {
+        return RetrofitClient.getClient(new File(context.getCacheDir(), "http"))
+                .create(ProductApiService.class);
+    }
+
+    @Provides
+    @Singleton
+    public DashboardStatsCache provideDashboardStatsCache(@ApplicationContext Context context) {
+        return new DashboardStatsCache(new File(context.getCacheDir(), "dashboard_stats"));
+    }
+
+    @Provides
+    @Singleton
+    public BarcodeResolver provideBarcodeResolver(FirebaseFirestore db, MasterDataCache cache, MasterDataSync sync,
+            ProductApiService apiService, @ApplicationContext Context context) {
+        return new BarcodeResolver(db, cache, sync, apiService,
+                new File(context.getFilesDir(), "barcode_index.json"));
+    }
+
+    @Provides
+    @Singleton
+    public OfflineSyncHelper provideOfflineSyncHelper(@ApplicationContext Context context, FirebaseFirestore db) {
+        return new OfflineSyncHelper(context, db, new Outbox(new File(context.getFilesDir(), "outbox.json")));
+    }
+
+    @Provides
+    @Singleton
+    public MasterDataCache provideMasterDataCache(@ApplicationContext Context context) {
+        return MasterDataCaches.openMasterDataCache(context);
+    }
+
+    @Provides
+    @Singleton
+    public MasterDataSync provideMasterDataSync(FirebaseFirestore db, MasterDataCache cache) {
+        return new MasterDataSync(db, cache);
     }
 
     @Provides
@@ -64,8 +109,8 @@ public class AppModule {
     @Provides
     @Singleton
     public com.bsoft.inventorymanager.repository.ProductRepositoryImpl provideSharedProductRepositoryImpl(
-            FirebaseFirestore db) {
-        return new com.bsoft.inventorymanager.repository.ProductRepositoryImpl(db);
+            FirebaseFirestore db, MasterDataCache cache, MasterDataSync sync) {
+        return new com.bsoft.inventorymanager.repository.ProductRepositoryImpl(db, cache, sync);
     }
 
     // [LEGACY] Kept for backward compatibility with SelectProductViewModel - TODO:
@@ -94,8 +139,8 @@ public class AppModule {
     @Provides
     @Singleton
     public com.bsoft.inventorymanager.repository.SupplierRepositoryImpl provideSupplierRepositoryImpl(
-            FirebaseFirestore db) {
-        return new com.bsoft.inventorymanager.repository.SupplierRepositoryImpl(db);
+            FirebaseFirestore db, MasterDataCache cache, MasterDataSync sync) {
+        return new com.bsoft.inventorymanager.repository.SupplierRepositoryImpl(db, cache, sync);
     }
 
     @Provides
@@ -108,7 +153,7 @@ public class AppModule {
     @Provides
     @Singleton
     public com.bsoft.inventorymanager.repository.CustomerRepositoryImpl provideCustomerRepositoryImpl(
-            FirebaseFirestore db) {
-        return new com.bsoft.inventorymanager.repository.CustomerRepositoryImpl(db);
+            FirebaseFirestore db, MasterDataCache cache, MasterDataSync sync) {
+        return new com.bsoft.inventorymanager.repository.CustomerRepositoryImpl(db, cache, sync);
     }
 }
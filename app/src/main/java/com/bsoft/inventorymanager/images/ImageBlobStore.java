@@ -0,0 +1,130 @@
+package com.bsoft.inventorymanager.images;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import com.google.firebase.firestore.Blob;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Source;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Content-addressed image storage in Firestore, so product and person documents carry a short
+ * {@link ImageRef} instead of the image bytes.
+ * <p>
+ * Each image is stored once in two sizes: {@code imageBlobs/{hash}} at up to {@link #FULL_SIZE}
+ * pixels for profile screens, and {@code imageThumbs/{hash}} at up to {@link #THUMBNAIL_SIZE} pixels
+ * for lists. Both are written once and never change, so reads try the local cache first.
+ */
+@Singleton
+public class ImageBlobStore {
+
+    private static final String TAG = "ImageBlobStore";
+
+    public static final String COLLECTION = "imageBlobs";
+    public static final String THUMBNAIL_COLLECTION = "imageThumbs";
+    public static final String FIELD_DATA = "data";
+
+    public static final int FULL_SIZE = 512;
+    public static final int THUMBNAIL_SIZE = 128;
+    private static final int FULL_QUALITY = 85;
+    private static final int THUMBNAIL_QUALITY = 80;
+
+    private final FirebaseFirestore db;
+
+    public interface FetchCallback {
+        /** Called on a Firestore background thread. */
+        void onFetched(byte[] bytes);
+
+        /** Called on a Firestore background thread. */
+        void onFailure(Exception e);
+    }
+
+    @Inject
+    public ImageBlobStore(FirebaseFirestore db) {
+        this.db = db;
+    }
+
+    /**
+     * Encodes both sizes and queues their upload; works offline like any Firestore write.
+     *
+     * @return the reference to store in the document.
+     */
+    public ImageRef put(Bitmap image) {
+        byte[] full = encode(image, FULL_SIZE, FULL_QUALITY);
+        byte[] thumbnail = encode(image, THUMBNAIL_SIZE, THUMBNAIL_QUALITY);
+        ImageRef ref = ImageRef.of(full);
+
+        WriteBatch batch = db.batch();
+        batch.set(document(ref.full()), blob(full));
+        batch.set(document(ref.thumbnail()), blob(thumbnail));
+        batch.commit().addOnFailureListener(e -> Log.e(TAG, "Failed to upload image " + ref.value(), e));
+        return ref;
+    }
+
+    /**
+     * Fetches the bytes of one size of an image, from the local cache when present.
+     */
+    public void fetch(ImageRef ref, FetchCallback callback) {
+        DocumentReference document = document(ref);
+        document.get(Source.CACHE).addOnCompleteListener(Runnable::run, cached -> {
+            if (cached.isSuccessful() && bytesOf(cached.getResult()) != null) {
+                callback.onFetched(bytesOf(cached.getResult()));
+                return;
+            }
+            document.get().addOnCompleteListener(Runnable::run, fetched -> {
+                byte[] bytes = fetched.isSuccessful() ? bytesOf(fetched.getResult()) : null;
+                if (bytes != null) {
+                    callback.onFetched(bytes);
+                } else {
+                    callback.onFailure(fetched.getException() != null ? fetched.getException()
+                            : new IllegalStateException("Missing image " + ref));
+                }
+            });
+        });
+    }
+
+    private DocumentReference document(ImageRef ref) {
+        return db.collection(ref.isThumbnail() ? THUMBNAIL_COLLECTION : COLLECTION).document(ref.getHash());
+    }
+
+    private static Map<String, Object> blob(byte[] bytes) {
+        Map<String, Object> data = new HashMap<>();
+        data.put(FIELD_DATA, Blob.fromBytes(bytes));
+        data.put("contentType", "image/jpeg");
+        data.put("size", bytes.length);
+        data.put("createdAt", FieldValue.serverTimestamp());
+        return data;
+    }
+
+    private static byte[] bytesOf(DocumentSnapshot snapshot) {
+        Blob blob = snapshot != null && snapshot.exists() ? snapshot.getBlob(FIELD_DATA) : null;
+        return blob == null ? null : blob.toBytes();
+    }
+
+    private static byte[] encode(Bitmap image, int maxSize, int quality) {
+        Bitmap scaled = image;
+        int longest = Math.max(image.getWidth(), image.getHeight());
+        if (longest > maxSize) {
+            float scale = (float) maxSize / longest;
+            scaled = Bitmap.createScaledBitmap(image, Math.max(1, Math.round(image.getWidth() * scale)),
+                    Math.max(1, Math.round(image.getHeight() * scale)), true);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        scaled.compress(Bitmap.CompressFormat.JPEG, quality, out);
+        if (scaled != image) {
+            scaled.recycle();
+        }
+        return out.toByteArray();
+    }
+}
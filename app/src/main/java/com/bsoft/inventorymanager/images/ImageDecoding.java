@@ -0,0 +1,41 @@
+package com.bsoft.inventorymanager.images;
+
+/**
+ * Sizing and cache keys for {@link ImageLoader}, kept free of Android types.
+ */
+public final class ImageDecoding {
+
+    private ImageDecoding() {
+    }
+
+    /**
+     * @return the largest power of two that keeps the decoded image at least as big as the
+     *         requested size in both dimensions; 1 if the size is unknown.
+     */
+    public static int inSampleSize(int width, int height, int reqWidth, int reqHeight) {
+        int sampleSize = 1;
+        if (width <= 0 || height <= 0 || reqWidth <= 0 || reqHeight <= 0)
+            return sampleSize;
+        while (width / (sampleSize * 2) >= reqWidth && height / (sampleSize * 2) >= reqHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Key of a decoded bitmap: the owning document, the content and the decoded size, so a changed
+     * image or a different target size never hits a stale entry. Also used as a file name.
+     *
+     * @return the key, or null for values that are not decoded by the pipeline (empty or URLs).
+     */
+    public static String cacheKey(String documentId, String value, int reqWidth, int reqHeight) {
+        if (value == null || value.isEmpty() || ImageRef.isUrl(value))
+            return null;
+        ImageRef ref = ImageRef.parse(value);
+        // Inline values are hashed cheaply; String caches its hash, so rebinding the same row is free
+        String contentHash = ref != null ? ref.getHash() : "i" + Integer.toHexString(value.hashCode())
+                + Integer.toHexString(value.length());
+        String owner = documentId == null || documentId.isEmpty() ? "_" : documentId.replaceAll("[^A-Za-z0-9]", "_");
+        return owner + "_" + contentHash + "_" + reqWidth + "x" + reqHeight;
+    }
+}
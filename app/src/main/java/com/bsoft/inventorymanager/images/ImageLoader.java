@@ -0,0 +1,219 @@
+package com.bsoft.inventorymanager.images;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Process;
+import android.util.Base64;
+import android.util.Log;
+import android.widget.ImageView;
+
+import androidx.annotation.DrawableRes;
+
+import com.bsoft.inventorymanager.R;
+import com.bsoft.inventorymanager.utils.ImageCacheHelper;
+import com.bumptech.glide.Glide;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The one way to show the value of an image field (URL, {@link ImageRef} or legacy inline Base64)
+ * in an ImageView.
+ * <p>
+ * URLs go through Glide. Everything else is decoded on a small background pool, sampled down to
+ * the size of the view, and cached in {@link ImageCacheHelper} under the document id, content hash
+ * and size. Binding a view again, or calling {@link #cancel(ImageView)} when a view holder is
+ * recycled, drops its pending work, so a recycled row never shows another row's image.
+ */
+public final class ImageLoader {
+
+    private static final String TAG = "ImageLoader";
+
+    private static final int DECODE_THREADS = 2;
+
+    private static final ExecutorService decoder = Executors.newFixedThreadPool(DECODE_THREADS, runnable -> {
+        Thread thread = new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            runnable.run();
+        }, "image-decode");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static ImageBlobStore blobStore;
+
+    private ImageLoader() {
+    }
+
+    public static void initialize(ImageBlobStore store) {
+        blobStore = store;
+    }
+
+    /**
+     * @param documentId the document owning the image, part of the cache key
+     * @param thumbnail  whether a list-sized image is enough
+     */
+    public static void load(ImageView view, String documentId, String value, boolean thumbnail,
+            @DrawableRes int placeholder, @DrawableRes int error) {
+        cancel(view);
+        if (value == null || value.isEmpty()) {
+            Glide.with(view).clear(view);
+            view.setImageResource(placeholder);
+            return;
+        }
+        if (ImageRef.isUrl(value)) {
+            Glide.with(view).load(value).placeholder(placeholder).error(error).into(view);
+            return;
+        }
+        Glide.with(view).clear(view);
+
+        int fallback = thumbnail ? ImageBlobStore.THUMBNAIL_SIZE : ImageBlobStore.FULL_SIZE;
+        int width = targetSize(view.getLayoutParams() != null ? view.getLayoutParams().width : 0, view.getWidth(),
+                fallback);
+        int height = targetSize(view.getLayoutParams() != null ? view.getLayoutParams().height : 0,
+                view.getHeight(), fallback);
+        String key = ImageDecoding.cacheKey(documentId, value, width, height);
+        Bitmap cached = ImageCacheHelper.getBitmapFromMemCache(key);
+        if (cached != null) {
+            view.setImageBitmap(cached);
+            return;
+        }
+
+        view.setImageResource(placeholder);
+        Request request = new Request(view, value, thumbnail, key, width, height, error);
+        view.setTag(R.id.image_loader_request, request);
+        request.submit(request::load);
+    }
+
+    /**
+     * Drops pending work for the view; call from {@code onViewRecycled}.
+     */
+    public static void cancel(ImageView view) {
+        Object tag = view.getTag(R.id.image_loader_request);
+        if (tag instanceof Request) {
+            ((Request) tag).cancel();
+            view.setTag(R.id.image_loader_request, null);
+        }
+    }
+
+    /**
+     * Decodes an image no larger than needed for the requested size.
+     */
+    public static Bitmap decode(byte[] bytes, int reqWidth, int reqHeight) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+        options.inSampleSize = ImageDecoding.inSampleSize(options.outWidth, options.outHeight, reqWidth, reqHeight);
+        options.inJustDecodeBounds = false;
+        return BitmapFactory.decodeByteArray(bytes, 0, bytes.length, options);
+    }
+
+    private static int targetSize(int layoutSize, int measuredSize, int fallback) {
+        // Layout params first: they are the same on every bind, so the cache key is stable
+        if (layoutSize > 0)
+            return layoutSize;
+        if (measuredSize > 0)
+            return measuredSize;
+        return fallback;
+    }
+
+    private static final class Request {
+        private final ImageView view;
+        private final String value;
+        private final boolean thumbnail;
+        private final String key;
+        private final int width;
+        private final int height;
+        private final int error;
+        private volatile boolean cancelled;
+        private volatile Future<?> task;
+
+        Request(ImageView view, String value, boolean thumbnail, String key, int width, int height, int error) {
+            this.view = view;
+            this.value = value;
+            this.thumbnail = thumbnail;
+            this.key = key;
+            this.width = width;
+            this.height = height;
+            this.error = error;
+        }
+
+        void submit(Runnable work) {
+            if (!cancelled) {
+                task = decoder.submit(work);
+            }
+        }
+
+        void cancel() {
+            cancelled = true;
+            Future<?> pending = task;
+            if (pending != null) {
+                pending.cancel(false);
+            }
+        }
+
+        /** Runs on the decode pool. */
+        void load() {
+            if (cancelled)
+                return;
+            Bitmap cached = ImageCacheHelper.getCachedBitmap(key);
+            if (cached != null) {
+                deliver(cached);
+                return;
+            }
+
+            ImageRef ref = ImageRef.parse(value);
+            if (ref == null) {
+                // Legacy document with the JPEG inline
+                byte[] bytes;
+                try {
+                    bytes = Base64.decode(value, Base64.DEFAULT);
+                } catch (IllegalArgumentException e) {
+                    deliver(null);
+                    return;
+                }
+                decodeAndDeliver(bytes);
+                return;
+            }
+
+            blobStore.fetch(thumbnail ? ref.thumbnail() : ref, new ImageBlobStore.FetchCallback() {
+                @Override
+                public void onFetched(byte[] bytes) {
+                    submit(() -> decodeAndDeliver(bytes));
+                }
+
+                @Override
+                public void onFailure(Exception e) {
+                    Log.w(TAG, "Failed to load " + ref, e);
+                    deliver(null);
+                }
+            });
+        }
+
+        private void decodeAndDeliver(byte[] bytes) {
+            if (cancelled)
+                return;
+            Bitmap bitmap = decode(bytes, width, height);
+            if (bitmap != null) {
+                ImageCacheHelper.addBitmapToCache(key, bitmap);
+            }
+            deliver(bitmap);
+        }
+
+        private void deliver(Bitmap bitmap) {
+            if (cancelled)
+                return;
+            view.post(() -> {
+                if (cancelled || view.getTag(R.id.image_loader_request) != this)
+                    return;
+                view.setTag(R.id.image_loader_request, null);
+                if (bitmap != null) {
+                    view.setImageBitmap(bitmap);
+                } else {
+                    view.setImageResource(error);
+                }
+            });
+        }
+    }
+}
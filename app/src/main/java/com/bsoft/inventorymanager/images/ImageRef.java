@@ -0,0 +1,115 @@
+package com.bsoft.inventorymanager.images;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Reference to an image blob stored by {@link ImageBlobStore}, e.g. {@code sha256:9f86d0...}.
+ * <p>
+ * Image fields ({@code Product.imageUrl}, {@code Person.photo}) hold one of three things: an http(s)
+ * URL, such a reference, or, in documents written by older versions, the Base64 JPEG itself. Blobs
+ * are addressed by the SHA-256 of their full-size bytes, so they are immutable, stored once however
+ * many documents use them, and cacheable forever.
+ */
+public final class ImageRef {
+
+    public static final String SCHEME = "sha256:";
+    private static final int HASH_LENGTH = 64;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final String hash;
+    private final boolean thumbnail;
+
+    private ImageRef(String hash, boolean thumbnail) {
+        this.hash = hash;
+        this.thumbnail = thumbnail;
+    }
+
+    /**
+     * @return the reference held by an image field, or null if the value is empty, a URL or inline.
+     */
+    public static ImageRef parse(String value) {
+        if (value == null || value.length() != SCHEME.length() + HASH_LENGTH || !value.startsWith(SCHEME))
+            return null;
+        for (int i = SCHEME.length(); i < value.length(); i++) {
+            char c = value.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f'))
+                return null;
+        }
+        return new ImageRef(value.substring(SCHEME.length()), false);
+    }
+
+    public static ImageRef of(byte[] content) {
+        return new ImageRef(sha256Hex(content), false);
+    }
+
+    public static boolean isUrl(String value) {
+        return value != null && (value.startsWith("http://") || value.startsWith("https://"));
+    }
+
+    /**
+     * @return whether the value is image data stored in the document itself (legacy Base64).
+     */
+    public static boolean isInline(String value) {
+        return value != null && !value.isEmpty() && !isUrl(value) && parse(value) == null;
+    }
+
+    public String getHash() {
+        return hash;
+    }
+
+    public boolean isThumbnail() {
+        return thumbnail;
+    }
+
+    public ImageRef thumbnail() {
+        return thumbnail ? this : new ImageRef(hash, true);
+    }
+
+    public ImageRef full() {
+        return thumbnail ? new ImageRef(hash, false) : this;
+    }
+
+    /**
+     * @return the value to store in an image field; the same for both sizes.
+     */
+    public String value() {
+        return SCHEME + hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof ImageRef))
+            return false;
+        ImageRef other = (ImageRef) o;
+        return thumbnail == other.thumbnail && hash.equals(other.hash);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash.hashCode() * 31 + (thumbnail ? 1 : 0);
+    }
+
+    @Override
+    public String toString() {
+        return thumbnail ? value() + "#thumbnail" : value();
+    }
+
+    static String sha256Hex(byte[] content) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] hash = digest.digest(content);
+        char[] hex = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            hex[i * 2] = HEX[(hash[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = HEX[hash[i] & 0xf];
+        }
+        return new String(hex);
+    }
+}
@@ -352,6 +352,7 @@ public class Sale implements Serializable {
         }
         map.put("userId", userId);
         map.put("status", status);
+        map.put("subtotal", subtotal);
         map.put("totalCost", totalCost);
         map.put("totalProfit", totalProfit);
         return map;
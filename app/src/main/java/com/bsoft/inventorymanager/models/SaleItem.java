@@ -118,6 +118,8 @@ public class SaleItem implements ReturnableItem {
         map.put("costPrice", costPrice);
         map.put("totalPrice", totalPrice);
         map.put("returnedQuantity", returnedQuantity);
+        map.put("category", category);
+        map.put("brand", brand);
         return map;
     }
 }
@@ -0,0 +1,213 @@
+package com.bsoft.inventorymanager.network;
+
+import com.bsoft.inventorymanager.models.ApiProduct;
+import com.bsoft.inventorymanager.models.ProductResponse;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import retrofit2.Response;
+
+/**
+ * Looks up many barcodes in the external product database, e.g. every unknown item of a supplier
+ * delivery.
+ * <p>
+ * Each barcode is first answered from the HTTP cache, which costs neither a token nor a connection.
+ * Network lookups then take a {@link TokenBucket} token and run on at most {@code concurrency}
+ * threads. Rate limiting (429), server errors and I/O failures are retried with exponential backoff
+ * and jitter, honouring Retry-After; other errors are reported without retrying. Waiting lookups
+ * are scheduled rather than parked, so they never hold a thread.
+ */
+public class BarcodeEnrichmentQueue {
+
+    public static final int DEFAULT_CONCURRENCY = 4;
+    // Open Food Facts allows 100 product reads per minute
+    public static final double DEFAULT_REQUESTS_PER_SECOND = 100 / 60.0;
+    public static final int DEFAULT_BURST = 10;
+    public static final int DEFAULT_MAX_ATTEMPTS = 4;
+    public static final long DEFAULT_INITIAL_BACKOFF_MS = 1_000;
+    static final long MAX_BACKOFF_MS = TimeUnit.MINUTES.toMillis(1);
+
+    private static final int HTTP_GATEWAY_TIMEOUT = 504;
+
+    public interface Listener {
+        /** Called on a worker thread. */
+        void onEnriched(String barcode, ApiProduct product);
+
+        /** Called on a worker thread. */
+        void onNotFound(String barcode);
+
+        /** Called on a worker thread once retries are exhausted or the error is not retryable. */
+        void onFailed(String barcode, Throwable error);
+
+        /** Called on a worker thread whenever the last outstanding barcode gets its outcome. */
+        void onDrained();
+    }
+
+    private final ProductApiService apiService;
+    private final TokenBucket limiter;
+    private final int maxAttempts;
+    private final long initialBackoffMs;
+    private final Listener listener;
+    private final ScheduledThreadPoolExecutor executor;
+    private final Set<String> outstanding = ConcurrentHashMap.newKeySet();
+
+    public BarcodeEnrichmentQueue(ProductApiService apiService, Listener listener) {
+        this(apiService, DEFAULT_CONCURRENCY, new TokenBucket(DEFAULT_BURST, DEFAULT_REQUESTS_PER_SECOND),
+                DEFAULT_MAX_ATTEMPTS, DEFAULT_INITIAL_BACKOFF_MS, listener);
+    }
+
+    public BarcodeEnrichmentQueue(ProductApiService apiService, int concurrency, TokenBucket limiter,
+            int maxAttempts, long initialBackoffMs, Listener listener) {
+        this.apiService = apiService;
+        this.limiter = limiter;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMs = initialBackoffMs;
+        this.listener = listener;
+        this.executor = new ScheduledThreadPoolExecutor(concurrency);
+        this.executor.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Queues the barcodes; blank ones and ones already outstanding are skipped.
+     */
+    public void enqueue(Collection<String> barcodes) {
+        // Mark the whole batch outstanding first, so it drains once
+        List<String> added = new ArrayList<>();
+        for (String barcode : barcodes) {
+            String key = barcode == null ? "" : barcode.trim();
+            if (!key.isEmpty() && outstanding.add(key)) {
+                added.add(key);
+            }
+        }
+        for (String key : added) {
+            executor.execute(() -> lookUpCached(key));
+        }
+    }
+
+    /**
+     * @return barcodes queued or in flight.
+     */
+    public int outstanding() {
+        return outstanding.size();
+    }
+
+    /**
+     * Drops queued lookups and interrupts running ones; listeners get no further calls.
+     */
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private void lookUpCached(String barcode) {
+        try {
+            Response<ProductResponse> cached = apiService.getCachedProductByBarcode(barcode).execute();
+            if (cached.code() != HTTP_GATEWAY_TIMEOUT && deliver(barcode, cached)) {
+                return;
+            }
+        } catch (IOException e) {
+            // Unreadable cache entry; ask the network
+        }
+        scheduleLookup(barcode, 1, 0);
+    }
+
+    private void scheduleLookup(String barcode, int attempt, long delayMs) {
+        long delayNanos = TimeUnit.MILLISECONDS.toNanos(delayMs);
+        if (delayNanos == 0) {
+            long waitNanos = limiter.reserve();
+            if (waitNanos == 0) {
+                lookUp(barcode, attempt);
+                return;
+            }
+            executor.schedule(() -> lookUp(barcode, attempt), waitNanos, TimeUnit.NANOSECONDS);
+            return;
+        }
+        // Reserve the token when the backoff is over, not now
+        executor.schedule(() -> scheduleLookup(barcode, attempt, 0), delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void lookUp(String barcode, int attempt) {
+        Response<ProductResponse> response;
+        try {
+            response = apiService.getProductByBarcode(barcode).execute();
+        } catch (IOException e) {
+            retryOrFail(barcode, attempt, -1, e);
+            return;
+        }
+        if (deliver(barcode, response)) {
+            return;
+        }
+        int code = response.code();
+        IOException error = new IOException("Product lookup failed with HTTP " + code);
+        if (code == 429 || code >= 500) {
+            retryOrFail(barcode, attempt, retryAfterMs(response), error);
+        } else {
+            fail(barcode, error);
+        }
+    }
+
+    /**
+     * Reports found and not found answers.
+     *
+     * @return false if the response is an error the caller must handle.
+     */
+    private boolean deliver(String barcode, Response<ProductResponse> response) {
+        ProductResponse body = response.body();
+        if (response.isSuccessful() && body != null && body.getStatus() == 1 && body.getProduct() != null) {
+            listener.onEnriched(barcode, body.getProduct());
+        } else if (response.code() == 404 || (response.isSuccessful() && body != null)) {
+            listener.onNotFound(barcode);
+        } else {
+            return false;
+        }
+        finish(barcode);
+        return true;
+    }
+
+    private void retryOrFail(String barcode, int attempt, long retryAfterMs, Throwable error) {
+        if (attempt >= maxAttempts || executor.isShutdown()) {
+            fail(barcode, error);
+            return;
+        }
+        scheduleLookup(barcode, attempt + 1, retryAfterMs >= 0 ? retryAfterMs : backoffMs(attempt));
+    }
+
+    /**
+     * @return a delay between half and all of {@code initialBackoffMs * 2^(attempt - 1)}, capped.
+     */
+    long backoffMs(int attempt) {
+        long ceiling = Math.min(MAX_BACKOFF_MS, initialBackoffMs << Math.min(attempt - 1, 20));
+        return ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+    }
+
+    private static long retryAfterMs(Response<?> response) {
+        String retryAfter = response.headers().get("Retry-After");
+        if (retryAfter == null)
+            return -1;
+        try {
+            return Math.min(MAX_BACKOFF_MS, TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim())));
+        } catch (NumberFormatException e) {
+            // HTTP-date form; fall back to our own backoff
+            return -1;
+        }
+    }
+
+    private void fail(String barcode, Throwable error) {
+        listener.onFailed(barcode, error);
+        finish(barcode);
+    }
+
+    private void finish(String barcode) {
+        outstanding.remove(barcode);
+        if (outstanding.isEmpty()) {
+            listener.onDrained();
+        }
+    }
+}
@@ -4,9 +4,22 @@ import com.bsoft.inventorymanager.models.ProductResponse;
 
 import retrofit2.Call;
 import retrofit2.http.GET;
+import retrofit2.http.Headers;
 import retrofit2.http.Path;
 
 public interface ProductApiService {
-    @GET("api/v2/product/{barcode}")
+
+    // Only the fields ApiProduct maps, instead of the full product document
+    String PRODUCT_PATH = "api/v2/product/{barcode}?fields=product_name,brands,image_url,categories";
+
+    @GET(PRODUCT_PATH)
     Call<ProductResponse> getProductByBarcode(@Path("barcode") String barcode);
+
+    /**
+     * Same lookup answered from the HTTP cache alone; the response is a 504 when the barcode has no
+     * fresh cached answer. Needs a client with a cache, see {@link RetrofitClient#newHttpClient}.
+     */
+    @Headers("Cache-Control: only-if-cached")
+    @GET(PRODUCT_PATH)
+    Call<ProductResponse> getCachedProductByBarcode(@Path("barcode") String barcode);
 }
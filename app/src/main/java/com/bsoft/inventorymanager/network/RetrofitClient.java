@@ -1,19 +1,77 @@
 package com.bsoft.inventorymanager.network;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Cache;
+import okhttp3.ConnectionPool;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
 import retrofit2.Retrofit;
 import retrofit2.converter.gson.GsonConverterFactory;
 
 public class RetrofitClient {
 
+    public static final String BASE_URL = "https://world.openfoodfacts.org/";
+
+    static final long HTTP_CACHE_BYTES = 20L * 1024 * 1024;
+    // Product data rarely changes; lookups (and "not found" answers) are reused this long
+    static final long PRODUCT_MAX_AGE_SECONDS = TimeUnit.DAYS.toSeconds(7);
+
     private static Retrofit retrofit = null;
 
     public static Retrofit getClient() {
+        return getClient(null);
+    }
+
+    /**
+     * @param cacheDirectory directory of the on-disk HTTP cache, or null for none. Only the first
+     *                       call creates the client, so only its directory is used.
+     */
+    public static synchronized Retrofit getClient(File cacheDirectory) {
         if (retrofit == null) {
-            retrofit = new Retrofit.Builder()
-                    .baseUrl("https://world.openfoodfacts.org/")
-                    .addConverterFactory(GsonConverterFactory.create())
-                    .build();
+            retrofit = create(BASE_URL, newHttpClient(cacheDirectory));
         }
         return retrofit;
     }
+
+    public static Retrofit create(String baseUrl, OkHttpClient client) {
+        return new Retrofit.Builder()
+                .baseUrl(baseUrl)
+                .client(client)
+                .addConverterFactory(GsonConverterFactory.create())
+                .build();
+    }
+
+    /**
+     * Timeouts bound a stalled lookup; the pool keeps a few connections alive between scans and
+     * bulk lookups. Successful and "not found" responses are cached on disk, keyed by URL and so by
+     * barcode, for {@link #PRODUCT_MAX_AGE_SECONDS} whatever the server's cache headers say.
+     */
+    public static OkHttpClient newHttpClient(File cacheDirectory) {
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                .connectTimeout(10, TimeUnit.SECONDS)
+                .readTimeout(15, TimeUnit.SECONDS)
+                .writeTimeout(15, TimeUnit.SECONDS)
+                .callTimeout(30, TimeUnit.SECONDS)
+                .connectionPool(new ConnectionPool(5, 5, TimeUnit.MINUTES))
+                .addNetworkInterceptor(RetrofitClient::cacheLookups);
+        if (cacheDirectory != null) {
+            builder.cache(new Cache(cacheDirectory, HTTP_CACHE_BYTES));
+        }
+        return builder.build();
+    }
+
+    private static Response cacheLookups(Interceptor.Chain chain) throws IOException {
+        Response response = chain.proceed(chain.request());
+        if (!"GET".equals(chain.request().method()) || (response.code() != 200 && response.code() != 404)) {
+            return response;
+        }
+        return response.newBuilder()
+                .removeHeader("Pragma")
+                .header("Cache-Control", "public, max-age=" + PRODUCT_MAX_AGE_SECONDS)
+                .build();
+    }
 }
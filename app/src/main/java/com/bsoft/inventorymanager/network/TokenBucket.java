@@ -0,0 +1,47 @@
+package com.bsoft.inventorymanager.network;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Token bucket rate limiter: up to {@code capacity} requests in a burst, then {@code tokensPerSecond}
+ * on average.
+ * <p>
+ * {@link #reserve()} never blocks. It takes a token, going into debt when the bucket is empty, and
+ * returns how long the caller must wait before using it. Callers therefore queue up in reservation
+ * order and each one wakes exactly once.
+ */
+public class TokenBucket {
+
+    private final double capacity;
+    private final double tokensPerNano;
+    private final LongSupplier clock;
+
+    private double tokens;
+    private long refilledAt;
+
+    public TokenBucket(int capacity, double tokensPerSecond) {
+        this(capacity, tokensPerSecond, System::nanoTime);
+    }
+
+    TokenBucket(int capacity, double tokensPerSecond, LongSupplier clock) {
+        if (capacity < 1 || tokensPerSecond <= 0)
+            throw new IllegalArgumentException("capacity must be >= 1 and rate > 0");
+        this.capacity = capacity;
+        this.tokensPerNano = tokensPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.clock = clock;
+        this.tokens = capacity;
+        this.refilledAt = clock.getAsLong();
+    }
+
+    /**
+     * @return nanoseconds to wait before the reserved token may be used; 0 to go ahead now.
+     */
+    public synchronized long reserve() {
+        long now = clock.getAsLong();
+        tokens = Math.min(capacity, tokens + (now - refilledAt) * tokensPerNano);
+        refilledAt = now;
+        tokens -= 1;
+        return tokens >= 0 ? 0 : (long) Math.ceil(-tokens / tokensPerNano);
+    }
+}
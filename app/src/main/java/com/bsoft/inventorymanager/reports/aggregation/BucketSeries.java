@@ -0,0 +1,82 @@
+package com.bsoft.inventorymanager.reports.aggregation;
+
+/**
+ * Non-empty chart buckets in ascending bucket order, as parallel primitive arrays.
+ */
+public class BucketSeries {
+
+    private final long[] buckets;
+    private final double[] values;
+
+    public BucketSeries(long[] buckets, double[] values) {
+        if (buckets.length != values.length)
+            throw new IllegalArgumentException("buckets and values differ in length");
+        this.buckets = buckets;
+        this.values = values;
+    }
+
+    public int size() {
+        return buckets.length;
+    }
+
+    public long bucket(int i) {
+        return buckets[i];
+    }
+
+    public double value(int i) {
+        return values[i];
+    }
+
+    /**
+     * Reduces the series to at most {@code maxPoints} points with Largest-Triangle-Three-Buckets,
+     * which keeps peaks and troughs visible. Series already within budget are returned unchanged.
+     */
+    public BucketSeries downsample(int maxPoints) {
+        int n = buckets.length;
+        if (maxPoints >= n || maxPoints < 3)
+            return this;
+
+        long[] outBuckets = new long[maxPoints];
+        double[] outValues = new double[maxPoints];
+        outBuckets[0] = buckets[0];
+        outValues[0] = values[0];
+
+        double every = (double) (n - 2) / (maxPoints - 2);
+        int a = 0;
+        for (int i = 0; i < maxPoints - 2; i++) {
+            // Average of the next bucket is the third vertex of the triangle
+            int nextStart = (int) Math.floor((i + 1) * every) + 1;
+            int nextEnd = Math.min((int) Math.floor((i + 2) * every) + 1, n);
+            double avgX = 0;
+            double avgY = 0;
+            for (int j = nextStart; j < nextEnd; j++) {
+                avgX += buckets[j];
+                avgY += values[j];
+            }
+            int nextLength = Math.max(nextEnd - nextStart, 1);
+            avgX /= nextLength;
+            avgY /= nextLength;
+
+            int rangeStart = (int) Math.floor(i * every) + 1;
+            int rangeEnd = (int) Math.floor((i + 1) * every) + 1;
+            double ax = buckets[a];
+            double ay = values[a];
+            double maxArea = -1;
+            int chosen = rangeStart;
+            for (int j = rangeStart; j < rangeEnd; j++) {
+                double area = Math.abs((ax - avgX) * (values[j] - ay) - (ax - buckets[j]) * (avgY - ay));
+                if (area > maxArea) {
+                    maxArea = area;
+                    chosen = j;
+                }
+            }
+            outBuckets[i + 1] = buckets[chosen];
+            outValues[i + 1] = values[chosen];
+            a = chosen;
+        }
+
+        outBuckets[maxPoints - 1] = buckets[n - 1];
+        outValues[maxPoints - 1] = values[n - 1];
+        return new BucketSeries(outBuckets, outValues);
+    }
+}
@@ -0,0 +1,31 @@
+package com.bsoft.inventorymanager.reports.aggregation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs every registered {@link SalesMetric} over a {@link SalesColumns} batch in one pass.
+ */
+public class SalesAggregator {
+
+    private final List<SalesMetric> metrics = new ArrayList<>();
+
+    public <T extends SalesMetric> T register(T metric) {
+        metrics.add(metric);
+        return metric;
+    }
+
+    public void run(SalesColumns columns) {
+        int metricCount = metrics.size();
+        SalesMetric[] active = metrics.toArray(new SalesMetric[0]);
+        for (SalesMetric metric : active) {
+            metric.begin(columns);
+        }
+        int rows = columns.size();
+        for (int row = 0; row < rows; row++) {
+            for (int m = 0; m < metricCount; m++) {
+                active[m].accept(columns, row);
+            }
+        }
+    }
+}
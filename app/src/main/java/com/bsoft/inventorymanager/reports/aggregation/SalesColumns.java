@@ -0,0 +1,195 @@
+package com.bsoft.inventorymanager.reports.aggregation;
+
+import com.bsoft.inventorymanager.models.Sale;
+import com.bsoft.inventorymanager.models.SaleItem;
+
+import java.util.Arrays;
+
+/**
+ * Columnar, primitive-array view of a batch of sales.
+ * <p>
+ * Each sale is deserialized once and flattened into parallel arrays (one row per sale,
+ * one item row per line item); strings are interned through {@link StringDictionary}.
+ * Metrics then read only the columns they need during a single pass.
+ */
+public class SalesColumns {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final StringDictionary customers = new StringDictionary();
+    private final StringDictionary products = new StringDictionary();
+    private final StringDictionary categories = new StringDictionary();
+    private String[] customerNames = new String[INITIAL_CAPACITY];
+    private String[] productNames = new String[INITIAL_CAPACITY];
+
+    // Sale rows
+    private int saleCount;
+    private long[] saleMillis = new long[INITIAL_CAPACITY];
+    private double[] totalAmount = new double[INITIAL_CAPACITY];
+    private double[] totalProfit = new double[INITIAL_CAPACITY];
+    private int[] customer = new int[INITIAL_CAPACITY];
+    // itemStart[row]..itemStart[row + 1] are the item rows of a sale
+    private int[] itemStart = new int[INITIAL_CAPACITY + 1];
+
+    // Item rows
+    private int itemCount;
+    private int[] itemProduct = new int[INITIAL_CAPACITY];
+    private int[] itemCategory = new int[INITIAL_CAPACITY];
+    private int[] itemQuantity = new int[INITIAL_CAPACITY];
+    private double[] itemTotalPrice = new double[INITIAL_CAPACITY];
+    private double[] itemCostPrice = new double[INITIAL_CAPACITY];
+
+    /**
+     * Appends a deserialized sale and its items. Sales without a date are skipped.
+     */
+    public void add(Sale sale) {
+        if (sale == null || sale.getSaleDate() == null)
+            return;
+        Double profit = sale.getTotalProfit();
+        addSale(sale.getSaleDate().toDate().getTime(), sale.getTotalAmount(), profit != null ? profit : 0.0,
+                sale.getCustomerId(), sale.getCustomerName());
+        if (sale.getItems() != null) {
+            for (SaleItem item : sale.getItems()) {
+                addItem(item.getProductId(), item.getProductName(), item.getCategory(), item.getQuantity(),
+                        item.getTotalPrice(), item.getCostPrice());
+            }
+        }
+    }
+
+    /**
+     * Starts a new sale row. Items added afterwards belong to this sale.
+     */
+    public void addSale(long millis, double amount, double profit, String customerId, String customerName) {
+        if (saleCount == saleMillis.length) {
+            int capacity = saleCount * 2;
+            saleMillis = Arrays.copyOf(saleMillis, capacity);
+            totalAmount = Arrays.copyOf(totalAmount, capacity);
+            totalProfit = Arrays.copyOf(totalProfit, capacity);
+            customer = Arrays.copyOf(customer, capacity);
+            itemStart = Arrays.copyOf(itemStart, capacity + 1);
+        }
+        int customerRef = customers.intern(customerId);
+        if (customerRef != StringDictionary.NONE && customerName != null) {
+            customerNames = ensureCapacity(customerNames, customerRef);
+            customerNames[customerRef] = customerName;
+        }
+
+        saleMillis[saleCount] = millis;
+        totalAmount[saleCount] = amount;
+        totalProfit[saleCount] = profit;
+        customer[saleCount] = customerRef;
+        itemStart[saleCount] = itemCount;
+        saleCount++;
+        itemStart[saleCount] = itemCount;
+    }
+
+    /**
+     * Appends a line item to the most recently added sale.
+     */
+    public void addItem(String productId, String productName, String category, int quantity, double totalPrice,
+            double costPrice) {
+        if (saleCount == 0)
+            throw new IllegalStateException("addItem called before addSale");
+        if (itemCount == itemProduct.length) {
+            int capacity = itemCount * 2;
+            itemProduct = Arrays.copyOf(itemProduct, capacity);
+            itemCategory = Arrays.copyOf(itemCategory, capacity);
+            itemQuantity = Arrays.copyOf(itemQuantity, capacity);
+            itemTotalPrice = Arrays.copyOf(itemTotalPrice, capacity);
+            itemCostPrice = Arrays.copyOf(itemCostPrice, capacity);
+        }
+        int product = products.intern(productId);
+        if (product != StringDictionary.NONE && productName != null) {
+            productNames = ensureCapacity(productNames, product);
+            productNames[product] = productName;
+        }
+
+        itemProduct[itemCount] = product;
+        itemCategory[itemCount] = categories.intern(category == null || category.isEmpty() ? "Uncategorized" : category);
+        itemQuantity[itemCount] = quantity;
+        itemTotalPrice[itemCount] = totalPrice;
+        itemCostPrice[itemCount] = costPrice;
+        itemCount++;
+        itemStart[saleCount] = itemCount;
+    }
+
+    private static String[] ensureCapacity(String[] array, int index) {
+        if (index < array.length)
+            return array;
+        return Arrays.copyOf(array, Math.max(array.length * 2, index + 1));
+    }
+
+    public int size() {
+        return saleCount;
+    }
+
+    public long saleMillis(int row) {
+        return saleMillis[row];
+    }
+
+    public double totalAmount(int row) {
+        return totalAmount[row];
+    }
+
+    public double totalProfit(int row) {
+        return totalProfit[row];
+    }
+
+    /** Customer id of the sale, or {@link StringDictionary#NONE}. */
+    public int customer(int row) {
+        return customer[row];
+    }
+
+    public int itemStart(int row) {
+        return itemStart[row];
+    }
+
+    public int itemEnd(int row) {
+        return itemStart[row + 1];
+    }
+
+    /** Product id of the item, or {@link StringDictionary#NONE}. */
+    public int itemProduct(int item) {
+        return itemProduct[item];
+    }
+
+    public int itemCategory(int item) {
+        return itemCategory[item];
+    }
+
+    public int itemQuantity(int item) {
+        return itemQuantity[item];
+    }
+
+    public double itemTotalPrice(int item) {
+        return itemTotalPrice[item];
+    }
+
+    public double itemCostPrice(int item) {
+        return itemCostPrice[item];
+    }
+
+    public int customerCount() {
+        return customers.size();
+    }
+
+    public int productCount() {
+        return products.size();
+    }
+
+    public int categoryCount() {
+        return categories.size();
+    }
+
+    public String customerName(int id) {
+        return id < customerNames.length ? customerNames[id] : null;
+    }
+
+    public String productName(int id) {
+        return id < productNames.length ? productNames[id] : null;
+    }
+
+    public String category(int id) {
+        return categories.get(id);
+    }
+}
@@ -0,0 +1,18 @@
+package com.bsoft.inventorymanager.reports.aggregation;
+
+/**
+ * A metric fed by {@link SalesAggregator} during its single pass over {@link SalesColumns}.
+ */
+public interface SalesMetric {
+
+    /**
+     * Called once before the pass. Dictionary sizes are final at this point, so per-id
+     * accumulators can be allocated here.
+     */
+    void begin(SalesColumns columns);
+
+    /**
+     * Called once per sale row.
+     */
+    void accept(SalesColumns columns, int row);
+}
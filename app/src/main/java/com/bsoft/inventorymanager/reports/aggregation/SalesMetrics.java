@@ -0,0 +1,201 @@
+package com.bsoft.inventorymanager.reports.aggregation;
+
+import java.util.Arrays;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Standard report metrics for {@link SalesAggregator}. Per-id metrics accumulate into arrays
+ * indexed by the ids of {@link SalesColumns}' dictionaries.
+ */
+public final class SalesMetrics {
+
+    private SalesMetrics() {
+    }
+
+    /** Revenue, profit and transaction count. */
+    public static class Totals implements SalesMetric {
+        private double revenue;
+        private double profit;
+        private int transactions;
+
+        @Override
+        public void begin(SalesColumns columns) {
+            revenue = 0;
+            profit = 0;
+            transactions = 0;
+        }
+
+        @Override
+        public void accept(SalesColumns columns, int row) {
+            revenue += columns.totalAmount(row);
+            profit += columns.totalProfit(row);
+            transactions++;
+        }
+
+        public double getRevenue() {
+            return revenue;
+        }
+
+        public double getProfit() {
+            return profit;
+        }
+
+        public int getTransactions() {
+            return transactions;
+        }
+
+        public double getAverageOrderValue() {
+            return transactions > 0 ? revenue / transactions : 0.0;
+        }
+    }
+
+    /**
+     * Revenue and profit bucketed by (saleMillis - startMillis) / divisor, or by a custom bucket
+     * indexer for calendar-aware buckets (e.g. local days across DST changes).
+     */
+    public static class OverTime implements SalesMetric {
+        private final long startMillis;
+        private final long endMillis;
+        private final long divisor;
+        private final LongUnaryOperator bucketIndexer;
+        private TimeBucketHistogram revenue;
+        private TimeBucketHistogram profit;
+
+        public OverTime(long startMillis, long endMillis, long divisor) {
+            this(startMillis, endMillis, divisor, millis -> (millis - startMillis) / divisor);
+        }
+
+        /**
+         * @param divisor nominal bucket width, used to size the histogram
+         * @param bucketIndexer maps sale millis to a bucket index relative to startMillis
+         */
+        public OverTime(long startMillis, long endMillis, long divisor, LongUnaryOperator bucketIndexer) {
+            this.startMillis = startMillis;
+            this.endMillis = endMillis;
+            this.divisor = divisor;
+            this.bucketIndexer = bucketIndexer;
+            begin(null);
+        }
+
+        @Override
+        public void begin(SalesColumns columns) {
+            revenue = new TimeBucketHistogram(startMillis, endMillis, divisor);
+            profit = new TimeBucketHistogram(startMillis, endMillis, divisor);
+        }
+
+        @Override
+        public void accept(SalesColumns columns, int row) {
+            long bucket = bucketIndexer.applyAsLong(columns.saleMillis(row));
+            revenue.addToBucket(bucket, columns.totalAmount(row));
+            profit.addToBucket(bucket, columns.totalProfit(row));
+        }
+
+        public TimeBucketHistogram getRevenue() {
+            return revenue;
+        }
+
+        public TimeBucketHistogram getProfit() {
+            return profit;
+        }
+    }
+
+    /** Units sold and line profit (revenue - cost * quantity) per product. */
+    public static class Products implements SalesMetric {
+        private int[] quantities = new int[0];
+        private double[] profits = new double[0];
+
+        @Override
+        public void begin(SalesColumns columns) {
+            quantities = new int[columns.productCount()];
+            profits = new double[columns.productCount()];
+        }
+
+        @Override
+        public void accept(SalesColumns columns, int row) {
+            for (int item = columns.itemStart(row), end = columns.itemEnd(row); item < end; item++) {
+                int product = columns.itemProduct(item);
+                if (product == StringDictionary.NONE)
+                    continue;
+                int quantity = columns.itemQuantity(item);
+                quantities[product] += quantity;
+                profits[product] += columns.itemTotalPrice(item) - columns.itemCostPrice(item) * quantity;
+            }
+        }
+
+        public int[] getQuantities() {
+            return quantities;
+        }
+
+        public double[] getProfits() {
+            return profits;
+        }
+    }
+
+    /** Spend per customer. */
+    public static class CustomerSpend implements SalesMetric {
+        private double[] spend = new double[0];
+
+        @Override
+        public void begin(SalesColumns columns) {
+            spend = new double[columns.customerCount()];
+        }
+
+        @Override
+        public void accept(SalesColumns columns, int row) {
+            int customer = columns.customer(row);
+            if (customer != StringDictionary.NONE) {
+                spend[customer] += columns.totalAmount(row);
+            }
+        }
+
+        public double[] getSpend() {
+            return spend;
+        }
+    }
+
+    /** Line revenue per category. */
+    public static class CategoryRevenue implements SalesMetric {
+        private double[] revenue = new double[0];
+
+        @Override
+        public void begin(SalesColumns columns) {
+            revenue = new double[columns.categoryCount()];
+        }
+
+        @Override
+        public void accept(SalesColumns columns, int row) {
+            for (int item = columns.itemStart(row), end = columns.itemEnd(row); item < end; item++) {
+                revenue[columns.itemCategory(item)] += columns.itemTotalPrice(item);
+            }
+        }
+
+        public double[] getRevenue() {
+            return revenue;
+        }
+    }
+
+    /**
+     * @return ids of the {@code limit} largest values, largest first.
+     */
+    public static int[] topIds(double[] values, int limit) {
+        Integer[] ids = new Integer[values.length];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = i;
+        }
+        Arrays.sort(ids, (a, b) -> Double.compare(values[b], values[a]));
+        int count = Math.min(limit, ids.length);
+        int[] top = new int[count];
+        for (int i = 0; i < count; i++) {
+            top[i] = ids[i];
+        }
+        return top;
+    }
+
+    public static int[] topIds(int[] values, int limit) {
+        double[] asDouble = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            asDouble[i] = values[i];
+        }
+        return topIds(asDouble, limit);
+    }
+}
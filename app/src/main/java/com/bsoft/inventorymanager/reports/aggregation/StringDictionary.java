@@ -0,0 +1,41 @@
+package com.bsoft.inventorymanager.reports.aggregation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interns repeated strings (product ids, customer ids, categories) to dense int ids so
+ * metrics can accumulate into primitive arrays instead of boxed maps.
+ */
+public class StringDictionary {
+
+    public static final int NONE = -1;
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> values = new ArrayList<>();
+
+    /**
+     * @return the id of the value, assigning the next free id on first sight; NONE for null.
+     */
+    public int intern(String value) {
+        if (value == null)
+            return NONE;
+        Integer id = ids.get(value);
+        if (id == null) {
+            id = values.size();
+            ids.put(value, id);
+            values.add(value);
+        }
+        return id;
+    }
+
+    public String get(int id) {
+        return id == NONE ? null : values.get(id);
+    }
+
+    public int size() {
+        return values.size();
+    }
+}
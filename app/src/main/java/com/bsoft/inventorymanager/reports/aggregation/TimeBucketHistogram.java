@@ -0,0 +1,155 @@
+package com.bsoft.inventorymanager.reports.aggregation;
+
+import java.util.Arrays;
+
+/**
+ * Sums values into time buckets keyed by {@code (millis - startMillis) / divisor} without boxing.
+ * <p>
+ * Ranges up to {@link #MAX_DENSE_BUCKETS} buckets use a dense {@code double[]} plus an occupancy
+ * bitmap (a MINUTE-granularity month is ~46k buckets, ~400 KB). Wider ranges fall back to a sparse
+ * open-addressing map whose size follows the number of non-empty buckets, so memory stays bounded.
+ */
+public class TimeBucketHistogram {
+
+    public static final int MAX_DENSE_BUCKETS = 1 << 16;
+
+    private final long startMillis;
+    private final long divisor;
+
+    // Dense mode
+    private final double[] dense;
+    private final long[] occupied;
+
+    // Sparse mode (open addressing, linear probing)
+    private long[] sparseKeys;
+    private double[] sparseValues;
+    private boolean[] sparseUsed;
+
+    private int nonEmpty;
+
+    public TimeBucketHistogram(long startMillis, long endMillis, long divisor) {
+        if (divisor <= 0)
+            throw new IllegalArgumentException("divisor must be positive");
+        this.startMillis = startMillis;
+        this.divisor = divisor;
+        long bucketCount = endMillis >= startMillis ? (endMillis - startMillis) / divisor + 1 : 0;
+        if (bucketCount > 0 && bucketCount <= MAX_DENSE_BUCKETS) {
+            dense = new double[(int) bucketCount];
+            occupied = new long[((int) bucketCount + 63) >>> 6];
+        } else {
+            dense = null;
+            occupied = null;
+            sparseKeys = new long[16];
+            sparseValues = new double[16];
+            sparseUsed = new boolean[16];
+        }
+    }
+
+    public boolean isDense() {
+        return dense != null;
+    }
+
+    /** Number of buckets that received at least one value. */
+    public int size() {
+        return nonEmpty;
+    }
+
+    public void add(long millis, double value) {
+        addToBucket((millis - startMillis) / divisor, value);
+    }
+
+    public void addToBucket(long bucket, double value) {
+        if (dense != null && bucket >= 0 && bucket < dense.length) {
+            int i = (int) bucket;
+            long bit = 1L << (i & 63);
+            if ((occupied[i >>> 6] & bit) == 0) {
+                occupied[i >>> 6] |= bit;
+                nonEmpty++;
+            }
+            dense[i] += value;
+            return;
+        }
+        if (dense != null) {
+            return; // Outside the requested range
+        }
+        sparseAdd(bucket, value);
+    }
+
+    /**
+     * @return the non-empty buckets in ascending order.
+     */
+    public BucketSeries toSeries() {
+        long[] buckets = new long[nonEmpty];
+        double[] values = new double[nonEmpty];
+        if (dense != null) {
+            int out = 0;
+            for (int word = 0; word < occupied.length; word++) {
+                long bits = occupied[word];
+                while (bits != 0) {
+                    int i = (word << 6) + Long.numberOfTrailingZeros(bits);
+                    buckets[out] = i;
+                    values[out] = dense[i];
+                    out++;
+                    bits &= bits - 1;
+                }
+            }
+            return new BucketSeries(buckets, values);
+        }
+
+        int out = 0;
+        for (int slot = 0; slot < sparseKeys.length; slot++) {
+            if (sparseUsed[slot]) {
+                buckets[out++] = sparseKeys[slot];
+            }
+        }
+        Arrays.sort(buckets);
+        for (int i = 0; i < buckets.length; i++) {
+            values[i] = sparseValues[findSlot(buckets[i])];
+        }
+        return new BucketSeries(buckets, values);
+    }
+
+    private void sparseAdd(long key, double value) {
+        if ((nonEmpty + 1) * 4 > sparseKeys.length * 3) {
+            rehash(sparseKeys.length * 2);
+        }
+        int slot = findSlot(key);
+        if (!sparseUsed[slot]) {
+            sparseUsed[slot] = true;
+            sparseKeys[slot] = key;
+            nonEmpty++;
+        }
+        sparseValues[slot] += value;
+    }
+
+    private int findSlot(long key) {
+        int mask = sparseKeys.length - 1;
+        int slot = (int) (mix(key) & mask);
+        while (sparseUsed[slot] && sparseKeys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash(int capacity) {
+        long[] oldKeys = sparseKeys;
+        double[] oldValues = sparseValues;
+        boolean[] oldUsed = sparseUsed;
+        sparseKeys = new long[capacity];
+        sparseValues = new double[capacity];
+        sparseUsed = new boolean[capacity];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                int slot = findSlot(oldKeys[i]);
+                sparseUsed[slot] = true;
+                sparseKeys[slot] = oldKeys[i];
+                sparseValues[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private static long mix(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return key ^ (key >>> 32);
+    }
+}
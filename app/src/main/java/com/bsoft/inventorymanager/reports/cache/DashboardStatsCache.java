@@ -0,0 +1,194 @@
+package com.bsoft.inventorymanager.reports.cache;
+
+import android.util.Log;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Disk cache of getDashboardStats responses keyed by range and time zone, for stale-while-revalidate.
+ * <p>
+ * Entries computed under an older rollup version (i.e. before a rollup rebuild) are dropped. The rest
+ * are always renderable; they are fresh, i.e. not worth a network round trip, for a short time while
+ * the range is still open and for longer once it lies entirely in the past.
+ * <p>
+ * Blocking I/O; call off the main thread.
+ */
+public class DashboardStatsCache {
+
+    private static final String TAG = "DashboardStatsCache";
+
+    static final long OPEN_RANGE_MAX_AGE_MS = TimeUnit.MINUTES.toMillis(1);
+    static final long CLOSED_RANGE_MAX_AGE_MS = TimeUnit.HOURS.toMillis(1);
+    // Older entries are not even shown while revalidating
+    static final long MAX_STALE_MS = TimeUnit.DAYS.toMillis(7);
+    static final int MAX_ENTRIES = 32;
+
+    private static final String VERSION_FILE = "rollup_version";
+    private static final Type MAP_TYPE = new TypeToken<Map<String, Object>>() {
+    }.getType();
+
+    private final File directory;
+    private final Gson gson = new Gson();
+    private long latestRollupVersion = -1;
+
+    public DashboardStatsCache(File directory) {
+        this.directory = directory;
+    }
+
+    public static class Entry {
+        private long savedAt;
+        private long rangeEnd;
+        private long rollupVersion;
+        private Map<String, Object> response;
+        private transient String responseJson;
+
+        public long getSavedAt() {
+            return savedAt;
+        }
+
+        public long getRollupVersion() {
+            return rollupVersion;
+        }
+
+        public Map<String, Object> getResponse() {
+            return response;
+        }
+
+        /**
+         * @return the response in canonical JSON form, for cheap "did anything change" checks.
+         */
+        public String getResponseJson() {
+            return responseJson;
+        }
+
+        public boolean isFresh(long now) {
+            long maxAge = rangeEnd < savedAt ? CLOSED_RANGE_MAX_AGE_MS : OPEN_RANGE_MAX_AGE_MS;
+            return now - savedAt < maxAge;
+        }
+    }
+
+    public synchronized Entry get(long startMillis, long endMillis, String timeZone, long now) {
+        File file = fileFor(startMillis, endMillis, timeZone);
+        if (!file.exists())
+            return null;
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            Entry entry = gson.fromJson(reader, Entry.class);
+            if (entry == null || entry.response == null)
+                return null;
+            // Version 0 means the response was scanned, not read from rollups
+            if (entry.rollupVersion != 0 && entry.rollupVersion < latestRollupVersion()) {
+                file.delete();
+                return null;
+            }
+            if (now - entry.savedAt > MAX_STALE_MS)
+                return null;
+            entry.responseJson = gson.toJson(entry.response);
+            return entry;
+        } catch (Exception e) {
+            Log.w(TAG, "Dropping unreadable cache entry " + file.getName(), e);
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Stores a callable response. Numbers are normalized through JSON so a stored entry and a fresh
+     * response with the same content have the same {@link Entry#getResponseJson()}.
+     */
+    public synchronized Entry put(long startMillis, long endMillis, String timeZone, Map<String, Object> response,
+            long now) {
+        Entry entry = new Entry();
+        entry.savedAt = now;
+        entry.rangeEnd = endMillis;
+        Object version = response.get("rollupVersion");
+        entry.rollupVersion = version instanceof Number ? ((Number) version).longValue() : 0;
+        entry.response = gson.fromJson(gson.toJson(response), MAP_TYPE);
+        entry.responseJson = gson.toJson(entry.response);
+
+        if (entry.rollupVersion > latestRollupVersion()) {
+            latestRollupVersion = entry.rollupVersion;
+            writeAtomically(new File(directory, VERSION_FILE), Long.toString(latestRollupVersion));
+        }
+        writeAtomically(fileFor(startMillis, endMillis, timeZone), gson.toJson(entry));
+        prune();
+        return entry;
+    }
+
+    public synchronized void clear() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        latestRollupVersion = -1;
+    }
+
+    private long latestRollupVersion() {
+        if (latestRollupVersion < 0) {
+            latestRollupVersion = 0;
+            File file = new File(directory, VERSION_FILE);
+            if (file.exists()) {
+                try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+                    char[] buffer = new char[32];
+                    int read = reader.read(buffer);
+                    if (read > 0) {
+                        latestRollupVersion = Long.parseLong(new String(buffer, 0, read).trim());
+                    }
+                } catch (IOException | NumberFormatException e) {
+                    Log.w(TAG, "Unreadable rollup version", e);
+                }
+            }
+        }
+        return latestRollupVersion;
+    }
+
+    private File fileFor(long startMillis, long endMillis, String timeZone) {
+        // Zone ids contain '/', keep file names flat
+        return new File(directory, startMillis + "_" + endMillis + "_" + timeZone.replace('/', '~') + ".json");
+    }
+
+    private void writeAtomically(File target, String content) {
+        if (!directory.exists() && !directory.mkdirs()) {
+            Log.w(TAG, "Cannot create " + directory);
+            return;
+        }
+        File temp = new File(directory, target.getName() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8)) {
+            writer.write(content);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write " + target.getName(), e);
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(target)) {
+            temp.delete();
+        }
+    }
+
+    private void prune() {
+        File[] entries = directory.listFiles((dir, name) -> name.endsWith(".json"));
+        if (entries == null || entries.length <= MAX_ENTRIES)
+            return;
+        Arrays.sort(entries, Comparator.comparingLong(File::lastModified));
+        for (int i = 0; i < entries.length - MAX_ENTRIES; i++) {
+            entries[i].delete();
+        }
+    }
+}
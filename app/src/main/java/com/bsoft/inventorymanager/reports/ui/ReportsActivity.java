@@ -43,6 +43,7 @@ public class ReportsActivity extends AppCompatActivity {
         toolbar.setNavigationOnClickListener(v -> onBackPressed());
 
         viewModel = new ViewModelProvider(this).get(ReportsViewModel.class);
+        viewModel.setMaxChartPoints(getResources().getDisplayMetrics().widthPixels);
 
         viewPager = findViewById(R.id.viewPager);
         viewPagerAdapter = new ViewPagerAdapter(this);
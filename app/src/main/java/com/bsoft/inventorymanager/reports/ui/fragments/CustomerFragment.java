@@ -17,6 +17,7 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import com.bsoft.inventorymanager.R;
+import com.bsoft.inventorymanager.reports.BucketSpec;
 import com.bsoft.inventorymanager.reports.ui.LapsedCustomerAdapter;
 import com.bsoft.inventorymanager.reports.viewmodels.ReportsViewModel;
 import com.github.mikephil.charting.charts.HorizontalBarChart;
@@ -139,7 +140,6 @@ public class CustomerFragment extends Fragment {
         XAxis xAxisAcquisition = customerAcquisitionChart.getXAxis();
         xAxisAcquisition.setPosition(XAxis.XAxisPosition.BOTTOM);
         xAxisAcquisition.setGranularity(1f);
-        xAxisAcquisition.setValueFormatter(new DateValueFormatter(new Date(), ReportsViewModel.Granularity.DAY, false));
     }
 
     private void setupRecyclerViews() {
@@ -244,7 +244,9 @@ public class CustomerFragment extends Fragment {
     }
 
     private void loadAllCharts() {
+        // Lifetime reports, independent of the range
         viewModel.loadLapsedCustomers();
+        viewModel.loadTopCustomersBySpend();
 
         Date startDate = viewModel.getCurrentStartDate();
         Date endDate = viewModel.getCurrentEndDate();
@@ -260,8 +262,8 @@ public class CustomerFragment extends Fragment {
         long diff = endDate.getTime() - startDate.getTime();
         boolean showDate = diff > TimeUnit.HOURS.toMillis(26);
 
-        customerAcquisitionChart.getXAxis().setValueFormatter(new DateValueFormatter(startDate, granularity, showDate));
-        viewModel.loadTopCustomersBySpend(startDate, endDate);
+        customerAcquisitionChart.getXAxis().setValueFormatter(new DateValueFormatter(startDate, granularity,
+                viewModel.getCurrentBucketSpec(), showDate));
         viewModel.loadNewVsReturningCustomers(startDate, endDate);
         viewModel.loadCustomerAcquisitionOverTime(startDate, endDate);
     }
@@ -271,11 +273,12 @@ public class CustomerFragment extends Fragment {
     private static class DateValueFormatter extends ValueFormatter {
         private final SimpleDateFormat dateFormat;
         private final long startMillis;
-        private final ReportsViewModel.Granularity granularity;
+        private final BucketSpec bucketSpec;
 
-        DateValueFormatter(Date startDate, ReportsViewModel.Granularity granularity, boolean showDate) {
+        DateValueFormatter(Date startDate, ReportsViewModel.Granularity granularity, BucketSpec bucketSpec,
+                boolean showDate) {
             this.startMillis = startDate.getTime();
-            this.granularity = granularity;
+            this.bucketSpec = bucketSpec;
             if (granularity == ReportsViewModel.Granularity.MINUTE) {
                 if (showDate) {
                     this.dateFormat = new SimpleDateFormat("MMM dd HH:mm", Locale.US);
@@ -283,7 +286,7 @@ public class CustomerFragment extends Fragment {
                     this.dateFormat = new SimpleDateFormat("HH:mm", Locale.US);
                 }
             } else if (granularity == ReportsViewModel.Granularity.HOUR) {
-                this.dateFormat = new SimpleDateFormat("MMM dd HH:mm", Locale.US);
+                this.dateFormat = new SimpleDateFormat(showDate ? "MMM dd HH:mm" : "HH:mm", Locale.US);
             } else {
                 this.dateFormat = new SimpleDateFormat("MMM dd", Locale.US);
             }
@@ -291,16 +294,8 @@ public class CustomerFragment extends Fragment {
 
         @Override
         public String getAxisLabel(float value, com.github.mikephil.charting.components.AxisBase axis) {
-            long multiplier;
-            if (granularity == ReportsViewModel.Granularity.MINUTE) {
-                multiplier = TimeUnit.MINUTES.toMillis(1);
-            } else if (granularity == ReportsViewModel.Granularity.HOUR) {
-                multiplier = TimeUnit.HOURS.toMillis(1);
-            } else {
-                multiplier = TimeUnit.DAYS.toMillis(1);
-            }
-            long millis = startMillis + (long) (value * multiplier);
-            return dateFormat.format(new Date(millis));
+            // Buckets follow local calendar boundaries, so days are not always 24h apart
+            return dateFormat.format(new Date(bucketSpec.bucketStartAt(startMillis, Math.round(value))));
         }
     }
 }
@@ -209,6 +209,8 @@ public class ProductsFragment extends Fragment {
     private void loadProductCharts() {
         viewModel.loadTotalInventoryValue();
         viewModel.loadLowStockProducts();
+        // A trailing window, independent of the range
+        viewModel.loadSlowMovingProducts();
 
         Date startDate = viewModel.getCurrentStartDate();
         Date endDate = viewModel.getCurrentEndDate();
@@ -216,7 +218,6 @@ public class ProductsFragment extends Fragment {
         if (startDate == null || endDate == null)
             return;
 
-        viewModel.loadSlowMovingProducts(startDate, endDate);
         viewModel.loadTopSellingProducts(startDate, endDate);
         viewModel.loadMostProfitableProducts(startDate, endDate);
     }
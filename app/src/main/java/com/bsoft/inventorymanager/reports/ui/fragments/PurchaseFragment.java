@@ -12,6 +12,7 @@ import android.view.ViewGroup;
 import android.widget.ProgressBar;
 import android.widget.TextView;
 import com.bsoft.inventorymanager.R;
+import com.bsoft.inventorymanager.reports.BucketSpec;
 import com.bsoft.inventorymanager.reports.viewmodels.ReportsViewModel;
 import com.github.mikephil.charting.charts.HorizontalBarChart;
 import com.github.mikephil.charting.charts.LineChart;
@@ -101,15 +102,12 @@ public class PurchaseFragment extends Fragment {
         XAxis purchaseOrdersOverTimeXAxis = purchaseOrdersOverTimeChart.getXAxis();
         purchaseOrdersOverTimeXAxis.setPosition(XAxis.XAxisPosition.BOTTOM);
         purchaseOrdersOverTimeXAxis.setGranularity(1f);
-        purchaseOrdersOverTimeXAxis
-                .setValueFormatter(new DateValueFormatter(new Date(), ReportsViewModel.Granularity.DAY, false));
 
         // Volume Chart
         purchaseOrdersOverTimeVolumeChart.getDescription().setEnabled(false);
         XAxis volumeXAxis = purchaseOrdersOverTimeVolumeChart.getXAxis();
         volumeXAxis.setPosition(XAxis.XAxisPosition.BOTTOM);
         volumeXAxis.setGranularity(1f);
-        volumeXAxis.setValueFormatter(new DateValueFormatter(new Date(), ReportsViewModel.Granularity.DAY, false));
     }
 
     // Listener moved to ReportsActivity
@@ -216,7 +214,8 @@ public class PurchaseFragment extends Fragment {
         long diff = endDate.getTime() - startDate.getTime();
         boolean showDate = diff > TimeUnit.HOURS.toMillis(26);
 
-        DateValueFormatter formatter = new DateValueFormatter(startDate, granularity, showDate);
+        DateValueFormatter formatter = new DateValueFormatter(startDate, granularity,
+                viewModel.getCurrentBucketSpec(), showDate);
         purchaseOrdersOverTimeChart.getXAxis().setValueFormatter(formatter);
         purchaseOrdersOverTimeVolumeChart.getXAxis().setValueFormatter(formatter);
         viewModel.loadTopPurchasedProducts(startDate, endDate);
@@ -230,11 +229,12 @@ public class PurchaseFragment extends Fragment {
     private static class DateValueFormatter extends ValueFormatter {
         private final SimpleDateFormat dateFormat;
         private final long startMillis;
-        private final ReportsViewModel.Granularity granularity;
+        private final BucketSpec bucketSpec;
 
-        DateValueFormatter(Date startDate, ReportsViewModel.Granularity granularity, boolean showDate) {
+        DateValueFormatter(Date startDate, ReportsViewModel.Granularity granularity, BucketSpec bucketSpec,
+                boolean showDate) {
             this.startMillis = startDate.getTime();
-            this.granularity = granularity;
+            this.bucketSpec = bucketSpec;
             if (granularity == ReportsViewModel.Granularity.MINUTE) {
                 if (showDate) {
                     this.dateFormat = new SimpleDateFormat("MMM dd HH:mm", Locale.US);
@@ -242,7 +242,7 @@ public class PurchaseFragment extends Fragment {
                     this.dateFormat = new SimpleDateFormat("HH:mm", Locale.US);
                 }
             } else if (granularity == ReportsViewModel.Granularity.HOUR) {
-                this.dateFormat = new SimpleDateFormat("MMM dd HH:mm", Locale.US);
+                this.dateFormat = new SimpleDateFormat(showDate ? "MMM dd HH:mm" : "HH:mm", Locale.US);
             } else {
                 this.dateFormat = new SimpleDateFormat("MMM dd", Locale.US);
             }
@@ -250,16 +250,8 @@ public class PurchaseFragment extends Fragment {
 
         @Override
         public String getAxisLabel(float value, com.github.mikephil.charting.components.AxisBase axis) {
-            long multiplier;
-            if (granularity == ReportsViewModel.Granularity.MINUTE) {
-                multiplier = TimeUnit.MINUTES.toMillis(1);
-            } else if (granularity == ReportsViewModel.Granularity.HOUR) {
-                multiplier = TimeUnit.HOURS.toMillis(1);
-            } else {
-                multiplier = TimeUnit.DAYS.toMillis(1);
-            }
-            long millis = startMillis + (long) (value * multiplier);
-            return dateFormat.format(new Date(millis));
+            // Buckets follow local calendar boundaries, so days are not always 24h apart
+            return dateFormat.format(new Date(bucketSpec.bucketStartAt(startMillis, Math.round(value))));
         }
     }
 }
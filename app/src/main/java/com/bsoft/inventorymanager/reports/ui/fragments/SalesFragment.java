@@ -13,6 +13,7 @@ import android.view.ViewGroup;
 import android.widget.ProgressBar;
 import android.widget.TextView;
 import com.bsoft.inventorymanager.R;
+import com.bsoft.inventorymanager.reports.BucketSpec;
 import com.bsoft.inventorymanager.reports.viewmodels.ReportsViewModel;
 import com.github.mikephil.charting.charts.LineChart;
 import com.github.mikephil.charting.charts.PieChart;
@@ -101,7 +102,6 @@ public class SalesFragment extends Fragment {
         XAxis salesXAxis = salesOverTimeChart.getXAxis();
         salesXAxis.setPosition(XAxis.XAxisPosition.BOTTOM);
         salesXAxis.setGranularity(1f);
-        salesXAxis.setValueFormatter(new DateValueFormatter(new Date(), ReportsViewModel.Granularity.DAY, false));
         salesOverTimeChart.getAxisLeft().setDrawGridLines(true);
 
         // Profit Over Time Chart
@@ -109,7 +109,6 @@ public class SalesFragment extends Fragment {
         XAxis profitXAxis = profitOverTimeChart.getXAxis();
         profitXAxis.setPosition(XAxis.XAxisPosition.BOTTOM);
         profitXAxis.setDrawGridLines(false);
-        profitXAxis.setValueFormatter(new DateValueFormatter(new Date(), ReportsViewModel.Granularity.DAY, false));
 
         // Pie Chart
         salesByCategoryChart.setUsePercentValues(true);
@@ -250,7 +249,8 @@ public class SalesFragment extends Fragment {
         long diff = endDate.getTime() - startDate.getTime();
         boolean showDate = diff > TimeUnit.HOURS.toMillis(26);
 
-        DateValueFormatter formatter = new DateValueFormatter(startDate, granularity, showDate);
+        DateValueFormatter formatter = new DateValueFormatter(startDate, granularity,
+                viewModel.getCurrentBucketSpec(), showDate);
         salesOverTimeChart.getXAxis().setValueFormatter(formatter);
         profitOverTimeChart.getXAxis().setValueFormatter(formatter);
         viewModel.loadTotalRevenue(startDate, endDate);
@@ -268,11 +268,12 @@ public class SalesFragment extends Fragment {
     private static class DateValueFormatter extends ValueFormatter {
         private final SimpleDateFormat dateFormat;
         private final long startMillis;
-        private final ReportsViewModel.Granularity granularity;
+        private final BucketSpec bucketSpec;
 
-        DateValueFormatter(Date startDate, ReportsViewModel.Granularity granularity, boolean showDate) {
+        DateValueFormatter(Date startDate, ReportsViewModel.Granularity granularity, BucketSpec bucketSpec,
+                boolean showDate) {
             this.startMillis = startDate.getTime();
-            this.granularity = granularity;
+            this.bucketSpec = bucketSpec;
             if (granularity == ReportsViewModel.Granularity.MINUTE) {
                 if (showDate) {
                     this.dateFormat = new SimpleDateFormat("MMM dd HH:mm", Locale.US);
@@ -280,7 +281,7 @@ public class SalesFragment extends Fragment {
                     this.dateFormat = new SimpleDateFormat("HH:mm", Locale.US);
                 }
             } else if (granularity == ReportsViewModel.Granularity.HOUR) {
-                this.dateFormat = new SimpleDateFormat("MMM dd HH:mm", Locale.US);
+                this.dateFormat = new SimpleDateFormat(showDate ? "MMM dd HH:mm" : "HH:mm", Locale.US);
             } else {
                 this.dateFormat = new SimpleDateFormat("MMM dd", Locale.US);
             }
@@ -288,16 +289,8 @@ public class SalesFragment extends Fragment {
 
         @Override
         public String getAxisLabel(float value, com.github.mikephil.charting.components.AxisBase axis) {
-            long multiplier;
-            if (granularity == ReportsViewModel.Granularity.MINUTE) {
-                multiplier = TimeUnit.MINUTES.toMillis(1);
-            } else if (granularity == ReportsViewModel.Granularity.HOUR) {
-                multiplier = TimeUnit.HOURS.toMillis(1);
-            } else {
-                multiplier = TimeUnit.DAYS.toMillis(1);
-            }
-            long millis = startMillis + (long) (value * multiplier);
-            return dateFormat.format(new Date(millis));
+            // Buckets follow local calendar boundaries, so days are not always 24h apart
+            return dateFormat.format(new Date(bucketSpec.bucketStartAt(startMillis, Math.round(value))));
         }
     }
 }
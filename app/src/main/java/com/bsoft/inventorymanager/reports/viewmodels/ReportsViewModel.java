@@ -4,16 +4,26 @@ import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 import androidx.lifecycle.ViewModel;
 import android.util.Log;
+import com.bsoft.inventorymanager.cache.MasterDataSync;
 import com.bsoft.inventorymanager.models.Customer;
 import com.bsoft.inventorymanager.models.Product;
-import com.bsoft.inventorymanager.models.Purchase;
-import com.bsoft.inventorymanager.models.PurchaseItem;
 import com.bsoft.inventorymanager.models.Sale;
-import com.bsoft.inventorymanager.models.SaleItem;
 import com.bsoft.inventorymanager.models.Expense;
 import com.github.mikephil.charting.data.BarEntry;
 import com.github.mikephil.charting.data.Entry;
 import com.github.mikephil.charting.data.PieEntry;
+import com.bsoft.inventorymanager.reports.aggregation.BucketSeries;
+import com.bsoft.inventorymanager.reports.aggregation.SalesAggregator;
+import com.bsoft.inventorymanager.reports.aggregation.SalesColumns;
+import com.bsoft.inventorymanager.reports.aggregation.SalesMetrics;
+import com.bsoft.inventorymanager.reports.aggregation.TimeBucketHistogram;
+import com.bsoft.inventorymanager.reports.BucketCache;
+import com.bsoft.inventorymanager.reports.BucketGranularity;
+import com.bsoft.inventorymanager.reports.BucketSpec;
+import com.bsoft.inventorymanager.reports.DashboardBucket;
+import com.bsoft.inventorymanager.reports.cache.DashboardStatsCache;
+import com.bsoft.inventorymanager.sync.StockShards;
+import com.bsoft.inventorymanager.utils.ModelMappers;
 import com.google.android.gms.tasks.Task;
 import com.google.android.gms.tasks.Tasks;
 import com.google.firebase.Timestamp;
@@ -21,19 +31,25 @@ import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.Query;
 import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.Source;
 import com.google.firebase.functions.FirebaseFunctions;
-import com.google.firebase.functions.HttpsCallableResult;
 
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
@@ -51,11 +67,43 @@ public class ReportsViewModel extends ViewModel {
 
     private final FirebaseFirestore db;
     private final FirebaseFunctions functions;
+    private final DashboardStatsCache statsCache;
+    private final MasterDataSync masterDataSync;
+
+    // Deserialization, aggregation and chart bucketing stay off the main thread
+    private final ExecutorService aggregationExecutor = Executors.newSingleThreadExecutor();
+    // Product cache and stock shard reads, kept off the aggregation thread
+    private final ExecutorService cacheExecutor = Executors.newSingleThreadExecutor();
+
+    private static final int DEFAULT_MAX_CHART_POINTS = 500;
+    // Line charts are downsampled to roughly one point per horizontal pixel
+    private volatile int maxChartPoints = DEFAULT_MAX_CHART_POINTS;
+
+    // A customer with no purchase in this many days is lapsed
+    private static final int LAPSED_AFTER_DAYS = 90;
+    private static final int TOP_CUSTOMERS = 10;
+    // One of the unitsSold{N}d windows of functions/productVelocity.js
+    private static final int SLOW_MOVING_DAYS = 30;
+    // Stock at or below this is low
+    private static final int LOW_STOCK_LEVEL = 10;
+
+    // Dashboard buckets by BucketSpec cache key; only touched on aggregationExecutor
+    private final BucketCache bucketCache = new BucketCache();
 
     @Inject
-    public ReportsViewModel(FirebaseFirestore db, FirebaseFunctions functions) {
+    public ReportsViewModel(FirebaseFirestore db, FirebaseFunctions functions, DashboardStatsCache statsCache,
+            MasterDataSync masterDataSync) {
         this.db = db;
         this.functions = functions;
+        this.statsCache = statsCache;
+        this.masterDataSync = masterDataSync;
+    }
+
+    @Override
+    protected void onCleared() {
+        super.onCleared();
+        aggregationExecutor.shutdown();
+        cacheExecutor.shutdown();
     }
 
     // --- LiveData Objects ---
@@ -120,23 +168,43 @@ public class ReportsViewModel extends ViewModel {
         return currentGranularity;
     }
 
+    private volatile BucketSpec currentBucketSpec;
+
+    /**
+     * Bucketing of the current range, identical to the one getDashboardStats applies server-side.
+     */
+    public BucketSpec getCurrentBucketSpec() {
+        return currentBucketSpec;
+    }
+
     private void updateGranularity(Date start, Date end) {
-        long diff = end.getTime() - start.getTime();
+        currentBucketSpec = bucketSpecFor(start, end);
         // Use setValue for synchronous update since this is called from UI thread
-        if (diff > TimeUnit.DAYS.toMillis(32)) {
-            // For > 1 month (e.g. Year), show Daily stats
-            currentGranularity.setValue(Granularity.DAY);
-        } else {
-            // For Month (up to 32 days), Week, or Today, show Minute precision
-            currentGranularity.setValue(Granularity.MINUTE);
+        currentGranularity.setValue(currentBucketSpec.getGranularity() == BucketGranularity.HOUR
+                ? Granularity.HOUR
+                : Granularity.DAY);
+    }
+
+    private static BucketSpec bucketSpecFor(Date start, Date end) {
+        return BucketSpec.forRange(start.getTime(), end.getTime(), deviceTimeZone());
+    }
+
+    private static String deviceTimeZone() {
+        try {
+            return ZoneId.systemDefault().getId();
+        } catch (Exception e) {
+            return "UTC";
         }
     }
 
     private Date currentStartDate;
     private Date currentEndDate;
+    // Range of the last getReportAnalytics round trip; tabs sharing a range reuse it
+    private String analyticsRangeKey;
     private final MutableLiveData<Boolean> refreshTrigger = new MutableLiveData<>();
 
     public void triggerRefresh() {
+        analyticsRangeKey = null;
         refreshTrigger.setValue(true);
     }
 
@@ -151,6 +219,12 @@ public class ReportsViewModel extends ViewModel {
         fetchDashboardStats(startDate, endDate);
     }
 
+    public void setMaxChartPoints(int maxChartPoints) {
+        if (maxChartPoints > 0) {
+            this.maxChartPoints = maxChartPoints;
+        }
+    }
+
     public Date getCurrentStartDate() {
         return currentStartDate;
     }
@@ -178,87 +252,6 @@ public class ReportsViewModel extends ViewModel {
 
     // ... [Other getters remain unchanged, assumed correctly placed] ...
 
-    // --- Process Methods ---
-    private long getGranularityDivisor() {
-        Granularity g = currentGranularity.getValue();
-        if (g == Granularity.HOUR)
-            return TimeUnit.HOURS.toMillis(1);
-        if (g == Granularity.MINUTE)
-            return TimeUnit.MINUTES.toMillis(1);
-        return TimeUnit.DAYS.toMillis(1);
-    }
-
-    private void processSalesData(QuerySnapshot snapshots, Date startDate) {
-        if (snapshots == null || snapshots.isEmpty()) {
-            salesOverTimeState.postValue(UiState.NO_DATA);
-            salesOverTimeData.postValue(new ArrayList<>());
-            return;
-        }
-        Map<Long, Double> salesByTime = new HashMap<>();
-        long startMillis = startDate.getTime();
-        long divisor = getGranularityDivisor();
-
-        for (DocumentSnapshot document : snapshots.getDocuments()) {
-            try {
-                Sale sale = document.toObject(Sale.class);
-                if (sale != null && sale.getSaleDate() != null) {
-                    long saleMillis = sale.getSaleDate().toDate().getTime();
-                    long timeIndex = (saleMillis - startMillis) / divisor;
-                    salesByTime.put(timeIndex, salesByTime.getOrDefault(timeIndex, 0.0) + sale.getTotalAmount());
-                }
-            } catch (Exception e) {
-                // Skip corrupted documents
-            }
-        }
-        List<Entry> entries = new ArrayList<>();
-        for (Map.Entry<Long, Double> mapEntry : salesByTime.entrySet()) {
-            entries.add(new Entry(mapEntry.getKey().floatValue(), mapEntry.getValue().floatValue()));
-        }
-        // Sort entries by X index
-        Collections.sort(entries, (e1, e2) -> Float.compare(e1.getX(), e2.getX()));
-
-        salesOverTimeData.postValue(entries);
-        salesOverTimeState.postValue(UiState.HAS_DATA);
-    }
-
-    private void processProfitOverTime(QuerySnapshot salesSnapshots, Date startDate) {
-        if (salesSnapshots == null || salesSnapshots.isEmpty()) {
-            profitOverTimeState.postValue(UiState.NO_DATA);
-            profitOverTimeData.postValue(new ArrayList<>());
-            return;
-        }
-
-        Map<Long, Double> profitByTime = new HashMap<>();
-        long startMillis = startDate.getTime();
-        long divisor = getGranularityDivisor();
-
-        for (DocumentSnapshot doc : salesSnapshots.getDocuments()) {
-            try {
-                Sale sale = doc.toObject(Sale.class);
-                if (sale != null && sale.getSaleDate() != null) {
-                    long saleMillis = sale.getSaleDate().toDate().getTime();
-                    long timeIndex = (saleMillis - startMillis) / divisor;
-                    Double currentProfit = profitByTime.getOrDefault(timeIndex, 0.0);
-                    Double saleProfit = sale.getTotalProfit();
-                    if (saleProfit == null)
-                        saleProfit = 0.0;
-                    profitByTime.put(timeIndex, (currentProfit != null ? currentProfit : 0.0) + saleProfit);
-                }
-            } catch (Exception e) {
-                // Skip corrupted documents
-            }
-        }
-
-        List<Entry> entries = new ArrayList<>();
-        for (Map.Entry<Long, Double> mapEntry : profitByTime.entrySet()) {
-            entries.add(new Entry(mapEntry.getKey().floatValue(), mapEntry.getValue().floatValue()));
-        }
-        Collections.sort(entries, (e1, e2) -> Float.compare(e1.getX(), e2.getX()));
-
-        profitOverTimeData.postValue(entries);
-        profitOverTimeState.postValue(UiState.HAS_DATA);
-    }
-
     public LiveData<Double> getAverageOrderValueData() {
         return averageOrderValueData;
     }
@@ -442,48 +435,91 @@ public class ReportsViewModel extends ViewModel {
     // --- Load Methods ---
     // --- Cloud Function Migration ---
 
+    /**
+     * Stale-while-revalidate: the last known response for the range renders at once from
+     * {@link DashboardStatsCache}; the callable only runs when that entry is missing or no longer fresh,
+     * and its result is diffed into the LiveData.
+     */
     public void fetchDashboardStats(Date startDate, Date endDate) {
         if (startDate == null || endDate == null)
             return;
 
-        // Set Loading States
-        totalRevenueState.postValue(UiState.LOADING);
-        totalProfitState.postValue(UiState.LOADING);
-        totalExpensesState.postValue(UiState.LOADING);
-        netProfitState.postValue(UiState.LOADING);
-        totalTransactionsState.postValue(UiState.LOADING);
-        averageOrderValueState.postValue(UiState.LOADING);
-        salesOverTimeState.postValue(UiState.LOADING);
-        profitOverTimeState.postValue(UiState.LOADING);
-        topSellingProductsState.postValue(UiState.LOADING);
-        salesByCategoryState.postValue(UiState.LOADING);
+        BucketSpec spec = bucketSpecFor(startDate, endDate);
+        aggregationExecutor.execute(() -> {
+            long now = System.currentTimeMillis();
+            DashboardStatsCache.Entry cached = statsCache.get(startDate.getTime(), endDate.getTime(),
+                    spec.getTimeZone(), now);
+            if (cached != null) {
+                processDashboardStats(cached.getResponse(), spec, startDate, endDate);
+                if (cached.isFresh(now))
+                    return;
+            } else {
+                setAllStates(UiState.LOADING);
+                // Ranges inside an earlier response (e.g. Week after Month) render from cached buckets
+                // while the call below refreshes them and fills the top lists
+                List<DashboardBucket> buckets = bucketCache.get(spec, startDate.getTime(), endDate.getTime());
+                if (buckets != null) {
+                    postBucketTotals(buckets, spec, startDate, endDate);
+                }
+            }
+            callDashboardStats(spec, startDate, endDate, cached != null ? cached.getResponseJson() : null);
+        });
+    }
 
+    private void callDashboardStats(BucketSpec spec, Date startDate, Date endDate, String renderedJson) {
         Map<String, Object> data = new HashMap<>();
         data.put("startDate", startDate.getTime());
         data.put("endDate", endDate.getTime());
-        try {
-            data.put("timeZone", ZoneId.systemDefault().getId());
-        } catch (Exception e) {
-            data.put("timeZone", "UTC");
-        }
+        data.put("timeZone", spec.getTimeZone());
 
         functions.getHttpsCallable("getDashboardStats")
                 .call(data)
-                .addOnSuccessListener(result -> {
+                .addOnSuccessListener(aggregationExecutor, result -> {
                     try {
                         Map<String, Object> response = (Map<String, Object>) result.getData();
-                        processDashboardStats(response);
+                        if (response == null) {
+                            processDashboardStats(null, spec, startDate, endDate);
+                            return;
+                        }
+                        DashboardStatsCache.Entry entry = statsCache.put(startDate.getTime(), endDate.getTime(),
+                                spec.getTimeZone(), response, System.currentTimeMillis());
+                        if (entry.getResponseJson().equals(renderedJson))
+                            return; // Cached render is still accurate
+                        processDashboardStats(entry.getResponse(), spec, startDate, endDate);
                     } catch (Exception e) {
                         e.printStackTrace();
                         setAllStates(UiState.NO_DATA);
                     }
                 })
                 .addOnFailureListener(e -> {
-                    e.printStackTrace();
-                    setAllStates(UiState.NO_DATA);
+                    if (renderedJson != null) {
+                        Log.w("ReportsViewModel", "getDashboardStats revalidation failed, keeping cached stats", e);
+                        return;
+                    }
+                    Log.w("ReportsViewModel", "getDashboardStats failed, aggregating cached sales", e);
+                    loadDashboardStatsFromCache(startDate, endDate);
                 });
     }
 
+    /**
+     * Offline fallback: aggregates whatever sales/expenses Firestore already holds in its local cache.
+     */
+    private void loadDashboardStatsFromCache(Date startDate, Date endDate) {
+        Task<QuerySnapshot> salesTask = db.collection("sales")
+                .whereGreaterThanOrEqualTo("saleDate", new Timestamp(startDate))
+                .whereLessThanOrEqualTo("saleDate", new Timestamp(endDate))
+                .get(Source.CACHE);
+        Task<QuerySnapshot> expensesTask = db.collection("expenses")
+                .whereGreaterThanOrEqualTo("date", new Timestamp(startDate))
+                .whereLessThanOrEqualTo("date", new Timestamp(endDate))
+                .get(Source.CACHE);
+
+        Tasks.whenAllSuccess(salesTask, expensesTask)
+                .addOnSuccessListener(aggregationExecutor, results -> processSalesSnapshot(
+                        (QuerySnapshot) results.get(0), (QuerySnapshot) results.get(1), startDate, endDate))
+                .addOnFailureListener(e -> setAllStates(UiState.NO_DATA));
+    }
+
     private void setAllStates(UiState state) {
         totalRevenueState.postValue(state);
         totalProfitState.postValue(state);
@@ -497,41 +533,44 @@ public class ReportsViewModel extends ViewModel {
         salesByCategoryState.postValue(state);
     }
 
-    private void processDashboardStats(Map<String, Object> data) {
+    private void processDashboardStats(Map<String, Object> data, BucketSpec spec, Date startDate, Date endDate) {
         if (data == null) {
             setAllStates(UiState.NO_DATA);
             return;
         }
 
-        // 1. Scalars
+        // 1. Scalars. Values are only posted when changed so revalidation does not redraw untouched cards;
+        // states are always posted since a LOADING post may still be pending
         Number revenue = (Number) data.getOrDefault("totalRevenue", 0.0);
-        totalRevenueData.postValue(revenue.doubleValue());
+        postIfChanged(totalRevenueData, revenue.doubleValue());
         totalRevenueState.postValue(UiState.HAS_DATA);
 
         Number profit = (Number) data.getOrDefault("totalProfit", 0.0);
-        totalProfitData.postValue(profit.doubleValue());
+        postIfChanged(totalProfitData, profit.doubleValue());
         totalProfitState.postValue(UiState.HAS_DATA);
 
         Number expenses = (Number) data.getOrDefault("totalExpenses", 0.0);
-        totalExpensesData.postValue(expenses.doubleValue());
+        postIfChanged(totalExpensesData, expenses.doubleValue());
         totalExpensesState.postValue(UiState.HAS_DATA);
 
         Number net = (Number) data.getOrDefault("netProfit", 0.0);
-        netProfitData.postValue(net.doubleValue());
+        postIfChanged(netProfitData, net.doubleValue());
         netProfitState.postValue(UiState.HAS_DATA);
 
         Number tx = (Number) data.getOrDefault("totalTransactions", 0);
-        totalTransactionsData.postValue(tx.intValue());
+        postIfChanged(totalTransactionsData, tx.intValue());
         totalTransactionsState.postValue(UiState.HAS_DATA);
 
         Number aov = (Number) data.getOrDefault("averageOrderValue", 0.0);
-        averageOrderValueData.postValue(aov.doubleValue());
+        postIfChanged(averageOrderValueData, aov.doubleValue());
         averageOrderValueState.postValue(UiState.HAS_DATA);
 
-        // 2. Charts
-        processChartData((List<Map<String, Object>>) data.get("salesOverTime"), salesOverTimeData, salesOverTimeState);
-        processChartData((List<Map<String, Object>>) data.get("profitOverTime"), profitOverTimeData,
-                profitOverTimeState);
+        // 2. Charts (absolute bucket starts, indexed from the range start like the analytics charts)
+        processRelativeChartData((List<Map<String, Object>>) data.get("salesOverTime"),
+                spec, startDate, endDate, salesOverTimeData, salesOverTimeState);
+        processRelativeChartData((List<Map<String, Object>>) data.get("profitOverTime"),
+                spec, startDate, endDate, profitOverTimeData, profitOverTimeState);
+        cacheBuckets(data, spec, startDate, endDate);
 
         // 3. Top Lists
         List<Map<String, Object>> topProducts = (List<Map<String, Object>>) data.get("topSellingProducts");
@@ -548,8 +587,8 @@ public class ReportsViewModel extends ViewModel {
             }
             Collections.reverse(productLabels); // Match UI expectation
         }
-        topSellingProductsData.postValue(productEntries);
-        topSellingProductsLabels.postValue(productLabels);
+        postEntriesIfChanged(topSellingProductsData, productEntries);
+        postIfChanged(topSellingProductsLabels, productLabels);
         topSellingProductsState.postValue(!productEntries.isEmpty() ? UiState.HAS_DATA : UiState.NO_DATA);
 
         // 4. Categories
@@ -562,25 +601,10 @@ public class ReportsViewModel extends ViewModel {
                 catEntries.add(new PieEntry(val.floatValue(), label));
             }
         }
-        salesByCategoryData.postValue(catEntries);
+        postEntriesIfChanged(salesByCategoryData, catEntries);
         salesByCategoryState.postValue(!catEntries.isEmpty() ? UiState.HAS_DATA : UiState.NO_DATA);
     }
 
-    private void processChartData(List<Map<String, Object>> list, MutableLiveData<List<Entry>> liveData,
-            MutableLiveData<UiState> stateData) {
-        List<Entry> entries = new ArrayList<>();
-        if (list != null) {
-            for (Map<String, Object> point : list) {
-                Number x = (Number) point.get("x");
-                Number y = (Number) point.get("y");
-                entries.add(new Entry(x.floatValue(), y.floatValue()));
-            }
-        }
-        Collections.sort(entries, (e1, e2) -> Float.compare(e1.getX(), e2.getX()));
-        liveData.postValue(entries);
-        stateData.postValue(!entries.isEmpty() ? UiState.HAS_DATA : UiState.NO_DATA);
-    }
-
     // --- Legacy Load Methods (Deprecated - Handled by Cloud Function) ---
 
     public void loadSalesOverTime(Date startDate, Date endDate) {
@@ -618,7 +642,7 @@ public class ReportsViewModel extends ViewModel {
     public void loadTotalInventoryValue() {
         totalInventoryValueState.postValue(UiState.LOADING);
         db.collection("products").get()
-                .addOnSuccessListener(this::processTotalInventoryValue)
+                .addOnSuccessListener(snapshots -> cacheExecutor.execute(() -> processTotalInventoryValue(snapshots)))
                 .addOnFailureListener(e -> totalInventoryValueState.postValue(UiState.NO_DATA));
     }
 
@@ -627,65 +651,89 @@ public class ReportsViewModel extends ViewModel {
     }
 
     public void loadTopPurchasedProducts(Date startDate, Date endDate) {
-        topPurchasedProductsState.postValue(UiState.LOADING);
-        db.collection("purchases").whereGreaterThanOrEqualTo("purchaseDate", new Timestamp(startDate))
-                .whereLessThanOrEqualTo("purchaseDate", new Timestamp(endDate)).get()
-                .addOnSuccessListener(this::processTopPurchasedProducts)
-                .addOnFailureListener(e -> topPurchasedProductsState.postValue(UiState.NO_DATA));
+        fetchReportAnalytics(startDate, endDate);
     }
 
     public void loadMostProfitableProducts(Date startDate, Date endDate) {
-        mostProfitableProductsState.postValue(UiState.LOADING);
-        db.collection("sales").whereGreaterThanOrEqualTo("saleDate", new Timestamp(startDate))
-                .whereLessThanOrEqualTo("saleDate", new Timestamp(endDate)).get()
-                .addOnSuccessListener(this::processProductProfitability)
-                .addOnFailureListener(e -> mostProfitableProductsState.postValue(UiState.NO_DATA));
+        fetchReportAnalytics(startDate, endDate);
     }
 
     public void loadLowStockProducts() {
         lowStockProductsState.postValue(UiState.LOADING);
-        db.collection("products").whereLessThanOrEqualTo("quantity", 10).orderBy("quantity", Query.Direction.ASCENDING)
-                .get()
-                .addOnSuccessListener(this::processLowStockProducts)
+        Task<QuerySnapshot> low = db.collection("products")
+                .whereLessThanOrEqualTo("quantity", LOW_STOCK_LEVEL)
+                .get();
+        // A hot product's quantity leaves out its stock shards, so it may be low at any quantity
+        Task<QuerySnapshot> hot = db.collection("products")
+                .whereGreaterThan(StockShards.SHARD_COUNT, 0)
+                .get();
+        Tasks.whenAllSuccess(low, hot)
+                .addOnSuccessListener(results -> cacheExecutor.execute(
+                        () -> processLowStockProducts(low.getResult(), hot.getResult())))
                 .addOnFailureListener(e -> lowStockProductsState.postValue(UiState.NO_DATA));
     }
 
-    public void loadSlowMovingProducts(Date startDate, Date endDate) {
+    /**
+     * Products that sold nothing in the last {@link #SLOW_MOVING_DAYS} days. The server's velocity
+     * counters name them; the products come from the delta-synced cache.
+     */
+    public void loadSlowMovingProducts() {
         slowMovingProductsState.postValue(UiState.LOADING);
-        Map<String, Object> data = new HashMap<>();
-        data.put("type", "SLOW_MOVING");
-        data.put("startDate", startDate.getTime());
-        data.put("endDate", endDate.getTime());
-
-        // Use fetchInventoryAnalysis helper (defined below)
-        callInventoryAnalysisFunction(data)
-                .addOnSuccessListener(result -> {
-                    Map<String, Object> resultMap = (Map<String, Object>) result.getData();
-                    List<Map<String, Object>> items = (List<Map<String, Object>>) resultMap.get("items");
-                    List<Product> products = mapToProducts(items);
+        db.collection("product_velocity")
+                .whereEqualTo("unitsSold" + SLOW_MOVING_DAYS + "d", 0)
+                .get()
+                .addOnSuccessListener(snapshots -> cacheExecutor.execute(() -> {
+                    Set<String> slowIds = new HashSet<>();
+                    for (DocumentSnapshot document : snapshots.getDocuments()) {
+                        slowIds.add(document.getId());
+                    }
+                    List<Product> products = new ArrayList<>();
+                    try {
+                        for (com.bsoft.inventorymanager.model.Product product
+                                : masterDataSync.readProducts(cache -> cache.products(null, null))) {
+                            if (slowIds.contains(product.getDocumentId())) {
+                                products.add(ModelMappers.INSTANCE.toJava(product));
+                            }
+                        }
+                    } catch (Exception e) {
+                        Log.e("ReportsViewModel", "Error loading slow moving products", e);
+                        slowMovingProductsState.postValue(UiState.NO_DATA);
+                        return;
+                    }
                     if (products.isEmpty()) {
                         slowMovingProductsState.postValue(UiState.NO_DATA);
                     } else {
                         slowMovingProductsData.postValue(products);
                         slowMovingProductsState.postValue(UiState.HAS_DATA);
                     }
-                })
+                }))
                 .addOnFailureListener(e -> {
                     Log.e("ReportsViewModel", "Error loading slow moving products", e);
                     slowMovingProductsState.postValue(UiState.NO_DATA);
                 });
     }
 
+    /**
+     * Customers who bought before but not in the last {@link #LAPSED_AFTER_DAYS} days. Reads only
+     * them, through the lastPurchaseDate the server keeps on each customer.
+     */
     public void loadLapsedCustomers() {
         lapsedCustomersState.postValue(UiState.LOADING);
-        Map<String, Object> data = new HashMap<>();
-        data.put("type", "LAPSED_CUSTOMERS");
-
-        callInventoryAnalysisFunction(data)
-                .addOnSuccessListener(result -> {
-                    Map<String, Object> resultMap = (Map<String, Object>) result.getData();
-                    List<Map<String, Object>> items = (List<Map<String, Object>>) resultMap.get("items");
-                    List<Customer> customers = mapToCustomers(items);
+        Timestamp cutoff = new Timestamp(new Date(System.currentTimeMillis()
+                - TimeUnit.DAYS.toMillis(LAPSED_AFTER_DAYS)));
+        db.collection("customers")
+                .whereEqualTo("isActive", true)
+                .whereLessThan("lastPurchaseDate", cutoff)
+                .orderBy("lastPurchaseDate", Query.Direction.ASCENDING)
+                .get()
+                .addOnSuccessListener(snapshots -> {
+                    List<Customer> customers = new ArrayList<>();
+                    for (DocumentSnapshot document : snapshots.getDocuments()) {
+                        Customer customer = document.toObject(Customer.class);
+                        if (customer != null) {
+                            customers.add(customer);
+                        }
+                    }
                     if (customers.isEmpty()) {
                         lapsedCustomersState.postValue(UiState.NO_DATA);
                     } else {
@@ -699,645 +747,496 @@ public class ReportsViewModel extends ViewModel {
                 });
     }
 
-    private Task<HttpsCallableResult> callInventoryAnalysisFunction(Map<String, Object> data) {
-        return functions.getHttpsCallable("getInventoryAnalysis").call(data);
-    }
-
-    private List<Product> mapToProducts(List<Map<String, Object>> items) {
-        List<Product> products = new ArrayList<>();
-        if (items == null)
-            return products;
-
-        for (Map<String, Object> item : items) {
-            Product p = new Product();
-            p.setDocumentId((String) item.get("documentId"));
-            p.setName((String) item.get("name"));
-            p.setCategory((String) item.get("category"));
-            p.setUnit((String) item.get("unit"));
-
-            Object qty = item.get("quantity");
-            if (qty instanceof Number) {
-                p.setQuantity(((Number) qty).intValue());
-            }
-            products.add(p);
-        }
-        return products;
-    }
-
-    private List<Customer> mapToCustomers(List<Map<String, Object>> items) {
-        List<Customer> customers = new ArrayList<>();
-        if (items == null)
-            return customers;
-
-        for (Map<String, Object> item : items) {
-            Customer c = new Customer();
-            c.setDocumentId((String) item.get("documentId"));
-            c.setName((String) item.get("name"));
-            c.setContactNumber((String) item.get("contactNumber"));
-
-            Object dateObj = item.get("lastPurchaseDate");
-            if (dateObj instanceof Number) {
-                long millis = ((Number) dateObj).longValue();
-                if (millis > 0) {
-                    c.setLastPurchaseDate(new Timestamp(new Date(millis)));
-                }
-            }
-            customers.add(c);
-        }
-        return customers;
+    public void loadCustomerAcquisitionOverTime(Date startDate, Date endDate) {
+        fetchReportAnalytics(startDate, endDate);
     }
 
-    public void loadCustomerAcquisitionOverTime(Date startDate, Date endDate) {
-        customerAcquisitionState.postValue(UiState.LOADING);
+    /**
+     * The {@link #TOP_CUSTOMERS} customers with the highest lifetime spend, by the
+     * totalPurchaseAmount the server keeps on each customer. Not limited to the report range.
+     */
+    public void loadTopCustomersBySpend() {
+        topCustomersState.postValue(UiState.LOADING);
         db.collection("customers")
-                .whereGreaterThanOrEqualTo("creationDate", new Timestamp(startDate))
-                .whereLessThanOrEqualTo("creationDate", new Timestamp(endDate))
+                .whereEqualTo("isActive", true)
+                .orderBy("totalPurchaseAmount", Query.Direction.DESCENDING)
+                .limit(TOP_CUSTOMERS)
                 .get()
                 .addOnSuccessListener(snapshots -> {
-                    if (snapshots == null || snapshots.isEmpty()) {
-                        customerAcquisitionState.postValue(UiState.NO_DATA);
-                        customerAcquisitionData.postValue(new ArrayList<>());
-                        return;
-                    }
-                    Map<Long, Integer> acquisitionsByTime = new HashMap<>();
-                    long startMillis = startDate.getTime();
-                    long divisor = getGranularityDivisor();
+                    List<Map<String, Object>> top = new ArrayList<>();
                     for (DocumentSnapshot document : snapshots.getDocuments()) {
-                        Customer customer = document.toObject(Customer.class);
-                        if (customer != null && customer.getCreationDate() != null) {
-                            long creationMillis = customer.getCreationDate().toDate().getTime();
-                            long timeIndex = (creationMillis - startMillis) / divisor;
-                            acquisitionsByTime.put(timeIndex, acquisitionsByTime.getOrDefault(timeIndex, 0) + 1);
+                        Double spend = document.getDouble("totalPurchaseAmount");
+                        if (spend == null || spend <= 0) {
+                            continue;
                         }
+                        String name = document.getString("name");
+                        Map<String, Object> item = new HashMap<>();
+                        item.put("label", name != null ? name : "Unknown Customer");
+                        item.put("value", spend);
+                        top.add(item);
                     }
-                    List<Entry> entries = new ArrayList<>();
-                    for (Map.Entry<Long, Integer> mapEntry : acquisitionsByTime.entrySet()) {
-                        entries.add(new Entry(mapEntry.getKey().floatValue(), mapEntry.getValue().floatValue()));
-                    }
-                    Collections.sort(entries, (e1, e2) -> Float.compare(e1.getX(), e2.getX()));
-                    customerAcquisitionData.postValue(entries);
-                    customerAcquisitionState.postValue(UiState.HAS_DATA);
+                    processTopList(top, topCustomersData, topCustomersLabels, topCustomersState);
                 })
                 .addOnFailureListener(e -> {
-                    customerAcquisitionState.postValue(UiState.NO_DATA);
-                    customerAcquisitionData.postValue(new ArrayList<>());
+                    Log.e("ReportsViewModel", "Error loading top customers", e);
+                    topCustomersState.postValue(UiState.NO_DATA);
                 });
     }
 
-    public void loadTopCustomersBySpend(Date startDate, Date endDate) {
-        topCustomersState.postValue(UiState.LOADING);
-        db.collection("sales").whereGreaterThanOrEqualTo("saleDate", new Timestamp(startDate))
-                .whereLessThanOrEqualTo("saleDate", new Timestamp(endDate)).get()
-                .addOnSuccessListener(this::processTopCustomers)
-                .addOnFailureListener(e -> topCustomersState.postValue(UiState.NO_DATA));
-    }
-
     public void loadSalesByCategory(Date startDate, Date endDate) {
         // Handled by fetchDashboardStats
     }
 
     public void loadTotalSpendBySupplier(Date startDate, Date endDate) {
-        totalSpendBySupplierState.postValue(UiState.LOADING);
-        db.collection("purchases").whereGreaterThanOrEqualTo("purchaseDate", new Timestamp(startDate))
-                .whereLessThanOrEqualTo("purchaseDate", new Timestamp(endDate)).get()
-                .addOnSuccessListener(this::processTotalSpendBySupplier)
-                .addOnFailureListener(e -> totalSpendBySupplierState.postValue(UiState.NO_DATA));
+        fetchReportAnalytics(startDate, endDate);
     }
 
     public void loadPurchaseOrdersOverTime(Date startDate, Date endDate) {
-        purchaseOrdersOverTimeState.postValue(UiState.LOADING);
-        db.collection("purchases").whereGreaterThanOrEqualTo("purchaseDate", new Timestamp(startDate))
-                .whereLessThanOrEqualTo("purchaseDate", new Timestamp(endDate)).get()
-                .addOnSuccessListener(snapshots -> processPurchaseOrdersOverTime(snapshots, startDate))
-                .addOnFailureListener(e -> purchaseOrdersOverTimeState.postValue(UiState.NO_DATA));
+        fetchReportAnalytics(startDate, endDate);
     }
 
     public void loadPurchaseOrdersOverTimeVolume(Date startDate, Date endDate) {
-        purchaseOrdersOverTimeVolumeState.postValue(UiState.LOADING);
-        db.collection("purchases").whereGreaterThanOrEqualTo("purchaseDate", new Timestamp(startDate))
-                .whereLessThanOrEqualTo("purchaseDate", new Timestamp(endDate)).get()
-                .addOnSuccessListener(snapshots -> processPurchaseOrdersOverTimeVolume(snapshots, startDate))
-                .addOnFailureListener(e -> purchaseOrdersOverTimeVolumeState.postValue(UiState.NO_DATA));
+        fetchReportAnalytics(startDate, endDate);
     }
 
     public void loadNewVsReturningCustomers(Date startDate, Date endDate) {
-        newVsReturningState.postValue(UiState.LOADING);
+        fetchReportAnalytics(startDate, endDate);
+    }
 
-        Task<QuerySnapshot> oldCustomersTask = db.collection("sales")
-                .whereLessThan("saleDate", new Timestamp(startDate)).get();
-        Task<QuerySnapshot> currentCustomersTask = db.collection("sales")
-                .whereGreaterThanOrEqualTo("saleDate", new Timestamp(startDate))
-                .whereLessThanOrEqualTo("saleDate", new Timestamp(endDate)).get();
-
-        Tasks.whenAllSuccess(oldCustomersTask, currentCustomersTask).addOnSuccessListener(results -> {
-            Set<String> oldCustomerIds = new HashSet<>();
-            QuerySnapshot oldCustomersSnapshot = (QuerySnapshot) results.get(0);
-            for (DocumentSnapshot doc : oldCustomersSnapshot.getDocuments()) {
-                Sale sale = doc.toObject(Sale.class);
-                if (sale != null && sale.getCustomerId() != null) {
-                    oldCustomerIds.add(sale.getCustomerId());
-                }
-            }
+    /**
+     * One getReportAnalytics round trip feeds every range-based chart of the Products, Customers and
+     * Purchases tabs. Repeated calls for the same range (one per tab/chart) are collapsed.
+     */
+    public void fetchReportAnalytics(Date startDate, Date endDate) {
+        if (startDate == null || endDate == null)
+            return;
 
-            Set<String> currentCustomerIds = new HashSet<>();
-            QuerySnapshot currentCustomersSnapshot = (QuerySnapshot) results.get(1);
-            if (currentCustomersSnapshot.isEmpty()) {
-                newVsReturningState.postValue(UiState.NO_DATA);
-                newVsReturningData.postValue(new ArrayList<>());
-                return;
-            }
-            for (DocumentSnapshot doc : currentCustomersSnapshot.getDocuments()) {
-                Sale sale = doc.toObject(Sale.class);
-                if (sale != null && sale.getCustomerId() != null) {
-                    currentCustomerIds.add(sale.getCustomerId());
-                }
-            }
+        String key = startDate.getTime() + "_" + endDate.getTime();
+        if (key.equals(analyticsRangeKey))
+            return;
+        analyticsRangeKey = key;
 
-            int newCount = 0;
-            int returningCount = 0;
-            for (String customerId : currentCustomerIds) {
-                if (oldCustomerIds.contains(customerId)) {
-                    returningCount++;
-                } else {
-                    newCount++;
-                }
-            }
+        setAnalyticsStates(UiState.LOADING);
 
-            List<PieEntry> entries = new ArrayList<>();
-            if (newCount > 0)
-                entries.add(new PieEntry(newCount, "New"));
-            if (returningCount > 0)
-                entries.add(new PieEntry(returningCount, "Returning"));
-
-            newVsReturningData.postValue(entries);
-            newVsReturningState.postValue(UiState.HAS_DATA);
-        }).addOnFailureListener(e -> {
-            newVsReturningState.postValue(UiState.NO_DATA);
-            newVsReturningData.postValue(new ArrayList<>());
-        });
+        BucketSpec spec = bucketSpecFor(startDate, endDate);
+        Map<String, Object> data = new HashMap<>();
+        data.put("startDate", startDate.getTime());
+        data.put("endDate", endDate.getTime());
+        data.put("timeZone", spec.getTimeZone());
+
+        functions.getHttpsCallable("getReportAnalytics")
+                .call(data)
+                .addOnSuccessListener(result -> {
+                    if (!key.equals(analyticsRangeKey))
+                        return; // A newer range is in flight
+                    aggregationExecutor.execute(() -> {
+                        try {
+                            Map<String, Object> response = (Map<String, Object>) result.getData();
+                            processReportAnalytics(response, spec, startDate, endDate);
+                        } catch (Exception e) {
+                            Log.e("ReportsViewModel", "Error parsing report analytics", e);
+                            setAnalyticsStates(UiState.NO_DATA);
+                        }
+                    });
+                })
+                .addOnFailureListener(e -> {
+                    Log.e("ReportsViewModel", "Error loading report analytics", e);
+                    if (key.equals(analyticsRangeKey)) {
+                        analyticsRangeKey = null; // Allow retry on next refresh
+                        setAnalyticsStates(UiState.NO_DATA);
+                    }
+                });
     }
 
-    // --- Process Methods ---
+    private void setAnalyticsStates(UiState state) {
+        mostProfitableProductsState.postValue(state);
+        newVsReturningState.postValue(state);
+        customerAcquisitionState.postValue(state);
+        totalSpendBySupplierState.postValue(state);
+        purchaseOrdersOverTimeState.postValue(state);
+        purchaseOrdersOverTimeVolumeState.postValue(state);
+        topPurchasedProductsState.postValue(state);
+    }
 
-    private void processAverageOrderValue(QuerySnapshot snapshots) {
-        if (snapshots == null || snapshots.isEmpty()) {
-            averageOrderValueState.postValue(UiState.NO_DATA);
-            averageOrderValueData.postValue(0.0);
+    private void processReportAnalytics(Map<String, Object> data, BucketSpec spec, Date startDate, Date endDate) {
+        if (data == null) {
+            setAnalyticsStates(UiState.NO_DATA);
             return;
         }
-        double totalRevenue = 0;
-        int saleCount = snapshots.size();
-        for (DocumentSnapshot document : snapshots.getDocuments()) {
-            Sale sale = document.toObject(Sale.class);
-            if (sale != null) {
-                totalRevenue += sale.getTotalAmount();
+
+        processTopList((List<Map<String, Object>>) data.get("mostProfitableProducts"),
+                mostProfitableProductsData, mostProfitableProductsLabels, mostProfitableProductsState);
+        processTopList((List<Map<String, Object>>) data.get("totalSpendBySupplier"),
+                totalSpendBySupplierData, totalSpendBySupplierLabels, totalSpendBySupplierState);
+        processTopList((List<Map<String, Object>>) data.get("topPurchasedProducts"),
+                topPurchasedProductsData, topPurchasedProductsLabels, topPurchasedProductsState);
+
+        // Over-time series arrive as absolute bucket starts; the charts index buckets from the range start
+        processRelativeChartData((List<Map<String, Object>>) data.get("customerAcquisitionOverTime"),
+                spec, startDate, endDate, customerAcquisitionData, customerAcquisitionState);
+        processRelativeChartData((List<Map<String, Object>>) data.get("purchaseOrdersOverTime"),
+                spec, startDate, endDate, purchaseOrdersOverTimeData, purchaseOrdersOverTimeState);
+        processRelativeChartData((List<Map<String, Object>>) data.get("purchaseOrdersOverTimeVolume"),
+                spec, startDate, endDate, purchaseOrdersOverTimeVolumeData, purchaseOrdersOverTimeVolumeState);
+
+        List<Map<String, Object>> newVsReturning = (List<Map<String, Object>>) data.get("newVsReturningCustomers");
+        List<PieEntry> pieEntries = new ArrayList<>();
+        if (newVsReturning != null) {
+            for (Map<String, Object> item : newVsReturning) {
+                pieEntries.add(new PieEntry(((Number) item.get("value")).floatValue(), (String) item.get("label")));
             }
         }
-        averageOrderValueData.postValue(totalRevenue / saleCount);
-        averageOrderValueState.postValue(UiState.HAS_DATA);
+        newVsReturningData.postValue(pieEntries);
+        newVsReturningState.postValue(!pieEntries.isEmpty() ? UiState.HAS_DATA : UiState.NO_DATA);
     }
 
-    private void processTotalRevenue(QuerySnapshot snapshots) {
-        if (snapshots == null || snapshots.isEmpty()) {
-            totalRevenueState.postValue(UiState.NO_DATA);
-            totalRevenueData.postValue(0.0);
-            return;
-        }
-        double totalRevenue = 0;
-        for (DocumentSnapshot document : snapshots.getDocuments()) {
-            Sale sale = document.toObject(Sale.class);
-            if (sale != null) {
-                totalRevenue += sale.getTotalAmount();
+    private void processTopList(List<Map<String, Object>> list, MutableLiveData<List<BarEntry>> liveData,
+            MutableLiveData<List<String>> labelsData, MutableLiveData<UiState> stateData) {
+        List<BarEntry> entries = new ArrayList<>();
+        List<String> labels = new ArrayList<>();
+        if (list != null) {
+            int limit = list.size();
+            for (int i = 0; i < limit; i++) {
+                Map<String, Object> item = list.get(i);
+                Number val = (Number) item.get("value");
+                entries.add(new BarEntry(limit - 1 - i, val.floatValue()));
+                labels.add((String) item.get("label"));
             }
+            Collections.reverse(labels);
         }
-        totalRevenueData.postValue(totalRevenue);
-        totalRevenueState.postValue(UiState.HAS_DATA);
+        liveData.postValue(entries);
+        labelsData.postValue(labels);
+        stateData.postValue(!entries.isEmpty() ? UiState.HAS_DATA : UiState.NO_DATA);
     }
 
-    private void processTotalProfit(QuerySnapshot salesSnapshots) {
-        if (salesSnapshots == null || salesSnapshots.isEmpty()) {
-            totalProfitState.postValue(UiState.NO_DATA);
-            totalProfitData.postValue(0.0);
-            return;
-        }
-
-        double totalProfitValue = 0;
-        for (DocumentSnapshot doc : salesSnapshots.getDocuments()) {
-            try {
-                Sale sale = doc.toObject(Sale.class);
-                if (sale != null) {
-                    Double profit = sale.getTotalProfit();
-                    if (profit != null) {
-                        totalProfitValue += profit;
-                    }
-                }
-            } catch (Exception e) {
-                // Skip corrupted documents
+    private void processRelativeChartData(List<Map<String, Object>> list, BucketSpec spec, Date startDate,
+            Date endDate, MutableLiveData<List<Entry>> liveData, MutableLiveData<UiState> stateData) {
+        long startMillis = startDate.getTime();
+        TimeBucketHistogram histogram = new TimeBucketHistogram(startMillis, endDate.getTime(), divisorOf(spec));
+        if (list != null) {
+            for (Map<String, Object> point : list) {
+                long x = ((Number) point.get("x")).longValue();
+                Number y = (Number) point.get("y");
+                histogram.addToBucket(spec.bucketIndex(startMillis, x), y.doubleValue());
             }
         }
-        totalProfitData.postValue(totalProfitValue);
-        totalProfitState.postValue(UiState.HAS_DATA);
+        List<Entry> entries = toEntries(histogram.toSeries().downsample(maxChartPoints));
+        postEntriesIfChanged(liveData, entries);
+        stateData.postValue(!entries.isEmpty() ? UiState.HAS_DATA : UiState.NO_DATA);
     }
 
-    private void processTotalExpenses(QuerySnapshot snapshots) {
-        if (snapshots == null || snapshots.isEmpty()) {
-            totalExpensesState.postValue(UiState.NO_DATA);
-            totalExpensesData.postValue(0.0);
-            return;
+    private static <T> void postIfChanged(MutableLiveData<T> liveData, T value) {
+        if (!Objects.equals(liveData.getValue(), value)) {
+            liveData.postValue(value);
         }
-        double total = 0;
-        for (DocumentSnapshot document : snapshots.getDocuments()) {
-            try {
-                Expense expense = document.toObject(Expense.class);
-                if (expense != null) {
-                    total += expense.getAmount();
-                }
-            } catch (Exception e) {
+    }
+
+    /**
+     * Chart entries do not implement equals; compares x, y and pie labels instead.
+     */
+    private static <E extends Entry> void postEntriesIfChanged(MutableLiveData<List<E>> liveData, List<E> entries) {
+        List<E> current = liveData.getValue();
+        if (current != null && current.size() == entries.size()) {
+            boolean same = true;
+            for (int i = 0; i < entries.size() && same; i++) {
+                E a = current.get(i);
+                E b = entries.get(i);
+                same = a.getX() == b.getX() && a.getY() == b.getY()
+                        && (!(a instanceof PieEntry) || !(b instanceof PieEntry)
+                                || Objects.equals(((PieEntry) a).getLabel(), ((PieEntry) b).getLabel()));
             }
+            if (same)
+                return;
         }
-        totalExpensesData.postValue(total);
-        totalExpensesState.postValue(UiState.HAS_DATA);
+        liveData.postValue(entries);
     }
 
-    private void processTotalTransactions(QuerySnapshot snapshots) {
-        if (snapshots == null || snapshots.isEmpty()) {
-            totalTransactionsState.postValue(UiState.NO_DATA);
-            totalTransactionsData.postValue(0);
-            return;
-        }
-        totalTransactionsData.postValue(snapshots.size());
-        totalTransactionsState.postValue(UiState.HAS_DATA);
+    private static long divisorOf(BucketSpec spec) {
+        return spec.getGranularity() == BucketGranularity.HOUR ? BucketSpec.HOUR_MILLIS : BucketSpec.DAY_MILLIS;
     }
 
-    private void processTotalInventoryValue(QuerySnapshot snapshots) {
-        if (snapshots == null || snapshots.isEmpty()) {
-            totalInventoryValueState.postValue(UiState.NO_DATA);
-            totalInventoryValueData.postValue(0.0);
+    /**
+     * Stores the response's per-bucket totals, provided the server bucketed with the same spec.
+     */
+    private void cacheBuckets(Map<String, Object> data, BucketSpec spec, Date startDate, Date endDate) {
+        Map<String, Object> responseSpec = (Map<String, Object>) data.get("bucketSpec");
+        List<Map<String, Object>> list = (List<Map<String, Object>>) data.get("buckets");
+        if (responseSpec == null || list == null || !spec.getCacheKey().equals(responseSpec.get("key")))
             return;
+        List<DashboardBucket> buckets = new ArrayList<>(list.size());
+        for (Map<String, Object> item : list) {
+            buckets.add(new DashboardBucket(
+                    ((Number) item.get("start")).longValue(),
+                    ((Number) item.get("revenue")).doubleValue(),
+                    ((Number) item.get("profit")).doubleValue(),
+                    ((Number) item.get("transactions")).intValue(),
+                    ((Number) item.get("expenses")).doubleValue()));
         }
-        double totalValue = 0;
-        for (DocumentSnapshot document : snapshots.getDocuments()) {
-            Product product = document.toObject(Product.class);
-            if (product != null) {
-                totalValue += product.getQuantity() * product.getPurchasePrice();
-            }
-        }
-        totalInventoryValueData.postValue(totalValue);
-        totalInventoryValueState.postValue(UiState.HAS_DATA);
+        bucketCache.put(spec, startDate.getTime(), endDate.getTime(), buckets);
     }
 
-    private void processTopProducts(QuerySnapshot snapshots) {
-        if (snapshots == null || snapshots.isEmpty()) {
-            topSellingProductsState.postValue(UiState.NO_DATA);
-            topSellingProductsData.postValue(new ArrayList<>());
-            topSellingProductsLabels.postValue(new ArrayList<>());
-            return;
-        }
-        Map<String, Integer> productQuantities = new HashMap<>();
-        Map<String, String> productNames = new HashMap<>();
-        for (DocumentSnapshot document : snapshots.getDocuments()) {
-            try {
-                Sale sale = document.toObject(Sale.class);
-                if (sale != null && sale.getItems() != null) {
-                    for (SaleItem item : sale.getItems()) {
-                        String id = item.getProductId();
-                        if (id != null) {
-                            productQuantities.put(id, productQuantities.getOrDefault(id, 0) + item.getQuantity());
-                            if (item.getProductName() != null) {
-                                productNames.put(id, item.getProductName());
-                            }
-                        }
-                    }
-                }
-            } catch (Exception e) {
-                // Skip corrupted documents
+    /**
+     * Posts scalar totals and over-time charts computed from cached buckets. Top lists keep loading
+     * until the server response arrives.
+     */
+    private void postBucketTotals(List<DashboardBucket> buckets, BucketSpec spec, Date startDate, Date endDate) {
+        long startMillis = startDate.getTime();
+        TimeBucketHistogram revenueHistogram = new TimeBucketHistogram(startMillis, endDate.getTime(),
+                divisorOf(spec));
+        TimeBucketHistogram profitHistogram = new TimeBucketHistogram(startMillis, endDate.getTime(),
+                divisorOf(spec));
+        double revenue = 0;
+        double profit = 0;
+        double expenses = 0;
+        int transactions = 0;
+        for (DashboardBucket bucket : buckets) {
+            revenue += bucket.getRevenue();
+            profit += bucket.getProfit();
+            expenses += bucket.getExpenses();
+            transactions += bucket.getTransactions();
+            if (bucket.getTransactions() > 0) {
+                long index = spec.bucketIndex(startMillis, bucket.getStart());
+                revenueHistogram.addToBucket(index, bucket.getRevenue());
+                profitHistogram.addToBucket(index, bucket.getProfit());
             }
         }
 
-        List<Map.Entry<String, Integer>> sortedProducts = new ArrayList<>(productQuantities.entrySet());
-        sortedProducts.sort(Map.Entry.comparingByValue(Comparator.reverseOrder()));
-        int limit = Math.min(sortedProducts.size(), 10);
+        int chartPoints = maxChartPoints;
+        List<Entry> salesEntries = toEntries(revenueHistogram.toSeries().downsample(chartPoints));
+        List<Entry> profitEntries = toEntries(profitHistogram.toSeries().downsample(chartPoints));
 
-        List<BarEntry> entries = new ArrayList<>();
-        List<String> labels = new ArrayList<>();
-        for (int i = 0; i < limit; i++) {
-            String id = sortedProducts.get(i).getKey();
-            int quantity = sortedProducts.get(i).getValue();
-            String name = productNames.getOrDefault(id, "Unknown Product");
-            entries.add(new BarEntry(limit - 1 - i, quantity));
-            labels.add(name);
-        }
-        Collections.reverse(labels);
-        topSellingProductsData.postValue(entries);
-        topSellingProductsLabels.postValue(labels);
-        topSellingProductsState.postValue(UiState.HAS_DATA);
+        totalRevenueData.postValue(revenue);
+        totalProfitData.postValue(profit);
+        totalExpensesData.postValue(expenses);
+        netProfitData.postValue(profit - expenses);
+        totalTransactionsData.postValue(transactions);
+        averageOrderValueData.postValue(transactions > 0 ? revenue / transactions : 0.0);
+        salesOverTimeData.postValue(salesEntries);
+        profitOverTimeData.postValue(profitEntries);
+
+        totalRevenueState.postValue(UiState.HAS_DATA);
+        totalProfitState.postValue(UiState.HAS_DATA);
+        totalExpensesState.postValue(UiState.HAS_DATA);
+        netProfitState.postValue(UiState.HAS_DATA);
+        totalTransactionsState.postValue(UiState.HAS_DATA);
+        averageOrderValueState.postValue(UiState.HAS_DATA);
+        salesOverTimeState.postValue(!salesEntries.isEmpty() ? UiState.HAS_DATA : UiState.NO_DATA);
+        profitOverTimeState.postValue(!profitEntries.isEmpty() ? UiState.HAS_DATA : UiState.NO_DATA);
     }
 
-    private void processTopPurchasedProducts(QuerySnapshot snapshots) {
-        if (snapshots == null || snapshots.isEmpty()) {
-            topPurchasedProductsState.postValue(UiState.NO_DATA);
-            topPurchasedProductsData.postValue(new ArrayList<>());
-            topPurchasedProductsLabels.postValue(new ArrayList<>());
-            return;
-        }
-        Map<String, Integer> productQuantities = new HashMap<>();
-        Map<String, String> productNames = new HashMap<>();
-        for (DocumentSnapshot document : snapshots.getDocuments()) {
-            try {
-                Purchase purchase = document.toObject(Purchase.class);
-                if (purchase != null && purchase.getItems() != null) {
-                    for (PurchaseItem item : purchase.getItems()) {
-                        String id = item.getProductId();
-                        if (id != null) {
-                            productQuantities.put(id, productQuantities.getOrDefault(id, 0) + item.getQuantity());
-                            if (item.getProductName() != null) {
-                                productNames.put(id, item.getProductName());
-                            }
-                        }
-                    }
+    // --- Process Methods ---
+
+    /**
+     * Deserializes each sale once into {@link SalesColumns}, runs every sales metric in a single pass
+     * and posts all results together. Runs on {@link #aggregationExecutor}.
+     */
+    private void processSalesSnapshot(QuerySnapshot salesSnapshots, QuerySnapshot expenseSnapshots, Date startDate,
+            Date endDate) {
+        BucketSpec spec = bucketSpecFor(startDate, endDate);
+        SalesColumns columns = new SalesColumns();
+        if (salesSnapshots != null) {
+            for (DocumentSnapshot document : salesSnapshots.getDocuments()) {
+                try {
+                    columns.add(document.toObject(Sale.class));
+                } catch (Exception e) {
+                    // Skip corrupted documents
                 }
-            } catch (Exception e) {
-                // Skip corrupted documents
             }
         }
 
-        List<Map.Entry<String, Integer>> sortedProducts = new ArrayList<>(productQuantities.entrySet());
-        sortedProducts.sort(Map.Entry.comparingByValue(Comparator.reverseOrder()));
-        int limit = Math.min(sortedProducts.size(), 10);
-
-        List<BarEntry> entries = new ArrayList<>();
-        List<String> labels = new ArrayList<>();
-        for (int i = 0; i < limit; i++) {
-            String id = sortedProducts.get(i).getKey();
-            int quantity = sortedProducts.get(i).getValue();
-            String name = productNames.getOrDefault(id, "Unknown Product");
-            entries.add(new BarEntry(limit - 1 - i, (float) quantity));
-            labels.add(name);
-        }
-        Collections.reverse(labels);
-        topPurchasedProductsData.postValue(entries);
-        topPurchasedProductsLabels.postValue(labels);
-        topPurchasedProductsState.postValue(UiState.HAS_DATA);
-    }
-
-    private void processProductProfitability(QuerySnapshot snapshots) {
-        if (snapshots == null || snapshots.isEmpty()) {
-            mostProfitableProductsState.postValue(UiState.NO_DATA);
-            mostProfitableProductsData.postValue(new ArrayList<>());
-            mostProfitableProductsLabels.postValue(new ArrayList<>());
-            return;
-        }
-
-        Map<String, Double> productProfits = new HashMap<>();
-        Map<String, String> productNames = new HashMap<>();
-
-        for (DocumentSnapshot document : snapshots.getDocuments()) {
-            try {
-                Sale sale = document.toObject(Sale.class);
-                if (sale != null && sale.getItems() != null) {
-                    for (SaleItem item : sale.getItems()) {
-                        String id = item.getProductId();
-                        if (id != null) {
-                            double revenue = item.getTotalPrice();
-                            double cost = item.getCostPrice() * item.getQuantity();
-                            double profit = revenue - cost;
-
-                            productProfits.put(id, productProfits.getOrDefault(id, 0.0) + profit);
-                            if (item.getProductName() != null) {
-                                productNames.put(id, item.getProductName());
-                            }
-                        }
+        SalesAggregator aggregator = new SalesAggregator();
+        SalesMetrics.Totals totals = aggregator.register(new SalesMetrics.Totals());
+        SalesMetrics.OverTime overTime = aggregator.register(
+                new SalesMetrics.OverTime(startDate.getTime(), endDate.getTime(), divisorOf(spec),
+                        millis -> spec.bucketIndex(startDate.getTime(), millis)));
+        SalesMetrics.Products products = aggregator.register(new SalesMetrics.Products());
+        SalesMetrics.CategoryRevenue categories = aggregator.register(new SalesMetrics.CategoryRevenue());
+        aggregator.run(columns);
+
+        double expenses = 0;
+        if (expenseSnapshots != null) {
+            for (DocumentSnapshot document : expenseSnapshots.getDocuments()) {
+                try {
+                    Expense expense = document.toObject(Expense.class);
+                    if (expense != null) {
+                        expenses += expense.getAmount();
                     }
+                } catch (Exception e) {
+                    // Skip corrupted documents
                 }
-            } catch (Exception e) {
-                // Skip corrupted documents
             }
         }
 
-        if (productProfits.isEmpty()) {
-            mostProfitableProductsState.postValue(UiState.NO_DATA);
-            mostProfitableProductsData.postValue(new ArrayList<>());
-            mostProfitableProductsLabels.postValue(new ArrayList<>());
-            return;
+        // Build every payload first, then post them back to back
+        boolean hasSales = columns.size() > 0;
+        UiState salesState = hasSales ? UiState.HAS_DATA : UiState.NO_DATA;
+        int chartPoints = maxChartPoints;
+        List<Entry> salesEntries = toEntries(overTime.getRevenue().toSeries().downsample(chartPoints));
+        List<Entry> profitEntries = toEntries(overTime.getProfit().toSeries().downsample(chartPoints));
+
+        List<BarEntry> topProductEntries = new ArrayList<>();
+        List<String> topProductLabels = new ArrayList<>();
+        int[] topSelling = SalesMetrics.topIds(products.getQuantities(), 10);
+        for (int i = 0; i < topSelling.length; i++) {
+            String name = columns.productName(topSelling[i]);
+            topProductEntries.add(new BarEntry(topSelling.length - 1 - i, products.getQuantities()[topSelling[i]]));
+            topProductLabels.add(name != null ? name : "Unknown Product");
         }
-
-        List<Map.Entry<String, Double>> sortedProfits = new ArrayList<>(productProfits.entrySet());
-        sortedProfits.sort(Map.Entry.comparingByValue(Comparator.reverseOrder()));
-        int limit = Math.min(sortedProfits.size(), 10);
-
-        List<BarEntry> entries = new ArrayList<>();
-        List<String> labels = new ArrayList<>();
-        for (int i = 0; i < limit; i++) {
-            Map.Entry<String, Double> entry = sortedProfits.get(i);
-            entries.add(new BarEntry(limit - 1 - i, entry.getValue().floatValue()));
-            labels.add(productNames.getOrDefault(entry.getKey(), "Unknown Product"));
+        Collections.reverse(topProductLabels);
+
+        List<BarEntry> profitableEntries = new ArrayList<>();
+        List<String> profitableLabels = new ArrayList<>();
+        int[] mostProfitable = SalesMetrics.topIds(products.getProfits(), 10);
+        for (int i = 0; i < mostProfitable.length; i++) {
+            String name = columns.productName(mostProfitable[i]);
+            profitableEntries.add(new BarEntry(mostProfitable.length - 1 - i,
+                    (float) products.getProfits()[mostProfitable[i]]));
+            profitableLabels.add(name != null ? name : "Unknown Product");
         }
-        Collections.reverse(labels);
-        mostProfitableProductsData.postValue(entries);
-        mostProfitableProductsLabels.postValue(labels);
-        mostProfitableProductsState.postValue(UiState.HAS_DATA);
-    }
+        Collections.reverse(profitableLabels);
 
-    private void processLowStockProducts(QuerySnapshot snapshots) {
-        if (snapshots == null || snapshots.isEmpty()) {
-            lowStockProductsState.postValue(UiState.NO_DATA);
-            lowStockProductsData.postValue(new ArrayList<>());
-            return;
+        List<PieEntry> categoryEntries = new ArrayList<>();
+        double[] categoryRevenue = categories.getRevenue();
+        for (int i = 0; i < categoryRevenue.length; i++) {
+            categoryEntries.add(new PieEntry((float) categoryRevenue[i], columns.category(i)));
         }
-        List<Product> products = new ArrayList<>();
-        for (DocumentSnapshot doc : snapshots.getDocuments()) {
-            try {
-                Product p = doc.toObject(Product.class);
-                if (p != null) {
-                    p.setDocumentId(doc.getId());
-                    products.add(p);
-                }
-            } catch (Exception e) {
-                /* Skip */}
-        }
-        lowStockProductsData.postValue(products);
-        lowStockProductsState.postValue(UiState.HAS_DATA);
+
+        totalRevenueData.postValue(totals.getRevenue());
+        totalProfitData.postValue(totals.getProfit());
+        totalTransactionsData.postValue(totals.getTransactions());
+        averageOrderValueData.postValue(totals.getAverageOrderValue());
+        totalExpensesData.postValue(expenses);
+        netProfitData.postValue(totals.getProfit() - expenses);
+        salesOverTimeData.postValue(salesEntries);
+        profitOverTimeData.postValue(profitEntries);
+        topSellingProductsData.postValue(topProductEntries);
+        topSellingProductsLabels.postValue(topProductLabels);
+        mostProfitableProductsData.postValue(profitableEntries);
+        mostProfitableProductsLabels.postValue(profitableLabels);
+        salesByCategoryData.postValue(categoryEntries);
+
+        totalRevenueState.postValue(salesState);
+        totalProfitState.postValue(salesState);
+        totalTransactionsState.postValue(salesState);
+        averageOrderValueState.postValue(salesState);
+        totalExpensesState.postValue(expenseSnapshots != null && !expenseSnapshots.isEmpty()
+                ? UiState.HAS_DATA : UiState.NO_DATA);
+        netProfitState.postValue(UiState.HAS_DATA);
+        salesOverTimeState.postValue(salesState);
+        profitOverTimeState.postValue(salesState);
+        topSellingProductsState.postValue(!topProductEntries.isEmpty() ? UiState.HAS_DATA : UiState.NO_DATA);
+        mostProfitableProductsState.postValue(!profitableEntries.isEmpty() ? UiState.HAS_DATA : UiState.NO_DATA);
+        salesByCategoryState.postValue(!categoryEntries.isEmpty() ? UiState.HAS_DATA : UiState.NO_DATA);
     }
 
-    private void processPurchaseOrdersOverTime(QuerySnapshot snapshots, Date startDate) {
-        if (snapshots == null || snapshots.isEmpty()) {
-            purchaseOrdersOverTimeState.postValue(UiState.NO_DATA);
-            purchaseOrdersOverTimeData.postValue(new ArrayList<>());
-            return;
+    private static List<Entry> toEntries(BucketSeries series) {
+        List<Entry> entries = new ArrayList<>(series.size());
+        for (int i = 0; i < series.size(); i++) {
+            entries.add(new Entry(series.bucket(i), (float) series.value(i)));
         }
-        Map<Long, Double> purchasesByTime = new HashMap<>();
-        long startMillis = startDate.getTime();
-        long divisor = getGranularityDivisor();
-        for (DocumentSnapshot document : snapshots.getDocuments()) {
-            Purchase purchase = document.toObject(Purchase.class);
-            if (purchase != null && purchase.getPurchaseDate() != null) {
-                long purchaseMillis = purchase.getPurchaseDate().toDate().getTime();
-                long timeIndex = (purchaseMillis - startMillis) / divisor;
-                purchasesByTime.put(timeIndex,
-                        purchasesByTime.getOrDefault(timeIndex, 0.0) + purchase.getTotalAmount());
-            }
-        }
-        List<Entry> entries = new ArrayList<>();
-        for (Map.Entry<Long, Double> mapEntry : purchasesByTime.entrySet()) {
-            entries.add(new Entry(mapEntry.getKey().floatValue(), mapEntry.getValue().floatValue()));
-        }
-        Collections.sort(entries, (e1, e2) -> Float.compare(e1.getX(), e2.getX()));
-        purchaseOrdersOverTimeData.postValue(entries);
-        purchaseOrdersOverTimeState.postValue(UiState.HAS_DATA);
+        return entries;
     }
 
-    private void processPurchaseOrdersOverTimeVolume(QuerySnapshot snapshots, Date startDate) {
-        if (snapshots == null || snapshots.isEmpty()) {
-            purchaseOrdersOverTimeVolumeState.postValue(UiState.NO_DATA);
-            purchaseOrdersOverTimeVolumeData.postValue(new ArrayList<>());
-            return;
-        }
-        Map<Long, Integer> purchasesByTime = new HashMap<>();
-        long startMillis = startDate.getTime();
-        long divisor = getGranularityDivisor();
-        for (DocumentSnapshot document : snapshots.getDocuments()) {
-            Purchase purchase = document.toObject(Purchase.class);
-            if (purchase != null && purchase.getPurchaseDate() != null) {
-                long purchaseMillis = purchase.getPurchaseDate().toDate().getTime();
-                long timeIndex = (purchaseMillis - startMillis) / divisor;
-                purchasesByTime.put(timeIndex, purchasesByTime.getOrDefault(timeIndex, 0) + 1);
+
+    /**
+     * Stock of the hot products among {@code products}: {@code quantity} plus their
+     * {@link StockShards}, by id. Blocking, one query per hot product; there are few.
+     */
+    private Map<String, Long> shardedStock(Collection<DocumentSnapshot> products)
+            throws ExecutionException, InterruptedException {
+        Map<String, Task<QuerySnapshot>> queries = new LinkedHashMap<>();
+        for (DocumentSnapshot product : products) {
+            if (StockShards.shardCount(product.get(StockShards.SHARD_COUNT)) > 0) {
+                queries.put(product.getId(), product.getReference().collection(StockShards.COLLECTION).get());
             }
         }
-        List<Entry> entries = new ArrayList<>();
-        for (Map.Entry<Long, Integer> mapEntry : purchasesByTime.entrySet()) {
-            entries.add(new Entry(mapEntry.getKey().floatValue(), mapEntry.getValue().floatValue()));
+        Map<String, Long> stock = new HashMap<>();
+        for (DocumentSnapshot product : products) {
+            Task<QuerySnapshot> query = queries.get(product.getId());
+            if (query == null)
+                continue;
+            List<Object> deltas = new ArrayList<>();
+            for (DocumentSnapshot shard : Tasks.await(query).getDocuments()) {
+                deltas.add(shard.get(StockShards.DELTA));
+            }
+            Long quantity = product.getLong("quantity");
+            stock.put(product.getId(), StockShards.stock(quantity != null ? quantity : 0L, deltas));
         }
-        Collections.sort(entries, (e1, e2) -> Float.compare(e1.getX(), e2.getX()));
-        purchaseOrdersOverTimeVolumeData.postValue(entries);
-        purchaseOrdersOverTimeVolumeState.postValue(UiState.HAS_DATA);
+        return stock;
     }
 
-    private void processTopCustomers(QuerySnapshot snapshots) {
+    private void processTotalInventoryValue(QuerySnapshot snapshots) {
         if (snapshots == null || snapshots.isEmpty()) {
-            topCustomersState.postValue(UiState.NO_DATA);
-            topCustomersData.postValue(new ArrayList<>());
-            topCustomersLabels.postValue(new ArrayList<>());
+            totalInventoryValueState.postValue(UiState.NO_DATA);
+            totalInventoryValueData.postValue(0.0);
             return;
         }
-        Map<String, Double> customerSpending = new HashMap<>();
-        Map<String, String> customerNames = new HashMap<>();
-        for (DocumentSnapshot doc : snapshots.getDocuments()) {
-            try {
-                Sale sale = doc.toObject(Sale.class);
-                if (sale != null && sale.getCustomerId() != null) {
-                    customerSpending.put(sale.getCustomerId(),
-                            customerSpending.getOrDefault(sale.getCustomerId(), 0.0) + sale.getTotalAmount());
-                    if (sale.getCustomerName() != null) {
-                        customerNames.put(sale.getCustomerId(), sale.getCustomerName());
-                    }
-                }
-            } catch (Exception e) {
-                /* Skip */}
-        }
-        List<Map.Entry<String, Double>> sortedCustomers = new ArrayList<>(customerSpending.entrySet());
-        sortedCustomers.sort(Map.Entry.comparingByValue(Comparator.reverseOrder()));
-        int limit = Math.min(sortedCustomers.size(), 10);
-        List<BarEntry> entries = new ArrayList<>();
-        List<String> labels = new ArrayList<>();
-        for (int i = 0; i < limit; i++) {
-            Map.Entry<String, Double> entry = sortedCustomers.get(i);
-            entries.add(new BarEntry(limit - 1 - i, entry.getValue().floatValue()));
-            labels.add(customerNames.getOrDefault(entry.getKey(), "Unknown Customer"));
-        }
-        Collections.reverse(labels);
-        topCustomersData.postValue(entries);
-        topCustomersLabels.postValue(labels);
-        topCustomersState.postValue(UiState.HAS_DATA);
-    }
-
-    private void processSalesByCategory(QuerySnapshot snapshots) {
-        if (snapshots == null || snapshots.isEmpty()) {
-            salesByCategoryState.postValue(UiState.NO_DATA);
-            salesByCategoryData.postValue(new ArrayList<>());
+        Map<String, Long> sharded;
+        try {
+            sharded = shardedStock(snapshots.getDocuments());
+        } catch (ExecutionException e) {
+            Log.e("ReportsViewModel", "Error reading stock shards", e);
+            totalInventoryValueState.postValue(UiState.NO_DATA);
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             return;
         }
-
-        Map<String, Double> categoryRevenue = new HashMap<>();
-        for (DocumentSnapshot doc : snapshots.getDocuments()) {
-            try {
-                Sale sale = doc.toObject(Sale.class);
-                if (sale != null && sale.getItems() != null) {
-                    for (SaleItem item : sale.getItems()) {
-                        String category = item.getCategory();
-                        if (category == null || category.isEmpty()) {
-                            category = "Uncategorized";
-                        }
-                        categoryRevenue.put(category,
-                                categoryRevenue.getOrDefault(category, 0.0) + item.getTotalPrice());
-                    }
-                }
-            } catch (Exception e) {
-                // Skip corrupted documents
+        double totalValue = 0;
+        for (DocumentSnapshot document : snapshots.getDocuments()) {
+            Product product = document.toObject(Product.class);
+            if (product != null) {
+                Long stock = sharded.get(document.getId());
+                totalValue += (stock != null ? stock : product.getQuantity()) * product.getPurchasePrice();
             }
         }
+        totalInventoryValueData.postValue(totalValue);
+        totalInventoryValueState.postValue(UiState.HAS_DATA);
+    }
 
-        if (categoryRevenue.isEmpty()) {
-            salesByCategoryState.postValue(UiState.NO_DATA);
-            salesByCategoryData.postValue(new ArrayList<>());
-            return;
+    private void processLowStockProducts(QuerySnapshot low, QuerySnapshot hot) {
+        Map<String, DocumentSnapshot> documents = new LinkedHashMap<>();
+        for (DocumentSnapshot doc : low.getDocuments()) {
+            documents.put(doc.getId(), doc);
         }
-
-        List<PieEntry> entries = new ArrayList<>();
-        for (Map.Entry<String, Double> entry : categoryRevenue.entrySet()) {
-            entries.add(new PieEntry(entry.getValue().floatValue(), entry.getKey()));
+        for (DocumentSnapshot doc : hot.getDocuments()) {
+            documents.put(doc.getId(), doc);
         }
-
-        salesByCategoryData.postValue(entries);
-        salesByCategoryState.postValue(UiState.HAS_DATA);
-    }
-
-    private void processTotalSpendBySupplier(QuerySnapshot snapshots) {
-        if (snapshots == null || snapshots.isEmpty()) {
-            totalSpendBySupplierState.postValue(UiState.NO_DATA);
-            totalSpendBySupplierData.postValue(new ArrayList<>());
-            totalSpendBySupplierLabels.postValue(new ArrayList<>());
+        Map<String, Long> sharded;
+        try {
+            sharded = shardedStock(documents.values());
+        } catch (ExecutionException e) {
+            Log.e("ReportsViewModel", "Error reading stock shards", e);
+            lowStockProductsState.postValue(UiState.NO_DATA);
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
             return;
         }
-
-        Map<String, Double> SupplierSpending = new HashMap<>();
-        Map<String, String> SupplierNames = new HashMap<>();
-
-        for (DocumentSnapshot doc : snapshots.getDocuments()) {
+        List<Product> products = new ArrayList<>();
+        for (DocumentSnapshot doc : documents.values()) {
             try {
-                Purchase purchase = doc.toObject(Purchase.class);
-                if (purchase != null && purchase.getSupplierId() != null) {
-                    SupplierSpending.put(purchase.getSupplierId(),
-                            SupplierSpending.getOrDefault(purchase.getSupplierId(), 0.0) + purchase.getTotalAmount());
-                    if (purchase.getSupplierName() != null) {
-                        SupplierNames.put(purchase.getSupplierId(), purchase.getSupplierName());
+                Product p = doc.toObject(Product.class);
+                if (p != null) {
+                    p.setDocumentId(doc.getId());
+                    Long stock = sharded.get(doc.getId());
+                    if (stock != null) {
+                        p.setQuantity(stock.intValue());
+                    }
+                    if (p.getQuantity() <= LOW_STOCK_LEVEL) {
+                        products.add(p);
                     }
                 }
             } catch (Exception e) {
                 /* Skip */}
         }
-
-        List<Map.Entry<String, Double>> sortedSuppliers = new ArrayList<>(SupplierSpending.entrySet());
-        sortedSuppliers.sort(Map.Entry.comparingByValue(Comparator.reverseOrder()));
-
-        int limit = Math.min(sortedSuppliers.size(), 10);
-        List<BarEntry> entries = new ArrayList<>();
-        List<String> labels = new ArrayList<>();
-
-        for (int i = 0; i < limit; i++) {
-            Map.Entry<String, Double> entry = sortedSuppliers.get(i);
-            String name = SupplierNames.getOrDefault(entry.getKey(), "Unknown Supplier");
-            entries.add(new BarEntry(limit - 1 - i, entry.getValue().floatValue()));
-            labels.add(name);
+        if (products.isEmpty()) {
+            lowStockProductsState.postValue(UiState.NO_DATA);
+            lowStockProductsData.postValue(new ArrayList<>());
+            return;
         }
-        Collections.reverse(labels);
-
-        totalSpendBySupplierData.postValue(entries);
-        totalSpendBySupplierLabels.postValue(labels);
-        totalSpendBySupplierState.postValue(UiState.HAS_DATA);
-    }
-
-    static class ProfitInfo {
-        int totalQuantity = 0;
-        double totalRevenue = 0.0;
+        products.sort(Comparator.comparingInt(Product::getQuantity));
+        lowStockProductsData.postValue(products);
+        lowStockProductsState.postValue(UiState.HAS_DATA);
     }
 }
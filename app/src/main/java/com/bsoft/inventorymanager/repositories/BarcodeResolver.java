@@ -0,0 +1,331 @@
+package com.bsoft.inventorymanager.repositories;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.bsoft.inventorymanager.cache.MasterDataCache;
+import com.bsoft.inventorymanager.cache.MasterDataSync;
+import com.bsoft.inventorymanager.cache.SyncClient;
+import com.bsoft.inventorymanager.models.ApiProduct;
+import com.bsoft.inventorymanager.models.Product;
+import com.bsoft.inventorymanager.models.ProductResponse;
+import com.bsoft.inventorymanager.network.ProductApiService;
+import com.bsoft.inventorymanager.search.BarcodeIndex;
+import com.bsoft.inventorymanager.utils.ModelMappers;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.gson.Gson;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * Resolves scanned codes to products without a network round trip.
+ * <p>
+ * Products are held in a {@link BarcodeIndex} keyed by barcode and product code, fed from the
+ * on-device {@link MasterDataCache}. {@link #warm()} loads the cache; {@link #start()} pulls the
+ * products changed since the last sync through {@link MasterDataSync}, and so does every miss
+ * before it is reported. Only a cache that completed a download from the server is a full product
+ * list: until there is one, misses fall back to a Firestore query.
+ * <p>
+ * Codes the external product database (Open Food Facts) does not know are remembered for
+ * {@link #MISS_TTL_MS}, so rescanning an unknown item does not repeat the request.
+ */
+public class BarcodeResolver {
+
+    private static final String TAG = "BarcodeResolver";
+
+    static final long MISS_TTL_MS = TimeUnit.DAYS.toMillis(3);
+    // Coalesces snapshot writes while several misses are recorded
+    private static final long SAVE_DELAY_MS = TimeUnit.SECONDS.toMillis(5);
+    private static final int SNAPSHOT_VERSION = 2;
+
+    private final BarcodeIndex<Product> index = new BarcodeIndex<>();
+    // Index updates and disk I/O run here, in order, off the main thread
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    // Network syncs, kept off the index thread
+    private final ExecutorService syncExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Gson gson = new Gson();
+    private final FirebaseFirestore db;
+    private final MasterDataCache cache;
+    private final MasterDataSync sync;
+    private final ProductApiService apiService;
+    private final File snapshotFile;
+
+    private boolean warmed = false;
+    private boolean started = false;
+    private volatile boolean synced = false;
+    private boolean saveScheduled = false;
+
+    public interface InventoryCallback {
+        void onFound(Product product);
+
+        void onNotFound();
+
+        void onFailure(Exception e);
+    }
+
+    public interface ExternalCallback {
+        /** Called on the main thread. */
+        void onFound(ApiProduct product);
+
+        /** Called on the main thread, or directly for a cached miss. */
+        void onNotFound();
+
+        /** Called on the main thread. */
+        void onFailure(Throwable t);
+    }
+
+    private static class Snapshot {
+        int version;
+        Map<String, Long> misses;
+    }
+
+    public BarcodeResolver(FirebaseFirestore db, MasterDataCache cache, MasterDataSync sync,
+            ProductApiService apiService, File snapshotFile) {
+        this.db = db;
+        this.cache = cache;
+        this.sync = sync;
+        this.apiService = apiService;
+        this.snapshotFile = snapshotFile;
+    }
+
+    /**
+     * Loads the cached products and the saved misses in the background; later calls do nothing.
+     */
+    public synchronized void warm() {
+        if (warmed)
+            return;
+        warmed = true;
+        executor.execute(() -> {
+            load();
+            reindex();
+        });
+    }
+
+    /**
+     * Warms the index and pulls the products changed since the last sync once; later calls do
+     * nothing.
+     */
+    public synchronized void start() {
+        warm();
+        if (started)
+            return;
+        started = true;
+        refresh(null);
+    }
+
+    /**
+     * Looks the code up in the inventory. A hit is delivered synchronously, on the calling thread;
+     * a miss is checked again after a sync and delivered on the main thread. Products handed out
+     * are copies the caller may modify.
+     */
+    public void findInInventory(String code, InventoryCallback callback) {
+        String key = BarcodeIndex.normalize(code);
+        if (key == null) {
+            callback.onNotFound();
+            return;
+        }
+        Product product = index.get(key);
+        if (product != null) {
+            callback.onFound(copyOf(product));
+            return;
+        }
+        start();
+        // The product may have been added since the last sync, e.g. on another device
+        refresh(() -> {
+            Product found = index.get(key);
+            if (found != null) {
+                Product copy = copyOf(found);
+                mainHandler.post(() -> callback.onFound(copy));
+            } else if (synced) {
+                mainHandler.post(callback::onNotFound);
+            } else {
+                mainHandler.post(() -> queryInventory(key, "productCode",
+                        () -> queryInventory(key, "barcode", callback::onNotFound, callback), callback));
+            }
+        });
+    }
+
+    /**
+     * Looks the code up in the external product database, answering known misses from the negative
+     * cache. Network and server errors are not cached.
+     */
+    public void lookupExternal(String code, ExternalCallback callback) {
+        String key = BarcodeIndex.normalize(code);
+        if (key == null || index.isKnownMiss(key, System.currentTimeMillis())) {
+            callback.onNotFound();
+            return;
+        }
+        apiService.getProductByBarcode(key).enqueue(new Callback<ProductResponse>() {
+            @Override
+            public void onResponse(Call<ProductResponse> call, Response<ProductResponse> response) {
+                ProductResponse body = response.body();
+                if (response.isSuccessful() && body != null && body.getStatus() == 1 && body.getProduct() != null) {
+                    callback.onFound(body.getProduct());
+                } else if (response.code() == 404 || (body != null && body.getStatus() == 0)) {
+                    index.recordMiss(key, System.currentTimeMillis() + MISS_TTL_MS);
+                    scheduleSave();
+                    callback.onNotFound();
+                } else {
+                    callback.onFailure(new IOException("Product lookup failed with HTTP " + response.code()));
+                }
+            }
+
+            @Override
+            public void onFailure(Call<ProductResponse> call, Throwable t) {
+                callback.onFailure(t);
+            }
+        });
+    }
+
+    private void queryInventory(String code, String field, Runnable onMiss, InventoryCallback callback) {
+        db.collection("products")
+                .whereEqualTo(field, code)
+                .limit(1)
+                .get()
+                .addOnSuccessListener(querySnapshot -> {
+                    if (querySnapshot.isEmpty()) {
+                        onMiss.run();
+                        return;
+                    }
+                    DocumentSnapshot document = querySnapshot.getDocuments().get(0);
+                    Product product = document.toObject(Product.class);
+                    if (product == null) {
+                        onMiss.run();
+                        return;
+                    }
+                    product.setDocumentId(document.getId());
+                    index(product);
+                    callback.onFound(copyOf(product));
+                })
+                .addOnFailureListener(callback::onFailure);
+    }
+
+    /**
+     * Pulls the products changed since the last sync into the cache and the index, then runs
+     * {@code then}, if any, on the index thread. A failed pull keeps serving what is cached.
+     */
+    private void refresh(Runnable then) {
+        syncExecutor.execute(() -> {
+            SyncClient.Changes<com.bsoft.inventorymanager.model.Product> changes;
+            try {
+                changes = sync.syncProducts();
+            } catch (Exception e) {
+                Log.w(TAG, "Product sync failed", e);
+                changes = null;
+            }
+            SyncClient.Changes<com.bsoft.inventorymanager.model.Product> pulled = changes;
+            executor.execute(() -> {
+                if (pulled != null)
+                    apply(pulled);
+                if (then != null)
+                    then.run();
+            });
+        });
+    }
+
+    private void apply(SyncClient.Changes<com.bsoft.inventorymanager.model.Product> changes) {
+        if (!synced || changes.getReplaced()) {
+            // The pull replaced the whole cache, e.g. a first download or one after tombstones
+            // expired, and lists no removals; read it back in full
+            reindex();
+            return;
+        }
+        for (com.bsoft.inventorymanager.model.Product product : changes.getChanged()) {
+            index(ModelMappers.INSTANCE.toJava(product));
+        }
+        for (String id : changes.getRemovedIds()) {
+            index.remove(id);
+        }
+    }
+
+    private void reindex() {
+        index.clearDocuments();
+        for (com.bsoft.inventorymanager.model.Product product : cache.products(null, null)) {
+            index(ModelMappers.INSTANCE.toJava(product));
+        }
+        // Only a completed download is a full product list
+        if (cache.watermark(MasterDataCache.PRODUCTS) != null) {
+            synced = true;
+        }
+        Log.d(TAG, "Indexed " + index.size() + " cached products");
+    }
+
+    private void index(Product product) {
+        index.put(product.getDocumentId(), product, product.getBarcode(), product.getProductCode());
+    }
+
+    private Product copyOf(Product product) {
+        return gson.fromJson(gson.toJsonTree(product), Product.class);
+    }
+
+    private void load() {
+        if (!snapshotFile.exists())
+            return;
+        try (Reader reader = new InputStreamReader(new FileInputStream(snapshotFile), StandardCharsets.UTF_8)) {
+            Snapshot saved = gson.fromJson(reader, Snapshot.class);
+            if (saved == null || saved.version != SNAPSHOT_VERSION)
+                return;
+            if (saved.misses != null) {
+                for (Map.Entry<String, Long> miss : saved.misses.entrySet()) {
+                    index.recordMiss(miss.getKey(), miss.getValue());
+                }
+            }
+        } catch (Exception e) {
+            Log.w(TAG, "Dropping unreadable barcode snapshot", e);
+            snapshotFile.delete();
+        }
+    }
+
+    private synchronized void scheduleSave() {
+        if (saveScheduled)
+            return;
+        saveScheduled = true;
+        executor.schedule(this::save, SAVE_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void save() {
+        synchronized (this) {
+            saveScheduled = false;
+        }
+        Snapshot snapshot = new Snapshot();
+        snapshot.version = SNAPSHOT_VERSION;
+        snapshot.misses = index.misses(System.currentTimeMillis());
+
+        File directory = snapshotFile.getParentFile();
+        if (directory != null && !directory.exists() && !directory.mkdirs()) {
+            Log.w(TAG, "Cannot create " + directory);
+            return;
+        }
+        File temp = new File(snapshotFile.getPath() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8)) {
+            gson.toJson(snapshot, writer);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write barcode snapshot", e);
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(snapshotFile)) {
+            temp.delete();
+        }
+    }
+}
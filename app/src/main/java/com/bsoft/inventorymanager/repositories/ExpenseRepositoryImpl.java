@@ -4,12 +4,17 @@ import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
 
 import com.bsoft.inventorymanager.models.Expense;
+import com.bsoft.inventorymanager.sync.OutboxOperation;
+import com.bsoft.inventorymanager.sync.OutboxWrite;
+import com.bsoft.inventorymanager.utils.OfflineSyncHelper;
+import com.bsoft.inventorymanager.utils.PagedList;
 import com.bsoft.inventorymanager.utils.PaginationHelper;
 import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.Query;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import javax.inject.Inject;
@@ -19,6 +24,7 @@ import javax.inject.Singleton;
 public class ExpenseRepositoryImpl implements ExpenseRepository {
 
     private final FirebaseFirestore db;
+    private final OfflineSyncHelper offlineSyncHelper;
     private final MutableLiveData<List<Expense>> expenses = new MutableLiveData<>(new ArrayList<>());
     private final MutableLiveData<Boolean> isLoading = new MutableLiveData<>(false);
 
@@ -26,8 +32,9 @@ public class ExpenseRepositoryImpl implements ExpenseRepository {
     private boolean isLastPageExpenses = false;
 
     @Inject
-    public ExpenseRepositoryImpl(FirebaseFirestore db) {
+    public ExpenseRepositoryImpl(FirebaseFirestore db, OfflineSyncHelper offlineSyncHelper) {
         this.db = db;
+        this.offlineSyncHelper = offlineSyncHelper;
     }
 
     @Override
@@ -91,29 +98,30 @@ public class ExpenseRepositoryImpl implements ExpenseRepository {
     @Override
     public void saveExpense(Expense expense, ExpenseCallback callback) {
         isLoading.setValue(true);
+        OutboxOperation operation;
         if (expense.getDocumentId() == null || expense.getDocumentId().isEmpty()) {
-            db.collection("expenses")
-                    .add(expense)
-                    .addOnSuccessListener(docRef -> {
-                        isLoading.setValue(false);
-                        callback.onSuccess();
-                    })
-                    .addOnFailureListener(e -> {
-                        isLoading.setValue(false);
-                        callback.onFailure(e);
-                    });
+            String id = db.collection("expenses").document().getId();
+            operation = new OutboxOperation(OutboxOperation.keyForCreate(OutboxOperation.Type.EXPENSE, id),
+                    OutboxOperation.Type.EXPENSE,
+                    Collections.singletonList(OutboxWrite.set("expenses", id, expense)));
         } else {
-            db.collection("expenses").document(expense.getDocumentId())
-                    .set(expense)
-                    .addOnSuccessListener(aVoid -> {
-                        isLoading.setValue(false);
-                        callback.onSuccess();
-                    })
-                    .addOnFailureListener(e -> {
-                        isLoading.setValue(false);
-                        callback.onFailure(e);
-                    });
+            operation = new OutboxOperation(OutboxOperation.newKey(OutboxOperation.Type.EXPENSE),
+                    OutboxOperation.Type.EXPENSE,
+                    Collections.singletonList(OutboxWrite.set("expenses", expense.getDocumentId(), expense)));
         }
+        offlineSyncHelper.enqueue(operation, new OfflineSyncHelper.EnqueueCallback() {
+            @Override
+            public void onQueued() {
+                isLoading.setValue(false);
+                callback.onSuccess();
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                isLoading.setValue(false);
+                callback.onFailure(e);
+            }
+        });
     }
 
     @Override
@@ -131,11 +139,12 @@ public class ExpenseRepositoryImpl implements ExpenseRepository {
                 });
     }
 
+    @SuppressWarnings("unchecked")
     private <T> void appendToList(MutableLiveData<List<T>> liveData, List<T> newItems) {
         List<T> currentList = liveData.getValue();
-        if (currentList == null)
-            currentList = new ArrayList<>();
-        currentList.addAll(newItems);
-        liveData.setValue(new ArrayList<>(currentList)); // Use new list to trigger observers correctly
+        PagedList<T> pages = currentList instanceof PagedList ? (PagedList<T>) currentList
+                : PagedList.<T>empty().append(currentList != null ? currentList : new ArrayList<>());
+        // New immutable list sharing the loaded pages, adding a page costs only the page
+        liveData.setValue(pages.append(newItems));
     }
 }
@@ -0,0 +1,172 @@
+package com.bsoft.inventorymanager.repositories;
+
+import android.util.Log;
+
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.bsoft.inventorymanager.cache.MasterDataCache;
+import com.bsoft.inventorymanager.cache.MasterDataSync;
+import com.bsoft.inventorymanager.cache.SyncClient;
+import com.bsoft.inventorymanager.models.Product;
+import com.bsoft.inventorymanager.search.TextSearchIndex;
+import com.bsoft.inventorymanager.utils.ModelMappers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+
+/**
+ * Offline product search over the on-device {@link MasterDataCache}.
+ * <p>
+ * The text index is built from the cache, so it is ready as soon as the rows are read from disk;
+ * {@link #refresh()} then pulls only the products changed since the last sync and applies them to
+ * both. Listing and filtering by brand or category are indexed queries on the cache. Searches never
+ * touch the network.
+ */
+@Singleton
+public class LocalProductSearchRepository {
+
+    private static final String TAG = "LocalProductSearch";
+
+    // Results for a non-empty query; a blank query lists every product
+    public static final int MAX_RESULTS = 200;
+
+    // Field order and weights: name, productCode, barcode, brand, category
+    private final TextSearchIndex<Product> index = new TextSearchIndex<>(4, 4, 4, 2, 1);
+    // Index updates and searches run here, in order, off the main thread
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    // Network syncs, kept off the search thread
+    private final ExecutorService syncExecutor = Executors.newSingleThreadExecutor();
+    private final MutableLiveData<Integer> indexVersion = new MutableLiveData<>(0);
+    private final MasterDataCache cache;
+    private final MasterDataSync sync;
+
+    private boolean started = false;
+    private volatile boolean ready = false;
+    private int version = 0;
+
+    public interface SearchCallback {
+        /** Called on a background thread. */
+        void onResults(List<Product> products);
+    }
+
+    public interface FiltersCallback {
+        /** Called on a background thread. */
+        void onFilters(List<String> brands, List<String> categories);
+    }
+
+    @Inject
+    public LocalProductSearchRepository(MasterDataCache cache, MasterDataSync sync) {
+        this.cache = cache;
+        this.sync = sync;
+    }
+
+    /**
+     * Loads the index from the cache once; later calls do nothing.
+     */
+    public synchronized void start() {
+        if (started)
+            return;
+        started = true;
+        executor.execute(() -> {
+            for (com.bsoft.inventorymanager.model.Product product : cache.products(null, null)) {
+                put(ModelMappers.INSTANCE.toJava(product));
+            }
+            // Only a completed download is a full product list
+            if (cache.watermark(MasterDataCache.PRODUCTS) != null) {
+                ready = true;
+                indexVersion.postValue(++version);
+            }
+        });
+    }
+
+    /**
+     * Pulls the products changed since the last sync into the cache and the index.
+     */
+    public void refresh() {
+        syncExecutor.execute(() -> {
+            SyncClient.Changes<com.bsoft.inventorymanager.model.Product> changes;
+            try {
+                changes = sync.syncProducts();
+            } catch (Exception e) {
+                // Offline or failed: keep serving what is cached
+                Log.w(TAG, "Product sync failed", e);
+                return;
+            }
+            executor.execute(() -> {
+                if (changes.getReplaced()) {
+                    // A full download lists no removals; products missing from it are gone
+                    index.clear();
+                    for (com.bsoft.inventorymanager.model.Product product : cache.products(null, null)) {
+                        put(ModelMappers.INSTANCE.toJava(product));
+                    }
+                } else {
+                    for (com.bsoft.inventorymanager.model.Product product : changes.getChanged()) {
+                        put(ModelMappers.INSTANCE.toJava(product));
+                    }
+                    for (String id : changes.getRemovedIds()) {
+                        index.remove(id);
+                    }
+                }
+                if (!ready || changes.getReplaced() || !changes.isEmpty()) {
+                    ready = true;
+                    indexVersion.postValue(++version);
+                }
+            });
+        });
+    }
+
+    private void put(Product product) {
+        index.put(product.getDocumentId(), product, product.getName(), product.getProductCode(),
+                product.getBarcode(), product.getBrand(), product.getCategory());
+    }
+
+    /**
+     * @return whether the index holds a full product list and can answer searches.
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Incremented whenever the index changes, so open searches can re-run.
+     */
+    public LiveData<Integer> getIndexVersion() {
+        return indexVersion;
+    }
+
+    /**
+     * @param brand    brand to match exactly, or null for all
+     * @param category category to match exactly, or null for all
+     */
+    public void search(String query, String brand, String category, SearchCallback callback) {
+        executor.execute(() -> {
+            if (query == null || query.trim().isEmpty()) {
+                // Indexed and already sorted by name
+                List<Product> results = new ArrayList<>();
+                for (com.bsoft.inventorymanager.model.Product product : cache.products(brand, category)) {
+                    results.add(ModelMappers.INSTANCE.toJava(product));
+                }
+                callback.onResults(results);
+                return;
+            }
+            List<Product> results = index.search(query,
+                    product -> (brand == null || brand.equals(product.getBrand()))
+                            && (category == null || category.equals(product.getCategory())),
+                    MAX_RESULTS);
+            callback.onResults(results);
+        });
+    }
+
+    /**
+     * Distinct brands and categories of the cached products, sorted.
+     */
+    public void loadFilters(FiltersCallback callback) {
+        executor.execute(() -> callback.onFilters(cache.productBrands(), cache.productCategories()));
+    }
+}
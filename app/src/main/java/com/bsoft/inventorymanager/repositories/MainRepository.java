@@ -5,8 +5,8 @@ import androidx.lifecycle.MutableLiveData;
 import com.bsoft.inventorymanager.models.Purchase;
 import com.bsoft.inventorymanager.models.Sale;
 import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.DocumentSnapshot;
-import com.bsoft.inventorymanager.utils.PaginationHelper;
+import com.google.firebase.firestore.Query;
+import com.bsoft.inventorymanager.utils.LivePagedQuery;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -15,11 +15,14 @@ import javax.inject.Inject;
 import javax.inject.Singleton;
 
 /**
- * MainRepository handles Sales and Purchases pagination.
+ * MainRepository handles Sales and Purchases pagination. The newest page of each is kept live by a
+ * snapshot listener (see {@link LivePagedQuery}).
  * Products are now managed by the shared ProductRepository (KMP).
  */
 @Singleton
 public class MainRepository {
+    private static final int PAGE_SIZE = 20;
+
     private final FirebaseFirestore db;
 
     // [KMP MIGRATION] Products removed - now handled by shared ProductRepository
@@ -30,6 +33,8 @@ public class MainRepository {
     @Inject
     public MainRepository(FirebaseFirestore db) {
         this.db = db;
+        this.salesQuery = createSalesQuery();
+        this.purchasesQuery = createPurchasesQuery();
     }
 
     public LiveData<List<Sale>> getSales() {
@@ -44,12 +49,9 @@ public class MainRepository {
         return isLoading;
     }
 
-    // Pagination State
-    private DocumentSnapshot lastVisibleSale;
-    private boolean isLastPageSales = false;
-
-    private DocumentSnapshot lastVisiblePurchase;
-    private boolean isLastPagePurchases = false;
+    // Newest page of each list stays live through a snapshot listener, older pages are cursor-paged
+    private final LivePagedQuery<Sale> salesQuery;
+    private final LivePagedQuery<Purchase> purchasesQuery;
 
     // Internal loading states to allow concurrent fetching
     private boolean loadingSales = false;
@@ -59,78 +61,58 @@ public class MainRepository {
         isLoading.postValue(loadingSales || loadingPurchases);
     }
 
-    public void loadNextPageSales() {
-        if (loadingSales || isLastPageSales)
-            return;
-
-        loadingSales = true;
-        updateGlobalLoadingState();
-
-        PaginationHelper.fetchPaginatedData("sales", lastVisibleSale, 20, "saleDate",
-                com.google.firebase.firestore.Query.Direction.DESCENDING, new PaginationHelper.PaginationCallback() {
+    private LivePagedQuery<Sale> createSalesQuery() {
+        return new LivePagedQuery<>(db.collection("sales").orderBy("saleDate", Query.Direction.DESCENDING),
+                "saleDate", PAGE_SIZE, doc -> {
+                    Sale item = doc.toObject(Sale.class);
+                    if (item != null) {
+                        item.setDocumentId(doc.getId());
+                    }
+                    return item;
+                }, new LivePagedQuery.Callback<Sale>() {
                     @Override
-                    public void onSuccess(List<DocumentSnapshot> documents, boolean hasMore) {
-                        if (!documents.isEmpty()) {
-                            lastVisibleSale = documents.get(documents.size() - 1);
-                            List<Sale> newItems = new ArrayList<>();
-                            for (DocumentSnapshot doc : documents) {
-                                Sale item = doc.toObject(Sale.class);
-                                if (item != null) {
-                                    item.setDocumentId(doc.getId());
-                                    newItems.add(item);
-                                }
-                            }
-                            appendToList(sales, newItems);
-                        }
-                        isLastPageSales = !hasMore;
-                        loadingSales = false;
-                        updateGlobalLoadingState();
+                    public void onItemsChanged(List<Sale> items) {
+                        sales.setValue(items);
                     }
 
                     @Override
-                    public void onError(Exception e) {
-                        loadingSales = false;
+                    public void onLoadingChanged(boolean loading) {
+                        loadingSales = loading;
                         updateGlobalLoadingState();
                     }
                 });
     }
 
-    public void loadNextPagePurchases() {
-        if (loadingPurchases || isLastPagePurchases)
-            return;
-
-        loadingPurchases = true;
-        updateGlobalLoadingState();
-
-        PaginationHelper.fetchPaginatedData("purchases", lastVisiblePurchase, 20, "purchaseDate",
-                com.google.firebase.firestore.Query.Direction.DESCENDING, new PaginationHelper.PaginationCallback() {
+    private LivePagedQuery<Purchase> createPurchasesQuery() {
+        return new LivePagedQuery<>(db.collection("purchases").orderBy("purchaseDate", Query.Direction.DESCENDING),
+                "purchaseDate", PAGE_SIZE, doc -> {
+                    Purchase item = doc.toObject(Purchase.class);
+                    if (item != null) {
+                        item.setDocumentId(doc.getId());
+                    }
+                    return item;
+                }, new LivePagedQuery.Callback<Purchase>() {
                     @Override
-                    public void onSuccess(List<DocumentSnapshot> documents, boolean hasMore) {
-                        if (!documents.isEmpty()) {
-                            lastVisiblePurchase = documents.get(documents.size() - 1);
-                            List<Purchase> newItems = new ArrayList<>();
-                            for (DocumentSnapshot doc : documents) {
-                                Purchase item = doc.toObject(Purchase.class);
-                                if (item != null) {
-                                    item.setDocumentId(doc.getId());
-                                    newItems.add(item);
-                                }
-                            }
-                            appendToList(purchases, newItems);
-                        }
-                        isLastPagePurchases = !hasMore;
-                        loadingPurchases = false;
-                        updateGlobalLoadingState();
+                    public void onItemsChanged(List<Purchase> items) {
+                        purchases.setValue(items);
                     }
 
                     @Override
-                    public void onError(Exception e) {
-                        loadingPurchases = false;
+                    public void onLoadingChanged(boolean loading) {
+                        loadingPurchases = loading;
                         updateGlobalLoadingState();
                     }
                 });
     }
 
+    public void loadNextPageSales() {
+        salesQuery.loadNextPage();
+    }
+
+    public void loadNextPagePurchases() {
+        purchasesQuery.loadNextPage();
+    }
+
     /**
      * Preloads Sales and Purchases data.
      * Products are loaded by MainViewModel via shared ProductRepository.
@@ -146,23 +128,21 @@ public class MainRepository {
         }
     }
 
+    /**
+     * Pull-to-refresh. The live heads already reflect server changes, so this only re-attaches a
+     * listener that never started or failed; loaded pages are kept.
+     */
+    public void refreshSalesAndPurchases() {
+        salesQuery.refresh();
+        purchasesQuery.refresh();
+    }
+
     public void resetPagination() {
+        salesQuery.stop();
+        purchasesQuery.stop();
+
         // Clear Lists
         sales.setValue(new ArrayList<>());
         purchases.setValue(new ArrayList<>());
-
-        // Reset state
-        lastVisibleSale = null;
-        isLastPageSales = false;
-        lastVisiblePurchase = null;
-        isLastPagePurchases = false;
-    }
-
-    private <T> void appendToList(MutableLiveData<List<T>> liveData, List<T> newItems) {
-        List<T> currentList = liveData.getValue();
-        if (currentList == null)
-            currentList = new ArrayList<>();
-        currentList.addAll(newItems);
-        liveData.setValue(new ArrayList<>(currentList));
     }
 }
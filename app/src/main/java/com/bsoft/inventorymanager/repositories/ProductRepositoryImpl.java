@@ -1,18 +1,26 @@
 package com.bsoft.inventorymanager.repositories;
 
+import com.bsoft.inventorymanager.cache.MasterDataSync;
+import com.bsoft.inventorymanager.cache.SyncClient;
 import com.bsoft.inventorymanager.models.Product;
+import com.bsoft.inventorymanager.search.ProductSearch;
 import com.bsoft.inventorymanager.utils.PaginationHelper;
+import com.google.firebase.firestore.DocumentReference;
 import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldValue;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.Query;
 import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.SetOptions;
+import com.google.firebase.firestore.WriteBatch;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
-import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -21,10 +29,14 @@ import javax.inject.Singleton;
 public class ProductRepositoryImpl implements ProductRepository {
 
     private final FirebaseFirestore db;
+    private final MasterDataSync masterDataSync;
+    // Cache reads and syncs, kept off the main thread
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
 
     @Inject
-    public ProductRepositoryImpl(FirebaseFirestore db) {
+    public ProductRepositoryImpl(FirebaseFirestore db, MasterDataSync masterDataSync) {
         this.db = db;
+        this.masterDataSync = masterDataSync;
     }
 
     @Override
@@ -46,12 +58,11 @@ public class ProductRepositoryImpl implements ProductRepository {
             query = query.whereEqualTo("category", category);
         }
 
-        // Note: Firestore doesn't support easy case-insensitive contains search.
-        // For localized search query, we might still need some client-side or separate
-        // logic.
-        // For now, we apply brand/category filters at server side if possible.
-        // If searchQuery is present, we might have to fetch more and filter locally or
-        // use a trick.
+        // Search runs against the server-maintained token index, so pages only hold matches
+        String searchToken = ProductSearch.queryToken(searchQuery);
+        if (searchToken != null) {
+            query = query.whereArrayContains(ProductSearch.FIELD, searchToken);
+        }
 
         PaginationHelper.fetchPaginatedData(query, lastVisible, pageSize, new PaginationHelper.PaginationCallback() {
             @Override
@@ -95,23 +106,18 @@ public class ProductRepositoryImpl implements ProductRepository {
     }
 
     private void fetchFromAllProducts(UniqueFieldsCallback callback) {
-        db.collection("products").get().addOnSuccessListener(queryDocumentSnapshots -> {
-            Set<String> brands = new HashSet<>();
-            Set<String> categories = new HashSet<>();
-            for (DocumentSnapshot doc : queryDocumentSnapshots) {
-                String b = doc.getString("brand");
-                String c = doc.getString("category");
-                if (b != null && !b.isEmpty())
-                    brands.add(b);
-                if (c != null && !c.isEmpty())
-                    categories.add(c);
+        // Only the products changed since the last sync are downloaded; the lists come from the cache
+        executor.execute(() -> {
+            List<List<String>> filters;
+            try {
+                filters = masterDataSync.readProducts(
+                        cache -> Arrays.asList(cache.productBrands(), cache.productCategories()));
+            } catch (Exception e) {
+                callback.onError(e);
+                return;
             }
-            List<String> sortedBrands = new ArrayList<>(brands);
-            List<String> sortedCategories = new ArrayList<>(categories);
-            Collections.sort(sortedBrands);
-            Collections.sort(sortedCategories);
-            callback.onSuccess(sortedBrands, sortedCategories);
-        }).addOnFailureListener(callback::onError);
+            callback.onSuccess(filters.get(0), filters.get(1));
+        });
     }
 
     @Override
@@ -126,7 +132,13 @@ public class ProductRepositoryImpl implements ProductRepository {
         // Using a transaction would be best, but for now we'll do independent writes
         // to avoid complex transaction logic if metadata doc doesn't exist.
 
-        db.collection("products").document(product.getDocumentId()).set(product)
+        // Stamped in the same batch so delta syncs see the change
+        DocumentReference productRef = db.collection("products").document(product.getDocumentId());
+        WriteBatch batch = db.batch();
+        // Merged: fields the server keeps, e.g. stockShards and searchTokens, are not in the model
+        batch.set(productRef, product, SetOptions.merge());
+        batch.update(productRef, SyncClient.UPDATED_AT, FieldValue.serverTimestamp());
+        batch.commit()
                 .addOnSuccessListener(aVoid -> {
                     // Update metadata
                     updateMetadata(product.getBrand(), product.getCategory());
@@ -166,6 +178,7 @@ public class ProductRepositoryImpl implements ProductRepository {
             callback.onError(new IllegalArgumentException("Product ID cannot be null"));
             return;
         }
+        // The server records a tombstone, so other devices drop it on their next sync
         db.collection("products").document(product.getDocumentId()).delete()
                 .addOnSuccessListener(aVoid -> callback.onSuccess())
                 .addOnFailureListener(callback::onError);
@@ -41,5 +41,6 @@ public interface PurchaseRepository {
         void onFailure(Exception e);
     }
 
+    // Answers from the local cache, on a background thread
     void getSuppliers(SuppliersCallback callback);
 }
@@ -1,15 +1,21 @@
 package com.bsoft.inventorymanager.repositories;
 
+import com.bsoft.inventorymanager.cache.MasterDataSync;
 import com.bsoft.inventorymanager.models.Product;
 import com.bsoft.inventorymanager.models.Purchase;
 import com.bsoft.inventorymanager.models.PurchaseItem;
 import com.bsoft.inventorymanager.model.Supplier;
+import com.bsoft.inventorymanager.sync.OutboxOperation;
+import com.bsoft.inventorymanager.sync.OutboxWrite;
+import com.bsoft.inventorymanager.utils.OfflineSyncHelper;
 import com.google.firebase.firestore.DocumentReference;
-import com.google.firebase.firestore.FieldValue;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.WriteBatch;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -18,37 +24,54 @@ import javax.inject.Singleton;
 public class PurchaseRepositoryImpl implements PurchaseRepository {
 
     private final FirebaseFirestore db;
+    private final BarcodeResolver barcodeResolver;
+    private final OfflineSyncHelper offlineSyncHelper;
+    private final MasterDataSync masterDataSync;
+    // Cache reads and syncs, kept off the main thread
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
 
     @Inject
-    public PurchaseRepositoryImpl(FirebaseFirestore db) {
+    public PurchaseRepositoryImpl(FirebaseFirestore db, BarcodeResolver barcodeResolver,
+            OfflineSyncHelper offlineSyncHelper, MasterDataSync masterDataSync) {
         this.db = db;
+        this.barcodeResolver = barcodeResolver;
+        this.offlineSyncHelper = offlineSyncHelper;
+        this.masterDataSync = masterDataSync;
+        // Scanning screens use this repository; have the barcode index listening before the first scan
+        barcodeResolver.start();
     }
 
     @Override
     public void savePurchase(Purchase purchase, List<PurchaseItem> items, PurchaseCallback callback) {
-        WriteBatch batch = db.batch();
-        DocumentReference purchaseRef;
-
         if (purchase.getDocumentId() == null || purchase.getDocumentId().isEmpty()) {
-            purchaseRef = db.collection("purchases").document();
-            purchase.setDocumentId(purchaseRef.getId());
-        } else {
-            purchaseRef = db.collection("purchases").document(purchase.getDocumentId());
+            // Id assigned locally, so the purchase can be recorded without a connection
+            purchase.setDocumentId(db.collection("purchases").document().getId());
         }
 
-        batch.set(purchaseRef, purchase); // Save the Purchase document
+        List<OutboxWrite> writes = new ArrayList<>();
+        writes.add(OutboxWrite.set("purchases", purchase.getDocumentId(), purchase)); // Save the Purchase document
 
         // Update stock for each item (INCREMENT for purchases)
         for (PurchaseItem item : items) {
             if (item.getProductId() != null) {
-                DocumentReference productRef = db.collection("products").document(item.getProductId());
-                batch.update(productRef, "quantity", FieldValue.increment(item.getQuantity()));
+                writes.add(OutboxWrite.stock(item.getProductId(), item.getQuantity()));
             }
         }
 
-        batch.commit()
-                .addOnSuccessListener(aVoid -> callback.onSuccess(purchase.getDocumentId()))
-                .addOnFailureListener(callback::onFailure);
+        OutboxOperation operation = new OutboxOperation(
+                OutboxOperation.keyForCreate(OutboxOperation.Type.PURCHASE, purchase.getDocumentId()),
+                OutboxOperation.Type.PURCHASE, writes);
+        offlineSyncHelper.enqueue(operation, new OfflineSyncHelper.EnqueueCallback() {
+            @Override
+            public void onQueued() {
+                callback.onSuccess(purchase.getDocumentId());
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                callback.onFailure(e);
+            }
+        });
     }
 
     @Override
@@ -88,24 +111,22 @@ public class PurchaseRepositoryImpl implements PurchaseRepository {
 
     @Override
     public void getProductByBarcode(String barcode, ProductCallback callback) {
-        db.collection("products")
-                .whereEqualTo("productCode", barcode)
-                .limit(1)
-                .get()
-                .addOnSuccessListener(querySnapshot -> {
-                    if (!querySnapshot.isEmpty()) {
-                        Product product = querySnapshot.getDocuments().get(0).toObject(Product.class);
-                        if (product != null) {
-                            product.setDocumentId(querySnapshot.getDocuments().get(0).getId());
-                            callback.onSuccess(product);
-                        } else {
-                            callback.onFailure(new Exception("Product not found"));
-                        }
-                    } else {
-                        callback.onFailure(new Exception("Product not found"));
-                    }
-                })
-                .addOnFailureListener(callback::onFailure);
+        barcodeResolver.findInInventory(barcode, new BarcodeResolver.InventoryCallback() {
+            @Override
+            public void onFound(Product product) {
+                callback.onSuccess(product);
+            }
+
+            @Override
+            public void onNotFound() {
+                callback.onFailure(new Exception("Product not found"));
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                callback.onFailure(e);
+            }
+        });
     }
 
     @Override
@@ -129,66 +150,16 @@ public class PurchaseRepositoryImpl implements PurchaseRepository {
 
     @Override
     public void getSuppliers(SuppliersCallback callback) {
-        db.collection("suppliers")
-                .whereEqualTo("isActive", true)
-                .get()
-                .addOnSuccessListener(querySnapshot -> {
-                    List<Supplier> suppliers = new java.util.ArrayList<>();
-                    for (com.google.firebase.firestore.QueryDocumentSnapshot doc : querySnapshot) {
-                        // Manual mapping to handle Timestamp -> Long conversion
-                        Supplier s = new Supplier();
-                        s.setDocumentId(doc.getId());
-                        s.setName(doc.getString("name"));
-                        s.setContactNumber(doc.getString("contactNumber"));
-                        s.setAddress(doc.getString("address"));
-                        s.setAge(doc.getLong("age") != null ? doc.getLong("age").intValue() : 0);
-                        s.setPhoto(doc.getString("photo"));
-                        s.setActive(Boolean.TRUE.equals(doc.getBoolean("isActive")));
-                        s.setRating(doc.getDouble("rating") != null ? doc.getDouble("rating") : 0.0);
-                        s.setPaymentTerms(doc.getString("paymentTerms"));
-                        s.setLeadTime(doc.getLong("leadTime") != null ? doc.getLong("leadTime").intValue() : 0);
-                        s.setPerformanceScore(
-                                doc.getDouble("performanceScore") != null ? doc.getDouble("performanceScore") : 0.0);
-                        s.setPreferredSupplier(Boolean.TRUE.equals(doc.getBoolean("preferredSupplier")));
-                        s.setOutstandingPayment(
-                                doc.getDouble("outstandingPayment") != null ? doc.getDouble("outstandingPayment")
-                                        : 0.0);
-                        s.setContractDetails(doc.getString("contractDetails"));
-                        s.setProductsSupplied(doc.getString("productsSupplied"));
-
-                        // Handle Timestamps safely (can be Timestamp or Long)
-                        Object lastDeliveryObj = doc.get("lastDeliveryDate");
-                        long lastDeliveryTime = 0;
-                        if (lastDeliveryObj instanceof com.google.firebase.Timestamp) {
-                            lastDeliveryTime = ((com.google.firebase.Timestamp) lastDeliveryObj).toDate().getTime();
-                        } else if (lastDeliveryObj instanceof Number) {
-                            lastDeliveryTime = ((Number) lastDeliveryObj).longValue();
-                        }
-                        s.setLastDeliveryDate(lastDeliveryTime);
-
-                        s.setBankAccount(doc.getString("bankAccount"));
-                        s.setTaxId(doc.getString("taxId"));
-
-                        Object creationObj = doc.get("creationDate");
-                        long creationTime = 0;
-                        if (creationObj instanceof com.google.firebase.Timestamp) {
-                            creationTime = ((com.google.firebase.Timestamp) creationObj).toDate().getTime();
-                        } else if (creationObj instanceof Number) {
-                            creationTime = ((Number) creationObj).longValue();
-                        }
-                        s.setCreationDate(creationTime);
-
-                        s.setTotalSupplyAmount(
-                                doc.getDouble("totalSupplyAmount") != null ? doc.getDouble("totalSupplyAmount") : 0.0);
-                        s.setSupplyFrequency(
-                                doc.getLong("supplyFrequency") != null ? doc.getLong("supplyFrequency").intValue() : 0);
-                        s.setSupplierType(doc.getString("supplierType"));
-                        s.setSupplierTier(doc.getString("supplierTier"));
-
-                        suppliers.add(s);
-                    }
-                    callback.onSuccess(suppliers);
-                })
-                .addOnFailureListener(callback::onFailure);
+        // Only the suppliers changed since the last sync are downloaded; the list comes from the cache
+        executor.execute(() -> {
+            List<Supplier> suppliers;
+            try {
+                suppliers = masterDataSync.readSuppliers(cache -> cache.activeSuppliers(null));
+            } catch (Exception e) {
+                callback.onFailure(e);
+                return;
+            }
+            callback.onSuccess(suppliers);
+        });
     }
 }
@@ -10,6 +10,14 @@ public interface SaleRepository {
     interface SaleCallback {
         void onSuccess(String saleId);
 
+        /**
+         * The sale could not be committed now and waits in the offline outbox instead; it is
+         * applied, or reported as a conflict, once a connection is available.
+         */
+        default void onQueued(String saleId) {
+            onSuccess(saleId);
+        }
+
         void onFailure(Exception e);
     }
 
@@ -41,5 +49,6 @@ public interface SaleRepository {
         void onFailure(Exception e);
     }
 
+    // Answers from the local cache, on a background thread
     void getCustomers(CustomersCallback callback);
 }
@@ -1,14 +1,26 @@
 package com.bsoft.inventorymanager.repositories;
 
+import com.bsoft.inventorymanager.cache.MasterDataSync;
 import com.bsoft.inventorymanager.models.Product;
 import com.bsoft.inventorymanager.models.Sale;
 import com.bsoft.inventorymanager.models.SaleItem;
+import com.bsoft.inventorymanager.sync.OutboxOperation;
+import com.bsoft.inventorymanager.sync.OutboxWrite;
+import com.bsoft.inventorymanager.sync.SaleCommit;
+import com.bsoft.inventorymanager.sync.StockShards;
+import com.bsoft.inventorymanager.utils.ModelMappers;
+import com.bsoft.inventorymanager.utils.OfflineSyncHelper;
 import com.google.firebase.firestore.DocumentReference;
-import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.WriteBatch;
+import com.google.firebase.functions.FirebaseFunctions;
+import com.google.firebase.functions.FirebaseFunctionsException;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -17,94 +29,152 @@ import javax.inject.Singleton;
 public class SaleRepositoryImpl implements SaleRepository {
 
     private final FirebaseFirestore db;
+    private final FirebaseFunctions functions;
+    private final BarcodeResolver barcodeResolver;
+    private final OfflineSyncHelper offlineSyncHelper;
+    private final MasterDataSync masterDataSync;
+    // Cache reads and syncs, kept off the main thread
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
 
     @Inject
-    public SaleRepositoryImpl(FirebaseFirestore db) {
+    public SaleRepositoryImpl(FirebaseFirestore db, FirebaseFunctions functions, BarcodeResolver barcodeResolver,
+            OfflineSyncHelper offlineSyncHelper, MasterDataSync masterDataSync) {
         this.db = db;
+        this.functions = functions;
+        this.barcodeResolver = barcodeResolver;
+        this.offlineSyncHelper = offlineSyncHelper;
+        this.masterDataSync = masterDataSync;
+        // Scanning screens use this repository; have the barcode index listening before the first scan
+        barcodeResolver.start();
     }
 
     @Override
     public void saveSale(Sale sale, List<SaleItem> items, SaleCallback callback) {
-        WriteBatch batch = db.batch();
-        DocumentReference saleRef;
-
         if (sale.getDocumentId() == null || sale.getDocumentId().isEmpty()) {
-            saleRef = db.collection("sales").document();
-            sale.setDocumentId(saleRef.getId());
-        } else {
-            saleRef = db.collection("sales").document(sale.getDocumentId());
+            // Id assigned locally, so the sale can be recorded without a connection
+            sale.setDocumentId(db.collection("sales").document().getId());
+        }
+
+        if (offlineSyncHelper.isOffline()) {
+            enqueueSale(sale, items, callback);
+            return;
         }
 
-        batch.set(saleRef, sale); // Save the Sale document
+        // Stock is checked and taken on the server, in the same transaction that writes the sale
+        Map<String, Object> request = SaleCommit.request(sale, items);
+        functions.getHttpsCallable(SaleCommit.FUNCTION)
+                .call(request)
+                .addOnSuccessListener(result -> callback.onSuccess(sale.getDocumentId()))
+                .addOnFailureListener(e -> {
+                    if (isRejection(e)) {
+                        callback.onFailure(rejectionOf((FirebaseFunctionsException) e));
+                    } else {
+                        // Not answered: queue it. The commit and a replay share a receipt, so the
+                        // sale is applied once even if the call did reach the server.
+                        enqueueSale(sale, items, callback);
+                    }
+                });
+    }
+
+    private static boolean isRejection(Exception e) {
+        if (!(e instanceof FirebaseFunctionsException)) {
+            return false;
+        }
+        FirebaseFunctionsException.Code code = ((FirebaseFunctionsException) e).getCode();
+        return code == FirebaseFunctionsException.Code.FAILED_PRECONDITION
+                || code == FirebaseFunctionsException.Code.NOT_FOUND
+                || code == FirebaseFunctionsException.Code.INVALID_ARGUMENT
+                || code == FirebaseFunctionsException.Code.PERMISSION_DENIED
+                || code == FirebaseFunctionsException.Code.UNAUTHENTICATED;
+    }
+
+    private static Exception rejectionOf(FirebaseFunctionsException e) {
+        List<SaleCommit.Shortage> shortages = SaleCommit.shortages(e.getDetails());
+        return shortages.isEmpty() ? e : new Exception(SaleCommit.shortageMessage(shortages), e);
+    }
+
+    private void enqueueSale(Sale sale, List<SaleItem> items, SaleCallback callback) {
+        List<OutboxWrite> writes = new ArrayList<>();
+        writes.add(OutboxWrite.set("sales", sale.getDocumentId(), sale)); // Save the Sale document
 
         // Update stock for each item
         for (SaleItem item : items) {
             if (item.getProductId() != null) {
-                DocumentReference productRef = db.collection("products").document(item.getProductId());
-                batch.update(productRef, "quantity", FieldValue.increment(-item.getQuantity()));
+                writes.add(OutboxWrite.stock(item.getProductId(), -item.getQuantity()));
             }
         }
 
-        batch.commit()
-                .addOnSuccessListener(aVoid -> callback.onSuccess(sale.getDocumentId()))
-                .addOnFailureListener(callback::onFailure);
+        OutboxOperation operation = new OutboxOperation(
+                OutboxOperation.keyForCreate(OutboxOperation.Type.SALE, sale.getDocumentId()),
+                OutboxOperation.Type.SALE, writes);
+        offlineSyncHelper.enqueue(operation, new OfflineSyncHelper.EnqueueCallback() {
+            @Override
+            public void onQueued() {
+                callback.onQueued(sale.getDocumentId());
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                callback.onFailure(e);
+            }
+        });
     }
 
     @Override
     public void updateSale(Sale sale, List<SaleItem> items, SaleCallback callback) {
-        // which often just overwrote or was limited.
-
-        // Wait, looking at original CreateSaleActivity might be safer to see how it
-        // handled updates.
-        // It seems it called updateSaleInFirestore.
-        // Let's replicate strict save for now.
-
-        WriteBatch batch = db.batch();
-        DocumentReference saleRef = db.collection("sales").document(sale.getDocumentId());
-        batch.set(saleRef, sale);
-
-        // Note: Stock adjustment on 'edit' is complex (reverting old items, applying
-        // new).
-        // If the original activity handled it, we should port that logic.
-        // For this pass, we will implementation Save and GetProduct. Update might need
-        // more analysis.
-
-        batch.commit()
-                .addOnSuccessListener(aVoid -> callback.onSuccess(sale.getDocumentId()))
-                .addOnFailureListener(callback::onFailure);
+        // The server diffs the edit against the stored sale and applies only the net stock and
+        // customer changes, so an edit needs a connection rather than the outbox
+        functions.getHttpsCallable(SaleCommit.EDIT_FUNCTION)
+                .call(SaleCommit.request(sale, items))
+                .addOnSuccessListener(result -> callback.onSuccess(sale.getDocumentId()))
+                .addOnFailureListener(e -> callback.onFailure(e instanceof FirebaseFunctionsException
+                        ? rejectionOf((FirebaseFunctionsException) e) : e));
     }
 
     @Override
     public void getProductByBarcode(String barcode, ProductCallback callback) {
-        db.collection("products")
-                .whereEqualTo("productCode", barcode)
-                .limit(1)
-                .get()
-                .addOnSuccessListener(querySnapshot -> {
-                    if (!querySnapshot.isEmpty()) {
-                        Product product = querySnapshot.getDocuments().get(0).toObject(Product.class);
-                        if (product != null) {
-                            product.setDocumentId(querySnapshot.getDocuments().get(0).getId());
-                            callback.onSuccess(product);
-                        } else {
-                            callback.onFailure(new Exception("Product not found"));
-                        }
-                    } else {
-                        callback.onFailure(new Exception("Product not found"));
-                    }
-                })
-                .addOnFailureListener(callback::onFailure);
+        barcodeResolver.findInInventory(barcode, new BarcodeResolver.InventoryCallback() {
+            @Override
+            public void onFound(Product product) {
+                callback.onSuccess(product);
+            }
+
+            @Override
+            public void onNotFound() {
+                callback.onFailure(new Exception("Product not found"));
+            }
+
+            @Override
+            public void onFailure(Exception e) {
+                callback.onFailure(e);
+            }
+        });
     }
 
     @Override
     public void getProduct(String productId, ProductCallback callback) {
-        db.collection("products").document(productId).get()
+        DocumentReference productRef = db.collection("products").document(productId);
+        productRef.get()
                 .addOnSuccessListener(documentSnapshot -> {
                     if (documentSnapshot.exists()) {
                         Product product = documentSnapshot.toObject(Product.class);
                         if (product != null) {
                             product.setDocumentId(documentSnapshot.getId());
-                            callback.onSuccess(product);
+                            if (StockShards.shardCount(documentSnapshot.get(StockShards.SHARD_COUNT)) == 0) {
+                                callback.onSuccess(product);
+                                return;
+                            }
+                            // Hot product: part of its stock is still in the shards
+                            productRef.collection(StockShards.COLLECTION).get()
+                                    .addOnSuccessListener(shards -> {
+                                        List<Object> deltas = new ArrayList<>();
+                                        for (DocumentSnapshot shard : shards.getDocuments()) {
+                                            deltas.add(shard.get(StockShards.DELTA));
+                                        }
+                                        product.setQuantity((int) StockShards.stock(product.getQuantity(), deltas));
+                                        callback.onSuccess(product);
+                                    })
+                                    .addOnFailureListener(callback::onFailure);
                         } else {
                             callback.onFailure(new Exception("Product data error"));
                         }
@@ -136,19 +206,19 @@ public class SaleRepositoryImpl implements SaleRepository {
 
     @Override
     public void getCustomers(CustomersCallback callback) {
-        db.collection("customers")
-                .whereEqualTo("isActive", true)
-                .get()
-                .addOnSuccessListener(querySnapshot -> {
-                    List<com.bsoft.inventorymanager.models.Customer> customers = new java.util.ArrayList<>();
-                    for (com.google.firebase.firestore.QueryDocumentSnapshot doc : querySnapshot) {
-                        com.bsoft.inventorymanager.models.Customer c = doc
-                                .toObject(com.bsoft.inventorymanager.models.Customer.class);
-                        c.setDocumentId(doc.getId());
-                        customers.add(c);
-                    }
-                    callback.onSuccess(customers);
-                })
-                .addOnFailureListener(callback::onFailure);
+        // Only the customers changed since the last sync are downloaded; the list comes from the cache
+        executor.execute(() -> {
+            List<com.bsoft.inventorymanager.models.Customer> customers = new ArrayList<>();
+            try {
+                for (com.bsoft.inventorymanager.model.Customer customer
+                        : masterDataSync.readCustomers(cache -> cache.activeCustomers(null))) {
+                    customers.add(ModelMappers.INSTANCE.toJava(customer));
+                }
+            } catch (Exception e) {
+                callback.onFailure(e);
+                return;
+            }
+            callback.onSuccess(customers);
+        });
     }
 }
@@ -25,6 +25,7 @@ import androidx.lifecycle.ViewModelProvider;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import com.bsoft.inventorymanager.R;
+import com.bsoft.inventorymanager.images.ImageLoader;
 import com.google.android.material.bottomsheet.BottomSheetDialogFragment;
 import com.google.firebase.Timestamp;
 
@@ -151,9 +152,8 @@ public class AddEditEmployeeSheet extends BottomSheetDialogFragment implements P
             saveButton.setText("Save");
 
             if (currentEmployee.getPhoto() != null && !currentEmployee.getPhoto().isEmpty()) {
-                byte[] decodedString = Base64.decode(currentEmployee.getPhoto(), Base64.DEFAULT);
-                Bitmap decodedByte = android.graphics.BitmapFactory.decodeByteArray(decodedString, 0, decodedString.length);
-                employeeImageView.setImageBitmap(decodedByte);
+                ImageLoader.load(employeeImageView, currentEmployee.getDocumentId(), currentEmployee.getPhoto(), false,
+                        R.drawable.ic_customer, R.drawable.ic_customer);
                 this.imageBase64 = currentEmployee.getPhoto();
             }
 
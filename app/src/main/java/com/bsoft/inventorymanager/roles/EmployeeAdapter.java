@@ -2,8 +2,6 @@ package com.bsoft.inventorymanager.roles;
 
 import android.content.Context;
 import android.content.Intent;
-import android.graphics.BitmapFactory;
-import android.util.Base64;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -15,6 +13,7 @@ import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 import com.bsoft.inventorymanager.R;
+import com.bsoft.inventorymanager.images.ImageLoader;
 import com.google.android.material.chip.Chip;
 import com.google.android.material.chip.ChipGroup;
 
@@ -61,12 +60,8 @@ public class EmployeeAdapter extends ListAdapter<Employee, EmployeeAdapter.Emplo
         holder.textViewEmployeeName.setText(employee.getName());
         holder.textViewEmployeeDesignation.setText(employee.getDesignation());
 
-        if (employee.getPhoto() != null && !employee.getPhoto().isEmpty()) {
-            byte[] decodedString = Base64.decode(employee.getPhoto(), Base64.DEFAULT);
-            holder.employeePhoto.setImageBitmap(BitmapFactory.decodeByteArray(decodedString, 0, decodedString.length));
-        } else {
-            holder.employeePhoto.setImageResource(R.drawable.ic_customer);
-        }
+        ImageLoader.load(holder.employeePhoto, employee.getDocumentId(), employee.getPhoto(), true,
+                R.drawable.ic_customer, R.drawable.ic_customer);
 
         holder.itemView.setOnClickListener(v -> {
             Context context = v.getContext();
@@ -125,6 +120,12 @@ public class EmployeeAdapter extends ListAdapter<Employee, EmployeeAdapter.Emplo
         }
     }
 
+    @Override
+    public void onViewRecycled(@NonNull EmployeeViewHolder holder) {
+        super.onViewRecycled(holder);
+        ImageLoader.cancel(holder.employeePhoto);
+    }
+
     static class EmployeeViewHolder extends RecyclerView.ViewHolder {
         TextView textViewEmployeeName, textViewEmployeeDesignation;
         ImageButton buttonEditEmployee, buttonDeleteEmployee;
@@ -1,11 +1,9 @@
 package com.bsoft.inventorymanager.roles;
 
 import android.content.res.ColorStateList;
-import android.graphics.BitmapFactory;
 import android.graphics.Color;
 import android.graphics.Typeface;
 import android.os.Bundle;
-import android.util.Base64;
 import android.util.TypedValue;
 import android.view.View;
 import android.view.ViewGroup;
@@ -18,6 +16,7 @@ import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.bsoft.inventorymanager.R;
+import com.bsoft.inventorymanager.images.ImageLoader;
 import com.bsoft.inventorymanager.adapters.ActivityEventAdapter;
 import com.bsoft.inventorymanager.viewmodels.ActivityFeedViewModel;
 import com.google.android.material.chip.Chip;
@@ -88,12 +87,8 @@ public class EmployeeProfileActivity extends AppCompatActivity {
         age.setText("Age: " + employee.getAge());
         salary.setText(String.format("Salary: %.2f", employee.getSalary()));
 
-        if (employee.getPhoto() != null && !employee.getPhoto().isEmpty()) {
-            byte[] decodedString = Base64.decode(employee.getPhoto(), Base64.DEFAULT);
-            photo.setImageBitmap(BitmapFactory.decodeByteArray(decodedString, 0, decodedString.length));
-        } else {
-            photo.setImageResource(R.drawable.ic_customer);
-        }
+        ImageLoader.load(photo, employee.getDocumentId(), employee.getPhoto(), false, R.drawable.ic_customer,
+                R.drawable.ic_customer);
 
         populateCategorizedPermissions(employee);
     }
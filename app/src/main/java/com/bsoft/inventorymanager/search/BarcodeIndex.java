@@ -0,0 +1,159 @@
+package com.bsoft.inventorymanager.search;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory map from scanned codes (barcode, product code) to documents, plus a negative cache of
+ * codes an external lookup did not know.
+ * <p>
+ * A document owns every code it was last {@link #put} with. When two documents share a code the
+ * later put wins, and removing the earlier one leaves the code alone. Thread-safe; every operation
+ * is a hash lookup or proportional to the codes of one document.
+ *
+ * @param <T> the indexed document type
+ */
+public class BarcodeIndex<T> {
+
+    // Bounds the negative cache; the oldest misses are dropped first
+    static final int MAX_MISSES = 2_000;
+
+    private static final String[] NO_CODES = new String[0];
+
+    private static final class Entry<T> {
+        final String id;
+        final T value;
+
+        Entry(String id, T value) {
+            this.id = id;
+            this.value = value;
+        }
+    }
+
+    private final Map<String, Entry<T>> byCode = new HashMap<>();
+    private final Map<String, String[]> codesById = new HashMap<>();
+    // code -> expiry time, in insertion order
+    private final LinkedHashMap<String, Long> misses = new LinkedHashMap<>();
+
+    /**
+     * @return the lookup key for a scanned or typed code, or null if there is nothing to look up.
+     */
+    public static String normalize(String code) {
+        if (code == null)
+            return null;
+        String trimmed = code.trim();
+        return trimmed.isEmpty() ? null : trimmed;
+    }
+
+    public synchronized T get(String code) {
+        String key = normalize(code);
+        Entry<T> entry = key == null ? null : byCode.get(key);
+        return entry == null ? null : entry.value;
+    }
+
+    /**
+     * Adds or replaces a document under its codes; codes it no longer has are released.
+     */
+    public synchronized void put(String id, T value, String... codes) {
+        release(id);
+        List<String> owned = new ArrayList<>(codes.length);
+        Entry<T> entry = new Entry<>(id, value);
+        for (String code : codes) {
+            String key = normalize(code);
+            if (key == null || owned.contains(key))
+                continue;
+            byCode.put(key, entry);
+            misses.remove(key);
+            owned.add(key);
+        }
+        codesById.put(id, owned.toArray(NO_CODES));
+    }
+
+    public synchronized void remove(String id) {
+        release(id);
+    }
+
+    /**
+     * Drops every document; the negative cache is kept.
+     */
+    public synchronized void clearDocuments() {
+        byCode.clear();
+        codesById.clear();
+    }
+
+    public synchronized int size() {
+        return codesById.size();
+    }
+
+    /**
+     * @return one entry per document, for persisting the index.
+     */
+    public synchronized List<T> values() {
+        List<T> values = new ArrayList<>(codesById.size());
+        for (Map.Entry<String, String[]> owned : codesById.entrySet()) {
+            for (String code : owned.getValue()) {
+                Entry<T> entry = byCode.get(code);
+                if (entry != null && entry.id.equals(owned.getKey())) {
+                    values.add(entry.value);
+                    break;
+                }
+            }
+        }
+        return values;
+    }
+
+    /**
+     * @return whether an external lookup of the code failed before and the miss has not expired.
+     */
+    public synchronized boolean isKnownMiss(String code, long now) {
+        String key = normalize(code);
+        Long expiresAt = key == null ? null : misses.get(key);
+        if (expiresAt == null)
+            return false;
+        if (expiresAt <= now) {
+            misses.remove(key);
+            return false;
+        }
+        return true;
+    }
+
+    public synchronized void recordMiss(String code, long expiresAt) {
+        String key = normalize(code);
+        if (key == null)
+            return;
+        misses.remove(key);
+        misses.put(key, expiresAt);
+        Iterator<String> oldest = misses.keySet().iterator();
+        while (misses.size() > MAX_MISSES) {
+            oldest.next();
+            oldest.remove();
+        }
+    }
+
+    /**
+     * @return the unexpired misses, for persisting the negative cache.
+     */
+    public synchronized Map<String, Long> misses(long now) {
+        Map<String, Long> live = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> miss : misses.entrySet()) {
+            if (miss.getValue() > now)
+                live.put(miss.getKey(), miss.getValue());
+        }
+        return live;
+    }
+
+    private void release(String id) {
+        String[] codes = codesById.remove(id);
+        if (codes == null)
+            return;
+        for (String code : codes) {
+            Entry<T> entry = byCode.get(code);
+            if (entry != null && entry.id.equals(id))
+                byCode.remove(code);
+        }
+    }
+}
@@ -0,0 +1,518 @@
+package com.bsoft.inventorymanager.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+
+/**
+ * In-memory inverted index for instant, offline search over a few weighted text fields.
+ * <p>
+ * Field values are split into lowercase words ({@link ProductSearch#words}). Each distinct word is a
+ * term in a sorted dictionary with a posting list of {@code (document, field)} pairs, so a query
+ * word resolves to an exact term, a range of terms it prefixes, and (for words of 4+ characters)
+ * terms whose prefix is within edit distance 1, found through the ranges of the word's one-edit
+ * variants, or 2 from 8 characters on among terms sharing its first character. Typo matching only
+ * runs when prefixes find few documents. Every query word must match; documents are ranked by the
+ * sum over query words of their best {@code matchScore * fieldWeight}, then by the shorter,
+ * alphabetically first primary field.
+ * <p>
+ * Documents are updated in place: {@link #put} replaces a document's postings and {@link #remove}
+ * drops them, so snapshot deltas apply in time proportional to the changed documents.
+ * <p>
+ * All methods are synchronized; confine heavy use to a background thread.
+ */
+public class TextSearchIndex<T> {
+
+    static final int SCORE_EXACT = 4;
+    static final int SCORE_PREFIX = 3;
+    static final int SCORE_FUZZY = 1;
+
+    private static final int FIELD_BITS = 3;
+    private static final int FIELD_MASK = (1 << FIELD_BITS) - 1;
+    private static final int FUZZY_MIN_LENGTH = 4;
+    private static final int FUZZY_TWO_EDITS_MIN_LENGTH = 8;
+    private static final int FUZZY_MAX_PREFIX_HITS = 50;
+
+    private static final class Postings {
+        int[] items = new int[2];
+        int size;
+
+        void add(int posting) {
+            if (size == items.length) {
+                items = Arrays.copyOf(items, size * 2);
+            }
+            items[size++] = posting;
+        }
+
+        void remove(int posting) {
+            for (int i = 0; i < size; i++) {
+                if (items[i] == posting) {
+                    items[i] = items[--size];
+                    return;
+                }
+            }
+        }
+    }
+
+    private final int[] fieldWeights;
+    private final TreeMap<String, Postings> terms = new TreeMap<>();
+    private final Map<String, Integer> ordinals = new HashMap<>();
+    // Characters seen in any term, the substitution/insertion alphabet of typo matching
+    private final BitSet alphabet = new BitSet();
+
+    // Per-ordinal document state; ordinals of removed documents are reused
+    private Object[] items = new Object[16];
+    private String[] primaryText = new String[16];
+    private String[][] documentTerms = new String[16][];
+    private int[][] documentPostings = new int[16][];
+    private int[] freeOrdinals = new int[16];
+    private int freeCount;
+    private int nextOrdinal;
+
+    // Search scratch, indexed by ordinal
+    private int[] bestScore = new int[16];
+    private int[] totalScore = new int[16];
+    private int[] matchedWords = new int[16];
+    private int[] touched = new int[16];
+    private int touchedCount;
+    private int[] candidates = new int[16];
+
+    /**
+     * @param fieldWeights weight per field, in the order values are passed to {@link #put}. The first
+     *                     field is the primary one used to break ties. At most 8 fields.
+     */
+    public TextSearchIndex(int... fieldWeights) {
+        if (fieldWeights.length == 0 || fieldWeights.length > FIELD_MASK + 1)
+            throw new IllegalArgumentException("1 to " + (FIELD_MASK + 1) + " fields supported");
+        this.fieldWeights = fieldWeights.clone();
+    }
+
+    public synchronized int size() {
+        return ordinals.size();
+    }
+
+    public synchronized void clear() {
+        terms.clear();
+        ordinals.clear();
+        alphabet.clear();
+        Arrays.fill(items, null);
+        Arrays.fill(primaryText, null);
+        Arrays.fill(documentTerms, null);
+        Arrays.fill(documentPostings, null);
+        freeCount = 0;
+        nextOrdinal = 0;
+    }
+
+    /**
+     * Adds or replaces the document with the given id.
+     */
+    public synchronized void put(String id, T item, String... fieldValues) {
+        remove(id);
+
+        int ordinal = freeCount > 0 ? freeOrdinals[--freeCount] : nextOrdinal++;
+        ensureCapacity(ordinal + 1);
+        ordinals.put(id, ordinal);
+        items[ordinal] = item;
+        // Lowercased once so ranking ties compare with a plain compareTo
+        primaryText[ordinal] = fieldValues.length > 0 && fieldValues[0] != null
+                ? fieldValues[0].toLowerCase(Locale.ROOT) : "";
+
+        List<String> docTerms = new ArrayList<>();
+        List<Integer> docPostings = new ArrayList<>();
+        for (int field = 0; field < fieldValues.length && field < fieldWeights.length; field++) {
+            List<String> words = ProductSearch.words(fieldValues[field]);
+            for (String word : words) {
+                int posting = ordinal << FIELD_BITS | field;
+                // A word repeated within one field is posted once
+                if (indexOf(docTerms, docPostings, word, posting) >= 0)
+                    continue;
+                Postings postings = terms.get(word);
+                if (postings == null) {
+                    postings = new Postings();
+                    terms.put(word, postings);
+                }
+                postings.add(posting);
+                for (int i = 0; i < word.length(); i++) {
+                    alphabet.set(word.charAt(i));
+                }
+                docTerms.add(word);
+                docPostings.add(posting);
+            }
+        }
+        documentTerms[ordinal] = docTerms.toArray(new String[0]);
+        int[] postings = new int[docPostings.size()];
+        for (int i = 0; i < postings.length; i++) {
+            postings[i] = docPostings.get(i);
+        }
+        documentPostings[ordinal] = postings;
+    }
+
+    public synchronized void remove(String id) {
+        Integer ordinal = ordinals.remove(id);
+        if (ordinal == null)
+            return;
+        String[] docTerms = documentTerms[ordinal];
+        int[] postings = documentPostings[ordinal];
+        for (int i = 0; i < docTerms.length; i++) {
+            Postings termPostings = terms.get(docTerms[i]);
+            termPostings.remove(postings[i]);
+            if (termPostings.size == 0) {
+                terms.remove(docTerms[i]);
+            }
+        }
+        items[ordinal] = null;
+        primaryText[ordinal] = null;
+        documentTerms[ordinal] = null;
+        documentPostings[ordinal] = null;
+        if (freeCount == freeOrdinals.length) {
+            freeOrdinals = Arrays.copyOf(freeOrdinals, freeCount * 2);
+        }
+        freeOrdinals[freeCount++] = ordinal;
+    }
+
+    /**
+     * @param query  free text; blank returns every accepted document by primary field
+     * @param filter optional predicate a document must pass, e.g. brand/category equality
+     * @param limit  maximum number of results
+     * @return matching documents, best first
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized List<T> search(String query, Predicate<T> filter, int limit) {
+        List<String> words = ProductSearch.words(query);
+        if (words.isEmpty())
+            return listAll(filter, limit);
+
+        // Start from the most selective word: its postings give the candidates, the other words
+        // are then checked against each surviving candidate's own terms
+        String[] ordered = words.toArray(new String[0]);
+        int[] hits = new int[ordered.length];
+        for (int w = 0; w < ordered.length; w++) {
+            hits[w] = prefixHits(ordered[w]);
+        }
+        sortBySelectivity(ordered, hits);
+
+        touchedCount = 0;
+        collectBestScores(ordered[0], hits[0] < FUZZY_MAX_PREFIX_HITS);
+        int candidateCount = 0;
+        for (int i = 0; i < touchedCount; i++) {
+            int ordinal = touched[i];
+            matchedWords[ordinal] = 1;
+            totalScore[ordinal] = bestScore[ordinal];
+            bestScore[ordinal] = 0;
+            candidates[candidateCount++] = ordinal;
+        }
+        for (int w = 1; w < ordered.length; w++) {
+            boolean fuzzy = hits[w] < FUZZY_MAX_PREFIX_HITS;
+            for (int i = 0; i < candidateCount; i++) {
+                int ordinal = candidates[i];
+                // Only documents that matched every previous word stay in the running
+                if (matchedWords[ordinal] != w)
+                    continue;
+                int score = documentScore(ordinal, ordered[w], fuzzy);
+                if (score > 0) {
+                    matchedWords[ordinal] = w + 1;
+                    totalScore[ordinal] += score;
+                }
+            }
+        }
+
+        // Bounded heap keeps the best `limit` matches with the worst at the root, O(n log limit)
+        int required = ordered.length;
+        int[] heap = new int[Math.max(0, Math.min(limit, candidateCount))];
+        int heapSize = 0;
+        for (int i = 0; i < candidateCount; i++) {
+            int ordinal = candidates[i];
+            if (matchedWords[ordinal] == required && (filter == null || filter.test((T) items[ordinal]))) {
+                if (heapSize < heap.length) {
+                    heap[heapSize] = ordinal;
+                    siftUp(heap, heapSize++);
+                } else if (heapSize > 0 && ranksBefore(ordinal, heap[0])) {
+                    heap[0] = ordinal;
+                    siftDown(heap, heapSize);
+                }
+            }
+        }
+
+        Object[] ranked = new Object[heapSize];
+        for (int i = heapSize - 1; i >= 0; i--) {
+            ranked[i] = items[heap[0]];
+            heap[0] = heap[i];
+            siftDown(heap, i);
+        }
+        for (int i = 0; i < candidateCount; i++) {
+            matchedWords[candidates[i]] = 0;
+            totalScore[candidates[i]] = 0;
+        }
+        List<T> results = new ArrayList<>(heapSize);
+        for (Object item : ranked) {
+            results.add((T) item);
+        }
+        return results;
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<T> listAll(Predicate<T> filter, int limit) {
+        List<Integer> accepted = new ArrayList<>();
+        for (int ordinal : ordinals.values()) {
+            if (filter == null || filter.test((T) items[ordinal])) {
+                accepted.add(ordinal);
+            }
+        }
+        Collections.sort(accepted, (a, b) -> primaryText[a].compareTo(primaryText[b]));
+        List<T> results = new ArrayList<>(Math.min(limit, accepted.size()));
+        for (int i = 0; i < accepted.size() && i < limit; i++) {
+            results.add((T) items[accepted.get(i)]);
+        }
+        return results;
+    }
+
+    /**
+     * Higher score first, then the shorter and alphabetically first primary field.
+     */
+    private boolean ranksBefore(int a, int b) {
+        if (totalScore[a] != totalScore[b])
+            return totalScore[a] > totalScore[b];
+        int lengthA = primaryText[a].length();
+        int lengthB = primaryText[b].length();
+        if (lengthA != lengthB)
+            return lengthA < lengthB;
+        return primaryText[a].compareTo(primaryText[b]) < 0;
+    }
+
+    // Min-heap on rank: the root is the worst kept match
+    private void siftUp(int[] heap, int index) {
+        int ordinal = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!ranksBefore(heap[parent], ordinal))
+                break;
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = ordinal;
+    }
+
+    private void siftDown(int[] heap, int size) {
+        int index = 0;
+        int ordinal = heap[0];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size)
+                break;
+            if (child + 1 < size && ranksBefore(heap[child], heap[child + 1])) {
+                child++;
+            }
+            if (!ranksBefore(ordinal, heap[child]))
+                break;
+            heap[index] = heap[child];
+            index = child;
+        }
+        if (size > 0) {
+            heap[index] = ordinal;
+        }
+    }
+
+    /**
+     * @return the number of postings of terms the word prefixes, a cheap selectivity estimate.
+     */
+    private int prefixHits(String word) {
+        int hits = 0;
+        for (Postings postings : terms.subMap(word, word + Character.MAX_VALUE).values()) {
+            hits += postings.size;
+        }
+        return hits;
+    }
+
+    private static void sortBySelectivity(String[] words, int[] hits) {
+        for (int i = 1; i < words.length; i++) {
+            for (int j = i; j > 0 && hits[j] < hits[j - 1]; j--) {
+                String word = words[j];
+                words[j] = words[j - 1];
+                words[j - 1] = word;
+                int count = hits[j];
+                hits[j] = hits[j - 1];
+                hits[j - 1] = count;
+            }
+        }
+    }
+
+    /**
+     * @return the document's best weighted match for the word, 0 if none.
+     */
+    private int documentScore(int ordinal, String word, boolean fuzzy) {
+        String[] docTerms = documentTerms[ordinal];
+        int[] postings = documentPostings[ordinal];
+        int best = 0;
+        for (int i = 0; i < docTerms.length; i++) {
+            int score = termScore(word, docTerms[i], fuzzy) * fieldWeights[postings[i] & FIELD_MASK];
+            if (score > best) {
+                best = score;
+            }
+        }
+        return best;
+    }
+
+    private static int termScore(String word, String term, boolean fuzzy) {
+        if (term.startsWith(word))
+            return term.length() == word.length() ? SCORE_EXACT : SCORE_PREFIX;
+        if (!fuzzy || word.length() < FUZZY_MIN_LENGTH || term.charAt(0) != word.charAt(0))
+            return 0;
+        int maxEdits = word.length() >= FUZZY_TWO_EDITS_MIN_LENGTH ? 2 : 1;
+        if (term.length() + maxEdits < word.length())
+            return 0;
+        return prefixEditDistance(word, term, maxEdits) <= maxEdits ? SCORE_FUZZY : 0;
+    }
+
+    /**
+     * Fills {@link #bestScore} and {@link #touched} with each document's best match for one word.
+     */
+    private void collectBestScores(String word, boolean fuzzy) {
+        // Exact and prefix matches: the term range [word, word + U+FFFF)
+        SortedMap<String, Postings> prefixed = terms.subMap(word, word + Character.MAX_VALUE);
+        for (Map.Entry<String, Postings> entry : prefixed.entrySet()) {
+            int score = entry.getKey().length() == word.length() ? SCORE_EXACT : SCORE_PREFIX;
+            addPostings(entry.getValue(), score);
+        }
+
+        // Typo tolerance only where prefix matching finds little, so common words stay fast
+        if (!fuzzy || word.length() < FUZZY_MIN_LENGTH)
+            return;
+        if (word.length() < FUZZY_TWO_EDITS_MIN_LENGTH) {
+            // One edit: look up the term ranges of every one-edit variant instead of scanning terms
+            for (String variant : oneEditVariants(word)) {
+                for (Postings postings : terms.subMap(variant, variant + Character.MAX_VALUE).values()) {
+                    addPostings(postings, SCORE_FUZZY);
+                }
+            }
+            return;
+        }
+        String first = word.substring(0, 1);
+        SortedMap<String, Postings> sameInitial = terms.subMap(first, first + Character.MAX_VALUE);
+        for (Map.Entry<String, Postings> entry : sameInitial.entrySet()) {
+            String term = entry.getKey();
+            // Prefix matches are already in; typos are compared against the term's prefix
+            if (!term.startsWith(word) && termScore(word, term, true) == SCORE_FUZZY) {
+                addPostings(entry.getValue(), SCORE_FUZZY);
+            }
+        }
+    }
+
+    /**
+     * Every string within one edit of the word that is not already covered by its prefix range,
+     * reduced so no variant prefixes another: a term prefixed by any of them is a fuzzy match, and
+     * each such term lies in exactly one variant's range.
+     */
+    private TreeSet<String> oneEditVariants(String word) {
+        TreeSet<String> variants = new TreeSet<>();
+        int length = word.length();
+        for (int i = 0; i < length; i++) {
+            // Deleting the last character also covers substituting or appending after it
+            variants.add(word.substring(0, i) + word.substring(i + 1));
+            if (i + 1 < length) {
+                variants.add(word.substring(0, i) + word.charAt(i + 1) + word.charAt(i) + word.substring(i + 2));
+            }
+        }
+        for (int c = alphabet.nextSetBit(0); c >= 0; c = alphabet.nextSetBit(c + 1)) {
+            for (int i = 0; i < length - 1; i++) {
+                if (word.charAt(i) != c) {
+                    variants.add(word.substring(0, i) + (char) c + word.substring(i + 1));
+                }
+            }
+            for (int i = 0; i < length; i++) {
+                variants.add(word.substring(0, i) + (char) c + word.substring(i));
+            }
+        }
+        variants.remove("");
+        String kept = null;
+        for (Iterator<String> it = variants.iterator(); it.hasNext(); ) {
+            String variant = it.next();
+            // Sorted order puts every extension of a kept variant right behind it
+            if (kept != null && variant.startsWith(kept)) {
+                it.remove();
+            } else {
+                kept = variant;
+            }
+        }
+        return variants;
+    }
+
+    private void addPostings(Postings postings, int score) {
+        for (int i = 0; i < postings.size; i++) {
+            int posting = postings.items[i];
+            int ordinal = posting >>> FIELD_BITS;
+            int weighted = score * fieldWeights[posting & FIELD_MASK];
+            if (bestScore[ordinal] == 0) {
+                touched[touchedCount++] = ordinal;
+            }
+            if (weighted > bestScore[ordinal]) {
+                bestScore[ordinal] = weighted;
+            }
+        }
+    }
+
+    /**
+     * Smallest Levenshtein distance between {@code word} and any prefix of {@code term}, or
+     * {@code maxEdits + 1} once it is certain to exceed {@code maxEdits}.
+     */
+    static int prefixEditDistance(String word, String term, int maxEdits) {
+        int n = word.length();
+        int m = Math.min(term.length(), n + maxEdits);
+        int[] previous = new int[n + 1];
+        int[] current = new int[n + 1];
+        for (int i = 0; i <= n; i++) {
+            previous[i] = i;
+        }
+        // previous[n] after j term characters is the distance between word and term[0, j)
+        int best = previous[n];
+        for (int j = 1; j <= m; j++) {
+            current[0] = j;
+            int rowMin = current[0];
+            char termChar = term.charAt(j - 1);
+            for (int i = 1; i <= n; i++) {
+                int cost = word.charAt(i - 1) == termChar ? 0 : 1;
+                current[i] = Math.min(Math.min(current[i - 1] + 1, previous[i] + 1), previous[i - 1] + cost);
+                rowMin = Math.min(rowMin, current[i]);
+            }
+            best = Math.min(best, current[n]);
+            if (rowMin > maxEdits)
+                break;
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return Math.min(best, maxEdits + 1);
+    }
+
+    private static int indexOf(List<String> docTerms, List<Integer> docPostings, String word, int posting) {
+        for (int i = 0; i < docTerms.size(); i++) {
+            if (docPostings.get(i) == posting && docTerms.get(i).equals(word))
+                return i;
+        }
+        return -1;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= items.length)
+            return;
+        int newCapacity = Math.max(capacity, items.length * 2);
+        items = Arrays.copyOf(items, newCapacity);
+        primaryText = Arrays.copyOf(primaryText, newCapacity);
+        documentTerms = Arrays.copyOf(documentTerms, newCapacity);
+        documentPostings = Arrays.copyOf(documentPostings, newCapacity);
+        bestScore = Arrays.copyOf(bestScore, newCapacity);
+        totalScore = Arrays.copyOf(totalScore, newCapacity);
+        matchedWords = Arrays.copyOf(matchedWords, newCapacity);
+        touched = Arrays.copyOf(touched, newCapacity);
+        candidates = Arrays.copyOf(candidates, newCapacity);
+    }
+}
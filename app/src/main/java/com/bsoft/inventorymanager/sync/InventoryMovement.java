@@ -0,0 +1,102 @@
+package com.bsoft.inventorymanager.sync;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The append-only inventory ledger: one document per sale, purchase, return, damage or adjustment,
+ * holding the stock change of every product it touched.
+ * <p>
+ * Stock itself is changed by increments written in the same commit, so recording a movement needs
+ * no reads and a many-line sale is one round trip. A movement's id is the key of the operation that
+ * made it (e.g. {@code sale_{id}}, also used by the server's commitSale), so it is written once.
+ * <p>
+ * Stock that predates the ledger has no opening movement, so {@link #netChanges} over a product's
+ * history is its change since then, not its stock; {@code quantity} stays the balance of record.
+ */
+public final class InventoryMovement {
+
+    public static final String COLLECTION = "inventory_movements";
+
+    public static final String TYPE = "type";
+    public static final String REFERENCE = "reference";
+    public static final String LINES = "lines";
+    public static final String PRODUCT_IDS = "productIds";
+    public static final String PRODUCT_ID = "productId";
+    public static final String DELTA = "delta";
+    public static final String USER_ID = "userId";
+    public static final String USER_NAME = "userName";
+    public static final String CREATED_AT = "createdAt";
+
+    private InventoryMovement() {
+    }
+
+    /**
+     * @return net stock change per product of the writes, in order of first appearance; products
+     *         whose changes cancel out are left out.
+     */
+    public static Map<String, Long> lines(List<OutboxWrite> writes) {
+        Map<String, Long> lines = new LinkedHashMap<>();
+        for (OutboxWrite write : writes) {
+            if (write.isStockChange()) {
+                lines.merge(write.getDocumentId(), write.getDelta().longValue(), Long::sum);
+            }
+        }
+        lines.values().removeIf(delta -> delta == 0);
+        return lines;
+    }
+
+    /**
+     * The movement document, without {@link #CREATED_AT}; the writer adds the server time.
+     *
+     * @param reference id of the document that caused the movement, e.g. the sale
+     * @param lines     stock change per product
+     */
+    public static Map<String, Object> document(String type, String reference, Map<String, Long> lines,
+            String userId, String userName) {
+        List<Map<String, Object>> entries = new ArrayList<>();
+        for (Map.Entry<String, Long> line : lines.entrySet()) {
+            Map<String, Object> entry = new HashMap<>();
+            entry.put(PRODUCT_ID, line.getKey());
+            entry.put(DELTA, line.getValue());
+            entries.add(entry);
+        }
+        Map<String, Object> document = new HashMap<>();
+        document.put(TYPE, type);
+        document.put(REFERENCE, reference);
+        document.put(LINES, entries);
+        // For array-contains queries of one product's history
+        document.put(PRODUCT_IDS, new ArrayList<>(lines.keySet()));
+        document.put(USER_ID, userId);
+        document.put(USER_NAME, userName);
+        return document;
+    }
+
+    /**
+     * @param movements movement documents, e.g. one product's history
+     * @return the summed stock change per product
+     */
+    public static Map<String, Long> netChanges(List<Map<String, Object>> movements) {
+        Map<String, Long> net = new LinkedHashMap<>();
+        for (Map<String, Object> movement : movements) {
+            Object lines = movement.get(LINES);
+            if (!(lines instanceof List)) {
+                continue;
+            }
+            for (Object line : (List<?>) lines) {
+                if (!(line instanceof Map)) {
+                    continue;
+                }
+                Object productId = ((Map<?, ?>) line).get(PRODUCT_ID);
+                Object delta = ((Map<?, ?>) line).get(DELTA);
+                if (productId instanceof String && delta instanceof Number) {
+                    net.merge((String) productId, ((Number) delta).longValue(), Long::sum);
+                }
+            }
+        }
+        return net;
+    }
+}
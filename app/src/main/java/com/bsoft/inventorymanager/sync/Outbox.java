@@ -0,0 +1,281 @@
+package com.bsoft.inventorymanager.sync;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Durable, ordered queue of {@link OutboxOperation}s not yet applied to Firestore.
+ * <p>
+ * The whole queue is rewritten to one file (temp file + rename) on every change, before the change
+ * is reported, so an operation accepted by {@link #enqueue} survives the process being killed. The
+ * queue is expected to stay small: it only holds what could not be synced yet.
+ * <p>
+ * Thread-safe. Blocking I/O; call off the main thread.
+ */
+public class Outbox {
+
+    /** Firestore's limit of writes per commit, receipts included. */
+    public static final int MAX_BATCH_WRITES = 500;
+    private static final int FILE_VERSION = 1;
+
+    private final File file;
+    private final Gson gson = new Gson();
+    private final List<OutboxOperation> operations = new ArrayList<>();
+    private boolean loaded;
+    private long nextSequence = 1;
+    private long lastSyncedAt;
+    private long appliedCount;
+    private long failedAttempts;
+
+    private static class Snapshot {
+        int version;
+        long nextSequence;
+        long lastSyncedAt;
+        long appliedCount;
+        long failedAttempts;
+        List<OutboxOperation> operations;
+    }
+
+    public static class Stats {
+        /** Operations waiting to be applied. */
+        public final int depth;
+        /** Operations parked until someone resolves their conflict. */
+        public final int conflicts;
+        /** When the oldest waiting operation was recorded; 0 if none. */
+        public final long oldestPendingAt;
+        public final long lastSyncedAt;
+        public final long appliedCount;
+        public final long failedAttempts;
+
+        Stats(int depth, int conflicts, long oldestPendingAt, long lastSyncedAt, long appliedCount,
+                long failedAttempts) {
+            this.depth = depth;
+            this.conflicts = conflicts;
+            this.oldestPendingAt = oldestPendingAt;
+            this.lastSyncedAt = lastSyncedAt;
+            this.appliedCount = appliedCount;
+            this.failedAttempts = failedAttempts;
+        }
+
+        /**
+         * @return how long the oldest unsynced operation has been waiting.
+         */
+        public long getSyncLagMs(long now) {
+            return depth == 0 && conflicts == 0 ? 0 : Math.max(0, now - oldestPendingAt);
+        }
+    }
+
+    public Outbox(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Appends the operation and persists the queue.
+     *
+     * @return false if an operation with the same key is already queued.
+     */
+    public synchronized boolean enqueue(OutboxOperation operation, long now) throws IOException {
+        load();
+        if (operation.getCommitWrites() > MAX_BATCH_WRITES)
+            throw new IllegalArgumentException("Operation exceeds " + MAX_BATCH_WRITES + " writes");
+        for (OutboxOperation queued : operations) {
+            if (queued.getKey().equals(operation.getKey()))
+                return false;
+        }
+        operation.enqueued(nextSequence++, now);
+        operations.add(operation);
+        try {
+            save();
+        } catch (IOException e) {
+            // Not durable, so not accepted
+            operations.remove(operation);
+            throw e;
+        }
+        return true;
+    }
+
+    /**
+     * @return the oldest pending operations, in order, that fit in one commit of at most
+     *         {@code maxWrites} writes including their receipts and ledger entries. Operations that
+     *         write a document of a conflicting operation wait until the conflict is resolved, so
+     *         each document still sees its operations in order.
+     */
+    public synchronized List<OutboxOperation> nextBatch(int maxWrites) {
+        load();
+        List<OutboxOperation> batch = new ArrayList<>();
+        Set<String> blocked = new HashSet<>();
+        int writes = 0;
+        for (OutboxOperation operation : operations) {
+            Set<String> paths = operation.getDocumentPaths();
+            if (operation.getState() != OutboxOperation.State.PENDING || !Collections.disjoint(paths, blocked)) {
+                // Whatever follows on these documents waits too
+                blocked.addAll(paths);
+                continue;
+            }
+            int cost = operation.getCommitWrites();
+            if (writes + cost > maxWrites && !batch.isEmpty())
+                break;
+            batch.add(operation);
+            writes += cost;
+        }
+        return batch;
+    }
+
+    /**
+     * Removes operations that are now applied (or were already applied before).
+     */
+    public synchronized void applied(Collection<String> keys, long now) throws IOException {
+        load();
+        Set<String> done = new HashSet<>(keys);
+        Iterator<OutboxOperation> it = operations.iterator();
+        while (it.hasNext()) {
+            if (done.contains(it.next().getKey())) {
+                it.remove();
+                appliedCount++;
+            }
+        }
+        lastSyncedAt = now;
+        save();
+    }
+
+    public synchronized void conflicted(String key, String reason) throws IOException {
+        OutboxOperation operation = find(key);
+        if (operation != null) {
+            operation.conflicted(reason);
+            save();
+        }
+    }
+
+    /**
+     * Records a failed attempt; the operations stay queued, in place.
+     */
+    public synchronized void failed(Collection<String> keys, String error) throws IOException {
+        load();
+        for (OutboxOperation operation : operations) {
+            if (keys.contains(operation.getKey())) {
+                operation.failed(error);
+            }
+        }
+        failedAttempts++;
+        save();
+    }
+
+    /**
+     * Settles a conflict: either replay the operation again, letting stock go negative (the sale
+     * really happened), or drop it.
+     *
+     * @return false if there is no such conflicting operation.
+     */
+    public synchronized boolean resolve(String key, boolean applyAnyway) throws IOException {
+        OutboxOperation operation = find(key);
+        if (operation == null || operation.getState() != OutboxOperation.State.CONFLICT)
+            return false;
+        if (applyAnyway) {
+            operation.retry(true);
+        } else {
+            operations.remove(operation);
+        }
+        save();
+        return true;
+    }
+
+    public synchronized List<OutboxOperation> conflicts() {
+        load();
+        List<OutboxOperation> conflicts = new ArrayList<>();
+        for (OutboxOperation operation : operations) {
+            if (operation.getState() == OutboxOperation.State.CONFLICT) {
+                conflicts.add(operation);
+            }
+        }
+        return conflicts;
+    }
+
+    public synchronized Stats stats() {
+        load();
+        int depth = 0;
+        int conflicts = 0;
+        long oldest = 0;
+        for (OutboxOperation operation : operations) {
+            if (operation.getState() == OutboxOperation.State.PENDING) {
+                depth++;
+            } else {
+                conflicts++;
+            }
+            if (oldest == 0 || operation.getCreatedAt() < oldest) {
+                oldest = operation.getCreatedAt();
+            }
+        }
+        return new Stats(depth, conflicts, oldest, lastSyncedAt, appliedCount, failedAttempts);
+    }
+
+    private OutboxOperation find(String key) {
+        load();
+        for (OutboxOperation operation : operations) {
+            if (operation.getKey().equals(key))
+                return operation;
+        }
+        return null;
+    }
+
+    private void load() {
+        if (loaded)
+            return;
+        loaded = true;
+        if (!file.exists())
+            return;
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            Snapshot saved = gson.fromJson(reader, Snapshot.class);
+            if (saved == null || saved.version != FILE_VERSION)
+                return;
+            nextSequence = saved.nextSequence;
+            lastSyncedAt = saved.lastSyncedAt;
+            appliedCount = saved.appliedCount;
+            failedAttempts = saved.failedAttempts;
+            if (saved.operations != null) {
+                operations.addAll(saved.operations);
+            }
+        } catch (IOException | JsonParseException e) {
+            // Keep the unreadable file for inspection rather than overwriting it with an empty queue
+            file.renameTo(new File(file.getPath() + ".corrupt-" + System.currentTimeMillis()));
+        }
+    }
+
+    private void save() throws IOException {
+        Snapshot snapshot = new Snapshot();
+        snapshot.version = FILE_VERSION;
+        snapshot.nextSequence = nextSequence;
+        snapshot.lastSyncedAt = lastSyncedAt;
+        snapshot.appliedCount = appliedCount;
+        snapshot.failedAttempts = failedAttempts;
+        snapshot.operations = operations;
+
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            gson.toJson(snapshot, writer);
+            writer.flush();
+            out.getFD().sync();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Cannot rename " + temp);
+        }
+    }
+}
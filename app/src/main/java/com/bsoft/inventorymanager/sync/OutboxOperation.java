@@ -0,0 +1,149 @@
+package com.bsoft.inventorymanager.sync;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * A business write (a sale, a purchase, ...) waiting in the {@link Outbox}: all of its document
+ * writes are applied together, exactly once, in the order operations were recorded.
+ * <p>
+ * The key is the idempotency key: replay records it in a receipt document in the same transaction
+ * as the writes, so an operation whose acknowledgement was lost is not applied twice, and
+ * enqueueing the same key again is ignored.
+ */
+public final class OutboxOperation {
+
+    public enum Type {
+        SALE, PURCHASE, SALE_RETURN, PURCHASE_RETURN, DAMAGE, EXPENSE
+    }
+
+    public enum State {
+        PENDING,
+        /**
+         * Not applied because it conflicts with the server state; waits for {@link Outbox#resolve},
+         * and so do the later operations on any of its documents.
+         */
+        CONFLICT
+    }
+
+    private String key;
+    private Type type;
+    private List<OutboxWrite> writes;
+    private long sequence;
+    private long createdAt;
+    private State state = State.PENDING;
+    private int attempts;
+    private String lastError;
+    private String conflict;
+    private boolean allowNegativeStock;
+
+    private OutboxOperation() {
+    }
+
+    public OutboxOperation(String key, Type type, List<OutboxWrite> writes) {
+        if (writes.isEmpty())
+            throw new IllegalArgumentException("Operation without writes");
+        this.key = key;
+        this.type = type;
+        this.writes = new ArrayList<>(writes);
+    }
+
+    /**
+     * Key of the operation that creates the document: saving the same new document twice, e.g.
+     * after a double tap or a retry, is one operation.
+     */
+    public static String keyForCreate(Type type, String documentId) {
+        return type.name().toLowerCase() + "_" + documentId;
+    }
+
+    /**
+     * Key of an operation that may legitimately happen more than once, such as an edit.
+     */
+    public static String newKey(Type type) {
+        return type.name().toLowerCase() + "_" + UUID.randomUUID();
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return documents the replay writes for this operation: its writes, its receipt and, if it
+     *         changes stock, its {@link InventoryMovement}.
+     */
+    public int getCommitWrites() {
+        return writes.size() + 1 + (InventoryMovement.lines(writes).isEmpty() ? 0 : 1);
+    }
+
+    public List<OutboxWrite> getWrites() {
+        return Collections.unmodifiableList(writes);
+    }
+
+    /**
+     * @return paths of the documents the operation writes.
+     */
+    public Set<String> getDocumentPaths() {
+        Set<String> paths = new LinkedHashSet<>();
+        for (OutboxWrite write : writes) {
+            paths.add(write.getPath());
+        }
+        return paths;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public String getConflict() {
+        return conflict;
+    }
+
+    public boolean isAllowNegativeStock() {
+        return allowNegativeStock;
+    }
+
+    void enqueued(long sequence, long createdAt) {
+        this.sequence = sequence;
+        this.createdAt = createdAt;
+    }
+
+    void failed(String error) {
+        attempts++;
+        lastError = error;
+    }
+
+    void conflicted(String reason) {
+        state = State.CONFLICT;
+        conflict = reason;
+    }
+
+    void retry(boolean allowNegativeStock) {
+        state = State.PENDING;
+        conflict = null;
+        this.allowNegativeStock = allowNegativeStock;
+    }
+}
@@ -0,0 +1,155 @@
+package com.bsoft.inventorymanager.sync;
+
+import com.google.gson.Gson;
+
+/**
+ * One document write of an {@link OutboxOperation}, in a form that survives a process restart.
+ * <p>
+ * Models are stored as JSON with their class name and turned back into the same model at replay,
+ * so Firestore maps them exactly as a direct write would.
+ */
+public final class OutboxWrite {
+
+    public enum Kind {
+        /** Replace the document with the model. */
+        SET,
+        /** Add the delta to a numeric field. */
+        INCREMENT,
+        /**
+         * Add the delta to {@code field} of the element of the list {@code arrayField} whose
+         * {@code matchField} equals {@code matchValue}; e.g. returnedQuantity of a sale item.
+         */
+        INCREMENT_ITEM
+    }
+
+    public static final String PRODUCTS = "products";
+    public static final String QUANTITY = "quantity";
+
+    private static final Gson gson = new Gson();
+
+    private Kind kind;
+    private String collection;
+    private String documentId;
+    private String payloadClass;
+    private String payload;
+    private String field;
+    // Exactly one is set; integer fields such as stock must stay integers in Firestore
+    private Long longDelta;
+    private Double doubleDelta;
+    private String arrayField;
+    private String matchField;
+    private String matchValue;
+    // INCREMENT_ITEM: the item field the result may not exceed, e.g. the sold quantity
+    private String limitField;
+
+    private OutboxWrite() {
+    }
+
+    public static OutboxWrite set(String collection, String documentId, Object model) {
+        OutboxWrite write = new OutboxWrite();
+        write.kind = Kind.SET;
+        write.collection = collection;
+        write.documentId = documentId;
+        write.payloadClass = model.getClass().getName();
+        write.payload = gson.toJson(model);
+        return write;
+    }
+
+    public static OutboxWrite increment(String collection, String documentId, String field, long delta) {
+        OutboxWrite write = new OutboxWrite();
+        write.kind = Kind.INCREMENT;
+        write.collection = collection;
+        write.documentId = documentId;
+        write.field = field;
+        write.longDelta = delta;
+        return write;
+    }
+
+    public static OutboxWrite increment(String collection, String documentId, String field, double delta) {
+        OutboxWrite write = new OutboxWrite();
+        write.kind = Kind.INCREMENT;
+        write.collection = collection;
+        write.documentId = documentId;
+        write.field = field;
+        write.doubleDelta = delta;
+        return write;
+    }
+
+    /**
+     * Stock change of a product; replay reports a conflict if it would take stock below zero.
+     */
+    public static OutboxWrite stock(String productId, long delta) {
+        return increment(PRODUCTS, productId, QUANTITY, delta);
+    }
+
+    public static OutboxWrite incrementItem(String collection, String documentId, String arrayField,
+            String matchField, String matchValue, String field, long delta, String limitField) {
+        OutboxWrite write = new OutboxWrite();
+        write.kind = Kind.INCREMENT_ITEM;
+        write.collection = collection;
+        write.documentId = documentId;
+        write.arrayField = arrayField;
+        write.matchField = matchField;
+        write.matchValue = matchValue;
+        write.field = field;
+        write.longDelta = delta;
+        write.limitField = limitField;
+        return write;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public String getCollection() {
+        return collection;
+    }
+
+    public String getDocumentId() {
+        return documentId;
+    }
+
+    public String getPath() {
+        return collection + "/" + documentId;
+    }
+
+    public String getField() {
+        return field;
+    }
+
+    /**
+     * @return a Long for integer increments, a Double otherwise.
+     */
+    public Number getDelta() {
+        if (longDelta != null)
+            return longDelta;
+        return doubleDelta != null ? doubleDelta : 0L;
+    }
+
+    public String getArrayField() {
+        return arrayField;
+    }
+
+    public String getMatchField() {
+        return matchField;
+    }
+
+    public String getMatchValue() {
+        return matchValue;
+    }
+
+    public String getLimitField() {
+        return limitField;
+    }
+
+    /**
+     * @return the model stored by {@link #set}, as an instance of its original class.
+     */
+    public Object getModel() throws ClassNotFoundException {
+        return gson.fromJson(payload, Class.forName(payloadClass));
+    }
+
+    public boolean isStockChange() {
+        return kind == Kind.INCREMENT && PRODUCTS.equals(collection) && QUANTITY.equals(field);
+    }
+}
@@ -0,0 +1,197 @@
+package com.bsoft.inventorymanager.sync;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Decides, from the server state read inside the replay transaction, which operations of a batch to
+ * apply. Operations are taken in order and each sees the effect of the ones before it:
+ * <ul>
+ * <li>an operation whose receipt exists was applied before (its acknowledgement was lost) and is
+ * skipped;</li>
+ * <li>an operation that would take a product's stock below zero, touch a deleted product or break an
+ * item limit (e.g. return more than was sold) is a conflict and is not applied;</li>
+ * <li>an operation that writes a document of a conflicting one waits, still pending, until the
+ * conflict is resolved;</li>
+ * <li>the rest are applied.</li>
+ * </ul>
+ * Item lists are read from the server, so the batch ends before an operation that changes the items
+ * of a document created earlier in it, e.g. a return against a sale recorded offline; the next batch
+ * reads that document back.
+ * Kept free of Firestore types so it can be unit tested.
+ */
+public final class ReplayPlan {
+
+    private final List<OutboxOperation> toApply = new ArrayList<>();
+    private final List<String> alreadyApplied = new ArrayList<>();
+    private final Map<String, String> conflicts = new LinkedHashMap<>();
+    // Document path -> new value of its item list, for lists changed by applied operations
+    private final Map<String, List<Map<String, Object>>> itemLists = new LinkedHashMap<>();
+
+    private ReplayPlan() {
+    }
+
+    /**
+     * @return ids of the products whose stock the operations change; read them in the transaction.
+     */
+    public static Set<String> stockProductIds(List<OutboxOperation> operations) {
+        Set<String> ids = new LinkedHashSet<>();
+        for (OutboxOperation operation : operations) {
+            for (OutboxWrite write : operation.getWrites()) {
+                if (write.isStockChange()) {
+                    ids.add(write.getDocumentId());
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * @return paths of the documents whose item lists the operations change; read them too.
+     */
+    public static Set<String> itemDocumentPaths(List<OutboxOperation> operations) {
+        Set<String> paths = new LinkedHashSet<>();
+        for (OutboxOperation operation : operations) {
+            for (OutboxWrite write : operation.getWrites()) {
+                if (write.getKind() == OutboxWrite.Kind.INCREMENT_ITEM) {
+                    paths.add(write.getPath());
+                }
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * @param receipts   keys of the operations that already have a receipt
+     * @param stock      current quantity by product id; products that do not exist are absent
+     * @param itemLists  current item list by document path, per {@link #itemDocumentPaths}; the
+     *                   field name is the {@code arrayField} of the writes
+     */
+    public static ReplayPlan plan(List<OutboxOperation> operations, Set<String> receipts, Map<String, Long> stock,
+            Map<String, List<Map<String, Object>>> itemLists) {
+        ReplayPlan plan = new ReplayPlan();
+        Map<String, Long> quantities = new HashMap<>(stock);
+        Map<String, List<Map<String, Object>>> lists = new HashMap<>(itemLists);
+        Set<String> seen = new HashSet<>();
+        // Documents of conflicting operations, and of the operations waiting behind them
+        Set<String> blocked = new HashSet<>();
+        // Documents created by operations applied so far
+        Set<String> created = new HashSet<>();
+
+        for (OutboxOperation operation : operations) {
+            if (receipts.contains(operation.getKey()) || !seen.add(operation.getKey())) {
+                plan.alreadyApplied.add(operation.getKey());
+                continue;
+            }
+            Set<String> paths = operation.getDocumentPaths();
+            if (!Collections.disjoint(paths, blocked)) {
+                blocked.addAll(paths);
+                continue;
+            }
+            if (changesItemsOf(operation, created))
+                break;
+            // Apply to copies so a conflict leaves the running state as it was
+            Map<String, Long> nextQuantities = new HashMap<>(quantities);
+            Map<String, List<Map<String, Object>>> nextLists = new HashMap<>(lists);
+            String conflict = null;
+            for (OutboxWrite write : operation.getWrites()) {
+                conflict = write.isStockChange()
+                        ? applyStock(write, nextQuantities, operation.isAllowNegativeStock())
+                        : write.getKind() == OutboxWrite.Kind.INCREMENT_ITEM ? applyItem(write, nextLists) : null;
+                if (conflict != null)
+                    break;
+            }
+            if (conflict != null) {
+                plan.conflicts.put(operation.getKey(), conflict);
+                blocked.addAll(paths);
+                continue;
+            }
+            for (OutboxWrite write : operation.getWrites()) {
+                if (write.getKind() == OutboxWrite.Kind.SET) {
+                    created.add(write.getPath());
+                }
+            }
+            quantities = nextQuantities;
+            for (Map.Entry<String, List<Map<String, Object>>> entry : nextLists.entrySet()) {
+                if (entry.getValue() != lists.get(entry.getKey())) {
+                    plan.itemLists.put(entry.getKey(), entry.getValue());
+                }
+            }
+            lists = nextLists;
+            plan.toApply.add(operation);
+        }
+        return plan;
+    }
+
+    private static boolean changesItemsOf(OutboxOperation operation, Set<String> documents) {
+        for (OutboxWrite write : operation.getWrites()) {
+            if (write.getKind() == OutboxWrite.Kind.INCREMENT_ITEM && documents.contains(write.getPath()))
+                return true;
+        }
+        return false;
+    }
+
+    private static String applyStock(OutboxWrite write, Map<String, Long> quantities, boolean allowNegative) {
+        String productId = write.getDocumentId();
+        Long current = quantities.get(productId);
+        if (current == null)
+            return "Product " + productId + " no longer exists";
+        long next = current + write.getDelta().longValue();
+        if (next < 0 && !allowNegative)
+            return "Stock of product " + productId + " would become " + next;
+        quantities.put(productId, next);
+        return null;
+    }
+
+    private static String applyItem(OutboxWrite write, Map<String, List<Map<String, Object>>> lists) {
+        List<Map<String, Object>> items = lists.get(write.getPath());
+        if (items == null)
+            return write.getPath() + " no longer exists";
+        List<Map<String, Object>> updated = new ArrayList<>(items);
+        for (int i = 0; i < updated.size(); i++) {
+            Map<String, Object> item = updated.get(i);
+            if (!write.getMatchValue().equals(item.get(write.getMatchField())))
+                continue;
+            long next = number(item.get(write.getField())) + write.getDelta().longValue();
+            if (next < 0 || (write.getLimitField() != null && next > number(item.get(write.getLimitField()))))
+                return write.getField() + " of " + write.getMatchValue() + " in " + write.getPath()
+                        + " would become " + next;
+            Map<String, Object> copy = new HashMap<>(item);
+            copy.put(write.getField(), next);
+            updated.set(i, copy);
+            lists.put(write.getPath(), updated);
+            return null;
+        }
+        return write.getMatchValue() + " not found in " + write.getPath();
+    }
+
+    private static long number(Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+
+    public List<OutboxOperation> getToApply() {
+        return toApply;
+    }
+
+    public List<String> getAlreadyApplied() {
+        return alreadyApplied;
+    }
+
+    public Map<String, String> getConflicts() {
+        return conflicts;
+    }
+
+    /**
+     * @return the item lists to write back, by document path.
+     */
+    public Map<String, List<Map<String, Object>>> getItemLists() {
+        return itemLists;
+    }
+}
@@ -0,0 +1,135 @@
+package com.bsoft.inventorymanager.sync;
+
+import com.bsoft.inventorymanager.models.Sale;
+import com.bsoft.inventorymanager.models.SaleItem;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Request and response of the server's {@code commitSale} callable (functions/sales.js), which
+ * validates stock, writes the sale and decrements inventory in one transaction. The customer's
+ * totals follow the sale on the server.
+ * <p>
+ * The callable leaves the same receipt as an outbox replay of the sale, so a sale whose call failed
+ * in transit can be queued in the {@link Outbox} and is still applied once.
+ */
+public final class SaleCommit {
+
+    public static final String FUNCTION = "commitSale";
+    /** Applies an edited sale by its differences; takes the same {@link #request}. */
+    public static final String EDIT_FUNCTION = "editSale";
+
+    /** A product the sale asked more of than was in stock. */
+    public static final class Shortage {
+        private final String productId;
+        private final String productName;
+        private final long available;
+        private final long requested;
+
+        Shortage(String productId, String productName, long available, long requested) {
+            this.productId = productId;
+            this.productName = productName;
+            this.available = available;
+            this.requested = requested;
+        }
+
+        public String getProductId() {
+            return productId;
+        }
+
+        public String getProductName() {
+            return productName;
+        }
+
+        public long getAvailable() {
+            return available;
+        }
+
+        public long getRequested() {
+            return requested;
+        }
+    }
+
+    private SaleCommit() {
+    }
+
+    /**
+     * @param sale  the sale, with its id already assigned
+     * @param items its items
+     */
+    public static Map<String, Object> request(Sale sale, List<SaleItem> items) {
+        sale.setItems(items);
+        Map<String, Object> fields = sale.toMap();
+        // Callables carry JSON; the server turns the millis back into a Timestamp
+        fields.put("saleDate", sale.getSaleDate() != null
+                ? sale.getSaleDate().toDate().getTime() : System.currentTimeMillis());
+        fields.remove("productIds");
+
+        Map<String, Object> request = new HashMap<>();
+        request.put("saleId", sale.getDocumentId());
+        request.put("sale", fields);
+        return request;
+    }
+
+    /**
+     * @return stock of each product of the sale after the commit, by product id
+     */
+    public static Map<String, Long> stockLevels(Object response) {
+        Map<String, Long> levels = new LinkedHashMap<>();
+        Object stock = response instanceof Map ? ((Map<?, ?>) response).get("stock") : null;
+        if (stock instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) stock).entrySet()) {
+                if (entry.getValue() instanceof Number) {
+                    levels.put(String.valueOf(entry.getKey()), ((Number) entry.getValue()).longValue());
+                }
+            }
+        }
+        return levels;
+    }
+
+    /**
+     * @param details the details of a {@code failed-precondition} rejection
+     * @return the products that were short, empty if the rejection had another cause
+     */
+    public static List<Shortage> shortages(Object details) {
+        Object list = details instanceof Map ? ((Map<?, ?>) details).get("shortages") : null;
+        if (!(list instanceof List)) {
+            return Collections.emptyList();
+        }
+        List<Shortage> shortages = new ArrayList<>();
+        for (Object element : (List<?>) list) {
+            if (!(element instanceof Map)) {
+                continue;
+            }
+            Map<?, ?> map = (Map<?, ?>) element;
+            shortages.add(new Shortage(
+                    String.valueOf(map.get("productId")),
+                    map.get("productName") != null ? String.valueOf(map.get("productName")) : "",
+                    number(map.get("available")),
+                    number(map.get("requested"))));
+        }
+        return shortages;
+    }
+
+    /**
+     * @return a message naming every product that was short and how many are left
+     */
+    public static String shortageMessage(List<Shortage> shortages) {
+        StringBuilder message = new StringBuilder("Not enough stock:");
+        for (Shortage shortage : shortages) {
+            String name = shortage.getProductName().isEmpty() ? shortage.getProductId() : shortage.getProductName();
+            message.append("\n").append(name).append(": ").append(shortage.getAvailable())
+                    .append(" left, ").append(shortage.getRequested()).append(" requested");
+        }
+        return message.toString();
+    }
+
+    private static long number(Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+}
@@ -0,0 +1,60 @@
+package com.bsoft.inventorymanager.sync;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Sharded stock counters of hot products (functions/stockShards.js).
+ * <p>
+ * A product with {@link #SHARD_COUNT} set takes its stock changes as increments of {@link #DELTA}
+ * on a random document of its {@link #COLLECTION} subcollection, so concurrent sales do not queue
+ * on the product document. Its stock is {@code quantity} plus the shard deltas until the server
+ * folds them back into {@code quantity}.
+ */
+public final class StockShards {
+
+    /** Number of shards, on the product; absent or 0 for a product that is not hot. */
+    public static final String SHARD_COUNT = "stockShards";
+    /** Subcollection of the product holding the shards. */
+    public static final String COLLECTION = "stockShards";
+    public static final String DELTA = "delta";
+
+    static final int MAX_SHARDS = 20;
+
+    private StockShards() {
+    }
+
+    /**
+     * @param value the product's {@link #SHARD_COUNT}
+     * @return the number of shards to write to, 0 to write to the product itself
+     */
+    public static int shardCount(Object value) {
+        if (!(value instanceof Number)) {
+            return 0;
+        }
+        long count = ((Number) value).longValue();
+        return count > 0 ? (int) Math.min(count, MAX_SHARDS) : 0;
+    }
+
+    /**
+     * @return id of the shard a write goes to
+     */
+    public static String shardId(int shardCount, Random random) {
+        return String.valueOf(random.nextInt(shardCount));
+    }
+
+    /**
+     * @param quantity the product's {@code quantity}
+     * @param deltas   {@link #DELTA} of each of its shards
+     * @return the product's stock
+     */
+    public static long stock(long quantity, List<?> deltas) {
+        long stock = quantity;
+        for (Object delta : deltas) {
+            if (delta instanceof Number) {
+                stock += ((Number) delta).longValue();
+            }
+        }
+        return stock;
+    }
+}
@@ -0,0 +1,315 @@
+package com.bsoft.inventorymanager.utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Byte-budgeted LRU cache of files in one directory.
+ * <p>
+ * Every change is appended to a journal ({@code CLEAN key size}, {@code READ key},
+ * {@code REMOVE key}), which is replayed on open to restore entries in least-recently-used order;
+ * files the journal does not know about, e.g. from an interrupted write, are deleted. Values are
+ * written to a temp file and renamed into place, so a reader never sees a partial file. The journal
+ * is rewritten once it holds more redundant lines than entries.
+ * <p>
+ * Thread-safe. Blocking I/O; call off the main thread.
+ */
+public class DiskLruCache {
+
+    static final String JOURNAL = "journal";
+    private static final String JOURNAL_TEMP = "journal.tmp";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String CLEAN = "CLEAN";
+    private static final String READ = "READ";
+    private static final String REMOVE = "REMOVE";
+    private static final Pattern KEY = Pattern.compile("[A-Za-z0-9_-]{1,200}");
+    private static final int MIN_REDUNDANT_OPS = 2000;
+
+    private final File directory;
+    private final long maxBytes;
+    // Access order: the first entry is the least recently used
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(0, 0.75f, true);
+    private Writer journal;
+    private long size;
+    private int redundantOps;
+
+    private long hitCount;
+    private long missCount;
+    private long evictionCount;
+    private long writeCount;
+
+    public DiskLruCache(File directory, long maxBytes) throws IOException {
+        if (maxBytes <= 0)
+            throw new IllegalArgumentException("maxBytes <= 0");
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        if (!directory.isDirectory() && !directory.mkdirs())
+            throw new IOException("Cannot create " + directory);
+        readJournal();
+        deleteUnknownFiles();
+        rebuildJournal();
+        trimToSize();
+    }
+
+    /**
+     * @return the value, or null if it is not cached.
+     */
+    public synchronized byte[] get(String key) {
+        checkKey(key);
+        if (entries.get(key) == null) {
+            missCount++;
+            return null;
+        }
+        byte[] value;
+        try {
+            value = readFully(new File(directory, key));
+        } catch (IOException e) {
+            // Deleted behind our back
+            removeEntry(key);
+            missCount++;
+            return null;
+        }
+        hitCount++;
+        appendJournal(READ + " " + key);
+        return value;
+    }
+
+    public synchronized boolean contains(String key) {
+        checkKey(key);
+        return entries.containsKey(key);
+    }
+
+    /**
+     * Stores the value, replacing any previous one, then evicts least recently used entries until
+     * the cache fits its budget again.
+     */
+    public synchronized void put(String key, byte[] value) throws IOException {
+        checkKey(key);
+        File temp = new File(directory, key + TEMP_SUFFIX);
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(value);
+            out.getFD().sync();
+        }
+        File file = new File(directory, key);
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Cannot rename " + temp);
+        }
+
+        Long previous = entries.put(key, (long) value.length);
+        if (previous != null) {
+            size -= previous;
+            redundantOps++;
+        }
+        size += value.length;
+        writeCount++;
+        appendJournal(CLEAN + " " + key + " " + value.length);
+        trimToSize();
+    }
+
+    public synchronized void remove(String key) {
+        checkKey(key);
+        removeEntry(key);
+    }
+
+    public synchronized void clear() {
+        for (String key : entries.keySet().toArray(new String[0])) {
+            removeEntry(key);
+        }
+        rebuildJournalQuietly();
+    }
+
+    public synchronized long size() {
+        return size;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized int getEntryCount() {
+        return entries.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public synchronized long getWriteCount() {
+        return writeCount;
+    }
+
+    public synchronized void close() throws IOException {
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+    }
+
+    private void trimToSize() {
+        Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+        while (size > maxBytes && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            it.remove();
+            size -= eldest.getValue();
+            new File(directory, eldest.getKey()).delete();
+            evictionCount++;
+            appendJournal(REMOVE + " " + eldest.getKey());
+        }
+    }
+
+    private void removeEntry(String key) {
+        Long removed = entries.remove(key);
+        new File(directory, key).delete();
+        if (removed != null) {
+            size -= removed;
+            appendJournal(REMOVE + " " + key);
+        }
+    }
+
+    private void appendJournal(String line) {
+        redundantOps += line.startsWith(CLEAN) ? 0 : 1;
+        try {
+            if (journal == null) {
+                journal = new OutputStreamWriter(new FileOutputStream(new File(directory, JOURNAL), true),
+                        StandardCharsets.UTF_8);
+            }
+            journal.write(line);
+            journal.write('\n');
+            journal.flush();
+        } catch (IOException e) {
+            // The journal is rebuilt from memory below; at worst recent reads lose their recency
+            redundantOps = Integer.MAX_VALUE;
+        }
+        if (redundantOps >= MIN_REDUNDANT_OPS && redundantOps >= entries.size()) {
+            rebuildJournalQuietly();
+        }
+    }
+
+    private void readJournal() throws IOException {
+        File file = new File(directory, JOURNAL);
+        if (!file.exists())
+            return;
+        int lines = 0;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines++;
+                String[] parts = line.split(" ");
+                // A torn last line from a crash is simply ignored
+                if (parts.length < 2 || !KEY.matcher(parts[1]).matches())
+                    continue;
+                String key = parts[1];
+                if (CLEAN.equals(parts[0]) && parts.length == 3) {
+                    long length;
+                    try {
+                        length = Long.parseLong(parts[2]);
+                    } catch (NumberFormatException e) {
+                        continue;
+                    }
+                    Long previous = entries.put(key, length);
+                    size += length - (previous != null ? previous : 0);
+                } else if (READ.equals(parts[0])) {
+                    entries.get(key);
+                } else if (REMOVE.equals(parts[0])) {
+                    Long removed = entries.remove(key);
+                    size -= removed != null ? removed : 0;
+                }
+            }
+        }
+        redundantOps = lines - entries.size();
+    }
+
+    private void deleteUnknownFiles() {
+        File[] files = directory.listFiles();
+        if (files == null)
+            return;
+        // A copy, since get() on the access-ordered map would reorder it
+        Map<String, Long> known = new HashMap<>(entries);
+        for (File file : files) {
+            String name = file.getName();
+            if (name.equals(JOURNAL))
+                continue;
+            Long length = known.get(name);
+            if (length == null || file.length() != length) {
+                file.delete();
+            }
+        }
+        // Entries whose file is gone or damaged
+        Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Long> entry = it.next();
+            if (!new File(directory, entry.getKey()).isFile()) {
+                it.remove();
+                size -= entry.getValue();
+            }
+        }
+    }
+
+    private void rebuildJournal() throws IOException {
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+        File temp = new File(directory, JOURNAL_TEMP);
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Long> entry : entries.entrySet()) {
+                writer.write(CLEAN + " " + entry.getKey() + " " + entry.getValue() + "\n");
+            }
+        }
+        if (!temp.renameTo(new File(directory, JOURNAL)))
+            throw new IOException("Cannot rename " + temp);
+        redundantOps = 0;
+    }
+
+    private void rebuildJournalQuietly() {
+        try {
+            rebuildJournal();
+        } catch (IOException e) {
+            // Keep appending to whatever journal is there; retried on the next redundant write
+            redundantOps = 0;
+        }
+    }
+
+    private static void checkKey(String key) {
+        if (key == null || !KEY.matcher(key).matches() || key.equals(JOURNAL))
+            throw new IllegalArgumentException("Invalid cache key: " + key);
+    }
+
+    private static byte[] readFully(File file) throws IOException {
+        try (FileInputStream in = new FileInputStream(file)) {
+            long length = file.length();
+            byte[] bytes = new byte[(int) length];
+            int read = 0;
+            while (read < bytes.length) {
+                int n = in.read(bytes, read, bytes.length - read);
+                if (n < 0)
+                    throw new FileNotFoundException("Truncated " + file);
+                read += n;
+            }
+            return bytes;
+        }
+    }
+}
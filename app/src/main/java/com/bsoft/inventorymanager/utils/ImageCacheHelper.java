@@ -6,25 +6,76 @@ import android.graphics.BitmapFactory;
 import android.util.Log;
 import android.util.LruCache;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+/**
+ * Two-tier bitmap cache: an {@link LruCache} on 1/8 of the heap in front of a
+ * {@link DiskLruCache} with a fixed byte budget.
+ * <p>
+ * Disk writes are encoded and written on a single background thread, so callers never block on
+ * them; a bitmap is encoded once, when it first enters the cache. Disk reads are blocking; call
+ * {@link #getCachedBitmap(String)} off the main thread.
+ */
 public class ImageCacheHelper {
-    
+
     private static final String TAG = "ImageCacheHelper";
+    private static final String DISK_CACHE_DIR = "image_cache";
+    private static final long DISK_CACHE_SIZE = 32L * 1024 * 1024;
+    private static final int DISK_QUALITY = 80;
+
     private static LruCache<String, Bitmap> memoryCache;
     private static Context applicationContext;
-    
+    private static final ExecutorService diskWriter = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "image-cache-io");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final Object diskLock = new Object();
+    private static DiskLruCache diskCache;
+    private static boolean diskCacheFailed;
+
+    public static class Stats {
+        public final int memoryHits;
+        public final int memoryMisses;
+        public final int memoryEvictions;
+        public final long diskHits;
+        public final long diskMisses;
+        public final long diskEvictions;
+        public final long diskWrites;
+        public final long diskBytes;
+
+        Stats(LruCache<String, Bitmap> memory, DiskLruCache disk) {
+            memoryHits = memory.hitCount();
+            memoryMisses = memory.missCount();
+            memoryEvictions = memory.evictionCount();
+            diskHits = disk != null ? disk.getHitCount() : 0;
+            diskMisses = disk != null ? disk.getMissCount() : 0;
+            diskEvictions = disk != null ? disk.getEvictionCount() : 0;
+            diskWrites = disk != null ? disk.getWriteCount() : 0;
+            diskBytes = disk != null ? disk.size() : 0;
+        }
+
+        @Override
+        public String toString() {
+            return "memory " + memoryHits + " hits / " + memoryMisses + " misses / " + memoryEvictions
+                    + " evictions, disk " + diskHits + " hits / " + diskMisses + " misses / " + diskEvictions
+                    + " evictions / " + diskWrites + " writes, " + diskBytes + " bytes";
+        }
+    }
+
     public static void initialize(Context context) {
         applicationContext = context.getApplicationContext();
-        
+
         // Get max available VM memory, exceeding this amount will throw an OutOfMemory exception.
         final int maxMemory = (int) (Runtime.getRuntime().maxMemory() / 1024);
-        
+
         // Use 1/8th of the available memory for this memory cache.
         final int cacheSize = maxMemory / 8;
-        
+
         memoryCache = new LruCache<String, Bitmap>(cacheSize) {
             @Override
             protected int sizeOf(String key, Bitmap bitmap) {
@@ -32,10 +83,12 @@ public class ImageCacheHelper {
                 return bitmap.getByteCount() / 1024;
             }
         };
+        // Replaying the journal is file I/O too
+        diskWriter.execute(ImageCacheHelper::diskCache);
     }
-    
+
     /**
-     * Adds a bitmap to both memory and disk cache
+     * Adds a bitmap to the memory cache and queues it for the disk cache, unless already cached.
      * @param key Unique key for the bitmap
      * @param bitmap The bitmap to cache
      */
@@ -46,7 +99,7 @@ public class ImageCacheHelper {
             saveBitmapToDiskCache(key, bitmap);
         }
     }
-    
+
     /**
      * Gets bitmap from memory cache
      * @param key The key for the bitmap
@@ -55,52 +108,64 @@ public class ImageCacheHelper {
     public static Bitmap getBitmapFromMemCache(String key) {
         return memoryCache.get(key);
     }
-    
+
     /**
-     * Gets bitmap from disk cache
+     * Gets bitmap from disk cache. Blocking.
      * @param key The key for the bitmap
      * @return The bitmap if found, null otherwise
      */
     public static Bitmap getBitmapFromDiskCache(String key) {
+        DiskLruCache disk = diskCache();
+        if (disk == null) {
+            return null;
+        }
         try {
-            File cacheDir = new File(applicationContext.getCacheDir(), "image_cache");
-            if (!cacheDir.exists()) {
-                cacheDir.mkdirs();
-            }
-            
-            File imageFile = new File(cacheDir, key + ".jpg");
-            if (imageFile.exists()) {
-                return BitmapFactory.decodeFile(imageFile.getAbsolutePath());
-            }
+            byte[] bytes = disk.get(key);
+            return bytes != null ? BitmapFactory.decodeByteArray(bytes, 0, bytes.length) : null;
         } catch (Exception e) {
             Log.e(TAG, "Error getting bitmap from disk cache", e);
         }
         return null;
     }
-    
+
     /**
-     * Saves bitmap to disk cache
+     * Queues the bitmap for the disk cache; encoding and writing happen on the cache thread.
      * @param key The key for the bitmap
      * @param bitmap The bitmap to save
      */
     private static void saveBitmapToDiskCache(String key, Bitmap bitmap) {
-        try {
-            File cacheDir = new File(applicationContext.getCacheDir(), "image_cache");
-            if (!cacheDir.exists()) {
-                cacheDir.mkdirs();
+        diskWriter.execute(() -> {
+            DiskLruCache disk = diskCache();
+            if (disk == null || disk.contains(key)) {
+                return;
+            }
+            try {
+                // Compress the bitmap to reduce file size
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                bitmap.compress(Bitmap.CompressFormat.JPEG, DISK_QUALITY, out);
+                disk.put(key, out.toByteArray());
+            } catch (IOException | IllegalArgumentException e) {
+                Log.e(TAG, "Error saving bitmap to disk cache", e);
             }
-            
-            File imageFile = new File(cacheDir, key + ".jpg");
-            FileOutputStream fos = new FileOutputStream(imageFile);
-            
-            // Compress the bitmap to reduce file size
-            bitmap.compress(Bitmap.CompressFormat.JPEG, 80, fos);
-            fos.close();
-        } catch (IOException e) {
-            Log.e(TAG, "Error saving bitmap to disk cache", e);
+        });
+    }
+
+    private static DiskLruCache diskCache() {
+        synchronized (diskLock) {
+            if (diskCache == null && !diskCacheFailed && applicationContext != null) {
+                try {
+                    diskCache = new DiskLruCache(new File(applicationContext.getCacheDir(), DISK_CACHE_DIR),
+                            DISK_CACHE_SIZE);
+                } catch (IOException e) {
+                    // Memory cache only for this process
+                    diskCacheFailed = true;
+                    Log.e(TAG, "Error opening disk cache", e);
+                }
+            }
+            return diskCache;
         }
     }
-    
+
     /**
      * Compresses a bitmap to reduce memory usage
      * @param bitmap The original bitmap
@@ -111,22 +176,22 @@ public class ImageCacheHelper {
     public static Bitmap compressBitmap(Bitmap bitmap, int maxWidth, int maxHeight) {
         int width = bitmap.getWidth();
         int height = bitmap.getHeight();
-        
+
         // Calculate scaling factor
         float scaleWidth = ((float) maxWidth) / width;
         float scaleHeight = ((float) maxHeight) / height;
         float scale = Math.min(scaleWidth, scaleHeight);
-        
+
         // Create matrix for scaling
         android.graphics.Matrix matrix = new android.graphics.Matrix();
         matrix.postScale(scale, scale);
-        
+
         // Create the scaled bitmap
         return Bitmap.createBitmap(bitmap, 0, 0, width, height, matrix, false);
     }
-    
+
     /**
-     * Gets a cached bitmap (from memory first, then disk)
+     * Gets a cached bitmap (from memory first, then disk). Blocking on a memory miss.
      * @param key The key for the bitmap
      * @return The cached bitmap if found, null otherwise
      */
@@ -135,28 +200,31 @@ public class ImageCacheHelper {
         if (bitmap == null) {
             bitmap = getBitmapFromDiskCache(key);
             if (bitmap != null) {
-                // Add to memory cache for faster access next time
-                addBitmapToCache(key, bitmap);
+                // Memory only: the disk already holds it
+                memoryCache.put(key, bitmap);
             }
         }
         return bitmap;
     }
-    
+
+    public static Stats getStats() {
+        synchronized (diskLock) {
+            return new Stats(memoryCache, diskCache);
+        }
+    }
+
     /**
      * Clears both memory and disk caches
      */
     public static void clearCache() {
         memoryCache.evictAll();
-        
+
         // Clear disk cache
-        File cacheDir = new File(applicationContext.getCacheDir(), "image_cache");
-        if (cacheDir.exists()) {
-            File[] files = cacheDir.listFiles();
-            if (files != null) {
-                for (File file : files) {
-                    file.delete();
-                }
+        diskWriter.execute(() -> {
+            DiskLruCache disk = diskCache();
+            if (disk != null) {
+                disk.clear();
             }
-        }
+        });
     }
-}
\ No newline at end of file
+}
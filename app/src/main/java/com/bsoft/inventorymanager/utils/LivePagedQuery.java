@@ -0,0 +1,276 @@
+package com.bsoft.inventorymanager.utils;
+
+import android.util.Log;
+
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.Query;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Paged list over a query ordered descending by {@code orderField}, whose newest page stays live.
+ * <p>
+ * The head is a snapshot listener on the newest {@code pageSize} documents, so it stays bounded and
+ * new, edited or deleted documents cost only themselves; its first snapshot is the first page.
+ * Older documents are fetched with one-shot cursor pages via {@link PaginationHelper}, starting
+ * after the last document of that first page, and appended after the head.
+ * <p>
+ * A document that leaves the head was pushed out by a newer one, edited to an older
+ * {@code orderField} or deleted. It is read once more and, unless deleted or older than every
+ * loaded document (a later page fetches it then), put back into the tail at its place.
+ * <p>
+ * Callbacks run on the main thread.
+ */
+public class LivePagedQuery<T> {
+
+    private static final String TAG = "LivePagedQuery";
+
+    public interface Mapper<T> {
+        /** @return the item for the document, or null to skip it. */
+        T map(DocumentSnapshot document);
+    }
+
+    public interface Callback<T> {
+        void onItemsChanged(List<T> items);
+
+        void onLoadingChanged(boolean loading);
+    }
+
+    private final Query query;
+    private final String orderField;
+    private final int pageSize;
+    private final Mapper<T> mapper;
+    private final Callback<T> callback;
+
+    // Head rows mirror the listener's indices; unmappable documents are kept as null rows
+    private final List<String> headIds = new ArrayList<>();
+    private final List<T> head = new ArrayList<>();
+    // Tail rows with their orderField values, in the tail's order
+    private final List<String> tailIds = new ArrayList<>();
+    private final List<Object> tailValues = new ArrayList<>();
+    private final Set<String> tailIdSet = new HashSet<>();
+    // Persistent, so publishing and appending a page never copies older pages
+    private PagedList<T> tail = PagedList.empty();
+
+    private ListenerRegistration registration;
+    private DocumentSnapshot tailCursor;
+    private boolean started;
+    private boolean headLoaded;
+    private boolean loading;
+    private boolean lastPage;
+    // Bumped by stop(), so reads started for an earlier head are dropped
+    private int generation;
+
+    public LivePagedQuery(Query query, String orderField, int pageSize, Mapper<T> mapper, Callback<T> callback) {
+        this.query = query;
+        this.orderField = orderField;
+        this.pageSize = pageSize;
+        this.mapper = mapper;
+        this.callback = callback;
+    }
+
+    /**
+     * Starts the live head on first use, afterwards fetches the next older page.
+     */
+    public void loadNextPage() {
+        if (loading)
+            return;
+        if (!started) {
+            start();
+            return;
+        }
+        if (lastPage)
+            return;
+
+        setLoading(true);
+        PaginationHelper.fetchPaginatedData(query, tailCursor, pageSize, new PaginationHelper.PaginationCallback() {
+            @Override
+            public void onSuccess(List<DocumentSnapshot> documents, boolean hasMore) {
+                if (!documents.isEmpty()) {
+                    tailCursor = documents.get(documents.size() - 1);
+                    List<T> page = new ArrayList<>(documents.size());
+                    for (DocumentSnapshot document : documents) {
+                        // Documents tied with the boundary value may already be in the head
+                        if (headIds.contains(document.getId()) || tailIdSet.contains(document.getId()))
+                            continue;
+                        T item = mapper.map(document);
+                        if (item != null) {
+                            tailIds.add(document.getId());
+                            tailValues.add(document.get(orderField));
+                            tailIdSet.add(document.getId());
+                            page.add(item);
+                        }
+                    }
+                    tail = tail.append(page);
+                    publish();
+                }
+                lastPage = !hasMore;
+                setLoading(false);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                setLoading(false);
+            }
+        });
+    }
+
+    /**
+     * Re-attaches the head listener if it was never started or failed; a live head needs no refresh.
+     */
+    public void refresh() {
+        if (!loading && registration == null) {
+            stop();
+            start();
+        }
+    }
+
+    public boolean isLoading() {
+        return loading;
+    }
+
+    /**
+     * Detaches the listener and forgets every loaded page.
+     */
+    public void stop() {
+        if (registration != null) {
+            registration.remove();
+            registration = null;
+        }
+        headIds.clear();
+        head.clear();
+        tailIds.clear();
+        tailValues.clear();
+        tailIdSet.clear();
+        tail = PagedList.empty();
+        tailCursor = null;
+        started = false;
+        headLoaded = false;
+        lastPage = false;
+        generation++;
+        setLoading(false);
+    }
+
+    private void start() {
+        started = true;
+        setLoading(true);
+        registration = query.limit(pageSize).addSnapshotListener((snapshot, e) -> {
+            if (e != null) {
+                Log.e(TAG, "Head listener failed", e);
+                registration = null;
+                if (!headLoaded)
+                    started = false;
+                setLoading(false);
+                return;
+            }
+            if (snapshot == null)
+                return;
+
+            if (!headLoaded) {
+                // The first snapshot is the first page: older pages start after its last document
+                headLoaded = true;
+                List<DocumentSnapshot> documents = snapshot.getDocuments();
+                if (!documents.isEmpty())
+                    tailCursor = documents.get(documents.size() - 1);
+                lastPage = documents.size() < pageSize;
+            }
+
+            // Changes arrive in order; indices refer to the head after the preceding changes
+            for (DocumentChange change : snapshot.getDocumentChanges()) {
+                String id = change.getDocument().getId();
+                switch (change.getType()) {
+                    case ADDED:
+                        removeFromTail(id);
+                        headIds.add(change.getNewIndex(), id);
+                        head.add(change.getNewIndex(), mapper.map(change.getDocument()));
+                        break;
+                    case MODIFIED:
+                        headIds.remove(change.getOldIndex());
+                        head.remove(change.getOldIndex());
+                        headIds.add(change.getNewIndex(), id);
+                        head.add(change.getNewIndex(), mapper.map(change.getDocument()));
+                        break;
+                    case REMOVED:
+                        headIds.remove(change.getOldIndex());
+                        head.remove(change.getOldIndex());
+                        restore(change.getDocument());
+                        break;
+                }
+            }
+            if (!snapshot.getDocumentChanges().isEmpty()) {
+                publish();
+            }
+            setLoading(false);
+        });
+    }
+
+    /**
+     * Puts a document that left the head back into the tail if it still belongs to the loaded range.
+     * The removal carries the document as it was, so whether it was deleted or edited takes a read.
+     */
+    private void restore(DocumentSnapshot removed) {
+        int current = generation;
+        removed.getReference().get()
+                .addOnSuccessListener(document -> {
+                    String id = document.getId();
+                    if (current != generation || !document.exists() || headIds.contains(id) || tailIdSet.contains(id))
+                        return;
+                    Object value = document.get(orderField);
+                    if (value == null)
+                        return;
+                    // Older than every loaded document: the next page fetches it
+                    if (!lastPage && tailCursor != null && compare(value, tailCursor.get(orderField)) < 0)
+                        return;
+                    T item = mapper.map(document);
+                    if (item == null)
+                        return;
+                    int index = 0;
+                    while (index < tailValues.size() && compare(tailValues.get(index), value) >= 0) {
+                        index++;
+                    }
+                    tailIds.add(index, id);
+                    tailValues.add(index, value);
+                    tailIdSet.add(id);
+                    tail = tail.insertAt(index, item);
+                    publish();
+                })
+                .addOnFailureListener(e -> Log.w(TAG, "Error reading a document that left the head", e));
+    }
+
+    private void removeFromTail(String id) {
+        if (tailIdSet.remove(id)) {
+            int index = tailIds.indexOf(id);
+            tailIds.remove(index);
+            tailValues.remove(index);
+            tail = tail.removeAt(index);
+        }
+    }
+
+    // orderField values of one query share a type, e.g. Timestamp
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static int compare(Object a, Object b) {
+        return ((Comparable) a).compareTo(b);
+    }
+
+    private void publish() {
+        List<T> liveHead = new ArrayList<>(head.size());
+        for (T item : head) {
+            if (item != null) {
+                liveHead.add(item);
+            }
+        }
+        callback.onItemsChanged(PagedList.concat(liveHead, tail));
+    }
+
+    private void setLoading(boolean loading) {
+        if (this.loading != loading) {
+            this.loading = loading;
+            callback.onLoadingChanged(loading);
+        }
+    }
+}
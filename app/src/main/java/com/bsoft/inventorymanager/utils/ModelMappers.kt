@@ -206,6 +206,94 @@ object ModelMappers {
         return item
     }
     
+    // ==================== Product ====================
+
+    fun com.bsoft.inventorymanager.models.Product.toShared(): com.bsoft.inventorymanager.model.Product {
+        return com.bsoft.inventorymanager.model.Product(
+            documentId = this.documentId ?: "",
+            name = this.name ?: "",
+            imageUrl = this.imageUrl,
+            brand = this.brand,
+            category = this.category,
+            productCode = this.productCode,
+            barcode = this.barcode,
+            quantity = this.quantity,
+            minStockLevel = this.minStockLevel,
+            unit = this.unit,
+            costPrice = this.costPrice,
+            purchasePrice = this.purchasePrice,
+            mrp = this.mrp,
+            wholesalePrice = this.wholesalePrice,
+            dealerPrice = this.dealerPrice,
+            supplierId = this.supplierId,
+            supplierName = this.supplierName,
+            expiryDate = this.expiryDate?.toDate()?.time,
+            batchNumber = this.batchNumber
+        )
+    }
+
+    fun com.bsoft.inventorymanager.model.Product.toJava(): com.bsoft.inventorymanager.models.Product {
+        val product = com.bsoft.inventorymanager.models.Product()
+        product.documentId = this.documentId
+        product.name = this.name
+        product.imageUrl = this.imageUrl
+        product.brand = this.brand
+        product.category = this.category
+        product.productCode = this.productCode
+        product.barcode = this.barcode
+        product.quantity = this.quantity
+        product.minStockLevel = this.minStockLevel
+        product.unit = this.unit
+        product.costPrice = this.costPrice
+        product.purchasePrice = this.purchasePrice
+        product.mrp = this.mrp
+        product.wholesalePrice = this.wholesalePrice
+        product.dealerPrice = this.dealerPrice
+        product.supplierId = this.supplierId
+        product.supplierName = this.supplierName
+        this.expiryDate?.let {
+            product.expiryDate = com.google.firebase.Timestamp(java.util.Date(it))
+        }
+        product.batchNumber = this.batchNumber
+        return product
+    }
+
+    // ==================== Customer ====================
+
+    fun com.bsoft.inventorymanager.model.Customer.toJava(): com.bsoft.inventorymanager.models.Customer {
+        val customer = com.bsoft.inventorymanager.models.Customer()
+        customer.documentId = this.documentId
+        customer.name = this.name
+        customer.contactNumber = this.contactNumber
+        customer.address = this.address
+        customer.age = this.age
+        customer.photo = this.photo
+        customer.setActive(this.isActive)
+        if (this.creationDate > 0) {
+            customer.setCreationDate(com.google.firebase.Timestamp(java.util.Date(this.creationDate)))
+        }
+        customer.creditLimit = this.creditLimit
+        customer.outstandingBalance = this.outstandingBalance
+        customer.customerType = this.customerType
+        customer.customerTier = this.customerTier
+        if (this.lastPurchaseDate > 0) {
+            customer.setLastPurchaseDate(com.google.firebase.Timestamp(java.util.Date(this.lastPurchaseDate)))
+        }
+        customer.totalPurchaseAmount = this.totalPurchaseAmount
+        customer.purchaseFrequency = this.purchaseFrequency
+        customer.paymentTerms = this.paymentTerms
+        customer.discountRate = this.discountRate
+        customer.rating = this.rating
+        customer.leadTime = this.leadTime
+        customer.performanceScore = this.performanceScore
+        customer.isPreferredCustomer = this.preferredCustomer
+        customer.contractDetails = this.contractDetails
+        customer.productsPurchased = this.productsPurchased
+        customer.bankAccount = this.bankAccount
+        customer.taxId = this.taxId
+        return customer
+    }
+
     // Sale list extensions
     @JvmName("salesToSharedList")
     fun List<com.bsoft.inventorymanager.models.Sale>.toSharedSaleList(): List<com.bsoft.inventorymanager.model.Sale> = this.map { it.toShared() }
@@ -1,38 +1,134 @@
 package com.bsoft.inventorymanager.utils;
 
 import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
+import androidx.annotation.NonNull;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+
+import com.bsoft.inventorymanager.cache.SyncClient;
+import com.bsoft.inventorymanager.roles.CurrentUser;
+import com.bsoft.inventorymanager.roles.Employee;
+import com.bsoft.inventorymanager.sync.InventoryMovement;
+import com.bsoft.inventorymanager.sync.Outbox;
+import com.bsoft.inventorymanager.sync.OutboxOperation;
+import com.bsoft.inventorymanager.sync.OutboxWrite;
+import com.bsoft.inventorymanager.sync.ReplayPlan;
+import com.bsoft.inventorymanager.sync.StockShards;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldValue;
 import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.SetOptions;
+import com.google.firebase.firestore.Source;
+import com.google.firebase.firestore.Transaction;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * Offline write queue for sales, purchases, returns, damages and expenses.
+ * <p>
+ * {@link #enqueue} records the operation in the durable {@link Outbox} and reports success as soon as
+ * it is on disk; the operations are then replayed in order, whenever the network is available, in
+ * Firestore transactions of at most {@link Outbox#MAX_BATCH_WRITES} writes. Each transaction reads
+ * the stock it changes and writes a receipt per operation, so an operation is applied exactly once
+ * and one that would take stock below zero is parked as a conflict instead of being applied.
+ * <p>
+ * A queued operation shows in lists and stock only once replayed, so callers report it as queued,
+ * not saved; {@link #getStatus} drives the banner that counts what is waiting and leads to the
+ * conflicts, which {@link #resolveConflict} settles.
+ */
 public class OfflineSyncHelper {
-    
+
     private static final String TAG = "OfflineSyncHelper";
-    private static ExecutorService executorService = Executors.newFixedThreadPool(4);
-    private static FirebaseFirestore db = FirebaseFirestore.getInstance();
-    
+    private static final String RECEIPTS = "outboxReceipts";
+    private static final long MIN_BACKOFF_MS = 5_000;
+    private static final long MAX_BACKOFF_MS = 10 * 60_000;
+
+    private final FirebaseFirestore db;
+    private final Outbox outbox;
+    private final ConnectivityManager connectivityManager;
+    // Enqueueing must not wait behind a sync blocked on the network
+    private final ExecutorService io = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "outbox-io"));
+    private final ScheduledExecutorService syncExecutor = Executors.newSingleThreadScheduledExecutor(
+            runnable -> new Thread(runnable, "outbox-sync"));
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Random random = new Random();
+    private final AtomicBoolean syncRequested = new AtomicBoolean();
+    private final MutableLiveData<Outbox.Stats> status = new MutableLiveData<>();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private long backoffMs;
+    private int batchLimit = Outbox.MAX_BATCH_WRITES;
+
+    public OfflineSyncHelper(Context context, FirebaseFirestore db, Outbox outbox) {
+        this.db = db;
+        this.outbox = outbox;
+        this.connectivityManager = (ConnectivityManager) context.getApplicationContext()
+                .getSystemService(Context.CONNECTIVITY_SERVICE);
+    }
+
+    /**
+     * Replays whatever was left queued by the last run, and again each time the network comes back.
+     */
+    public void start() {
+        if (!started.compareAndSet(false, true))
+            return;
+        connectivityManager.registerDefaultNetworkCallback(new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onAvailable(@NonNull Network network) {
+                requestSync();
+            }
+        });
+        io.execute(this::publishStatus);
+        requestSync();
+    }
+
     /**
      * Enables offline persistence for Firestore
      * @param context The application context
      */
-    public static void enableOfflinePersistence(Context context) {
+    public void enableOfflinePersistence(Context context) {
         db.enableNetwork()
             .addOnCompleteListener(task -> {
                 if (task.isSuccessful()) {
                     Log.d(TAG, "Network enabled successfully");
+                    requestSync();
                 } else {
                     Log.e(TAG, "Error enabling network", task.getException());
                 }
             });
     }
-    
+
     /**
      * Disables network to test offline functionality
      */
-    public static void disableNetwork() {
+    public void disableNetwork() {
         db.disableNetwork()
             .addOnCompleteListener(task -> {
                 if (task.isSuccessful()) {
@@ -42,59 +138,364 @@ public class OfflineSyncHelper {
                 }
             });
     }
-    
+
     /**
-     * Performs background synchronization when network is available
-     * @param syncCallback Callback to handle sync results
+     * Queues the operation durably and starts a sync. The callback runs on the main thread once the
+     * operation is on disk; re-enqueueing a key that is still queued succeeds without a duplicate.
      */
-    public static void performBackgroundSync(SyncCallback syncCallback) {
-        executorService.execute(() -> {
+    public void enqueue(OutboxOperation operation, EnqueueCallback callback) {
+        io.execute(() -> {
             try {
-                // Check if we have network connectivity
-                // In a real app, you would check network status here
-                boolean hasNetwork = true; // Placeholder - implement actual network check
-                
-                if (hasNetwork) {
-                    // Perform sync operations
-                    Log.d(TAG, "Starting background sync...");
-                    
-                    // This is where you would sync pending operations
-                    // For example: syncPendingOrders(), syncPendingProducts(), etc.
-                    
-                    Log.d(TAG, "Background sync completed successfully");
-                    
-                    if (syncCallback != null) {
-                        syncCallback.onSyncComplete(true, "Sync completed successfully");
-                    }
-                } else {
-                    Log.d(TAG, "No network available, sync skipped");
-                    if (syncCallback != null) {
-                        syncCallback.onSyncComplete(false, "No network available");
-                    }
-                }
-            } catch (Exception e) {
-                Log.e(TAG, "Error during background sync", e);
-                if (syncCallback != null) {
-                    syncCallback.onSyncComplete(false, "Sync failed: " + e.getMessage());
+                if (!outbox.enqueue(operation, System.currentTimeMillis())) {
+                    Log.d(TAG, "Already queued: " + operation.getKey());
                 }
+                publishStatus();
+                mainHandler.post(callback::onQueued);
+                requestSync();
+            } catch (IOException | IllegalArgumentException e) {
+                Log.e(TAG, "Error queueing " + operation.getKey(), e);
+                mainHandler.post(() -> callback.onFailure(e));
+            }
+        });
+    }
+
+    /**
+     * Performs background synchronization when network is available
+     * @param syncCallback Callback to handle sync results, called on the main thread
+     */
+    public void performBackgroundSync(SyncCallback syncCallback) {
+        syncExecutor.execute(() -> {
+            String failure = sync();
+            if (syncCallback != null) {
+                mainHandler.post(() -> syncCallback.onSyncComplete(failure == null,
+                        failure == null ? "Sync completed successfully" : failure));
             }
         });
     }
-    
+
     /**
      * Checks if the app is currently in offline mode
      * @return true if offline, false if online
      */
-    public static boolean isOffline() {
-        // In a real implementation, you would check network connectivity
-        // This is a simplified version
-        return false; // Placeholder
+    public boolean isOffline() {
+        Network network = connectivityManager.getActiveNetwork();
+        NetworkCapabilities capabilities = network != null ? connectivityManager.getNetworkCapabilities(network) : null;
+        return capabilities == null || !capabilities.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET);
     }
-    
+
+    /**
+     * @return queue depth, conflicts and sync lag, updated after every change to the queue.
+     */
+    public LiveData<Outbox.Stats> getStatus() {
+        return status;
+    }
+
+    /**
+     * Operations parked because they conflict with the server state, e.g. a sale of stock that was
+     * sold on another device meanwhile. The callback runs on the main thread.
+     */
+    public void getConflicts(ConflictsCallback callback) {
+        io.execute(() -> {
+            List<OutboxOperation> conflicts = outbox.conflicts();
+            mainHandler.post(() -> callback.onConflicts(conflicts));
+        });
+    }
+
+    /**
+     * Settles a conflict: apply the operation anyway, letting stock go negative, or drop it.
+     */
+    public void resolveConflict(String key, boolean applyAnyway) {
+        io.execute(() -> {
+            try {
+                outbox.resolve(key, applyAnyway);
+                publishStatus();
+                if (applyAnyway) {
+                    requestSync();
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Error resolving " + key, e);
+            }
+        });
+    }
+
+    private void requestSync() {
+        if (syncRequested.compareAndSet(false, true)) {
+            syncExecutor.execute(() -> {
+                syncRequested.set(false);
+                sync();
+            });
+        }
+    }
+
+    /**
+     * Replays pending operations until the queue is empty or an attempt fails. Runs on the sync
+     * thread only.
+     *
+     * @return null on success, otherwise why the queue was not emptied.
+     */
+    private String sync() {
+        if (isOffline()) {
+            Log.d(TAG, "No network available, sync skipped");
+            return "No network available";
+        }
+        try {
+            List<OutboxOperation> batch;
+            while (!(batch = outbox.nextBatch(batchLimit)).isEmpty()) {
+                List<OutboxOperation> operations = batch;
+                ReplayPlan plan;
+                try {
+                    Map<String, Long> shardDeltas = shardDeltas(ReplayPlan.stockProductIds(operations));
+                    plan = Tasks.await(db.runTransaction(transaction -> replay(transaction, operations, shardDeltas)));
+                } catch (ExecutionException e) {
+                    return failed(operations, e.getCause() != null ? e.getCause() : e);
+                }
+
+                List<String> done = new ArrayList<>(plan.getAlreadyApplied());
+                for (OutboxOperation operation : plan.getToApply()) {
+                    done.add(operation.getKey());
+                }
+                outbox.applied(done, System.currentTimeMillis());
+                for (Map.Entry<String, String> conflict : plan.getConflicts().entrySet()) {
+                    Log.w(TAG, "Conflict in " + conflict.getKey() + ": " + conflict.getValue());
+                    outbox.conflicted(conflict.getKey(), conflict.getValue());
+                }
+                backoffMs = 0;
+                batchLimit = Outbox.MAX_BATCH_WRITES;
+                publishStatus();
+            }
+            Log.d(TAG, "Background sync completed successfully");
+            return null;
+        } catch (IOException e) {
+            Log.e(TAG, "Error updating the outbox", e);
+            return "Sync failed: " + e.getMessage();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "Sync interrupted";
+        }
+    }
+
+    private String failed(List<OutboxOperation> batch, Throwable error) throws IOException {
+        List<String> keys = new ArrayList<>();
+        for (OutboxOperation operation : batch) {
+            keys.add(operation.getKey());
+        }
+        outbox.failed(keys, error.getMessage());
+
+        if (!isTransient(error)) {
+            if (batch.size() == 1) {
+                // Retrying will not help; park it so the operations behind it can go through
+                Log.e(TAG, "Cannot apply " + keys.get(0), error);
+                outbox.conflicted(keys.get(0), error.getMessage());
+                publishStatus();
+                requestSync();
+                return "Sync failed: " + error.getMessage();
+            }
+            // Find the operation at fault by replaying one at a time
+            batchLimit = 1;
+            requestSync();
+        } else {
+            backoffMs = backoffMs == 0 ? MIN_BACKOFF_MS : Math.min(backoffMs * 2, MAX_BACKOFF_MS);
+            Log.w(TAG, "Sync failed, retrying in " + backoffMs + " ms", error);
+            syncExecutor.schedule(this::requestSync, backoffMs, TimeUnit.MILLISECONDS);
+        }
+        publishStatus();
+        return "Sync failed: " + error.getMessage();
+    }
+
+    private static boolean isTransient(Throwable error) {
+        if (!(error instanceof FirebaseFirestoreException))
+            return false;
+        switch (((FirebaseFirestoreException) error).getCode()) {
+            case UNAVAILABLE:
+            case DEADLINE_EXCEEDED:
+            case ABORTED:
+            case RESOURCE_EXHAUSTED:
+            case CANCELLED:
+            case INTERNAL:
+            case UNKNOWN:
+            case UNAUTHENTICATED:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * The replay transaction. Reads receipts, stock and item lists, then writes the operations
+     * {@link ReplayPlan} accepts together with their receipts and {@link InventoryMovement ledger}
+     * entries. Free of side effects, as Firestore may run it more than once.
+     *
+     * @param shardDeltas summed {@link StockShards} of each product whose stock the batch changes
+     */
+    private ReplayPlan replay(Transaction transaction, List<OutboxOperation> batch, Map<String, Long> shardDeltas)
+            throws FirebaseFirestoreException {
+        Set<String> receipts = new HashSet<>();
+        for (OutboxOperation operation : batch) {
+            if (transaction.get(receiptRef(operation.getKey())).exists()) {
+                receipts.add(operation.getKey());
+            }
+        }
+
+        Map<String, Long> stock = new HashMap<>();
+        Map<String, Integer> shardCounts = new HashMap<>();
+        for (String productId : ReplayPlan.stockProductIds(batch)) {
+            DocumentSnapshot product = transaction.get(db.collection(OutboxWrite.PRODUCTS).document(productId));
+            if (product.exists()) {
+                Long quantity = product.getLong(OutboxWrite.QUANTITY);
+                long shards = shardDeltas.containsKey(productId) ? shardDeltas.get(productId) : 0L;
+                stock.put(productId, (quantity != null ? quantity : 0L) + shards);
+                shardCounts.put(productId, StockShards.shardCount(product.get(StockShards.SHARD_COUNT)));
+            }
+        }
+
+        Map<String, String> arrayFields = new LinkedHashMap<>();
+        for (OutboxOperation operation : batch) {
+            for (OutboxWrite write : operation.getWrites()) {
+                if (write.getKind() == OutboxWrite.Kind.INCREMENT_ITEM) {
+                    arrayFields.put(write.getPath(), write.getArrayField());
+                }
+            }
+        }
+        Map<String, List<Map<String, Object>>> itemLists = new HashMap<>();
+        for (Map.Entry<String, String> entry : arrayFields.entrySet()) {
+            DocumentSnapshot document = transaction.get(db.document(entry.getKey()));
+            if (document.exists()) {
+                itemLists.put(entry.getKey(), items(document.get(entry.getValue())));
+            }
+        }
+
+        ReplayPlan plan = ReplayPlan.plan(batch, receipts, stock, itemLists);
+        Employee employee = CurrentUser.getInstance().getEmployee();
+        for (OutboxOperation operation : plan.getToApply()) {
+            for (OutboxWrite write : operation.getWrites()) {
+                DocumentReference ref = db.collection(write.getCollection()).document(write.getDocumentId());
+                switch (write.getKind()) {
+                    case SET:
+                        transaction.set(ref, model(write));
+                        break;
+                    case INCREMENT:
+                        Number delta = write.getDelta();
+                        FieldValue increment = delta instanceof Long
+                                ? FieldValue.increment(delta.longValue())
+                                : FieldValue.increment(delta.doubleValue());
+                        Integer shards = write.isStockChange() ? shardCounts.get(write.getDocumentId()) : null;
+                        if (shards != null && shards > 0) {
+                            // Hot product: spread over its shards, the product document stays unlocked
+                            DocumentReference shard = ref.collection(StockShards.COLLECTION)
+                                    .document(StockShards.shardId(shards, random));
+                            Map<String, Object> change = new HashMap<>();
+                            change.put(StockShards.DELTA, increment);
+                            transaction.set(shard, change, SetOptions.merge());
+                        } else if (OutboxWrite.PRODUCTS.equals(write.getCollection())) {
+                            // Products are delta-synced, so their writes carry the server time
+                            transaction.update(ref, write.getField(), increment,
+                                    SyncClient.UPDATED_AT, FieldValue.serverTimestamp());
+                        } else {
+                            transaction.update(ref, write.getField(), increment);
+                        }
+                        break;
+                    case INCREMENT_ITEM:
+                        // Written once per document below
+                        break;
+                }
+            }
+            Map<String, Long> lines = InventoryMovement.lines(operation.getWrites());
+            if (!lines.isEmpty()) {
+                Map<String, Object> movement = InventoryMovement.document(operation.getType().name(),
+                        referenceOf(operation), lines,
+                        employee != null ? employee.getDocumentId() : null,
+                        employee != null ? employee.getName() : null);
+                movement.put(InventoryMovement.CREATED_AT, FieldValue.serverTimestamp());
+                transaction.set(db.collection(InventoryMovement.COLLECTION).document(operation.getKey()), movement);
+            }
+            Map<String, Object> receipt = new HashMap<>();
+            receipt.put("type", operation.getType().name());
+            receipt.put("queuedAt", new Timestamp(new Date(operation.getCreatedAt())));
+            receipt.put("appliedAt", FieldValue.serverTimestamp());
+            transaction.set(receiptRef(operation.getKey()), receipt);
+        }
+        for (Map.Entry<String, List<Map<String, Object>>> entry : plan.getItemLists().entrySet()) {
+            transaction.update(db.document(entry.getKey()), arrayFields.get(entry.getKey()), entry.getValue());
+        }
+        return plan;
+    }
+
+    // The document the operation records, e.g. the sale or the return
+    private static String referenceOf(OutboxOperation operation) {
+        for (OutboxWrite write : operation.getWrites()) {
+            if (write.getKind() == OutboxWrite.Kind.SET) {
+                return write.getDocumentId();
+            }
+        }
+        return operation.getKey();
+    }
+
+    /**
+     * Sums the stock shards of the products. Read outside the replay transaction, which would
+     * otherwise have to retry whenever a concurrent sale wrote to one of them.
+     */
+    private Map<String, Long> shardDeltas(Set<String> productIds)
+            throws ExecutionException, InterruptedException {
+        Map<String, Task<QuerySnapshot>> queries = new LinkedHashMap<>();
+        for (String productId : productIds) {
+            queries.put(productId, db.collection(OutboxWrite.PRODUCTS).document(productId)
+                    .collection(StockShards.COLLECTION).get(Source.SERVER));
+        }
+        Map<String, Long> deltas = new HashMap<>();
+        for (Map.Entry<String, Task<QuerySnapshot>> query : queries.entrySet()) {
+            List<Object> shards = new ArrayList<>();
+            for (DocumentSnapshot shard : Tasks.await(query.getValue()).getDocuments()) {
+                shards.add(shard.get(StockShards.DELTA));
+            }
+            deltas.put(query.getKey(), StockShards.stock(0, shards));
+        }
+        return deltas;
+    }
+
+    private DocumentReference receiptRef(String key) {
+        return db.collection(RECEIPTS).document(key);
+    }
+
+    private static Object model(OutboxWrite write) throws FirebaseFirestoreException {
+        try {
+            return write.getModel();
+        } catch (ClassNotFoundException | RuntimeException e) {
+            throw new FirebaseFirestoreException("Cannot read queued write to " + write.getPath(),
+                    FirebaseFirestoreException.Code.INVALID_ARGUMENT, e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Map<String, Object>> items(Object value) {
+        List<Map<String, Object>> items = new ArrayList<>();
+        if (value instanceof List) {
+            for (Object item : (List<Object>) value) {
+                if (item instanceof Map) {
+                    items.add((Map<String, Object>) item);
+                }
+            }
+        }
+        return items;
+    }
+
+    private void publishStatus() {
+        status.postValue(outbox.stats());
+    }
+
     /**
      * Interface for sync callback
      */
     public interface SyncCallback {
         void onSyncComplete(boolean success, String message);
     }
-}
\ No newline at end of file
+
+    public interface EnqueueCallback {
+        void onQueued();
+
+        void onFailure(Exception e);
+    }
+
+    public interface ConflictsCallback {
+        void onConflicts(List<OutboxOperation> conflicts);
+    }
+}
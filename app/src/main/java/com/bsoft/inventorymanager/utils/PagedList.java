@@ -0,0 +1,142 @@
+package com.bsoft.inventorymanager.utils;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Immutable list made of pages, where appending a page returns a new list in O(page) time.
+ * <p>
+ * Versions share one growing chunk table: each knows how many chunks it sees, so appending to the
+ * newest version only adds a chunk, and older versions handed to observers stay valid and unchanged.
+ * Appending to an older version copies the chunk table (not the items). {@link #get(int)} is a
+ * binary search over chunk boundaries.
+ * <p>
+ * Not thread-safe for concurrent appends; reads of any version are safe once published.
+ */
+public final class PagedList<T> extends AbstractList<T> implements RandomAccess {
+
+    private static final PagedList<Object> EMPTY = new PagedList<>(new Chunks(), 0, 0);
+
+    private static final class Chunks {
+        Object[][] pages = new Object[8][];
+        // ends[i] = total size of pages[0..i]
+        int[] ends = new int[8];
+        int count;
+    }
+
+    private final Chunks chunks;
+    private final int chunkCount;
+    private final int size;
+
+    private PagedList(Chunks chunks, int chunkCount, int size) {
+        this.chunks = chunks;
+        this.chunkCount = chunkCount;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> PagedList<T> empty() {
+        return (PagedList<T>) EMPTY;
+    }
+
+    /**
+     * @return a list with {@code page} appended; this list is left unchanged.
+     */
+    public PagedList<T> append(List<? extends T> page) {
+        if (page.isEmpty())
+            return this;
+
+        Chunks target = chunks;
+        // Someone already appended to this version, or it is the shared empty list: branch off
+        if (this == EMPTY || chunks.count != chunkCount) {
+            target = new Chunks();
+            target.pages = Arrays.copyOf(chunks.pages, Math.max(8, chunkCount * 2));
+            target.ends = Arrays.copyOf(chunks.ends, Math.max(8, chunkCount * 2));
+            target.count = chunkCount;
+        }
+        if (target.count == target.pages.length) {
+            target.pages = Arrays.copyOf(target.pages, target.count * 2);
+            target.ends = Arrays.copyOf(target.ends, target.count * 2);
+        }
+        target.pages[target.count] = page.toArray();
+        target.ends[target.count] = size + page.size();
+        target.count++;
+        return new PagedList<>(target, target.count, size + page.size());
+    }
+
+    /**
+     * @return a list without the item at {@code index}. Copies every item; meant for rare removals.
+     */
+    public PagedList<T> removeAt(int index) {
+        List<T> items = new ArrayList<>(this);
+        items.remove(index);
+        return PagedList.<T>empty().append(items);
+    }
+
+    /**
+     * @return a list with {@code item} inserted at {@code index}. Copies every item; meant for rare
+     * insertions.
+     */
+    public PagedList<T> insertAt(int index, T item) {
+        List<T> items = new ArrayList<>(this);
+        items.add(index, item);
+        return PagedList.<T>empty().append(items);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        int low = 0;
+        int high = chunkCount - 1;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (chunks.ends[mid] <= index) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        int chunkStart = low == 0 ? 0 : chunks.ends[low - 1];
+        return (T) chunks.pages[low][index - chunkStart];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return a read-only view of {@code head} followed by {@code tail}. Neither list is copied, so
+     * the caller must not modify them afterwards.
+     */
+    public static <T> List<T> concat(List<T> head, List<T> tail) {
+        if (head.isEmpty())
+            return tail;
+        return new Concat<>(head, tail);
+    }
+
+    private static final class Concat<T> extends AbstractList<T> implements RandomAccess {
+        private final List<T> head;
+        private final List<T> tail;
+
+        Concat(List<T> head, List<T> tail) {
+            this.head = head;
+            this.tail = tail;
+        }
+
+        @Override
+        public T get(int index) {
+            return index < head.size() ? head.get(index) : tail.get(index - head.size());
+        }
+
+        @Override
+        public int size() {
+            return head.size() + tail.size();
+        }
+    }
+}
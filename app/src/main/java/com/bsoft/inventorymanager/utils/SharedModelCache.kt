@@ -0,0 +1,40 @@
+package com.bsoft.inventorymanager.utils
+
+/**
+ * Memoizes Java-to-shared model conversion per document id.
+ *
+ * Repository lists re-emit the same Java instances for documents that did not change, so a cached
+ * conversion is reused as long as its source instance is the one in the list. [mapList] returns a
+ * lazy view: only rows that are actually read (e.g. bound by an adapter) are ever converted.
+ *
+ * Not thread-safe; use from the main thread like the LiveData it serves.
+ */
+class SharedModelCache<J : Any, S>(
+    private val idOf: (J) -> String?,
+    private val convert: (J) -> S
+) {
+
+    private class Entry<J, S>(val source: J, val shared: S)
+
+    private val entries = HashMap<String, Entry<J, S>>()
+
+    fun mapList(items: List<J>): List<S> {
+        if (items.isEmpty()) {
+            // Pagination was reset, forget documents that are no longer loaded
+            entries.clear()
+            return emptyList()
+        }
+        return object : AbstractList<S>(), RandomAccess {
+            override val size: Int get() = items.size
+            override fun get(index: Int): S = map(items[index])
+        }
+    }
+
+    fun map(item: J): S {
+        val id = idOf(item)
+        if (id.isNullOrEmpty()) return convert(item)
+        val entry = entries[id]
+        if (entry != null && entry.source === item) return entry.shared
+        return convert(item).also { entries[id] = Entry(item, it) }
+    }
+}
@@ -50,14 +50,15 @@ class CreatePurchaseViewModel @Inject constructor(
     fun loadSuppliers() {
         _isLoading.value = true
         purchaseRepository.getSuppliers(object : PurchaseRepository.SuppliersCallback {
+            // Called on the repository's background thread
             override fun onSuccess(supplierList: List<Supplier>) {
-                _isLoading.value = false
-                _suppliers.value = supplierList
+                _isLoading.postValue(false)
+                _suppliers.postValue(supplierList)
             }
 
             override fun onFailure(e: Exception) {
-                _isLoading.value = false
-                _error.value = "Failed to load suppliers: ${e.message}"
+                _isLoading.postValue(false)
+                _error.postValue("Failed to load suppliers: ${e.message}")
             }
         })
     }
@@ -43,9 +43,16 @@ class CreateSaleViewModel @Inject constructor(
     private val _saleSuccess = MutableLiveData<String?>()
     val saleSuccess: LiveData<String?> = _saleSuccess
 
+    // Recorded offline, not yet on the server
+    private val _saleQueued = MutableLiveData<String?>()
+    val saleQueued: LiveData<String?> = _saleQueued
+
     private val _customers = MutableLiveData<List<Customer>>()
     val customers: LiveData<List<Customer>> = _customers
 
+    // Set by loadSale: saving then edits that sale instead of recording a new one
+    private var editingSaleId: String? = null
+
     init {
         loadCustomers()
     }
@@ -203,17 +210,29 @@ class CreateSaleViewModel @Inject constructor(
         sale.userId = "CURRENT_USER_ID"
         sale.status = "confirmed" // Default to confirmed for now
 
-        saleRepository.saveSale(sale, items, object : SaleRepository.SaleCallback {
+        val callback = object : SaleRepository.SaleCallback {
             override fun onSuccess(saleId: String) {
                 _isLoading.postValue(false)
                 _saleSuccess.postValue(saleId)
             }
 
+            override fun onQueued(saleId: String) {
+                _isLoading.postValue(false)
+                _saleQueued.postValue(saleId)
+            }
+
             override fun onFailure(e: Exception) {
                 _isLoading.postValue(false)
                 _error.postValue(e.message)
             }
-        })
+        }
+        val editing = editingSaleId
+        if (editing != null) {
+            sale.documentId = editing
+            saleRepository.updateSale(sale, items, callback)
+        } else {
+            saleRepository.saveSale(sale, items, callback)
+        }
     }
 
     fun loadProductByBarcode(barcode: String) {
@@ -238,6 +257,7 @@ class CreateSaleViewModel @Inject constructor(
     }
 
     fun loadSale(saleId: String) {
+        editingSaleId = saleId
         _isLoading.value = true
         saleRepository.getSale(saleId, object : SaleRepository.GetSaleCallback {
             override fun onSuccess(sale: Sale) {
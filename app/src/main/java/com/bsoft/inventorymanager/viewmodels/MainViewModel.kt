@@ -17,6 +17,7 @@ import com.bsoft.inventorymanager.repository.ProductPage
 import com.bsoft.inventorymanager.repository.BrandsAndCategories
 import com.bsoft.inventorymanager.utils.ModelMappers.toShared
 import com.bsoft.inventorymanager.utils.ModelMappers
+import com.bsoft.inventorymanager.utils.SharedModelCache
 import dagger.hilt.android.lifecycle.HiltViewModel
 import kotlinx.coroutines.launch
 import javax.inject.Inject
@@ -33,18 +34,23 @@ class MainViewModel @Inject constructor(
     private val _products = MutableLiveData<List<Product>>(ArrayList())
     val products: LiveData<List<Product>> = _products
 
-    private var lastProductDocumentId: String? = null
+    private var nextProductPageToken: String? = null
     private var isLastPageProducts = false
     private var loadingProducts = false
 
     // --- Sales (Migrated to KMP Shared via mapping) ---
+    // Converted lazily and once per document version, not on every page emission
+    private val sharedSales = SharedModelCache<com.bsoft.inventorymanager.models.Sale, Sale>(
+        { it.documentId }, { it.toShared() })
     val sales: LiveData<List<Sale>> = mainRepository.sales.map { legacySales ->
-        legacySales.map { it.toShared() }
+        sharedSales.mapList(legacySales)
     }
 
     // --- Purchases (Migrated to KMP Shared via mapping) ---
+    private val sharedPurchases = SharedModelCache<Purchase, com.bsoft.inventorymanager.model.Purchase>(
+        { it.documentId }, { with(ModelMappers) { it.toShared() } })
     val purchases: LiveData<List<com.bsoft.inventorymanager.model.Purchase>> = mainRepository.purchases.map { legacyPurchases ->
-        legacyPurchases.map { with(ModelMappers) { it.toShared() } }
+        sharedPurchases.mapList(legacyPurchases)
     }
 
     // --- Expenses (Legacy) ---
@@ -66,7 +72,7 @@ class MainViewModel @Inject constructor(
 
         viewModelScope.launch {
             productRepository.fetchPaginatedProducts(
-                lastDocumentId = lastProductDocumentId,
+                pageToken = nextProductPageToken,
                 brand = null,
                 category = null,
                 searchQuery = null,
@@ -75,7 +81,7 @@ class MainViewModel @Inject constructor(
                 val currentList = _products.value?.toMutableList() ?: mutableListOf()
                 currentList.addAll(page.products)
                 _products.value = currentList
-                lastProductDocumentId = page.lastDocumentId
+                nextProductPageToken = page.nextPageToken
                 isLastPageProducts = !page.hasMore
                 loadingProducts = false
                 updateLoadingState()
@@ -146,14 +152,14 @@ class MainViewModel @Inject constructor(
     fun refreshData() {
         // Reset products
         _products.value = ArrayList()
-        lastProductDocumentId = null
+        nextProductPageToken = null
         isLastPageProducts = false
 
-        mainRepository.resetPagination()
+        // Sales and purchases heads are live, refreshing keeps their loaded pages
+        mainRepository.refreshSalesAndPurchases()
         expenseRepository.resetPagination()
 
         loadNextPageProducts()
-        mainRepository.preloadMainData()
         expenseRepository.preloadExpenses()
     }
 
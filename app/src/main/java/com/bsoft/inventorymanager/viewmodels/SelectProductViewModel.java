@@ -2,9 +2,12 @@ package com.bsoft.inventorymanager.viewmodels;
 
 import androidx.lifecycle.LiveData;
 import androidx.lifecycle.MutableLiveData;
+import androidx.lifecycle.Observer;
 import androidx.lifecycle.ViewModel;
 import com.bsoft.inventorymanager.models.Product;
+import com.bsoft.inventorymanager.repositories.LocalProductSearchRepository;
 import com.bsoft.inventorymanager.repositories.ProductRepository;
+import com.bsoft.inventorymanager.search.ProductSearch;
 import com.google.firebase.firestore.DocumentSnapshot;
 import java.util.ArrayList;
 import java.util.List;
@@ -14,6 +17,7 @@ import dagger.hilt.android.lifecycle.HiltViewModel;
 @HiltViewModel
 public class SelectProductViewModel extends ViewModel {
     private final ProductRepository productRepository;
+    private final LocalProductSearchRepository localSearch;
 
     private final MutableLiveData<List<Product>> productsList = new MutableLiveData<>(new ArrayList<>());
     private final MutableLiveData<List<String>> brandsList = new MutableLiveData<>(new ArrayList<>());
@@ -26,9 +30,29 @@ public class SelectProductViewModel extends ViewModel {
     private String currentCategory = "All Categories";
     private String currentSearchQuery = "";
 
+    // Drops results of superseded local searches
+    private volatile int searchGeneration = 0;
+    // Re-runs the current search when the local index changes (first snapshot, product edits)
+    private final Observer<Integer> indexObserver = version -> {
+        if (localSearch.isReady()) {
+            runLocalSearch();
+        }
+    };
+
     @Inject
-    public SelectProductViewModel(ProductRepository productRepository) {
+    public SelectProductViewModel(ProductRepository productRepository, LocalProductSearchRepository localSearch) {
         this.productRepository = productRepository;
+        this.localSearch = localSearch;
+        localSearch.start();
+        // Only what changed since the last open is downloaded
+        localSearch.refresh();
+        localSearch.getIndexVersion().observeForever(indexObserver);
+    }
+
+    @Override
+    protected void onCleared() {
+        localSearch.getIndexVersion().removeObserver(indexObserver);
+        super.onCleared();
     }
 
     public LiveData<List<Product>> getProductsList() {
@@ -52,18 +76,14 @@ public class SelectProductViewModel extends ViewModel {
     }
 
     public void initMetadata() {
+        if (localSearch.isReady()) {
+            localSearch.loadFilters((brands, categories) -> publishFilters(brands, categories));
+            return;
+        }
         productRepository.fetchUniqueBrandsAndCategories(new ProductRepository.UniqueFieldsCallback() {
             @Override
             public void onSuccess(List<String> brands, List<String> categories) {
-                List<String> b = new ArrayList<>();
-                b.add("All Brands");
-                b.addAll(brands);
-                brandsList.setValue(b);
-
-                List<String> c = new ArrayList<>();
-                c.add("All Categories");
-                c.addAll(categories);
-                categoriesList.setValue(c);
+                publishFilters(brands, categories);
             }
 
             @Override
@@ -73,6 +93,18 @@ public class SelectProductViewModel extends ViewModel {
         });
     }
 
+    private void publishFilters(List<String> brands, List<String> categories) {
+        List<String> b = new ArrayList<>();
+        b.add("All Brands");
+        b.addAll(brands);
+        brandsList.postValue(b);
+
+        List<String> c = new ArrayList<>();
+        c.add("All Categories");
+        c.addAll(categories);
+        categoriesList.postValue(c);
+    }
+
     public void setFilters(String brand, String category, String searchQuery) {
         boolean changed = !currentBrand.equals(brand) || !currentCategory.equals(category)
                 || !currentSearchQuery.equals(searchQuery);
@@ -85,6 +117,12 @@ public class SelectProductViewModel extends ViewModel {
     }
 
     public void resetPaginationAndLoad() {
+        if (localSearch.isReady()) {
+            // Answered from the on-device index, no round trip per keystroke
+            runLocalSearch();
+            return;
+        }
+        searchGeneration++;
         lastVisible = null;
         isLastPage.setValue(false);
         productsList.setValue(new ArrayList<>());
@@ -96,10 +134,16 @@ public class SelectProductViewModel extends ViewModel {
             return;
 
         isLoading.setValue(true);
+        int generation = searchGeneration;
         productRepository.fetchPaginatedProducts(lastVisible, currentBrand, currentCategory, currentSearchQuery, 20,
                 new ProductRepository.PaginationCallback() {
                     @Override
                     public void onSuccess(List<DocumentSnapshot> documents, boolean hasMore) {
+                        if (generation != searchGeneration) {
+                            // Superseded, e.g. the local index took over meanwhile
+                            isLoading.setValue(false);
+                            return;
+                        }
                         if (!documents.isEmpty()) {
                             lastVisible = documents.get(documents.size() - 1);
                             List<Product> newProducts = new ArrayList<>();
@@ -107,8 +151,7 @@ public class SelectProductViewModel extends ViewModel {
                                 Product p = doc.toObject(Product.class);
                                 if (p != null) {
                                     p.setDocumentId(doc.getId());
-                                    // Local filtering for search query if needed (since Firestore doesn't do
-                                    // "contains" well)
+                                    // The index query matched the longest word, check the rest of the query
                                     if (currentSearchQuery.isEmpty() || matchesSearch(p, currentSearchQuery)) {
                                         newProducts.add(p);
                                     }
@@ -131,10 +174,19 @@ public class SelectProductViewModel extends ViewModel {
                 });
     }
 
+    private void runLocalSearch() {
+        int generation = ++searchGeneration;
+        String brand = "All Brands".equals(currentBrand) ? null : currentBrand;
+        String category = "All Categories".equals(currentCategory) ? null : currentCategory;
+        localSearch.search(currentSearchQuery, brand, category, products -> {
+            if (generation != searchGeneration)
+                return;
+            isLastPage.postValue(true);
+            productsList.postValue(products);
+        });
+    }
+
     private boolean matchesSearch(Product p, String query) {
-        String q = query.toLowerCase();
-        return (p.getName() != null && p.getName().toLowerCase().contains(q)) ||
-                (p.getProductCode() != null && p.getProductCode().toLowerCase().contains(q)) ||
-                (p.getBarcode() != null && p.getBarcode().toLowerCase().contains(q));
+        return ProductSearch.matches(query, p.getName(), p.getProductCode(), p.getBarcode());
     }
 }
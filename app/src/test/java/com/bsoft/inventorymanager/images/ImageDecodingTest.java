@@ -0,0 +1,45 @@
+package com.bsoft.inventorymanager.images;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ImageDecodingTest {
+
+    private static final String REF = "sha256:ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+
+    @Test
+    public void samplesDownWithoutGoingBelowTheTarget() {
+        assertEquals(1, ImageDecoding.inSampleSize(100, 100, 128, 128));
+        assertEquals(1, ImageDecoding.inSampleSize(255, 255, 128, 128));
+        assertEquals(2, ImageDecoding.inSampleSize(256, 256, 128, 128));
+        assertEquals(4, ImageDecoding.inSampleSize(2048, 1024, 256, 256));
+        // Limited by the smaller side
+        assertEquals(2, ImageDecoding.inSampleSize(4000, 300, 100, 100));
+        // Unknown target size
+        assertEquals(1, ImageDecoding.inSampleSize(4000, 3000, 0, 0));
+    }
+
+    @Test
+    public void keysByDocumentContentAndSize() {
+        String key = ImageDecoding.cacheKey("p1", REF, 128, 128);
+        assertEquals("p1_ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad_128x128", key);
+
+        assertFalse(key.equals(ImageDecoding.cacheKey("p2", REF, 128, 128)));
+        assertFalse(key.equals(ImageDecoding.cacheKey("p1", REF, 512, 512)));
+
+        String inline = ImageDecoding.cacheKey("p1", "/9j/4AAQ", 128, 128);
+        assertFalse(inline.equals(ImageDecoding.cacheKey("p1", "/9j/4AAR", 128, 128)));
+        assertTrue(ImageDecoding.cacheKey("a/b", REF, 1, 1).startsWith("a_b_"));
+    }
+
+    @Test
+    public void urlsAndEmptyValuesAreNotCached() {
+        assertNull(ImageDecoding.cacheKey("p1", "https://example.com/a.jpg", 128, 128));
+        assertNull(ImageDecoding.cacheKey("p1", "", 128, 128));
+        assertNull(ImageDecoding.cacheKey("p1", null, 128, 128));
+    }
+}
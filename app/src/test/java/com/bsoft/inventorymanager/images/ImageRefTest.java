@@ -0,0 +1,56 @@
+package com.bsoft.inventorymanager.images;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+public class ImageRefTest {
+
+    private static final String ABC_SHA256 = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+
+    @Test
+    public void addressesContentBySha256() {
+        ImageRef ref = ImageRef.of("abc".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(ABC_SHA256, ref.getHash());
+        assertEquals("sha256:" + ABC_SHA256, ref.value());
+        assertEquals(ref, ImageRef.parse(ref.value()));
+    }
+
+    @Test
+    public void sizesShareTheStoredValue() {
+        ImageRef full = ImageRef.parse("sha256:" + ABC_SHA256);
+        ImageRef thumbnail = full.thumbnail();
+
+        assertTrue(thumbnail.isThumbnail());
+        assertFalse(full.isThumbnail());
+        assertEquals(full.value(), thumbnail.value());
+        assertNotEquals(full, thumbnail);
+        assertEquals(full, thumbnail.full());
+    }
+
+    @Test
+    public void classifiesFieldValues() {
+        String ref = "sha256:" + ABC_SHA256;
+        String url = "https://images.example.com/p.jpg";
+        String inline = "/9j/4AAQSkZJRgABAQAAAQABAAD";
+
+        assertNull(ImageRef.parse(url));
+        assertNull(ImageRef.parse(inline));
+        assertNull(ImageRef.parse("sha256:" + ABC_SHA256.toUpperCase()));
+        assertNull(ImageRef.parse("sha256:abc"));
+        assertNull(ImageRef.parse(null));
+
+        assertTrue(ImageRef.isUrl(url));
+        assertTrue(ImageRef.isInline(inline));
+        assertFalse(ImageRef.isInline(ref));
+        assertFalse(ImageRef.isInline(url));
+        assertFalse(ImageRef.isInline(""));
+    }
+}
@@ -0,0 +1,155 @@
+package com.bsoft.inventorymanager.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.bsoft.inventorymanager.models.ApiProduct;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+/**
+ * Runs the enrichment queue against a local server through the production HTTP client, cache
+ * included.
+ */
+public class BarcodeEnrichmentQueueTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final AtomicInteger flakyCalls = new AtomicInteger();
+    private MockWebServer server;
+    private ProductApiService apiService;
+
+    private static class Outcomes implements BarcodeEnrichmentQueue.Listener {
+        final Map<String, String> results = new ConcurrentHashMap<>();
+        final CountDownLatch drained = new CountDownLatch(1);
+
+        @Override
+        public void onEnriched(String barcode, ApiProduct product) {
+            results.put(barcode, product.getProductName());
+        }
+
+        @Override
+        public void onNotFound(String barcode) {
+            results.put(barcode, "not found");
+        }
+
+        @Override
+        public void onFailed(String barcode, Throwable error) {
+            results.put(barcode, "failed");
+        }
+
+        @Override
+        public void onDrained() {
+            drained.countDown();
+        }
+
+        Map<String, String> await() throws InterruptedException {
+            assertTrue("queue did not drain", drained.await(10, TimeUnit.SECONDS));
+            return results;
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                String barcode = request.getRequestUrl().pathSegments().get(3);
+                switch (barcode) {
+                    case "111":
+                        return found("Cola");
+                    case "222":
+                        return new MockResponse().setResponseCode(404).setBody("{\"status\":0}");
+                    case "333":
+                        // Rate limited once, then answers
+                        return flakyCalls.getAndIncrement() == 0
+                                ? new MockResponse().setResponseCode(429).setHeader("Retry-After", "0")
+                                : found("Soap");
+                    case "555":
+                        return new MockResponse().setResponseCode(503);
+                    default:
+                        return new MockResponse().setResponseCode(400);
+                }
+            }
+        });
+        server.start();
+        apiService = RetrofitClient.create(server.url("/").toString(),
+                RetrofitClient.newHttpClient(folder.newFolder("http"))).create(ProductApiService.class);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        server.shutdown();
+    }
+
+    private static MockResponse found(String name) {
+        return new MockResponse().setBody("{\"status\":1,\"product\":{\"product_name\":\"" + name + "\"}}");
+    }
+
+    private BarcodeEnrichmentQueue queue(Outcomes outcomes) {
+        return new BarcodeEnrichmentQueue(apiService, 2, new TokenBucket(10, 1000), 3, 10, outcomes);
+    }
+
+    @Test
+    public void classifiesRetriesAndCachesLookups() throws Exception {
+        Outcomes first = new Outcomes();
+        BarcodeEnrichmentQueue queue = queue(first);
+        queue.enqueue(Arrays.asList("111", "222", "333", "444", "555", " 111 ", " "));
+
+        Map<String, String> results = first.await();
+        assertEquals("Cola", results.get("111"));
+        assertEquals("not found", results.get("222"));
+        assertEquals("Soap", results.get("333"));
+        assertEquals("failed", results.get("444"));
+        assertEquals("failed", results.get("555"));
+        assertEquals(5, results.size());
+        // 111, 222, 444 once; 333 twice; 555 for each of its 3 attempts
+        assertEquals(8, server.getRequestCount());
+        queue.shutdown();
+
+        // Found and not found answers now come from the disk cache
+        Outcomes second = new Outcomes();
+        queue = queue(second);
+        queue.enqueue(Arrays.asList("111", "222"));
+        results = second.await();
+        assertEquals("Cola", results.get("111"));
+        assertEquals("not found", results.get("222"));
+        assertEquals(8, server.getRequestCount());
+        queue.shutdown();
+    }
+
+    @Test
+    public void tokenBucketSpacesOutRequests() throws Exception {
+        Outcomes outcomes = new Outcomes();
+        // One request up front, then one every 50 ms
+        BarcodeEnrichmentQueue queue = new BarcodeEnrichmentQueue(apiService, 4, new TokenBucket(1, 20), 1, 10,
+                outcomes);
+
+        long start = System.nanoTime();
+        queue.enqueue(Arrays.asList("111", "a1", "a2", "a3", "a4"));
+        outcomes.await();
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertTrue("finished in " + elapsedMs + " ms", elapsedMs >= 190);
+        assertEquals(5, server.getRequestCount());
+        queue.shutdown();
+    }
+}
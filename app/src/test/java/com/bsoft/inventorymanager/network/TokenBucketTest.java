@@ -0,0 +1,41 @@
+package com.bsoft.inventorymanager.network;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class TokenBucketTest {
+
+    private long now = 0;
+
+    @Test
+    public void allowsBurstThenQueuesReservationsInOrder() {
+        // 2 per second, burst of 3
+        TokenBucket bucket = new TokenBucket(3, 2, () -> now);
+        long halfSecond = TimeUnit.MILLISECONDS.toNanos(500);
+
+        assertEquals(0, bucket.reserve());
+        assertEquals(0, bucket.reserve());
+        assertEquals(0, bucket.reserve());
+        assertEquals(halfSecond, bucket.reserve());
+        assertEquals(2 * halfSecond, bucket.reserve());
+
+        // The debt is paid back before new tokens accumulate
+        now += 2 * halfSecond;
+        assertEquals(halfSecond, bucket.reserve());
+    }
+
+    @Test
+    public void refillIsCappedAtCapacity() {
+        TokenBucket bucket = new TokenBucket(2, 1, () -> now);
+        bucket.reserve();
+        bucket.reserve();
+
+        now += TimeUnit.MINUTES.toNanos(1);
+        assertEquals(0, bucket.reserve());
+        assertEquals(0, bucket.reserve());
+        assertEquals(TimeUnit.SECONDS.toNanos(1), bucket.reserve());
+    }
+}
@@ -0,0 +1,145 @@
+package com.bsoft.inventorymanager.reports.aggregation;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Correctness checks for the single-pass sales aggregator, on a hand-built input and on synthetic
+ * inputs of report size. Nothing the suite runs is timed, so it does not depend on the machine; the
+ * per-document cost benchmarks are ignored and run by hand (remove {@code @Ignore}, then run one).
+ */
+public class SalesAggregatorTest {
+
+    private static final long START = 1_700_000_000_000L;
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    @Test
+    public void singlePass_computesAllMetrics() {
+        SalesColumns columns = new SalesColumns();
+        columns.addSale(START + 10, 100.0, 30.0, "c1", "Alice");
+        columns.addItem("p1", "Rice", "Food", 2, 60.0, 20.0);
+        columns.addItem("p2", "Soap", null, 1, 40.0, 10.0);
+        columns.addSale(START + DAY + 10, 50.0, 5.0, "c2", "Bob");
+        columns.addItem("p1", "Rice", "Food", 1, 50.0, 45.0);
+        columns.addSale(START + DAY + 20, 20.0, 2.0, null, null);
+
+        SalesAggregator aggregator = new SalesAggregator();
+        SalesMetrics.Totals totals = aggregator.register(new SalesMetrics.Totals());
+        SalesMetrics.OverTime overTime = aggregator.register(new SalesMetrics.OverTime(START, START + 2 * DAY, DAY));
+        SalesMetrics.Products products = aggregator.register(new SalesMetrics.Products());
+        SalesMetrics.CustomerSpend customers = aggregator.register(new SalesMetrics.CustomerSpend());
+        SalesMetrics.CategoryRevenue categories = aggregator.register(new SalesMetrics.CategoryRevenue());
+        aggregator.run(columns);
+
+        assertEquals(170.0, totals.getRevenue(), 1e-9);
+        assertEquals(37.0, totals.getProfit(), 1e-9);
+        assertEquals(3, totals.getTransactions());
+        BucketSeries revenueByDay = overTime.getRevenue().toSeries();
+        assertEquals(2, revenueByDay.size());
+        assertEquals(100.0, revenueByDay.value(0), 1e-9);
+        assertEquals(1L, revenueByDay.bucket(1));
+        assertEquals(70.0, revenueByDay.value(1), 1e-9);
+
+        assertArrayEquals(new int[] { 3, 1 }, products.getQuantities());
+        // p1: (60 - 20 * 2) + (50 - 45 * 1) = 25, p2: 40 - 10 = 30
+        assertEquals(25.0, products.getProfits()[0], 1e-9);
+        assertEquals(30.0, products.getProfits()[1], 1e-9);
+        assertArrayEquals(new int[] { 1, 0 }, SalesMetrics.topIds(products.getProfits(), 10));
+
+        assertEquals(100.0, customers.getSpend()[0], 1e-9);
+        assertEquals("Bob", columns.customerName(1));
+
+        assertEquals("Food", columns.category(0));
+        assertEquals("Uncategorized", columns.category(1));
+        assertEquals(110.0, categories.getRevenue()[0], 1e-9);
+    }
+
+    @Test
+    public void syntheticSales_10k() {
+        assertEquals(expectedRevenue(10_000), aggregate(syntheticSales(10_000)), 1e-6 * 10_000);
+    }
+
+    @Test
+    public void syntheticSales_100k() {
+        assertEquals(expectedRevenue(100_000), aggregate(syntheticSales(100_000)), 1e-6 * 100_000);
+    }
+
+    @Ignore("Benchmark; prints ns per document, run by hand")
+    @Test
+    public void benchmark_10k() {
+        benchmark(10_000);
+    }
+
+    @Ignore("Benchmark; prints ns per document, run by hand")
+    @Test
+    public void benchmark_100k() {
+        benchmark(100_000);
+    }
+
+    private static void benchmark(int saleCount) {
+        // Warm up the JIT on a smaller batch first
+        aggregate(syntheticSales(Math.min(saleCount, 5_000)));
+
+        long buildNanos = 0;
+        long passNanos = 0;
+        int rounds = 3;
+        double revenue = 0;
+        for (int round = 0; round < rounds; round++) {
+            long t0 = System.nanoTime();
+            SalesColumns columns = syntheticSales(saleCount);
+            long t1 = System.nanoTime();
+            revenue = aggregate(columns);
+            long t2 = System.nanoTime();
+            buildNanos += t1 - t0;
+            passNanos += t2 - t1;
+        }
+
+        System.out.printf("SalesAggregator %,d sales: columnar build %.1f ns/doc, aggregation pass %.1f ns/doc%n",
+                saleCount, (double) buildNanos / rounds / saleCount, (double) passNanos / rounds / saleCount);
+        assertEquals(expectedRevenue(saleCount), revenue, 1e-6 * saleCount);
+    }
+
+    private static double aggregate(SalesColumns columns) {
+        SalesAggregator aggregator = new SalesAggregator();
+        SalesMetrics.Totals totals = aggregator.register(new SalesMetrics.Totals());
+        aggregator.register(new SalesMetrics.OverTime(START, START + 30 * DAY,
+                TimeUnit.MINUTES.toMillis(1)));
+        aggregator.register(new SalesMetrics.Products());
+        aggregator.register(new SalesMetrics.CustomerSpend());
+        aggregator.register(new SalesMetrics.CategoryRevenue());
+        aggregator.run(columns);
+        return totals.getRevenue();
+    }
+
+    private static final String[] CATEGORIES = { "Food", "Drinks", "Household", "Personal Care", "Snacks" };
+
+    private static SalesColumns syntheticSales(int saleCount) {
+        Random random = new Random(42);
+        SalesColumns columns = new SalesColumns();
+        for (int i = 0; i < saleCount; i++) {
+            String customer = "c" + random.nextInt(500);
+            columns.addSale(START + (long) (random.nextDouble() * 30 * DAY), i % 100, 1.0, customer,
+                    customer);
+            int items = 1 + (i % 3);
+            for (int j = 0; j < items; j++) {
+                String product = "p" + random.nextInt(2_000);
+                columns.addItem(product, product, CATEGORIES[j % CATEGORIES.length], 1, 10.0, 8.0);
+            }
+        }
+        return columns;
+    }
+
+    private static double expectedRevenue(int saleCount) {
+        double sum = 0;
+        for (int i = 0; i < saleCount; i++) {
+            sum += i % 100;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,89 @@
+package com.bsoft.inventorymanager.reports.aggregation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+public class TimeBucketHistogramTest {
+
+    private static final long START = 1_700_000_000_000L;
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    @Test
+    public void dense_sumsPerBucketAndSkipsEmptyBuckets() {
+        TimeBucketHistogram histogram = new TimeBucketHistogram(START, START + 31 * DAY, MINUTE);
+        assertTrue(histogram.isDense());
+
+        histogram.add(START + 5 * MINUTE + 1, 10.0);
+        histogram.add(START + 5 * MINUTE + 59_000, 2.5);
+        histogram.add(START + 70, 1.0);
+        histogram.add(START + 40 * DAY, 99.0); // Outside the range
+
+        BucketSeries series = histogram.toSeries();
+        assertEquals(2, series.size());
+        assertEquals(0L, series.bucket(0));
+        assertEquals(1.0, series.value(0), 1e-9);
+        assertEquals(5L, series.bucket(1));
+        assertEquals(12.5, series.value(1), 1e-9);
+    }
+
+    @Test
+    public void sparse_usedForWideRangesAndMatchesDense() {
+        long end = START + 365 * DAY;
+        TimeBucketHistogram sparse = new TimeBucketHistogram(START, end, MINUTE);
+        assertFalse(sparse.isDense());
+
+        Random random = new Random(7);
+        double expected = 0;
+        for (int i = 0; i < 10_000; i++) {
+            long millis = START + (long) (random.nextDouble() * 365 * DAY);
+            sparse.add(millis, 1.0);
+            expected += 1.0;
+        }
+
+        BucketSeries series = sparse.toSeries();
+        double total = 0;
+        for (int i = 0; i < series.size(); i++) {
+            total += series.value(i);
+            if (i > 0) {
+                assertTrue(series.bucket(i) > series.bucket(i - 1));
+            }
+        }
+        assertEquals(expected, total, 1e-9);
+    }
+
+    @Test
+    public void downsample_keepsEndpointsAndPeak() {
+        int n = 46_080; // 32 days of minutes
+        long[] buckets = new long[n];
+        double[] values = new double[n];
+        for (int i = 0; i < n; i++) {
+            buckets[i] = i;
+            values[i] = 1.0;
+        }
+        values[20_000] = 500.0;
+
+        BucketSeries reduced = new BucketSeries(buckets, values).downsample(400);
+        assertEquals(400, reduced.size());
+        assertEquals(0L, reduced.bucket(0));
+        assertEquals(n - 1L, reduced.bucket(reduced.size() - 1));
+        boolean peakKept = false;
+        for (int i = 0; i < reduced.size(); i++) {
+            peakKept |= reduced.bucket(i) == 20_000L && reduced.value(i) == 500.0;
+        }
+        assertTrue(peakKept);
+    }
+
+    @Test
+    public void downsample_returnsSeriesWithinBudgetUnchanged() {
+        BucketSeries series = new BucketSeries(new long[] { 1, 2, 3 }, new double[] { 1, 2, 3 });
+        assertSame(series, series.downsample(500));
+    }
+}
@@ -0,0 +1,79 @@
+package com.bsoft.inventorymanager.reports.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+public class DashboardStatsCacheTest {
+
+    private static final long START = 1_700_000_000_000L;
+    private static final long END = START + 86_400_000L - 1;
+    private static final String ZONE = "Asia/Dhaka";
+
+    private static Map<String, Object> response(long rollupVersion, int transactions) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("totalRevenue", 120.5);
+        response.put("totalTransactions", transactions);
+        response.put("rollupVersion", rollupVersion);
+        return response;
+    }
+
+    private static DashboardStatsCache newCache() throws IOException {
+        File dir = Files.createTempDirectory("dashboard_stats").toFile();
+        return new DashboardStatsCache(dir);
+    }
+
+    @Test
+    public void entrySurvivesReopenAndKeepsCanonicalJson() throws IOException {
+        File dir = Files.createTempDirectory("dashboard_stats").toFile();
+        DashboardStatsCache.Entry written = new DashboardStatsCache(dir)
+                .put(START, END, ZONE, response(3, 4), END + 1);
+
+        DashboardStatsCache.Entry read = new DashboardStatsCache(dir).get(START, END, ZONE, END + 2);
+        assertNotNull(read);
+        assertEquals(written.getResponseJson(), read.getResponseJson());
+        assertEquals(4, ((Number) read.getResponse().get("totalTransactions")).intValue());
+        assertNull(new DashboardStatsCache(dir).get(START, END, "UTC", END + 2));
+    }
+
+    @Test
+    public void freshnessDependsOnWhetherRangeIsClosed() throws IOException {
+        DashboardStatsCache cache = newCache();
+
+        DashboardStatsCache.Entry open = cache.put(START, END, ZONE, response(1, 1), START + 1000);
+        assertTrue(open.isFresh(START + 1000 + DashboardStatsCache.OPEN_RANGE_MAX_AGE_MS - 1));
+        assertFalse(open.isFresh(START + 1000 + DashboardStatsCache.OPEN_RANGE_MAX_AGE_MS));
+
+        DashboardStatsCache.Entry closed = cache.put(START, END, ZONE, response(1, 1), END + 1);
+        assertTrue(closed.isFresh(END + 1 + DashboardStatsCache.OPEN_RANGE_MAX_AGE_MS));
+        assertFalse(closed.isFresh(END + 1 + DashboardStatsCache.CLOSED_RANGE_MAX_AGE_MS));
+    }
+
+    @Test
+    public void newerRollupVersionInvalidatesOlderEntries() throws IOException {
+        DashboardStatsCache cache = newCache();
+        long otherStart = START - 86_400_000L;
+        cache.put(START, END, ZONE, response(1, 1), END + 1);
+        cache.put(otherStart, START - 1, ZONE, response(2, 1), END + 1);
+
+        assertNull(cache.get(START, END, ZONE, END + 2));
+        assertNotNull(cache.get(otherStart, START - 1, ZONE, END + 2));
+    }
+
+    @Test
+    public void entriesOlderThanMaxStaleAreNotServed() throws IOException {
+        DashboardStatsCache cache = newCache();
+        cache.put(START, END, ZONE, response(0, 1), END + 1);
+        assertNull(cache.get(START, END, ZONE, END + 2 + DashboardStatsCache.MAX_STALE_MS));
+    }
+}
@@ -0,0 +1,68 @@
+package com.bsoft.inventorymanager.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class BarcodeIndexTest {
+
+    @Test
+    public void resolvesEveryCodeAndReleasesStaleOnes() {
+        BarcodeIndex<String> index = new BarcodeIndex<>();
+        index.put("p1", "cola", "8901234", "CC-500");
+        index.put("p2", "soap", null, " LX-1 ");
+
+        assertEquals("cola", index.get(" 8901234"));
+        assertEquals("cola", index.get("CC-500"));
+        assertEquals("soap", index.get("LX-1"));
+        assertNull(index.get(""));
+
+        // A changed barcode no longer resolves to the product
+        index.put("p1", "cola v2", "8909999", "CC-500");
+        assertNull(index.get("8901234"));
+        assertEquals("cola v2", index.get("8909999"));
+
+        index.remove("p2");
+        assertNull(index.get("LX-1"));
+        assertEquals(Collections.singletonList("cola v2"), index.values());
+    }
+
+    @Test
+    public void sharedCodeBelongsToTheLatestDocument() {
+        BarcodeIndex<String> index = new BarcodeIndex<>();
+        index.put("p1", "first", "111");
+        index.put("p2", "second", "111", "222");
+
+        assertEquals("second", index.get("111"));
+        index.remove("p1");
+        assertEquals("second", index.get("111"));
+        assertEquals(1, index.size());
+        assertEquals(Arrays.asList("second"), index.values());
+    }
+
+    @Test
+    public void missesExpireAndYieldToIndexedProducts() {
+        BarcodeIndex<String> index = new BarcodeIndex<>();
+        index.recordMiss("404", 1_000);
+        index.recordMiss("405", 5_000);
+
+        assertTrue(index.isKnownMiss("404", 999));
+        assertFalse(index.isKnownMiss("404", 1_000));
+        assertEquals(Collections.singletonMap("405", 5_000L), index.misses(1_000));
+
+        index.put("p1", "new product", "405");
+        assertFalse(index.isKnownMiss("405", 0));
+
+        for (int i = 0; i < BarcodeIndex.MAX_MISSES + 10; i++) {
+            index.recordMiss("code" + i, 10_000);
+        }
+        assertFalse(index.isKnownMiss("code0", 0));
+        assertTrue(index.isKnownMiss("code" + (BarcodeIndex.MAX_MISSES + 9), 0));
+    }
+}
@@ -0,0 +1,90 @@
+package com.bsoft.inventorymanager.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Matching, ranking and incremental updates of the on-device search index, including a 50k document
+ * catalog. Nothing here is timed, so the suite does not depend on the machine running it.
+ */
+public class TextSearchIndexTest {
+
+    private static TextSearchIndex<String> index() {
+        // name, code, brand
+        TextSearchIndex<String> index = new TextSearchIndex<>(4, 4, 1);
+        index.put("1", "cola", "Coca-Cola 500ml", "CC-500", "Coca-Cola");
+        index.put("2", "cola-lite", "Cola Lite 1L", "CL-1", "Generic");
+        index.put("3", "chocolate", "Dark Chocolate", "DC-90", "Cadbury");
+        index.put("4", "soap", "Lux Soap", "LX-1", "Unilever");
+        return index;
+    }
+
+    @Test
+    public void prefixAndExactMatchesRankByScore() {
+        TextSearchIndex<String> index = index();
+
+        // Same exact name match; the shorter name wins the tie
+        assertEquals(Arrays.asList("cola-lite", "cola"), index.search("cola", null, 10));
+        assertEquals(Arrays.asList("cola"), index.search("coca 500", null, 10));
+        assertEquals(Arrays.asList("soap"), index.search("lx", null, 10));
+        assertEquals(Arrays.asList("cola-lite", "cola"), index.search("co", s -> s.startsWith("cola"), 10));
+        assertEquals(Collections.emptyList(), index.search("cola soap", null, 10));
+        // Blank queries list everything by name
+        assertEquals(Arrays.asList("cola", "cola-lite", "chocolate", "soap"), index.search(" ", null, 10));
+    }
+
+    @Test
+    public void toleratesTypos() {
+        TextSearchIndex<String> index = index();
+
+        assertEquals(Arrays.asList("chocolate"), index.search("chocolte", null, 10));
+        assertEquals(Arrays.asList("chocolate"), index.search("chocl", null, 10));
+        assertEquals(Arrays.asList("soap"), index.search("sopa", null, 10));
+        assertEquals(1, TextSearchIndex.prefixEditDistance("chocl", "chocolate", 1));
+        assertEquals(2, TextSearchIndex.prefixEditDistance("xyz", "abc", 1));
+    }
+
+    @Test
+    public void appliesUpdatesAndRemovals() {
+        TextSearchIndex<String> index = index();
+
+        index.put("4", "soap-v2", "Dove Soap", "DV-1", "Unilever");
+        assertEquals(Collections.emptyList(), index.search("lux", null, 10));
+        assertEquals(Arrays.asList("soap-v2"), index.search("dove", null, 10));
+
+        index.remove("1");
+        index.put("5", "cola-zero", "Cola Zero", "CZ-1", "Coca-Cola");
+        assertEquals(Arrays.asList("cola-zero", "cola-lite"), index.search("cola", s -> !s.equals("chocolate"), 10));
+        assertEquals(4, index.size());
+    }
+
+    @Test
+    public void searchesFiftyThousandProducts() {
+        String[] words = { "rice", "soap", "oil", "tea", "coffee", "sugar", "salt", "milk", "bread", "juice",
+                "shampoo", "biscuit", "noodles", "flour", "butter", "cheese", "water", "soda", "honey", "jam" };
+        Random random = new Random(7);
+        TextSearchIndex<Integer> index = new TextSearchIndex<>(4, 4, 4, 2, 1);
+        for (int i = 0; i < 50_000; i++) {
+            String name = words[random.nextInt(words.length)] + " " + words[random.nextInt(words.length)]
+                    + " " + (random.nextInt(900) + 100) + "g";
+            index.put("p" + i, i, name, "SKU-" + i, String.valueOf(8_900_000_000L + i), "Brand" + (i % 300),
+                    "Category" + (i % 40));
+        }
+
+        List<String> queries = Arrays.asList("ric", "coffe 250g", "shampo", "sku 4217", "brand12 tea", "s");
+        for (String query : queries) {
+            List<Integer> results = index.search(query, null, 200);
+            assertTrue(query, results.size() > 0);
+            assertTrue(query, results.size() <= 200);
+        }
+        // The exact code outranks its prefix and typo matches
+        assertEquals(Integer.valueOf(4217), index.search("sku-4217", null, 200).get(0));
+    }
+}
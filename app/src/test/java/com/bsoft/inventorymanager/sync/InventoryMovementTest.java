@@ -0,0 +1,61 @@
+package com.bsoft.inventorymanager.sync;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class InventoryMovementTest {
+
+    private static OutboxOperation sale(String id, OutboxWrite... stock) {
+        List<OutboxWrite> writes = new ArrayList<>();
+        writes.add(OutboxWrite.increment("sales", id, "totalAmount", 10.0));
+        writes.addAll(Arrays.asList(stock));
+        return new OutboxOperation(OutboxOperation.keyForCreate(OutboxOperation.Type.SALE, id),
+                OutboxOperation.Type.SALE, writes);
+    }
+
+    @Test
+    public void linesNetStockChangesPerProduct() {
+        Map<String, Long> lines = InventoryMovement.lines(Arrays.asList(
+                OutboxWrite.stock("p1", -2),
+                OutboxWrite.increment("sales", "s1", "totalAmount", 5.0),
+                OutboxWrite.stock("p2", -1),
+                OutboxWrite.stock("p1", -3),
+                OutboxWrite.stock("p3", 4),
+                OutboxWrite.stock("p3", -4)));
+
+        assertEquals(Arrays.asList("p1", "p2"), new ArrayList<>(lines.keySet()));
+        assertEquals(Long.valueOf(-5), lines.get("p1"));
+        assertEquals(Long.valueOf(-1), lines.get("p2"));
+    }
+
+    @Test
+    public void documentHoldsEveryLineAndSumsBack() {
+        Map<String, Long> lines = InventoryMovement.lines(Arrays.asList(
+                OutboxWrite.stock("p1", -2), OutboxWrite.stock("p2", -1)));
+        Map<String, Object> sale = InventoryMovement.document("SALE", "s1", lines, "u1", "Rahim");
+        Map<String, Object> purchase = InventoryMovement.document("PURCHASE", "b1",
+                Collections.singletonMap("p1", 10L), "u1", "Rahim");
+
+        assertEquals(Arrays.asList("p1", "p2"), sale.get(InventoryMovement.PRODUCT_IDS));
+        assertEquals("s1", sale.get(InventoryMovement.REFERENCE));
+
+        Map<String, Long> net = InventoryMovement.netChanges(Arrays.asList(sale, purchase));
+        assertEquals(Long.valueOf(8), net.get("p1"));
+        assertEquals(Long.valueOf(-1), net.get("p2"));
+    }
+
+    @Test
+    public void movementCountsTowardsTheCommitOnlyWhenStockChanges() {
+        assertEquals(5, sale("s1", OutboxWrite.stock("p1", -1), OutboxWrite.stock("p2", -1)).getCommitWrites());
+        assertEquals(2, sale("s2").getCommitWrites());
+        assertTrue(InventoryMovement.netChanges(Collections.emptyList()).isEmpty());
+    }
+}
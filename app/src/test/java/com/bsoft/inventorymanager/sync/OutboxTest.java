@@ -0,0 +1,133 @@
+package com.bsoft.inventorymanager.sync;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class OutboxTest {
+
+    public static class Note {
+        String text;
+        long quantity;
+
+        Note(String text, long quantity) {
+            this.text = text;
+            this.quantity = quantity;
+        }
+    }
+
+    private static File newFile() throws IOException {
+        return new File(Files.createTempDirectory("outbox").toFile(), "outbox.json");
+    }
+
+    private static OutboxOperation sale(String id, int stockWrites) {
+        List<OutboxWrite> writes = new ArrayList<>();
+        writes.add(OutboxWrite.set("sales", id, new Note("sale " + id, 2)));
+        for (int i = 0; i < stockWrites; i++) {
+            writes.add(OutboxWrite.stock("p" + i, -1));
+        }
+        return new OutboxOperation(OutboxOperation.keyForCreate(OutboxOperation.Type.SALE, id),
+                OutboxOperation.Type.SALE, writes);
+    }
+
+    @Test
+    public void survivesRestartInOrderWithWritesIntact() throws Exception {
+        File file = newFile();
+        Outbox outbox = new Outbox(file);
+        assertTrue(outbox.enqueue(sale("s1", 1), 1000));
+        assertTrue(outbox.enqueue(sale("s2", 0), 2000));
+
+        Outbox reopened = new Outbox(file);
+        List<OutboxOperation> batch = reopened.nextBatch(Outbox.MAX_BATCH_WRITES);
+        assertEquals(2, batch.size());
+        assertEquals("sale_s1", batch.get(0).getKey());
+        assertEquals("sale_s2", batch.get(1).getKey());
+
+        OutboxWrite set = batch.get(0).getWrites().get(0);
+        Note note = (Note) set.getModel();
+        assertEquals("sale s1", note.text);
+        assertEquals(2, note.quantity);
+        // Integer deltas stay integers
+        assertEquals(Long.valueOf(-1), batch.get(0).getWrites().get(1).getDelta());
+        assertTrue(batch.get(0).getWrites().get(1).isStockChange());
+
+        assertEquals(2, reopened.stats().depth);
+        assertEquals(1500, reopened.stats().getSyncLagMs(2500));
+    }
+
+    @Test
+    public void sameKeyIsQueuedOnce() throws Exception {
+        Outbox outbox = new Outbox(newFile());
+        assertTrue(outbox.enqueue(sale("s1", 1), 1000));
+        assertFalse(outbox.enqueue(sale("s1", 1), 1001));
+        assertEquals(1, outbox.stats().depth);
+    }
+
+    @Test
+    public void batchesStayWithinTheCommitLimit() throws Exception {
+        Outbox outbox = new Outbox(newFile());
+        // 1 set + 199 stock writes + 1 receipt + 1 movement = 202 writes each
+        for (int i = 0; i < 5; i++) {
+            outbox.enqueue(sale("s" + i, 199), i);
+        }
+
+        List<OutboxOperation> batch = outbox.nextBatch(Outbox.MAX_BATCH_WRITES);
+        assertEquals(2, batch.size());
+
+        outbox.applied(Arrays.asList(batch.get(0).getKey(), batch.get(1).getKey()), 10);
+        batch = outbox.nextBatch(Outbox.MAX_BATCH_WRITES);
+        assertEquals("sale_s2", batch.get(0).getKey());
+        assertEquals(2, outbox.stats().appliedCount);
+        assertEquals(10, outbox.stats().lastSyncedAt);
+    }
+
+    @Test
+    public void conflictsAreParkedUntilResolved() throws Exception {
+        File file = newFile();
+        Outbox outbox = new Outbox(file);
+        outbox.enqueue(sale("s1", 1), 1);
+        outbox.enqueue(sale("s2", 0), 2);
+        outbox.enqueue(sale("s3", 1), 3);
+        outbox.conflicted("sale_s1", "Stock of product p0 would become -1");
+
+        // Operations on other documents keep flowing; s3 waits behind s1 on p0
+        List<OutboxOperation> batch = outbox.nextBatch(Outbox.MAX_BATCH_WRITES);
+        assertEquals(1, batch.size());
+        assertEquals("sale_s2", batch.get(0).getKey());
+        assertEquals(1, new Outbox(file).conflicts().size());
+
+        assertTrue(outbox.resolve("sale_s1", true));
+        OutboxOperation retried = outbox.nextBatch(Outbox.MAX_BATCH_WRITES).get(0);
+        assertEquals("sale_s1", retried.getKey());
+        assertTrue(retried.isAllowNegativeStock());
+
+        assertEquals(3, outbox.nextBatch(Outbox.MAX_BATCH_WRITES).size());
+
+        outbox.conflicted("sale_s2", "gone");
+        assertTrue(outbox.resolve("sale_s2", false));
+        assertFalse(outbox.resolve("sale_s2", false));
+        assertEquals(2, outbox.stats().depth);
+    }
+
+    @Test
+    public void failedAttemptsAreCounted() throws Exception {
+        Outbox outbox = new Outbox(newFile());
+        outbox.enqueue(sale("s1", 1), 1);
+        outbox.failed(Collections.singletonList("sale_s1"), "UNAVAILABLE");
+
+        OutboxOperation operation = outbox.nextBatch(Outbox.MAX_BATCH_WRITES).get(0);
+        assertEquals(1, operation.getAttempts());
+        assertEquals("UNAVAILABLE", operation.getLastError());
+        assertEquals(1, outbox.stats().failedAttempts);
+    }
+}
@@ -0,0 +1,150 @@
+package com.bsoft.inventorymanager.sync;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+public class ReplayPlanTest {
+
+    private static OutboxOperation operation(String key, OutboxWrite... writes) {
+        return new OutboxOperation(key, OutboxOperation.Type.SALE, Arrays.asList(writes));
+    }
+
+    private static Map<String, Object> item(String productId, long quantity, long returned) {
+        Map<String, Object> item = new HashMap<>();
+        item.put("productId", productId);
+        item.put("quantity", quantity);
+        item.put("returnedQuantity", returned);
+        return item;
+    }
+
+    private static OutboxWrite returnOf(String productId, long quantity) {
+        return OutboxWrite.incrementItem("sales", "s1", "items", "productId", productId, "returnedQuantity",
+                quantity, "quantity");
+    }
+
+    @Test
+    public void laterOperationsSeeEarlierStockChanges() {
+        List<OutboxOperation> operations = Arrays.asList(
+                operation("a", OutboxWrite.stock("p1", -3)),
+                operation("b", OutboxWrite.stock("p1", 5), OutboxWrite.stock("p1", -4)),
+                operation("c", OutboxWrite.stock("p1", -4)));
+        Map<String, Long> stock = new HashMap<>();
+        stock.put("p1", 5L);
+
+        ReplayPlan plan = ReplayPlan.plan(operations, Collections.emptySet(), stock, Collections.emptyMap());
+
+        // b still fits after a; c would take stock to -1
+        assertEquals(2, plan.getToApply().size());
+        assertEquals("a", plan.getToApply().get(0).getKey());
+        assertEquals("b", plan.getToApply().get(1).getKey());
+        assertTrue(plan.getConflicts().get("c").contains("-1"));
+    }
+
+    @Test
+    public void receiptsAndMissingProducts() {
+        List<OutboxOperation> operations = Arrays.asList(
+                operation("done", OutboxWrite.stock("p1", -1)),
+                operation("gone", OutboxWrite.stock("deleted", -1)),
+                operation("ok", OutboxWrite.set("sales", "s9", new ArrayList<String>())));
+        Map<String, Long> stock = new HashMap<>();
+        stock.put("p1", 0L);
+
+        ReplayPlan plan = ReplayPlan.plan(operations, new HashSet<>(Collections.singletonList("done")), stock,
+                Collections.emptyMap());
+
+        assertEquals(Collections.singletonList("done"), plan.getAlreadyApplied());
+        assertTrue(plan.getConflicts().containsKey("gone"));
+        assertEquals("ok", plan.getToApply().get(0).getKey());
+    }
+
+    @Test
+    public void allowNegativeStockAfterResolution() throws Exception {
+        OutboxOperation forced = operation("a", OutboxWrite.stock("p1", -2));
+        forced.conflicted("negative");
+        forced.retry(true);
+        Map<String, Long> stock = new HashMap<>();
+        stock.put("p1", 1L);
+
+        ReplayPlan plan = ReplayPlan.plan(Collections.singletonList(forced), Collections.emptySet(), stock,
+                Collections.emptyMap());
+
+        assertEquals(1, plan.getToApply().size());
+    }
+
+    @Test
+    public void itemLimitsHoldAcrossOperations() {
+        Map<String, List<Map<String, Object>>> lists = new HashMap<>();
+        lists.put("sales/s1", Arrays.asList(item("p1", 3, 1), item("p2", 1, 0)));
+        List<OutboxOperation> operations = Arrays.asList(
+                operation("r1", returnOf("p1", 1), returnOf("p2", 1)),
+                operation("r2", returnOf("p1", 1)),
+                operation("r3", returnOf("p1", 1)));
+
+        ReplayPlan plan = ReplayPlan.plan(operations, Collections.emptySet(), Collections.emptyMap(), lists);
+
+        assertEquals(2, plan.getToApply().size());
+        assertTrue(plan.getConflicts().containsKey("r3"));
+        List<Map<String, Object>> items = plan.getItemLists().get("sales/s1");
+        assertEquals(3L, items.get(0).get("returnedQuantity"));
+        assertEquals(1L, items.get(1).get("returnedQuantity"));
+        // The input list is not modified
+        assertEquals(1L, lists.get("sales/s1").get(0).get("returnedQuantity"));
+    }
+
+    @Test
+    public void laterOperationsOnAConflictingDocumentWait() {
+        List<OutboxOperation> operations = Arrays.asList(
+                operation("a", OutboxWrite.stock("p1", -3)),
+                operation("b", OutboxWrite.stock("p1", 5), OutboxWrite.stock("p2", -1)),
+                operation("c", OutboxWrite.stock("p2", -1)),
+                operation("d", OutboxWrite.stock("p3", -1)));
+        Map<String, Long> stock = new HashMap<>();
+        stock.put("p1", 1L);
+        stock.put("p2", 5L);
+        stock.put("p3", 5L);
+
+        ReplayPlan plan = ReplayPlan.plan(operations, Collections.emptySet(), stock, Collections.emptyMap());
+
+        // b would fit, but runs after a on p1; c runs after b on p2
+        assertEquals(Collections.singleton("a"), plan.getConflicts().keySet());
+        assertEquals(1, plan.getToApply().size());
+        assertEquals("d", plan.getToApply().get(0).getKey());
+    }
+
+    @Test
+    public void itemsOfADocumentCreatedInTheBatchWaitForTheNextOne() {
+        List<OutboxOperation> operations = Arrays.asList(
+                operation("sale", OutboxWrite.set("sales", "s1", new ArrayList<String>()),
+                        OutboxWrite.stock("p1", -3)),
+                operation("return", returnOf("p1", 1), OutboxWrite.stock("p1", 1)),
+                operation("other", OutboxWrite.stock("p2", -1)));
+        Map<String, Long> stock = new HashMap<>();
+        stock.put("p1", 5L);
+        stock.put("p2", 5L);
+
+        ReplayPlan plan = ReplayPlan.plan(operations, Collections.emptySet(), stock, Collections.emptyMap());
+
+        // Not a conflict: the return is replayed once the sale can be read back
+        assertTrue(plan.getConflicts().isEmpty());
+        assertEquals(1, plan.getToApply().size());
+        assertEquals("sale", plan.getToApply().get(0).getKey());
+
+        Map<String, List<Map<String, Object>>> lists = new HashMap<>();
+        lists.put("sales/s1", Collections.singletonList(item("p1", 3, 0)));
+        stock.put("p1", 2L);
+        plan = ReplayPlan.plan(operations.subList(1, 3), Collections.emptySet(), stock, lists);
+
+        assertEquals(2, plan.getToApply().size());
+        assertEquals(1L, plan.getItemLists().get("sales/s1").get(0).get("returnedQuantity"));
+    }
+}
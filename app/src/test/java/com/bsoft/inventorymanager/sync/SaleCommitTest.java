@@ -0,0 +1,92 @@
+package com.bsoft.inventorymanager.sync;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.bsoft.inventorymanager.models.Sale;
+import com.bsoft.inventorymanager.models.SaleItem;
+import com.google.firebase.Timestamp;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class SaleCommitTest {
+
+    private static SaleItem item(String productId, int quantity) {
+        SaleItem item = new SaleItem();
+        item.setProductId(productId);
+        item.setQuantity(quantity);
+        return item;
+    }
+
+    private static Map<String, Object> shortage(String productId, String name, long available, long requested) {
+        Map<String, Object> shortage = new HashMap<>();
+        shortage.put("productId", productId);
+        shortage.put("productName", name);
+        shortage.put("available", available);
+        shortage.put("requested", requested);
+        return shortage;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void requestCarriesIdItemsAndDateInMillis() {
+        Sale sale = new Sale();
+        sale.setDocumentId("s1");
+        sale.setCustomerId("c1");
+        sale.setSubtotal(45.0);
+        sale.setTotalAmount(50.0);
+        sale.setSaleDate(new Timestamp(new Date(1_700_000_000_000L)));
+
+        Map<String, Object> request = SaleCommit.request(sale, Arrays.asList(item("p1", 2), item("p2", 1)));
+
+        assertEquals("s1", request.get("saleId"));
+        Map<String, Object> fields = (Map<String, Object>) request.get("sale");
+        assertEquals(1_700_000_000_000L, fields.get("saleDate"));
+        assertEquals("c1", fields.get("customerId"));
+        assertEquals(45.0, fields.get("subtotal"));
+        assertFalse(fields.containsKey("productIds"));
+        List<Map<String, Object>> items = (List<Map<String, Object>>) fields.get("items");
+        assertEquals(2, items.size());
+        assertEquals("p1", items.get(0).get("productId"));
+        assertEquals(2, items.get(0).get("quantity"));
+    }
+
+    @Test
+    public void readsStockLevelsFromResponse() {
+        Map<String, Object> stock = new HashMap<>();
+        stock.put("p1", 4);
+        stock.put("p2", 0L);
+        Map<String, Object> response = new HashMap<>();
+        response.put("stock", stock);
+
+        Map<String, Long> levels = SaleCommit.stockLevels(response);
+
+        assertEquals(Long.valueOf(4), levels.get("p1"));
+        assertEquals(Long.valueOf(0), levels.get("p2"));
+        assertTrue(SaleCommit.stockLevels(null).isEmpty());
+    }
+
+    @Test
+    public void namesEveryShortProduct() {
+        Map<String, Object> details = new HashMap<>();
+        details.put("shortages", Arrays.asList(shortage("p1", "Soap", 1, 3), shortage("p2", "", 0, 2)));
+
+        List<SaleCommit.Shortage> shortages = SaleCommit.shortages(details);
+
+        assertEquals(2, shortages.size());
+        assertEquals(1, shortages.get(0).getAvailable());
+        assertEquals(3, shortages.get(0).getRequested());
+        assertEquals("Not enough stock:\nSoap: 1 left, 3 requested\np2: 0 left, 2 requested",
+                SaleCommit.shortageMessage(shortages));
+        assertTrue(SaleCommit.shortages(Collections.emptyMap()).isEmpty());
+        assertTrue(SaleCommit.shortages(null).isEmpty());
+    }
+}
@@ -0,0 +1,42 @@
+package com.bsoft.inventorymanager.sync;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+public class StockShardsTest {
+
+    @Test
+    public void onlyPositiveCountsShardAndAreCapped() {
+        assertEquals(0, StockShards.shardCount(null));
+        assertEquals(0, StockShards.shardCount("4"));
+        assertEquals(0, StockShards.shardCount(0L));
+        assertEquals(0, StockShards.shardCount(-3L));
+        assertEquals(4, StockShards.shardCount(4L));
+        assertEquals(StockShards.MAX_SHARDS, StockShards.shardCount(500L));
+    }
+
+    @Test
+    public void writesSpreadOverEveryShard() {
+        Random random = new Random(7);
+        Set<String> used = new HashSet<>();
+        for (int i = 0; i < 200; i++) {
+            used.add(StockShards.shardId(4, random));
+        }
+        assertEquals(new HashSet<>(Arrays.asList("0", "1", "2", "3")), used);
+    }
+
+    @Test
+    public void stockIsQuantityPlusShardDeltas() {
+        assertEquals(7, StockShards.stock(10, Arrays.asList(-2L, -4, 3L, null)));
+        assertEquals(10, StockShards.stock(10, Collections.emptyList()));
+        assertTrue(StockShards.stock(0, Arrays.asList(-1L)) < 0);
+    }
+}
@@ -0,0 +1,112 @@
+package com.bsoft.inventorymanager.utils;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+
+public class DiskLruCacheTest {
+
+    private static byte[] bytes(int length, int fill) {
+        byte[] value = new byte[length];
+        java.util.Arrays.fill(value, (byte) fill);
+        return value;
+    }
+
+    private static File newDirectory() throws IOException {
+        return Files.createTempDirectory("disk_lru").toFile();
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedOverBudget() throws IOException {
+        File dir = newDirectory();
+        DiskLruCache cache = new DiskLruCache(dir, 300);
+        cache.put("a", bytes(100, 1));
+        cache.put("b", bytes(100, 2));
+        cache.put("c", bytes(100, 3));
+        // "a" becomes the most recently used
+        assertArrayEquals(bytes(100, 1), cache.get("a"));
+
+        cache.put("d", bytes(100, 4));
+
+        assertNull(cache.get("b"));
+        assertFalse(new File(dir, "b").exists());
+        assertArrayEquals(bytes(100, 1), cache.get("a"));
+        assertEquals(300, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        assertEquals(4, cache.getWriteCount());
+    }
+
+    @Test
+    public void replacingAValueKeepsTheSizeExact() throws IOException {
+        DiskLruCache cache = new DiskLruCache(newDirectory(), 1000);
+        cache.put("a", bytes(100, 1));
+        cache.put("a", bytes(40, 2));
+
+        assertEquals(40, cache.size());
+        assertEquals(1, cache.getEntryCount());
+        assertArrayEquals(bytes(40, 2), cache.get("a"));
+    }
+
+    @Test
+    public void reopenRestoresEntriesAndRecencyFromTheJournal() throws IOException {
+        File dir = newDirectory();
+        DiskLruCache cache = new DiskLruCache(dir, 300);
+        cache.put("a", bytes(100, 1));
+        cache.put("b", bytes(100, 2));
+        cache.put("c", bytes(100, 3));
+        cache.get("a");
+        cache.remove("c");
+        cache.close();
+
+        // Leftovers of an interrupted write and files the journal never recorded
+        try (FileOutputStream out = new FileOutputStream(new File(dir, "d.tmp"))) {
+            out.write(1);
+        }
+        try (FileOutputStream out = new FileOutputStream(new File(dir, "stray"))) {
+            out.write(1);
+        }
+
+        cache = new DiskLruCache(dir, 300);
+        assertEquals(2, cache.getEntryCount());
+        assertEquals(200, cache.size());
+        assertFalse(new File(dir, "d.tmp").exists());
+        assertFalse(new File(dir, "stray").exists());
+
+        cache.put("e", bytes(100, 5));
+        cache.put("f", bytes(100, 6));
+        // "b" was the least recently used before the restart
+        assertFalse(cache.contains("b"));
+        assertTrue(cache.contains("a"));
+    }
+
+    @Test
+    public void smallerBudgetOnReopenTrims() throws IOException {
+        File dir = newDirectory();
+        DiskLruCache cache = new DiskLruCache(dir, 1000);
+        for (int i = 0; i < 10; i++) {
+            cache.put("k" + i, bytes(100, i));
+        }
+        cache.close();
+
+        cache = new DiskLruCache(dir, 250);
+        assertEquals(200, cache.size());
+        assertTrue(cache.contains("k8"));
+        assertTrue(cache.contains("k9"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsKeysThatAreNotPlainFileNames() throws IOException {
+        new DiskLruCache(newDirectory(), 100).get("../a");
+    }
+}
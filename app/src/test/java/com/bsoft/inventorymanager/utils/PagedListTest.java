@@ -0,0 +1,62 @@
+package com.bsoft.inventorymanager.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class PagedListTest {
+
+    private static List<Integer> range(int from, int to) {
+        List<Integer> items = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            items.add(i);
+        }
+        return items;
+    }
+
+    @Test
+    public void appendKeepsOlderVersionsUnchanged() {
+        PagedList<Integer> list = PagedList.empty();
+        List<PagedList<Integer>> versions = new ArrayList<>();
+        for (int page = 0; page < 50; page++) {
+            list = list.append(range(page * 20, page * 20 + 20));
+            versions.add(list);
+        }
+
+        assertEquals(1000, list.size());
+        assertEquals(range(0, 1000), list);
+        for (int page = 0; page < versions.size(); page++) {
+            assertEquals(range(0, page * 20 + 20), versions.get(page));
+        }
+    }
+
+    @Test
+    public void appendingToAnOlderVersionBranches() {
+        PagedList<Integer> base = PagedList.<Integer>empty().append(range(0, 3));
+        PagedList<Integer> left = base.append(Arrays.asList(10, 11));
+        PagedList<Integer> right = base.append(Arrays.asList(20));
+
+        assertEquals(Arrays.asList(0, 1, 2, 10, 11), left);
+        assertEquals(Arrays.asList(0, 1, 2, 20), right);
+        assertEquals(range(0, 3), base);
+        assertTrue(PagedList.<Integer>empty().isEmpty());
+    }
+
+    @Test
+    public void removeAtInsertAtAndConcat() {
+        PagedList<Integer> list = PagedList.<Integer>empty().append(range(0, 3)).append(range(3, 6));
+        assertEquals(Arrays.asList(0, 1, 2, 4, 5), list.removeAt(3));
+        assertEquals(Arrays.asList(0, 1, 2, 9, 3, 4, 5), list.insertAt(3, 9));
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4, 5, 9), list.insertAt(6, 9));
+        assertEquals(range(0, 6), list);
+
+        assertEquals(Arrays.asList(-2, -1, 0, 1, 2, 3, 4, 5), PagedList.concat(Arrays.asList(-2, -1), list));
+        assertSame(list, PagedList.concat(new ArrayList<>(), list));
+    }
+}
@@ -0,0 +1,43 @@
+const dayjs = require("dayjs");
+const utc = require("dayjs/plugin/utc");
+const timezone = require("dayjs/plugin/timezone");
+
+dayjs.extend(utc);
+dayjs.extend(timezone);
+
+/**
+ * Report bucketing spec shared with the app (shared/.../reports/BucketSpec.kt).
+ * Both sides must choose the same granularity for a range and align buckets to the local
+ * hour / local midnight of the caller's zone, so results computed by either side share a cache key.
+ */
+const BUCKET_SPEC_VERSION = 1;
+const HOURLY_MAX_DAYS = 31;
+const DAY_MS = 24 * 60 * 60 * 1000;
+
+/**
+ * @param {number} startDate inclusive range start (millis)
+ * @param {number} endDate inclusive range end (millis)
+ * @param {string} timeZone IANA zone of the caller
+ */
+function bucketSpecForRange(startDate, endDate, timeZone) {
+    const granularity = endDate - startDate < HOURLY_MAX_DAYS * DAY_MS ? "hour" : "day";
+    return {
+        version: BUCKET_SPEC_VERSION,
+        granularity: granularity,
+        timeZone: timeZone,
+        key: `v${BUCKET_SPEC_VERSION}:${granularity}:${timeZone}`
+    };
+}
+
+/**
+ * Start (millis) of the spec bucket containing the given date.
+ */
+function bucketStart(spec, date) {
+    return dayjs(date).tz(spec.timeZone).startOf(spec.granularity).valueOf();
+}
+
+module.exports = {
+    BUCKET_SPEC_VERSION,
+    bucketSpecForRange,
+    bucketStart
+};
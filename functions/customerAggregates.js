@@ -0,0 +1,185 @@
+const functions = require("firebase-functions/v1");
+const admin = require("firebase-admin");
+const { requireAdmin } = require("./roles");
+
+/**
+ * Customer lifetime aggregates.
+ *
+ * `totalPurchaseAmount`, `purchaseFrequency`, `firstPurchaseDate` and `lastPurchaseDate` on
+ * customers/{id} are kept by this trigger alone: every create, edit, return (returns rewrite the
+ * sale's totalAmount) and delete of a sale moves them by the difference between the sale before
+ * and after the write. The app never writes them, so lapsed, top-customer and new-customer reports
+ * are indexed queries on customers.
+ *
+ * The purchase dates cannot be moved back by a delta; when the earliest or latest sale of a
+ * customer is deleted, moved to another customer or redated, the date is read again from the
+ * customer's first or newest sale. A customer without sales has neither date.
+ */
+
+const EVENTS_COLLECTION = "customer_aggregate_events";
+// A TTL policy on `expireAt` removes the event markers after this
+const EVENT_RETENTION_DAYS = 7;
+const DAY_MS = 24 * 60 * 60 * 1000;
+
+function toNumber(value) {
+    return typeof value === "number" && isFinite(value) ? value : 0;
+}
+
+function contribution(snapshot) {
+    if (!snapshot.exists) return null;
+    const customerId = snapshot.get("customerId");
+    if (typeof customerId !== "string" || customerId.length === 0) return null;
+    const saleDate = snapshot.get("saleDate");
+    return {
+        customerId: customerId,
+        amount: toNumber(snapshot.get("totalAmount")),
+        date: saleDate && typeof saleDate.toMillis === "function" ? saleDate.toMillis() : 0
+    };
+}
+
+function sameContribution(a, b) {
+    if (a === null || b === null) return a === b;
+    return a.customerId === b.customerId && a.amount === b.amount && a.date === b.date;
+}
+
+/**
+ * Per customer: the change of amount and purchases, the sale date now counted and the one no
+ * longer counted.
+ */
+function customerDeltas(before, after) {
+    const deltas = new Map();
+    const delta = (customerId) => {
+        if (!deltas.has(customerId)) {
+            deltas.set(customerId, { amount: 0, purchases: 0, added: null, removed: null });
+        }
+        return deltas.get(customerId);
+    };
+    if (before) {
+        const d = delta(before.customerId);
+        d.amount -= before.amount;
+        d.purchases -= 1;
+        d.removed = before.date;
+    }
+    if (after) {
+        const d = delta(after.customerId);
+        d.amount += after.amount;
+        d.purchases += 1;
+        d.added = after.date;
+    }
+    return deltas;
+}
+
+async function edgeSaleDate(transaction, db, customerId, direction) {
+    const edge = await transaction.get(db.collection("sales")
+        .where("customerId", "==", customerId)
+        .orderBy("saleDate", direction)
+        .limit(1));
+    if (edge.empty) return 0;
+    const saleDate = edge.docs[0].get("saleDate");
+    return saleDate && typeof saleDate.toMillis === "function" ? saleDate.toMillis() : 0;
+}
+
+function toTimestamp(millis) {
+    return millis > 0 ? admin.firestore.Timestamp.fromMillis(millis) : admin.firestore.FieldValue.delete();
+}
+
+/**
+ * Trigger: Sale created / updated / deleted -> customer aggregates
+ */
+exports.onSaleWrittenCustomerAggregates = functions.firestore
+    .document("sales/{saleId}")
+    .onWrite(async (change, context) => {
+        const before = contribution(change.before);
+        const after = contribution(change.after);
+        if (sameContribution(before, after)) return null;
+
+        const db = admin.firestore();
+        const deltas = customerDeltas(before, after);
+        const eventRef = db.collection(EVENTS_COLLECTION).doc(context.eventId);
+        const ids = Array.from(deltas.keys());
+
+        await db.runTransaction(async (tx) => {
+            // Triggers are delivered at least once
+            const event = await tx.get(eventRef);
+            if (event.exists) return;
+            const customers = await tx.getAll(...ids.map((id) => db.collection("customers").doc(id)));
+
+            const updates = [];
+            for (const customer of customers) {
+                if (!customer.exists) continue;
+                const d = deltas.get(customer.id);
+                const storedLast = customer.get("lastPurchaseDate");
+                let last = storedLast && typeof storedLast.toMillis === "function" ? storedLast.toMillis() : 0;
+                if (d.removed !== null && d.removed >= last && !(d.added !== null && d.added >= d.removed)) {
+                    // The latest sale went away or moved back; the trigger runs after the write
+                    last = await edgeSaleDate(tx, db, customer.id, "desc");
+                } else if (d.added !== null && d.added > last) {
+                    last = d.added;
+                }
+                const storedFirst = customer.get("firstPurchaseDate");
+                let first = storedFirst && typeof storedFirst.toMillis === "function" ? storedFirst.toMillis() : 0;
+                if (d.removed !== null && first > 0 && d.removed <= first
+                    && !(d.added !== null && d.added > 0 && d.added <= d.removed)) {
+                    // The earliest sale went away or moved forward
+                    first = await edgeSaleDate(tx, db, customer.id, "asc");
+                } else if (d.added !== null && d.added > 0 && (first === 0 || d.added < first)) {
+                    first = d.added;
+                }
+                updates.push([customer.ref, {
+                    totalPurchaseAmount: toNumber(customer.get("totalPurchaseAmount")) + d.amount,
+                    purchaseFrequency: Math.max(0, toNumber(customer.get("purchaseFrequency")) + d.purchases),
+                    firstPurchaseDate: toTimestamp(first),
+                    lastPurchaseDate: toTimestamp(last),
+                    updatedAt: admin.firestore.FieldValue.serverTimestamp()
+                }]);
+            }
+
+            updates.forEach(([ref, update]) => tx.update(ref, update));
+            tx.set(eventRef, {
+                processedAt: admin.firestore.FieldValue.serverTimestamp(),
+                expireAt: admin.firestore.Timestamp.fromMillis(Date.now() + EVENT_RETENTION_DAYS * DAY_MS)
+            });
+        });
+        return null;
+    });
+
+/**
+ * Callable Function: Rebuild Customer Aggregates
+ * One-off backfill, for administrators. Recomputes the aggregates of every customer from a full scan of the sales.
+ * Run during a quiet period: sales written while the scan is in progress may need a second run.
+ */
+exports.rebuildCustomerAggregates = functions
+    .runWith({ timeoutSeconds: 540, memory: "1GB" })
+    .https.onCall(async (data, context) => {
+        await requireAdmin(context);
+        const db = admin.firestore();
+
+        const totals = new Map();
+        const salesSnap = await db.collection("sales").select("customerId", "totalAmount", "saleDate").get();
+        salesSnap.forEach((doc) => {
+            const sale = contribution(doc);
+            if (!sale) return;
+            const total = totals.get(sale.customerId) || { amount: 0, purchases: 0, first: 0, last: 0 };
+            total.amount += sale.amount;
+            total.purchases += 1;
+            if (sale.date > 0 && (total.first === 0 || sale.date < total.first)) total.first = sale.date;
+            total.last = Math.max(total.last, sale.date);
+            totals.set(sale.customerId, total);
+        });
+
+        const customersSnap = await db.collection("customers").select().get();
+        const writer = db.bulkWriter();
+        customersSnap.forEach((doc) => {
+            const total = totals.get(doc.id) || { amount: 0, purchases: 0, first: 0, last: 0 };
+            writer.update(doc.ref, {
+                totalPurchaseAmount: total.amount,
+                purchaseFrequency: total.purchases,
+                firstPurchaseDate: toTimestamp(total.first),
+                lastPurchaseDate: toTimestamp(total.last),
+                updatedAt: admin.firestore.FieldValue.serverTimestamp()
+            });
+        });
+        await writer.close();
+
+        return { sales: salesSnap.size, customers: customersSnap.size };
+    });
@@ -0,0 +1,131 @@
+const functions = require("firebase-functions/v1");
+const admin = require("firebase-admin");
+const crypto = require("crypto");
+
+/**
+ * Content-addressed image blobs.
+ *
+ * Product and person documents used to carry their picture as an inline Base64 JPEG, so every list
+ * query transferred every image. Images now live once in `imageBlobs/{sha256}` (full size) and
+ * `imageThumbs/{sha256}` (list size) and documents hold only `sha256:<hex>`. The format is mirrored
+ * in app/.../images/ImageRef.java and ImageBlobStore.java; keep them in sync.
+ */
+
+const SCHEME = "sha256:";
+const REF_PATTERN = /^sha256:[0-9a-f]{64}$/;
+const PAGE_SIZE = 200;
+
+// Collection -> image field
+const IMAGE_FIELDS = {
+    products: "imageUrl",
+    customers: "photo",
+    suppliers: "photo"
+};
+
+function isInline(value) {
+    return typeof value === "string" && value.length > 0 &&
+        !value.startsWith("http://") && !value.startsWith("https://") && !REF_PATTERN.test(value);
+}
+
+function blob(bytes) {
+    return {
+        data: bytes,
+        contentType: "image/jpeg",
+        size: bytes.length,
+        createdAt: admin.firestore.FieldValue.serverTimestamp()
+    };
+}
+
+/**
+ * Queues the blob writes for an inline image.
+ *
+ * Legacy images were already downscaled to 100px by the clients, so the same bytes serve as both
+ * the full size and the thumbnail.
+ *
+ * @return {string|null} the reference to store instead, or null if the value is not valid Base64
+ */
+function moveInline(writer, value) {
+    const bytes = Buffer.from(value, "base64");
+    if (bytes.length === 0) return null;
+    const hash = crypto.createHash("sha256").update(bytes).digest("hex");
+    const db = admin.firestore();
+    writer.set(db.collection("imageBlobs").doc(hash), blob(bytes));
+    writer.set(db.collection("imageThumbs").doc(hash), blob(bytes));
+    return SCHEME + hash;
+}
+
+/**
+ * Moves images written inline by older app versions out of the document as they arrive.
+ */
+function inlineImageTrigger(collection, field) {
+    return functions.firestore
+        .document(`${collection}/{docId}`)
+        .onWrite(async (change) => {
+            if (!change.after.exists) return null;
+            const value = change.after.get(field);
+            if (!isInline(value)) return null;
+
+            const batch = admin.firestore().batch();
+            const ref = moveInline(batch, value);
+            if (!ref) return null;
+            // Stamped like any client write, so devices that synced the inline value pick up the ref
+            batch.update(change.after.ref, {
+                [field]: ref,
+                updatedAt: admin.firestore.FieldValue.serverTimestamp()
+            });
+            return batch.commit();
+        });
+}
+
+exports.onProductWrittenInlineImage = inlineImageTrigger("products", "imageUrl");
+exports.onCustomerWrittenInlineImage = inlineImageTrigger("customers", "photo");
+exports.onSupplierWrittenInlineImage = inlineImageTrigger("suppliers", "photo");
+
+/**
+ * Backfill: moves every inline image of products, customers and suppliers to blobs.
+ */
+exports.migrateInlineImages = functions
+    .runWith({ timeoutSeconds: 540, memory: "1GB" })
+    .https.onCall(async (data, context) => {
+        if (!context.auth) {
+            throw new functions.https.HttpsError("unauthenticated", "Sign in required.");
+        }
+
+        const db = admin.firestore();
+        const writer = db.bulkWriter();
+        const result = {};
+        for (const [collection, field] of Object.entries(IMAGE_FIELDS)) {
+            let scanned = 0;
+            let migrated = 0;
+            let last = null;
+            // Paged so only one page of images is in memory at a time
+            for (;;) {
+                let query = db.collection(collection)
+                    .orderBy(admin.firestore.FieldPath.documentId())
+                    .select(field)
+                    .limit(PAGE_SIZE);
+                if (last) query = query.startAfter(last);
+                const page = await query.get();
+                if (page.empty) break;
+
+                page.forEach((doc) => {
+                    scanned++;
+                    const value = doc.get(field);
+                    if (!isInline(value)) return;
+                    const ref = moveInline(writer, value);
+                    if (!ref) return;
+                    writer.update(doc.ref, {
+                        [field]: ref,
+                        updatedAt: admin.firestore.FieldValue.serverTimestamp()
+                    });
+                    migrated++;
+                });
+                await writer.flush();
+                last = page.docs[page.docs.length - 1];
+            }
+            result[collection] = { scanned: scanned, migrated: migrated };
+        }
+        await writer.close();
+
+        return result;
+    });
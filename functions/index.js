@@ -1,14 +1,59 @@
 const functions = require("firebase-functions/v1");
 const admin = require("firebase-admin");
-const dayjs = require("dayjs");
-const utc = require("dayjs/plugin/utc");
-const timezone = require("dayjs/plugin/timezone");
-
-dayjs.extend(utc);
-dayjs.extend(timezone);
 
 admin.initializeApp();
 
+const rollups = require("./rollups");
+const { bucketSpecForRange, bucketStart } = require("./bucketSpec");
+
+exports.onSaleWrittenRollup = rollups.onSaleWrittenRollup;
+exports.onExpenseWrittenRollup = rollups.onExpenseWrittenRollup;
+exports.rebuildReportRollups = rollups.rebuildReportRollups;
+
+const analytics = require("./analytics");
+
+exports.getReportAnalytics = analytics.getReportAnalytics;
+
+const productSearch = require("./productSearch");
+
+exports.onProductWrittenSearchIndex = productSearch.onProductWrittenSearchIndex;
+exports.rebuildProductSearchIndex = productSearch.rebuildProductSearchIndex;
+
+const images = require("./images");
+
+exports.onProductWrittenInlineImage = images.onProductWrittenInlineImage;
+exports.onCustomerWrittenInlineImage = images.onCustomerWrittenInlineImage;
+exports.onSupplierWrittenInlineImage = images.onSupplierWrittenInlineImage;
+exports.migrateInlineImages = images.migrateInlineImages;
+
+const tombstones = require("./tombstones");
+
+exports.onProductDeletedTombstone = tombstones.onProductDeletedTombstone;
+exports.onCustomerDeletedTombstone = tombstones.onCustomerDeletedTombstone;
+exports.onSupplierDeletedTombstone = tombstones.onSupplierDeletedTombstone;
+
+const sales = require("./sales");
+
+exports.commitSale = sales.commitSale;
+exports.editSale = sales.editSale;
+
+const stockShards = require("./stockShards");
+
+exports.foldStockShards = stockShards.foldStockShards;
+
+const customerAggregates = require("./customerAggregates");
+
+exports.onSaleWrittenCustomerAggregates = customerAggregates.onSaleWrittenCustomerAggregates;
+exports.rebuildCustomerAggregates = customerAggregates.rebuildCustomerAggregates;
+
+const productVelocity = require("./productVelocity");
+
+exports.onSaleWrittenProductVelocity = productVelocity.onSaleWrittenProductVelocity;
+exports.onProductCreatedVelocity = productVelocity.onProductCreatedVelocity;
+exports.onProductDeletedVelocity = productVelocity.onProductDeletedVelocity;
+exports.decayProductVelocity = productVelocity.decayProductVelocity;
+exports.rebuildProductVelocity = productVelocity.rebuildProductVelocity;
+
 /**
  * Helper function to send notifications to Admins/Managers and save to Firestore.
  * 
@@ -208,19 +253,9 @@ exports.onDamageRecorded = functions.firestore
     });
 
 /**
- * Callable Function: Get Dashboard Statistics
- * Calculates revenue, profit, expenses, and charts server-side.
+ * Full scan of sales and expenses in range. Used when the range is not covered by rollups.
  */
-exports.getDashboardStats = functions.https.onCall(async (data, context) => {
-    const startDate = data.startDate;
-    const endDate = data.endDate;
-    const userTimeZone = data.timeZone || "UTC";
-
-    if (!startDate || !endDate) {
-        throw new functions.https.HttpsError("invalid-argument", "Missing startDate or endDate.");
-    }
-
-    const db = admin.firestore();
+async function scanDashboardTotals(db, startDate, endDate, spec) {
     const startTs = admin.firestore.Timestamp.fromMillis(startDate);
     const endTs = admin.firestore.Timestamp.fromMillis(endDate);
 
@@ -243,14 +278,12 @@ exports.getDashboardStats = functions.https.onCall(async (data, context) => {
 
     const salesOverTime = {};
     const profitOverTime = {};
+    const transactionsOverTime = {};
+    const expensesOverTime = {};
     const productQuantities = {};
     const productNames = {};
     const categoryRevenue = {};
 
-    // Determine granularity
-    const daysDiff = dayjs(endDate).diff(dayjs(startDate), "day");
-    const granularity = daysDiff > 30 ? "day" : "hour";
-
     salesSnap.forEach((doc) => {
         const sale = doc.data();
         const amount = sale.totalAmount || 0;
@@ -261,10 +294,11 @@ exports.getDashboardStats = functions.https.onCall(async (data, context) => {
         totalProfit += profit;
 
         // 1. Charts
-        // Bucket by User TimeZone
-        const key = dayjs(saleDate).tz(userTimeZone).startOf(granularity).valueOf();
+        // Bucket by the shared bucket spec (caller's zone)
+        const key = bucketStart(spec, saleDate);
         salesOverTime[key] = (salesOverTime[key] || 0) + amount;
         profitOverTime[key] = (profitOverTime[key] || 0) + profit;
+        transactionsOverTime[key] = (transactionsOverTime[key] || 0) + 1;
 
         // 2. Top Products & Categories
         if (sale.items && Array.isArray(sale.items)) {
@@ -288,9 +322,60 @@ exports.getDashboardStats = functions.https.onCall(async (data, context) => {
     let totalExpenses = 0;
     expensesSnap.forEach((doc) => {
         const expense = doc.data();
-        totalExpenses += (expense.amount || 0);
+        const amount = expense.amount || 0;
+        totalExpenses += amount;
+        if (expense.date) {
+            const key = bucketStart(spec, expense.date.toDate());
+            expensesOverTime[key] = (expensesOverTime[key] || 0) + amount;
+        }
     });
 
+    return {
+        totalRevenue: totalRevenue,
+        totalProfit: totalProfit,
+        totalExpenses: totalExpenses,
+        totalTransactions: totalTransactions,
+        salesOverTime: salesOverTime,
+        profitOverTime: profitOverTime,
+        transactionsOverTime: transactionsOverTime,
+        expensesOverTime: expensesOverTime,
+        productQuantities: productQuantities,
+        productNames: productNames,
+        categoryRevenue: categoryRevenue
+    };
+}
+
+/**
+ * Callable Function: Get Dashboard Statistics
+ * Calculates revenue, profit, expenses, and charts server-side.
+ * Served from report rollups when the range is covered, otherwise from a full scan.
+ */
+exports.getDashboardStats = functions.https.onCall(async (data, context) => {
+    const startDate = data.startDate;
+    const endDate = data.endDate;
+    const userTimeZone = data.timeZone || "UTC";
+
+    if (!startDate || !endDate) {
+        throw new functions.https.HttpsError("invalid-argument", "Missing startDate or endDate.");
+    }
+
+    const db = admin.firestore();
+
+    // Granularity, zone and bucket boundaries shared with the app
+    const spec = bucketSpecForRange(startDate, endDate, userTimeZone);
+
+    let totals = await rollups.tryDashboardStatsFromRollups(startDate, endDate, spec);
+    const source = totals ? "rollups" : "scan";
+    if (!totals) {
+        totals = await scanDashboardTotals(db, startDate, endDate, spec);
+    }
+
+    const {
+        totalRevenue, totalProfit, totalExpenses, totalTransactions,
+        salesOverTime, profitOverTime, transactionsOverTime, expensesOverTime,
+        productQuantities, productNames, categoryRevenue
+    } = totals;
+
     // Helper to format chart data
     const formatChart = (map) => {
         return Object.keys(map).sort().map((k) => ({
@@ -299,8 +384,22 @@ exports.getDashboardStats = functions.https.onCall(async (data, context) => {
         }));
     };
 
+    // Per-bucket totals, cached by the app under spec.key
+    const bucketKeys = new Set([...Object.keys(salesOverTime), ...Object.keys(expensesOverTime)]);
+    const buckets = [...bucketKeys]
+        .map((k) => parseInt(k))
+        .sort((a, b) => a - b)
+        .map((start) => ({
+            start: start,
+            revenue: salesOverTime[start] || 0,
+            profit: profitOverTime[start] || 0,
+            transactions: transactionsOverTime[start] || 0,
+            expenses: expensesOverTime[start] || 0
+        }));
+
     // Helper to format Top Products
     const topProducts = Object.keys(productQuantities)
+        .filter((pid) => productQuantities[pid] > 0)
         .map((pid) => ({
             label: productNames[pid],
             value: productQuantities[pid]
@@ -310,6 +409,7 @@ exports.getDashboardStats = functions.https.onCall(async (data, context) => {
 
     // Helper to format Categories
     const salesByCategory = Object.keys(categoryRevenue)
+        .filter((cat) => Math.abs(categoryRevenue[cat]) > 1e-9)
         .map((cat) => ({
             label: cat,
             value: categoryRevenue[cat]
@@ -327,13 +427,26 @@ exports.getDashboardStats = functions.https.onCall(async (data, context) => {
         profitOverTime: formatChart(profitOverTime),
         topSellingProducts: topProducts,
         salesByCategory: salesByCategory,
-        granularity: granularity
+        granularity: spec.granularity,
+        bucketSpec: spec,
+        buckets: buckets,
+        source: source,
+        rollupVersion: totals.rollupVersion || 0
     };
 });
 
+const LAPSED_AFTER_DAYS = 90;
+const DAY_MS = 24 * 60 * 60 * 1000;
+
 /**
- * Callable Function: Get Inventory Analysis
- * specialized analysis for "Slow Moving Products" and "Lapsed Customers".
+ * Callable Function: Get Inventory Analysis (deprecated)
+ * Kept for one release for app builds that predate the velocity and customer aggregates; current
+ * builds query those directly. Remove it once those builds are retired.
+ *
+ * Answers in the old shape, `{ items: [...] }`, from the aggregates instead of full scans:
+ * SLOW_MOVING lists the products unsold over the trailing velocity window (7, 30 or 90 days) that
+ * covers the requested range's length, LAPSED_CUSTOMERS the active customers whose last purchase
+ * is more than 90 days old.
  */
 exports.getInventoryAnalysis = functions.https.onCall(async (data, context) => {
     const type = data.type; // "SLOW_MOVING" | "LAPSED_CUSTOMERS"
@@ -346,82 +459,43 @@ exports.getInventoryAnalysis = functions.https.onCall(async (data, context) => {
             throw new functions.https.HttpsError("invalid-argument", "Missing date range.");
         }
 
-        const startTs = admin.firestore.Timestamp.fromMillis(startDate);
-        const endTs = admin.firestore.Timestamp.fromMillis(endDate);
-
-        // 1. Get all sales in range to find sold product IDs
-        const salesSnap = await db.collection("sales")
-            .where("saleDate", ">=", startTs)
-            .where("saleDate", "<=", endTs)
-            .select("items") // Optimization: only fetch items
-            .get();
-
-        const soldProductIds = new Set();
-        salesSnap.forEach(doc => {
-            const sale = doc.data();
-            if (sale.items && Array.isArray(sale.items)) {
-                sale.items.forEach(item => {
-                    if (item.productId) soldProductIds.add(item.productId);
-                });
-            }
-        });
-
-        // 2. Get all products (Optimize: This could be heavy for large inventories. 
-        // For now, it matches client-side behavior but runs on server).
-        const productsSnap = await db.collection("products").get();
-
-        const slowMoving = [];
-        productsSnap.forEach(doc => {
-            if (!soldProductIds.has(doc.id)) {
-                const p = doc.data();
-                slowMoving.push({
-                    documentId: doc.id,
-                    name: p.name,
-                    quantity: p.quantity || 0,
-                    category: p.category || "",
-                    unit: p.unit || ""
-                });
-            }
+        const ids = await productVelocity.unsoldProductIds(db, Math.ceil((endDate - startDate) / DAY_MS));
+        const products = ids.length > 0
+            ? await db.getAll(...ids.map((id) => db.collection("products").doc(id)))
+            : [];
+        // Stock of hot products is spread over their shards
+        const hot = products.filter((p) => stockShards.shardCount(p) > 0).map((p) => p.id);
+        const shards = await stockShards.shardTotals(db, hot);
+
+        const items = [];
+        products.forEach((p) => {
+            if (!p.exists) return;
+            items.push({
+                documentId: p.id,
+                name: p.get("name"),
+                quantity: (Number(p.get("quantity")) || 0) + (shards[p.id] || 0),
+                category: p.get("category") || "",
+                unit: p.get("unit") || ""
+            });
         });
-
-        return { items: slowMoving };
+        return { items: items };
 
     } else if (type === "LAPSED_CUSTOMERS") {
-        // Lapsed = No purchase in last 90 days
-        const ninetyDaysAgo = dayjs().subtract(90, 'day').toDate();
-        const cutoffTs = admin.firestore.Timestamp.fromDate(ninetyDaysAgo);
-
-        // 1. Get recent sales (last 90 days)
-        const recentSalesSnap = await db.collection("sales")
-            .where("saleDate", ">=", cutoffTs)
-            .select("customerId")
-            .get();
-
-        const activeCustomerIds = new Set();
-        recentSalesSnap.forEach(doc => {
-            const sale = doc.data();
-            if (sale.customerId) activeCustomerIds.add(sale.customerId);
-        });
-
-        // 2. Get all active customers
+        const cutoffTs = admin.firestore.Timestamp.fromMillis(Date.now() - LAPSED_AFTER_DAYS * DAY_MS);
         const customersSnap = await db.collection("customers")
             .where("isActive", "==", true)
+            .where("lastPurchaseDate", "<", cutoffTs)
+            .orderBy("lastPurchaseDate")
+            .select("name", "contactNumber", "lastPurchaseDate")
             .get();
 
-        const lapsed = [];
-        customersSnap.forEach(doc => {
-            if (!activeCustomerIds.has(doc.id)) {
-                const c = doc.data();
-                lapsed.push({
-                    documentId: doc.id,
-                    name: c.name,
-                    contactNumber: c.contactNumber || "",
-                    lastPurchaseDate: c.lastPurchaseDate ? c.lastPurchaseDate.toMillis() : 0
-                });
-            }
-        });
-
-        return { items: lapsed };
+        const items = customersSnap.docs.map((doc) => ({
+            documentId: doc.id,
+            name: doc.get("name"),
+            contactNumber: doc.get("contactNumber") || "",
+            lastPurchaseDate: doc.get("lastPurchaseDate").toMillis()
+        }));
+        return { items: items };
 
     } else {
         throw new functions.https.HttpsError("invalid-argument", "Valid type required.");
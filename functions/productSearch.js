@@ -0,0 +1,104 @@
+const functions = require("firebase-functions/v1");
+const admin = require("firebase-admin");
+const { requireAdmin } = require("./roles");
+
+/**
+ * Product search index.
+ *
+ * Every product carries `searchTokens`: the lowercase prefixes (edge n-grams) of each word of its
+ * name, product code and barcode, plus prefixes of the code and barcode with separators removed.
+ * Clients search with one `array-contains` on the normalized query word, so a search returns only
+ * matching products instead of paging through the catalog.
+ *
+ * Normalization and token rules are mirrored in shared/.../search/ProductSearch.kt; keep them and
+ * SEARCH_INDEX_VERSION in sync.
+ */
+
+const SEARCH_INDEX_VERSION = 1;
+const MAX_PREFIX_LENGTH = 20;
+// Keeps the array well below Firestore's index entry limits for pathological names
+const MAX_TOKENS = 400;
+
+function words(text) {
+    if (!text) return [];
+    return String(text).toLowerCase().split(/[^\p{L}\p{N}]+/u).filter((w) => w.length > 0);
+}
+
+function addPrefixes(tokens, word) {
+    const limit = Math.min(word.length, MAX_PREFIX_LENGTH);
+    for (let i = 1; i <= limit; i++) {
+        tokens.add(word.substring(0, i));
+    }
+}
+
+/**
+ * @return {string[]} search tokens of the product document data
+ */
+function searchTokens(product) {
+    const tokens = new Set();
+    words(product.name).forEach((w) => addPrefixes(tokens, w));
+    [product.productCode, product.barcode].forEach((field) => {
+        const parts = words(field);
+        parts.forEach((w) => addPrefixes(tokens, w));
+        // "AB-1200" is also found by typing "ab12"
+        if (parts.length > 1) addPrefixes(tokens, parts.join(""));
+    });
+    return Array.from(tokens).slice(0, MAX_TOKENS);
+}
+
+function sameTokens(a, b) {
+    if (!Array.isArray(a) || a.length !== b.length) return false;
+    const set = new Set(a);
+    return b.every((t) => set.has(t));
+}
+
+/**
+ * Keeps `searchTokens` in sync with name / productCode / barcode. Writing the tokens triggers this
+ * function again; that second run finds them unchanged and stops.
+ */
+exports.onProductWrittenSearchIndex = functions.firestore
+    .document("products/{productId}")
+    .onWrite(async (change) => {
+        if (!change.after.exists) return null;
+        const data = change.after.data();
+        const tokens = searchTokens(data);
+        if (sameTokens(data.searchTokens, tokens) && data.searchIndexVersion === SEARCH_INDEX_VERSION) {
+            return null;
+        }
+        return change.after.ref.update({
+            searchTokens: tokens,
+            searchIndexVersion: SEARCH_INDEX_VERSION
+        });
+    });
+
+/**
+ * Backfill, for administrators: (re)computes `searchTokens` for every product, e.g. after deploying
+ * a new index version.
+ */
+exports.rebuildProductSearchIndex = functions
+    .runWith({ timeoutSeconds: 540, memory: "1GB" })
+    .https.onCall(async (data, context) => {
+        await requireAdmin(context);
+
+        const db = admin.firestore();
+        const snapshot = await db.collection("products")
+            .select("name", "productCode", "barcode", "searchTokens", "searchIndexVersion")
+            .get();
+        const writer = db.bulkWriter();
+        let updated = 0;
+        snapshot.forEach((doc) => {
+            const product = doc.data();
+            const tokens = searchTokens(product);
+            if (sameTokens(product.searchTokens, tokens) && product.searchIndexVersion === SEARCH_INDEX_VERSION) {
+                return;
+            }
+            writer.update(doc.ref, { searchTokens: tokens, searchIndexVersion: SEARCH_INDEX_VERSION });
+            updated++;
+        });
+        await writer.close();
+
+        return { scanned: snapshot.size, updated: updated, version: SEARCH_INDEX_VERSION };
+    });
+
+exports.searchTokens = searchTokens;
+exports.SEARCH_INDEX_VERSION = SEARCH_INDEX_VERSION;
@@ -0,0 +1,325 @@
+const functions = require("firebase-functions/v1");
+const admin = require("firebase-admin");
+const { requireAdmin } = require("./roles");
+
+/**
+ * Per-product sales velocity.
+ *
+ * `product_velocity/{productId}` holds the units sold over the last 7, 30 and 90 days
+ * (`unitsSold7d`, `unitsSold30d`, `unitsSold90d`), `lastSoldAt`, and the daily unit counts behind
+ * them in `salesByDay` (UTC "YYYY-MM-DD" keys). Sale creates, edits, returns and deletes add the
+ * difference between the sale before and after the write as increments, so the trigger reads
+ * nothing but its event marker and never touches the product document, which stays free for
+ * commitSale and the stock shards. Units are net of returns.
+ *
+ * Triggers are not delivered in order: an edit may land before the create of its sale. Buckets may
+ * therefore go negative for a while and are kept until they age out; the windows are clamped at 0
+ * when `decayProductVelocity` recomputes them from the buckets once a day.
+ *
+ * Slow-moving and dead-stock reports are equality queries, e.g. `unitsSold30d == 0`, whose cost
+ * does not grow with the sales history. Every product gets a document when it is created, so
+ * unsold products match as well. `lastSoldAt` is set by sales dated today and corrected by the
+ * daily job from the buckets, so it is exact to the day.
+ */
+
+const VELOCITY = "product_velocity";
+const EVENTS_COLLECTION = "product_velocity_events";
+const WINDOWS = [7, 30, 90];
+const KEPT_DAYS = 90;
+const SALES_BY_DAY = "salesByDay";
+const LAST_SOLD_AT = "lastSoldAt";
+const DAY_MS = 24 * 60 * 60 * 1000;
+// A TTL policy on `expireAt` removes the event markers after this
+const EVENT_RETENTION_DAYS = 7;
+// Documents decayed in parallel per step, to keep fan-out bounded
+const DECAY_CHUNK = 20;
+
+function windowField(days) {
+    return `unitsSold${days}d`;
+}
+
+function toNumber(value) {
+    return typeof value === "number" && isFinite(value) ? value : 0;
+}
+
+function dayNumber(millis) {
+    return Math.floor(millis / DAY_MS);
+}
+
+function dayKey(day) {
+    return new Date(day * DAY_MS).toISOString().slice(0, 10);
+}
+
+function dayOfKey(key) {
+    const millis = Date.parse(key);
+    return isNaN(millis) ? null : dayNumber(millis);
+}
+
+function toMillis(value) {
+    return value && typeof value.toMillis === "function" ? value.toMillis() : 0;
+}
+
+/**
+ * Net units per product of a sale document, with its date; null for a missing or undated sale.
+ */
+function contribution(snapshot) {
+    if (!snapshot.exists) return null;
+    const date = toMillis(snapshot.get("saleDate"));
+    if (date === 0) return null;
+    const units = new Map();
+    (snapshot.get("items") || []).forEach((item) => {
+        if (!item || typeof item.productId !== "string" || item.productId.length === 0) return;
+        const net = toNumber(item.quantity) - toNumber(item.returnedQuantity);
+        units.set(item.productId, (units.get(item.productId) || 0) + net);
+    });
+    return { date: date, units: units };
+}
+
+function sameContribution(a, b) {
+    if (a === null || b === null) return a === b;
+    if (a.date !== b.date || a.units.size !== b.units.size) return false;
+    return Array.from(a.units).every(([id, units]) => b.units.get(id) === units);
+}
+
+/**
+ * Per product: units to add by day, and the date of the sale now counted.
+ */
+function productDeltas(before, after) {
+    const deltas = new Map();
+    const apply = (sale, sign) => {
+        const day = dayNumber(sale.date);
+        sale.units.forEach((units, productId) => {
+            if (!deltas.has(productId)) deltas.set(productId, { days: new Map(), added: null });
+            const delta = deltas.get(productId);
+            delta.days.set(day, (delta.days.get(day) || 0) + sign * units);
+            if (sign > 0 && units > 0) delta.added = sale.date;
+        });
+    };
+    if (before) apply(before, -1);
+    if (after) apply(after, 1);
+    return deltas;
+}
+
+/**
+ * Increments of one product's document for the given delta, or null if it changes nothing.
+ */
+function incrementUpdate(delta, today) {
+    const inc = admin.firestore.FieldValue.increment;
+    const buckets = {};
+    const windows = {};
+    delta.days.forEach((units, day) => {
+        // Days already aged out are left to the daily job
+        if (units === 0 || today - day >= KEPT_DAYS) return;
+        buckets[dayKey(day)] = inc(units);
+        // Sales dated in the future count as today's
+        const age = Math.max(0, today - day);
+        WINDOWS.forEach((days) => {
+            if (age < days) windows[windowField(days)] = (windows[windowField(days)] || 0) + units;
+        });
+    });
+    const update = {};
+    if (Object.keys(buckets).length > 0) update[SALES_BY_DAY] = buckets;
+    Object.keys(windows).forEach((field) => {
+        if (windows[field] !== 0) update[field] = inc(windows[field]);
+    });
+    // Only a sale of today is certainly the latest; older ones are left to the daily job
+    if (delta.added !== null && dayNumber(delta.added) >= today) {
+        update[LAST_SOLD_AT] = admin.firestore.Timestamp.fromMillis(delta.added);
+    }
+    return Object.keys(update).length > 0 ? update : null;
+}
+
+/**
+ * The full document for the given daily units: buckets older than KEPT_DAYS or at 0 are dropped,
+ * negative ones kept, and each window is clamped at 0.
+ *
+ * @param buckets    units by day number
+ * @param lastSoldAt millis of the latest sale known, 0 for none
+ */
+function velocityDocument(buckets, today, lastSoldAt) {
+    const kept = {};
+    const doc = {};
+    WINDOWS.forEach((days) => { doc[windowField(days)] = 0; });
+    let latest = 0;
+    buckets.forEach((units, day) => {
+        if (units === 0 || today - day >= KEPT_DAYS) return;
+        kept[dayKey(day)] = units;
+        const age = Math.max(0, today - day);
+        WINDOWS.forEach((days) => {
+            if (age < days) doc[windowField(days)] += units;
+        });
+        if (units > 0) latest = Math.max(latest, day);
+    });
+    WINDOWS.forEach((days) => { doc[windowField(days)] = Math.max(0, doc[windowField(days)]); });
+    doc[SALES_BY_DAY] = kept;
+
+    // A last sale inside the kept days must still have units on its day, e.g. after a delete
+    let last = lastSoldAt;
+    if (last > 0 && today - dayNumber(last) < KEPT_DAYS && !(toNumber(kept[dayKey(dayNumber(last))]) > 0)) {
+        last = 0;
+    }
+    if (latest > 0 && dayNumber(last) < latest) last = latest * DAY_MS;
+    doc[LAST_SOLD_AT] = last > 0 ? admin.firestore.Timestamp.fromMillis(last) : null;
+    return doc;
+}
+
+function storedBuckets(snapshot) {
+    const buckets = new Map();
+    const stored = snapshot.get(SALES_BY_DAY) || {};
+    Object.keys(stored).forEach((key) => {
+        const day = dayOfKey(key);
+        if (day !== null) buckets.set(day, toNumber(stored[key]));
+    });
+    return buckets;
+}
+
+/**
+ * Trigger: Sale created / updated / deleted -> product velocity
+ * Retried on failure; the event marker keeps a retry from counting twice.
+ */
+exports.onSaleWrittenProductVelocity = functions
+    .runWith({ failurePolicy: true })
+    .firestore.document("sales/{saleId}")
+    .onWrite(async (change, context) => {
+        const before = contribution(change.before);
+        const after = contribution(change.after);
+        if (sameContribution(before, after)) return null;
+
+        const db = admin.firestore();
+        const today = dayNumber(Date.now());
+        const updates = [];
+        productDeltas(before, after).forEach((delta, productId) => {
+            const update = incrementUpdate(delta, today);
+            if (update) updates.push([db.collection(VELOCITY).doc(productId), update]);
+        });
+        if (updates.length === 0) return null;
+
+        const eventRef = db.collection(EVENTS_COLLECTION).doc(context.eventId);
+        await db.runTransaction(async (tx) => {
+            // Triggers are delivered at least once
+            const event = await tx.get(eventRef);
+            if (event.exists) return;
+            updates.forEach(([ref, update]) => tx.set(ref, update, { merge: true }));
+            tx.set(eventRef, {
+                processedAt: admin.firestore.FieldValue.serverTimestamp(),
+                expireAt: admin.firestore.Timestamp.fromMillis(Date.now() + EVENT_RETENTION_DAYS * DAY_MS)
+            });
+        });
+        return null;
+    });
+
+/**
+ * Trigger: Product created -> zero velocity, so unsold products match the reports' queries
+ */
+exports.onProductCreatedVelocity = functions.firestore
+    .document("products/{productId}")
+    .onCreate(async (snapshot, context) => {
+        const ref = admin.firestore().collection(VELOCITY).doc(context.params.productId);
+        try {
+            await ref.create(velocityDocument(new Map(), dayNumber(Date.now()), 0));
+        } catch (error) {
+            // ALREADY_EXISTS: a sale got there first
+            if (error.code !== 6) throw error;
+        }
+        return null;
+    });
+
+/**
+ * Trigger: Product deleted -> its velocity goes too
+ */
+exports.onProductDeletedVelocity = functions.firestore
+    .document("products/{productId}")
+    .onDelete((snapshot, context) => {
+        return admin.firestore().collection(VELOCITY).doc(context.params.productId).delete();
+    });
+
+async function decayDocument(db, ref, today) {
+    await db.runTransaction(async (tx) => {
+        const velocity = await tx.get(ref);
+        if (!velocity.exists) return;
+        tx.set(ref, velocityDocument(storedBuckets(velocity), today, toMillis(velocity.get(LAST_SOLD_AT))));
+    });
+}
+
+/**
+ * Scheduled: moves the windows of every product sold in the last KEPT_DAYS days on by a day and
+ * settles the buckets and `lastSoldAt` the triggers left approximate.
+ */
+exports.decayProductVelocity = functions
+    .runWith({ timeoutSeconds: 540 })
+    .pubsub.schedule("every day 00:10")
+    .timeZone("UTC")
+    .onRun(async () => {
+        const db = admin.firestore();
+        const today = dayNumber(Date.now());
+        const [counted, recent] = await Promise.all([
+            db.collection(VELOCITY).where(windowField(KEPT_DAYS), "!=", 0).select().get(),
+            db.collection(VELOCITY)
+                .where(LAST_SOLD_AT, ">=", admin.firestore.Timestamp.fromMillis((today - KEPT_DAYS - 1) * DAY_MS))
+                .select().get()
+        ]);
+        const refs = new Map();
+        counted.docs.concat(recent.docs).forEach((doc) => refs.set(doc.id, doc.ref));
+        const pending = Array.from(refs.values());
+        for (let i = 0; i < pending.length; i += DECAY_CHUNK) {
+            await Promise.all(pending.slice(i, i + DECAY_CHUNK).map(async (ref) => {
+                try {
+                    await decayDocument(db, ref, today);
+                } catch (error) {
+                    // The next run catches up
+                    console.error(`Decaying ${ref.path} failed`, error);
+                }
+            }));
+        }
+        console.log(`Decayed the velocity of ${pending.length} products`);
+        return null;
+    });
+
+/**
+ * Ids of the products without sales over the shortest window covering `days`, or the longest
+ * window if none does. One equality query on the velocity documents.
+ */
+async function unsoldProductIds(db, days) {
+    const window = WINDOWS.find((w) => w >= days) || WINDOWS[WINDOWS.length - 1];
+    const unsold = await db.collection(VELOCITY).where(windowField(window), "==", 0).select().get();
+    return unsold.docs.map((doc) => doc.id);
+}
+
+exports.unsoldProductIds = unsoldProductIds;
+
+/**
+ * Callable Function: Rebuild Product Velocity
+ * One-off backfill, for administrators. Recomputes the velocity of every product from a full scan of the sales.
+ * Run during a quiet period: sales written while the scan is in progress may need a second run.
+ */
+exports.rebuildProductVelocity = functions
+    .runWith({ timeoutSeconds: 540, memory: "1GB" })
+    .https.onCall(async (data, context) => {
+        await requireAdmin(context);
+        const db = admin.firestore();
+        const today = dayNumber(Date.now());
+
+        const totals = new Map();
+        const salesSnap = await db.collection("sales").select("items", "saleDate").get();
+        salesSnap.forEach((doc) => {
+            const sale = contribution(doc);
+            if (!sale) return;
+            const day = dayNumber(sale.date);
+            sale.units.forEach((units, productId) => {
+                const total = totals.get(productId) || { buckets: new Map(), last: 0 };
+                total.buckets.set(day, (total.buckets.get(day) || 0) + units);
+                if (units > 0) total.last = Math.max(total.last, sale.date);
+                totals.set(productId, total);
+            });
+        });
+
+        const productsSnap = await db.collection("products").select().get();
+        const writer = db.bulkWriter();
+        productsSnap.forEach((doc) => {
+            const total = totals.get(doc.id) || { buckets: new Map(), last: 0 };
+            writer.set(db.collection(VELOCITY).doc(doc.id), velocityDocument(total.buckets, today, total.last));
+        });
+        await writer.close();
+
+        return { sales: salesSnap.size, products: productsSnap.size };
+    });
@@ -0,0 +1,39 @@
+const functions = require("firebase-functions/v1");
+const admin = require("firebase-admin");
+
+/**
+ * Administrators: active employees granted `can_manage_employees`, the same people
+ * sendAdminNotification (index.js) notifies. Employee documents are keyed by the auth uid.
+ */
+async function isAdmin(uid) {
+    const employee = await admin.firestore().collection("employees").doc(uid).get();
+    return employee.exists
+        && employee.get("isActive") === true
+        && employee.get("permissions.can_manage_employees.granted") === true;
+}
+
+/**
+ * Rejects the call unless it comes from an administrator. For destructive or costly callables,
+ * e.g. backfills.
+ */
+async function requireAdmin(context) {
+    if (!context.auth) {
+        throw new functions.https.HttpsError("unauthenticated", "Sign in required.");
+    }
+    if (!(await isAdmin(context.auth.uid))) {
+        throw new functions.https.HttpsError("permission-denied", "Only administrators can do this.");
+    }
+}
+
+/**
+ * Name of the caller for ledger and audit records: their employee record's name, else the name on
+ * their sign-in token, else null.
+ */
+async function callerName(context) {
+    const employee = await admin.firestore().collection("employees").doc(context.auth.uid).get();
+    return (employee.exists && employee.get("name")) || context.auth.token.name || null;
+}
+
+exports.isAdmin = isAdmin;
+exports.requireAdmin = requireAdmin;
+exports.callerName = callerName;
@@ -0,0 +1,406 @@
+const functions = require("firebase-functions/v1");
+const admin = require("firebase-admin");
+const dayjs = require("dayjs");
+const utc = require("dayjs/plugin/utc");
+const timezone = require("dayjs/plugin/timezone");
+
+dayjs.extend(utc);
+dayjs.extend(timezone);
+
+const { bucketStart } = require("./bucketSpec");
+const { requireAdmin } = require("./roles");
+
+/**
+ * Incremental report rollups.
+ *
+ * Every write to 'sales' or 'expenses' is folded into two sets of summary documents:
+ *  - report_rollups_hourly/{YYYY-MM-DD-HH}  (UTC hours, usable by any whole-hour time zone)
+ *  - report_rollups_daily/{YYYY-MM-DD}      (days in ROLLUP_TIME_ZONE)
+ *
+ * A long range is only cheap in the daily documents, so ROLLUP_TIME_ZONE must be the shop's zone:
+ * it is set as REPORT_TIME_ZONE in functions/.env. Callers whose local midnights fall on the same
+ * instants (the same zone under another name, or one with the same offsets) read the daily documents
+ * too. Changing the zone requires rebuildReportRollups; until then the daily documents are not used.
+ *
+ * Sale returns rewrite the parent sale (totalAmount / totalProfit / items) inside their
+ * transaction, so they reach the rollups through the sale's onWrite delta.
+ */
+
+const HOURLY_COLLECTION = "report_rollups_hourly";
+const DAILY_COLLECTION = "report_rollups_daily";
+const META_DOC = "report_rollups_meta/state";
+const EVENTS_COLLECTION = "report_rollup_events";
+// Redeliveries come within minutes; a TTL policy on `expireAt` removes the event markers after this
+const EVENT_RETENTION_DAYS = 7;
+
+// Shop time zone used for the daily documents (functions/.env). Other zones fall back to hourly docs.
+const ROLLUP_TIME_ZONE = process.env.REPORT_TIME_ZONE || "UTC";
+const ROLLUP_SCHEMA_VERSION = 1;
+// A rebuild holds its lock for at most this long, beyond the function's 540 s timeout
+const REBUILD_LEASE_MS = 10 * 60 * 1000;
+
+const HOUR_MS = 60 * 60 * 1000;
+const DAY_MS = 24 * HOUR_MS;
+
+function hourKey(date) {
+    return dayjs(date).utc().format("YYYY-MM-DD-HH");
+}
+
+function dayKey(date) {
+    return dayjs(date).tz(ROLLUP_TIME_ZONE).format("YYYY-MM-DD");
+}
+
+function newDelta(bucketStart) {
+    return {
+        bucketStart: bucketStart,
+        revenue: 0,
+        profit: 0,
+        transactions: 0,
+        expenses: 0,
+        products: {},
+        categories: {}
+    };
+}
+
+/**
+ * Accumulates the signed contribution of one sale into the per-bucket delta map.
+ */
+function addSaleContribution(deltas, sale, sign) {
+    if (!sale || !sale.saleDate || typeof sale.saleDate.toDate !== "function") return;
+    const saleDate = sale.saleDate.toDate();
+
+    const targets = [
+        [`${HOURLY_COLLECTION}/${hourKey(saleDate)}`, dayjs(saleDate).utc().startOf("hour")],
+        [`${DAILY_COLLECTION}/${dayKey(saleDate)}`, dayjs(saleDate).tz(ROLLUP_TIME_ZONE).startOf("day")]
+    ];
+
+    targets.forEach(([path, start]) => {
+        if (!deltas.has(path)) deltas.set(path, newDelta(start.valueOf()));
+        const d = deltas.get(path);
+
+        d.revenue += sign * (sale.totalAmount || 0);
+        d.profit += sign * (sale.totalProfit || 0);
+        d.transactions += sign;
+
+        if (sale.items && Array.isArray(sale.items)) {
+            sale.items.forEach((item) => {
+                const pid = item.productId;
+                const cat = item.category || "Uncategorized";
+                if (pid) {
+                    if (!d.products[pid]) d.products[pid] = { name: item.productName || "Unknown", quantity: 0 };
+                    d.products[pid].quantity += sign * (item.quantity || 0);
+                    if (sign > 0 && item.productName) d.products[pid].name = item.productName;
+                }
+                d.categories[cat] = (d.categories[cat] || 0) + sign * (item.totalPrice || 0);
+            });
+        }
+    });
+}
+
+function addExpenseContribution(deltas, expense, sign) {
+    if (!expense || !expense.date || typeof expense.date.toDate !== "function") return;
+    const date = expense.date.toDate();
+
+    const targets = [
+        [`${HOURLY_COLLECTION}/${hourKey(date)}`, dayjs(date).utc().startOf("hour")],
+        [`${DAILY_COLLECTION}/${dayKey(date)}`, dayjs(date).tz(ROLLUP_TIME_ZONE).startOf("day")]
+    ];
+
+    targets.forEach(([path, start]) => {
+        if (!deltas.has(path)) deltas.set(path, newDelta(start.valueOf()));
+        deltas.get(path).expenses += sign * (expense.amount || 0);
+    });
+}
+
+/**
+ * Converts an accumulated delta into a merge-able update made of FieldValue.increment()s.
+ * Zero contributions are dropped so an unchanged sale update writes nothing.
+ */
+function toIncrementUpdate(delta) {
+    const inc = admin.firestore.FieldValue.increment;
+    const update = {};
+    let changed = false;
+
+    ["revenue", "profit", "transactions", "expenses"].forEach((field) => {
+        if (delta[field] !== 0) {
+            update[field] = inc(delta[field]);
+            changed = true;
+        }
+    });
+
+    const products = {};
+    Object.keys(delta.products).forEach((pid) => {
+        const p = delta.products[pid];
+        if (p.quantity !== 0) {
+            products[pid] = { name: p.name, quantity: inc(p.quantity) };
+            changed = true;
+        }
+    });
+    if (Object.keys(products).length > 0) update.products = products;
+
+    const categories = {};
+    Object.keys(delta.categories).forEach((cat) => {
+        if (delta.categories[cat] !== 0) {
+            categories[cat] = inc(delta.categories[cat]);
+            changed = true;
+        }
+    });
+    if (Object.keys(categories).length > 0) update.categories = categories;
+
+    if (!changed) return null;
+    update.bucketStart = admin.firestore.Timestamp.fromMillis(delta.bucketStart);
+    return update;
+}
+
+/**
+ * Applies deltas exactly once per trigger event (background triggers may be redelivered).
+ */
+async function applyDeltas(eventId, deltas) {
+    const db = admin.firestore();
+    const updates = [];
+    deltas.forEach((delta, path) => {
+        const update = toIncrementUpdate(delta);
+        if (update) updates.push([db.doc(path), update]);
+    });
+    if (updates.length === 0) return;
+
+    const eventRef = db.collection(EVENTS_COLLECTION).doc(eventId);
+    await db.runTransaction(async (tx) => {
+        const seen = await tx.get(eventRef);
+        if (seen.exists) return;
+        updates.forEach(([ref, update]) => tx.set(ref, update, { merge: true }));
+        tx.set(eventRef, {
+            processedAt: admin.firestore.FieldValue.serverTimestamp(),
+            expireAt: admin.firestore.Timestamp.fromMillis(Date.now() + EVENT_RETENTION_DAYS * DAY_MS)
+        });
+    });
+}
+
+/**
+ * Trigger: Sale created / updated / deleted -> rollup deltas
+ */
+exports.onSaleWrittenRollup = functions.firestore
+    .document("sales/{saleId}")
+    .onWrite(async (change, context) => {
+        const deltas = new Map();
+        if (change.before.exists) addSaleContribution(deltas, change.before.data(), -1);
+        if (change.after.exists) addSaleContribution(deltas, change.after.data(), 1);
+        await applyDeltas(context.eventId, deltas);
+    });
+
+/**
+ * Trigger: Expense created / updated / deleted -> rollup deltas
+ */
+exports.onExpenseWrittenRollup = functions.firestore
+    .document("expenses/{expenseId}")
+    .onWrite(async (change, context) => {
+        const deltas = new Map();
+        if (change.before.exists) addExpenseContribution(deltas, change.before.data(), -1);
+        if (change.after.exists) addExpenseContribution(deltas, change.after.data(), 1);
+        await applyDeltas(context.eventId, deltas);
+    });
+
+/**
+ * Takes the rebuild lock on the meta document and marks the rollups as not ready, so
+ * getDashboardStats scans instead of reading half-rebuilt buckets.
+ * @return {Promise<number>} the version the rebuild will publish
+ */
+async function startRebuild(db, metaRef) {
+    return db.runTransaction(async (tx) => {
+        const meta = await tx.get(metaRef);
+        const startedAt = meta.exists ? meta.get("rebuildStartedAt") : null;
+        if (startedAt && startedAt.toMillis() > Date.now() - REBUILD_LEASE_MS) {
+            throw new functions.https.HttpsError("failed-precondition", "A rebuild is already running.");
+        }
+        tx.set(metaRef, {
+            ready: false,
+            rebuildStartedAt: admin.firestore.Timestamp.now()
+        }, { merge: true });
+        return ((meta.exists && meta.get("version")) || 0) + 1;
+    });
+}
+
+/**
+ * Rewrites every rollup from a full scan and publishes them as `version`.
+ */
+async function rebuild(db, metaRef, version) {
+    const [salesSnap, expensesSnap] = await Promise.all([
+        db.collection("sales").get(),
+        db.collection("expenses").get()
+    ]);
+
+    const deltas = new Map();
+    salesSnap.forEach((doc) => addSaleContribution(deltas, doc.data(), 1));
+    expensesSnap.forEach((doc) => addExpenseContribution(deltas, doc.data(), 1));
+
+    await db.recursiveDelete(db.collection(HOURLY_COLLECTION));
+    await db.recursiveDelete(db.collection(DAILY_COLLECTION));
+
+    const writer = db.bulkWriter();
+    deltas.forEach((delta, path) => {
+        writer.set(db.doc(path), {
+            bucketStart: admin.firestore.Timestamp.fromMillis(delta.bucketStart),
+            revenue: delta.revenue,
+            profit: delta.profit,
+            transactions: delta.transactions,
+            expenses: delta.expenses,
+            products: delta.products,
+            categories: delta.categories
+        });
+    });
+
+    // Replaces the meta document, which also releases the lock
+    writer.set(metaRef, {
+        ready: true,
+        schemaVersion: ROLLUP_SCHEMA_VERSION,
+        version: version,
+        timeZone: ROLLUP_TIME_ZONE,
+        rebuiltAt: admin.firestore.FieldValue.serverTimestamp()
+    });
+    await writer.close();
+
+    return { buckets: deltas.size, sales: salesSnap.size, expenses: expensesSnap.size, version: version };
+}
+
+/**
+ * Callable Function: Rebuild Report Rollups
+ * One-off backfill, for administrators. Recomputes every rollup from a full scan and marks the
+ * rollups as ready, after which getDashboardStats serves from them; until then it scans. One
+ * rebuild runs at a time. Run during a quiet period: sales written while the scan is in progress
+ * may need a second rebuild.
+ */
+exports.rebuildReportRollups = functions
+    .runWith({ timeoutSeconds: 540, memory: "1GB" })
+    .https.onCall(async (data, context) => {
+        await requireAdmin(context);
+
+        const db = admin.firestore();
+        const metaRef = db.doc(META_DOC);
+        const version = await startRebuild(db, metaRef);
+        try {
+            return await rebuild(db, metaRef, version);
+        } catch (error) {
+            // The rollups stay not ready; release the lock so the rebuild can be retried
+            await metaRef.update({ rebuildStartedAt: admin.firestore.FieldValue.delete() });
+            throw error;
+        }
+    });
+
+/**
+ * Whether every local midnight in [startDate, endExclusive) of the caller's zone is a midnight of
+ * the daily documents' zone, and the other way round.
+ */
+function sameMidnights(startDate, endExclusive, userTimeZone, dailyTimeZone) {
+    let day = startDate;
+    while (day < endExclusive) {
+        if (dayjs(day).tz(userTimeZone).startOf("day").valueOf() !== day ||
+            dayjs(day).tz(dailyTimeZone).startOf("day").valueOf() !== day) {
+            return false;
+        }
+        day = dayjs(day).tz(dailyTimeZone).add(1, "day").startOf("day").valueOf();
+    }
+    return day === endExclusive;
+}
+
+/**
+ * Picks the cheapest rollup collection able to answer [startDate, endDate] exactly in the caller's zone,
+ * or null when the range has to be served by a full scan.
+ *
+ * @param dailyTimeZone zone the daily documents were built in
+ */
+function chooseRollupSource(startDate, endDate, userTimeZone, granularity, dailyTimeZone) {
+    const endExclusive = endDate + 1;
+
+    if (granularity === "day" && dailyTimeZone === ROLLUP_TIME_ZONE &&
+        sameMidnights(startDate, endExclusive, userTimeZone, dailyTimeZone)) {
+        return DAILY_COLLECTION;
+    }
+
+    const wholeHourOffset = dayjs(startDate).tz(userTimeZone).utcOffset() % 60 === 0 &&
+        dayjs(endDate).tz(userTimeZone).utcOffset() % 60 === 0;
+    if (wholeHourOffset && startDate % HOUR_MS === 0 && endExclusive % HOUR_MS === 0) {
+        return HOURLY_COLLECTION;
+    }
+    return null;
+}
+
+/**
+ * Serves getDashboardStats from rollups. Returns null if rollups are not built or the range
+ * is not aligned to rollup buckets, so the caller can fall back to scanning.
+ */
+exports.tryDashboardStatsFromRollups = async function (startDate, endDate, spec) {
+    const db = admin.firestore();
+
+    const meta = await db.doc(META_DOC).get();
+    if (!meta.exists || !meta.data().ready || meta.data().schemaVersion !== ROLLUP_SCHEMA_VERSION) {
+        return null;
+    }
+
+    const source = chooseRollupSource(startDate, endDate, spec.timeZone, spec.granularity, meta.data().timeZone);
+    if (!source) return null;
+
+    const snap = await db.collection(source)
+        .where("bucketStart", ">=", admin.firestore.Timestamp.fromMillis(startDate))
+        .where("bucketStart", "<=", admin.firestore.Timestamp.fromMillis(endDate))
+        .get();
+
+    let totalRevenue = 0;
+    let totalProfit = 0;
+    let totalExpenses = 0;
+    let totalTransactions = 0;
+
+    const salesOverTime = {};
+    const profitOverTime = {};
+    const transactionsOverTime = {};
+    const expensesOverTime = {};
+    const productQuantities = {};
+    const productNames = {};
+    const categoryRevenue = {};
+
+    snap.forEach((doc) => {
+        const r = doc.data();
+        const revenue = r.revenue || 0;
+        const profit = r.profit || 0;
+
+        totalRevenue += revenue;
+        totalProfit += profit;
+        totalExpenses += (r.expenses || 0);
+        totalTransactions += (r.transactions || 0);
+
+        const key = bucketStart(spec, r.bucketStart.toDate());
+        if (r.transactions) {
+            salesOverTime[key] = (salesOverTime[key] || 0) + revenue;
+            profitOverTime[key] = (profitOverTime[key] || 0) + profit;
+            transactionsOverTime[key] = (transactionsOverTime[key] || 0) + r.transactions;
+        }
+        if (r.expenses) {
+            expensesOverTime[key] = (expensesOverTime[key] || 0) + r.expenses;
+        }
+
+        const products = r.products || {};
+        Object.keys(products).forEach((pid) => {
+            productQuantities[pid] = (productQuantities[pid] || 0) + (products[pid].quantity || 0);
+            productNames[pid] = products[pid].name;
+        });
+
+        const categories = r.categories || {};
+        Object.keys(categories).forEach((cat) => {
+            categoryRevenue[cat] = (categoryRevenue[cat] || 0) + categories[cat];
+        });
+    });
+
+    return {
+        totalRevenue: totalRevenue,
+        totalProfit: totalProfit,
+        totalExpenses: totalExpenses,
+        totalTransactions: totalTransactions,
+        salesOverTime: salesOverTime,
+        profitOverTime: profitOverTime,
+        transactionsOverTime: transactionsOverTime,
+        expensesOverTime: expensesOverTime,
+        productQuantities: productQuantities,
+        productNames: productNames,
+        categoryRevenue: categoryRevenue,
+        rollupVersion: meta.data().version || 0
+    };
+};
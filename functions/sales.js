@@ -0,0 +1,311 @@
+const functions = require("firebase-functions/v1");
+const admin = require("firebase-admin");
+const stockShards = require("./stockShards");
+const { callerName } = require("./roles");
+
+/**
+ * Server-side sale commit and edit.
+ *
+ * The app used to write the sale and blind `increment(-quantity)`s to the products in one batch, so
+ * two tills selling the last units at once both succeeded and stock went negative. `commitSale`
+ * reads the products inside a transaction, rejects the sale if any of them lacks stock and
+ * otherwise writes the sale, the new stock levels and its inventory movement together. The
+ * customer's purchase totals follow the sale document through onSaleWrittenCustomerAggregates.
+ *
+ * The sale id is chosen by the app and the commit leaves the same receipt as an outbox replay
+ * (`outboxReceipts/sale_{id}`), so retrying the call, or replaying the sale from the outbox after a
+ * lost response, never applies it twice. The request layout is mirrored in
+ * app/.../sync/SaleCommit.java; keep them in sync.
+ *
+ * `editSale` takes the same request for an existing sale and applies only the difference: the net
+ * quantity change of each product and a movement of the difference. An edit describes the final
+ * state, so repeating it changes nothing. Report rollups follow the sale document by delta through
+ * onSaleWrittenRollup.
+ *
+ * Hot products (see stockShards.js) are changed on a stock shard instead, so busy products do not
+ * serialise sales. Their shards are summed before the transaction, which makes their stock check
+ * best-effort: two sales racing for the very last units can both pass.
+ */
+
+const RECEIPTS = "outboxReceipts";
+// Append-only inventory ledger, see app/.../sync/InventoryMovement.java
+const MOVEMENTS = "inventory_movements";
+
+function receiptKey(saleId) {
+    return `sale_${saleId}`;
+}
+
+function toNumber(value) {
+    return typeof value === "number" && isFinite(value) ? value : 0;
+}
+
+/**
+ * Validates the request and returns the sale document to write, with its items and quantities
+ * per product.
+ */
+function parseRequest(data) {
+    const saleId = data && data.saleId;
+    const sale = data && data.sale;
+    if (typeof saleId !== "string" || saleId.length === 0 || saleId.includes("/")) {
+        throw new functions.https.HttpsError("invalid-argument", "A sale id is required.");
+    }
+    if (!sale || !Array.isArray(sale.items) || sale.items.length === 0) {
+        throw new functions.https.HttpsError("invalid-argument", "A sale needs at least one item.");
+    }
+    if (typeof sale.saleDate !== "number") {
+        throw new functions.https.HttpsError("invalid-argument", "A sale date is required.");
+    }
+
+    const quantities = new Map();
+    const items = sale.items.map((item) => {
+        const quantity = item && Number.isInteger(item.quantity) ? item.quantity : 0;
+        if (!item || typeof item.productId !== "string" || item.productId.length === 0 || quantity <= 0) {
+            throw new functions.https.HttpsError("invalid-argument", "Every item needs a product and a quantity.");
+        }
+        quantities.set(item.productId, (quantities.get(item.productId) || 0) + quantity);
+        return Object.assign({}, item, { quantity: quantity, returnedQuantity: 0 });
+    });
+
+    const doc = Object.assign({}, sale, {
+        items: items,
+        productIds: Array.from(new Set(items.map((item) => item.productId))),
+        saleDate: admin.firestore.Timestamp.fromMillis(sale.saleDate)
+    });
+    return { saleId: saleId, doc: doc, quantities: quantities };
+}
+
+/**
+ * Net change of the quantity sold per product from `oldItems` to `newQuantities`; positive means
+ * more was sold. Products whose quantity did not change are left out.
+ */
+function quantityChanges(oldItems, newQuantities) {
+    const changes = new Map();
+    oldItems.forEach((item) => {
+        if (item && typeof item.productId === "string") {
+            changes.set(item.productId, (changes.get(item.productId) || 0) - toNumber(item.quantity));
+        }
+    });
+    newQuantities.forEach((quantity, productId) => {
+        changes.set(productId, (changes.get(productId) || 0) + quantity);
+    });
+    changes.forEach((change, productId) => { if (change === 0) changes.delete(productId); });
+    return changes;
+}
+
+/**
+ * Carries the returns recorded on the old items over to the edited ones, and returns what they
+ * took off the sale's totals so the edited totals can be reduced the same way.
+ */
+function carryReturns(oldItems, doc) {
+    const returned = new Map();
+    let amount = 0;
+    let cost = 0;
+    oldItems.forEach((item) => {
+        const quantity = item ? toNumber(item.returnedQuantity) : 0;
+        if (quantity <= 0) return;
+        returned.set(item.productId, (returned.get(item.productId) || 0) + quantity);
+        amount += quantity * toNumber(item.pricePerItem);
+        cost += quantity * toNumber(item.costPrice);
+    });
+
+    doc.items.forEach((item) => {
+        const left = returned.get(item.productId) || 0;
+        const taken = Math.min(left, item.quantity);
+        item.returnedQuantity = taken;
+        returned.set(item.productId, left - taken);
+    });
+    returned.forEach((left, productId) => {
+        if (left > 0) {
+            throw new functions.https.HttpsError("failed-precondition",
+                `Product ${productId} was returned; the sale cannot list fewer than the returned units.`);
+        }
+    });
+    return { amount: amount, cost: cost };
+}
+
+/**
+ * Checks that every product whose stock goes down has enough, and returns the stock each product
+ * will have. `changes` are stock changes, negative for units sold.
+ */
+function checkStock(products, changes, shardTotals) {
+    const stock = {};
+    const shortages = [];
+    products.forEach((product) => {
+        const change = changes.get(product.id);
+        if (!product.exists) {
+            // A deleted product can only be taken off a sale
+            if (change < 0) {
+                throw new functions.https.HttpsError("not-found", `Product ${product.id} no longer exists.`);
+            }
+            return;
+        }
+        const available = toNumber(product.get("quantity")) + (shardTotals[product.id] || 0);
+        if (change < 0 && available < -change) {
+            shortages.push({
+                productId: product.id,
+                productName: product.get("name") || "",
+                available: available,
+                requested: -change
+            });
+        }
+        stock[product.id] = available + change;
+    });
+    if (shortages.length > 0) {
+        throw new functions.https.HttpsError("failed-precondition", "Not enough stock.", { shortages: shortages });
+    }
+    return stock;
+}
+
+function writeStock(transaction, products, changes, now) {
+    products.forEach((product) => {
+        if (!product.exists) return;
+        const change = changes.get(product.id);
+        const shards = stockShards.shardCount(product);
+        if (shards > 0) {
+            transaction.set(stockShards.shardRef(product.ref, shards),
+                { [stockShards.DELTA]: admin.firestore.FieldValue.increment(change) }, { merge: true });
+        } else {
+            // Shard deltas left from when the product was hot are folded in separately
+            transaction.update(product.ref, {
+                quantity: toNumber(product.get("quantity")) + change,
+                updatedAt: now
+            });
+        }
+    });
+}
+
+function movement(type, saleId, changes, context, userName, now) {
+    const productIds = Array.from(changes.keys());
+    return {
+        type: type,
+        reference: saleId,
+        lines: productIds.map((id) => ({ productId: id, delta: changes.get(id) })),
+        productIds: productIds,
+        userId: context.auth.uid,
+        userName: userName,
+        createdAt: now
+    };
+}
+
+/**
+ * Callable: validates stock, writes the sale and decrements inventory in one transaction.
+ *
+ * Request: { saleId, sale: { ...sale fields, saleDate: millis, items: [{ productId, quantity, ... }] } }
+ * Response: { saleId, alreadyCommitted, stock: { productId: quantity } }
+ * Rejections: `failed-precondition` with details { shortages: [{ productId, productName, available,
+ * requested }] } when stock is short, `not-found` for a deleted product.
+ */
+exports.commitSale = functions.https.onCall(async (data, context) => {
+    if (!context.auth) {
+        throw new functions.https.HttpsError("unauthenticated", "Sign in required.");
+    }
+    const request = parseRequest(data);
+    const db = admin.firestore();
+    const saleRef = db.collection("sales").doc(request.saleId);
+    const receiptRef = db.collection(RECEIPTS).doc(receiptKey(request.saleId));
+    // Same id as the movement of an outbox replay of this sale, so there is one either way
+    const movementRef = db.collection(MOVEMENTS).doc(receiptKey(request.saleId));
+    const productIds = Array.from(request.quantities.keys());
+    const productRefs = productIds.map((id) => db.collection("products").doc(id));
+    const changes = new Map(productIds.map((id) => [id, -request.quantities.get(id)]));
+
+    const [shardTotals, userName] = await Promise.all([
+        stockShards.shardTotals(db, productIds),
+        callerName(context)
+    ]);
+
+    return db.runTransaction(async (transaction) => {
+        // All reads before any write
+        const receipt = await transaction.get(receiptRef);
+        const products = await transaction.getAll(...productRefs);
+
+        if (receipt.exists) {
+            // Committed before; the caller lost the response
+            const stock = {};
+            products.forEach((p) => { stock[p.id] = toNumber(p.get("quantity")) + (shardTotals[p.id] || 0); });
+            return { saleId: request.saleId, alreadyCommitted: true, stock: stock };
+        }
+
+        const stock = checkStock(products, changes, shardTotals);
+
+        const now = admin.firestore.FieldValue.serverTimestamp();
+        transaction.set(saleRef, request.doc);
+        writeStock(transaction, products, changes, now);
+        transaction.set(movementRef, movement("SALE", request.saleId, changes, context, userName, now));
+
+        transaction.set(receiptRef, {
+            type: "SALE",
+            queuedAt: request.doc.saleDate,
+            appliedAt: now,
+            via: "commitSale"
+        });
+        return { saleId: request.saleId, alreadyCommitted: false, stock: stock };
+    });
+});
+
+/**
+ * Callable: replaces an existing sale with the edited one and applies only the net stock changes,
+ * in one transaction.
+ *
+ * Request: as commitSale, for the id of an existing sale.
+ * Response: { saleId, stock: { productId: quantity } } for the products that changed.
+ * Rejections: as commitSale for products whose stock goes down; `not-found` for a missing sale;
+ * `failed-precondition` when an item is cut below the units already returned.
+ */
+exports.editSale = functions.https.onCall(async (data, context) => {
+    if (!context.auth) {
+        throw new functions.https.HttpsError("unauthenticated", "Sign in required.");
+    }
+    const request = parseRequest(data);
+    const db = admin.firestore();
+    const saleRef = db.collection("sales").doc(request.saleId);
+
+    // Shards are summed outside the transaction, so the products are taken from a first read of the
+    // sale; if the sale gains other products before the transaction reads it, the edit is retried
+    const stored = await saleRef.get();
+    if (!stored.exists) {
+        throw new functions.https.HttpsError("not-found", `Sale ${request.saleId} does not exist.`);
+    }
+    const knownIds = new Set([
+        ...(stored.get("items") || []).map((item) => item && item.productId),
+        ...request.quantities.keys()
+    ]);
+    const [shardTotals, userName] = await Promise.all([
+        stockShards.shardTotals(db, Array.from(knownIds).filter((id) => typeof id === "string")),
+        callerName(context)
+    ]);
+
+    return db.runTransaction(async (transaction) => {
+        const sale = await transaction.get(saleRef);
+        if (!sale.exists) {
+            throw new functions.https.HttpsError("not-found", `Sale ${request.saleId} does not exist.`);
+        }
+        const oldItems = sale.get("items") || [];
+        const sold = quantityChanges(oldItems, request.quantities);
+        if (Array.from(sold.keys()).some((id) => !knownIds.has(id))) {
+            throw new functions.https.HttpsError("aborted", "The sale changed while it was edited; try again.");
+        }
+        // Stock moves the other way from the quantity sold
+        const changes = new Map(Array.from(sold, ([id, change]) => [id, -change]));
+        const products = changes.size > 0
+            ? await transaction.getAll(...Array.from(changes.keys()).map((id) => db.collection("products").doc(id)))
+            : [];
+
+        const returns = carryReturns(oldItems, request.doc);
+        // The returns already took their refund off the totals; keep it off
+        request.doc.totalAmount = toNumber(request.doc.totalAmount) - returns.amount;
+        request.doc.totalCost = toNumber(request.doc.totalCost) - returns.cost;
+        request.doc.totalProfit = toNumber(request.doc.totalProfit) - (returns.amount - returns.cost);
+
+        const stock = checkStock(products, changes, shardTotals);
+
+        const now = admin.firestore.FieldValue.serverTimestamp();
+        transaction.set(saleRef, request.doc);
+        writeStock(transaction, products, changes, now);
+        if (changes.size > 0) {
+            transaction.set(db.collection(MOVEMENTS).doc(), movement("SALE_EDIT", request.saleId, changes, context, userName, now));
+        }
+
+        return { saleId: request.saleId, stock: stock };
+    });
+});
@@ -0,0 +1,99 @@
+const functions = require("firebase-functions/v1");
+const admin = require("firebase-admin");
+
+/**
+ * Sharded stock counters for hot products.
+ *
+ * Firestore sustains about one write per second to a document, so a product selling on many tills
+ * at once queues every sale behind the last one. A product with `stockShards: N` (at most
+ * MAX_SHARDS) takes its stock changes as increments of `delta` on one of
+ * `products/{id}/stockShards/{0..N-1}`, picked at random, and leaves the product document alone.
+ * Its stock is `quantity` plus the deltas of its shards; `foldStockShards` moves the deltas back
+ * into `quantity` every few minutes, which also stamps `updatedAt` for the delta sync.
+ *
+ * Shards are summed whether or not the product is still flagged, so turning the flag off is safe
+ * at any time. The layout is mirrored in app/.../sync/StockShards.java; keep them in sync.
+ */
+
+const SHARD_COUNT = "stockShards";
+const SHARDS = "stockShards";
+const DELTA = "delta";
+const MAX_SHARDS = 20;
+
+function shardCount(product) {
+    const count = product && product.exists ? product.get(SHARD_COUNT) : 0;
+    return typeof count === "number" && count > 0 ? Math.min(Math.floor(count), MAX_SHARDS) : 0;
+}
+
+/** A random shard of a hot product; writers spread over them. */
+function shardRef(productRef, count) {
+    return productRef.collection(SHARDS).doc(String(Math.floor(Math.random() * count)));
+}
+
+/**
+ * Sum of the shard deltas of each product, by id. Read outside transactions: locking the shards
+ * would serialise the writers again.
+ */
+async function shardTotals(db, productIds) {
+    const totals = {};
+    await Promise.all(productIds.map(async (id) => {
+        const shards = await db.collection("products").doc(id).collection(SHARDS).get();
+        totals[id] = shards.docs.reduce((sum, shard) => sum + (Number(shard.get(DELTA)) || 0), 0);
+    }));
+    return totals;
+}
+
+async function foldProduct(db, productRef) {
+    await db.runTransaction(async (transaction) => {
+        const product = await transaction.get(productRef);
+        const shards = await transaction.get(productRef.collection(SHARDS));
+        let total = 0;
+        shards.docs.forEach((shard) => { total += Number(shard.get(DELTA)) || 0; });
+        if (total === 0) return;
+        if (!product.exists) {
+            // Deleted product: nothing to fold into
+            shards.docs.forEach((shard) => transaction.delete(shard.ref));
+            return;
+        }
+        shards.docs.forEach((shard) => {
+            const delta = Number(shard.get(DELTA)) || 0;
+            if (delta !== 0) {
+                transaction.update(shard.ref, { [DELTA]: admin.firestore.FieldValue.increment(-delta) });
+            }
+        });
+        transaction.update(productRef, {
+            quantity: admin.firestore.FieldValue.increment(total),
+            updatedAt: admin.firestore.FieldValue.serverTimestamp()
+        });
+    });
+}
+
+/**
+ * Scheduled: folds every non-zero shard back into its product's quantity.
+ */
+exports.foldStockShards = functions.pubsub
+    .schedule("every 5 minutes")
+    .onRun(async () => {
+        const db = admin.firestore();
+        const pending = await db.collectionGroup(SHARDS).where(DELTA, "!=", 0).get();
+        const products = new Map();
+        pending.docs.forEach((shard) => {
+            const productRef = shard.ref.parent.parent;
+            products.set(productRef.path, productRef);
+        });
+        for (const productRef of products.values()) {
+            try {
+                await foldProduct(db, productRef);
+            } catch (error) {
+                // The next run retries it
+                console.error(`Folding stock shards of ${productRef.path} failed`, error);
+            }
+        }
+        console.log(`Folded stock shards of ${products.size} products`);
+        return null;
+    });
+
+exports.shardCount = shardCount;
+exports.shardRef = shardRef;
+exports.shardTotals = shardTotals;
+exports.DELTA = DELTA;
@@ -0,0 +1,34 @@
+const functions = require("firebase-functions/v1");
+const admin = require("firebase-admin");
+
+/**
+ * Tombstones for the delta sync of master data.
+ *
+ * Clients pull products, customers and suppliers by `updatedAt`, which cannot see a deleted
+ * document. Every delete is recorded here as `tombstones/{collection}_{docId}`, stamped the same
+ * way, and the clients read the tombstones of a collection past their own watermark. A TTL policy
+ * on `expireAt` removes them; a client that has not synced for longer downloads the collection
+ * again. The layout is mirrored in shared/.../cache/SyncClient.kt; keep them in sync.
+ */
+
+const TOMBSTONES = "tombstones";
+const RETENTION_DAYS = 90;
+const DAY_MS = 24 * 60 * 60 * 1000;
+
+function tombstoneTrigger(collection) {
+    return functions.firestore
+        .document(`${collection}/{docId}`)
+        .onDelete((snapshot, context) => {
+            const docId = context.params.docId;
+            return admin.firestore().collection(TOMBSTONES).doc(`${collection}_${docId}`).set({
+                collection: collection,
+                documentId: docId,
+                updatedAt: admin.firestore.FieldValue.serverTimestamp(),
+                expireAt: admin.firestore.Timestamp.fromMillis(Date.now() + RETENTION_DAYS * DAY_MS)
+            });
+        });
+}
+
+exports.onProductDeletedTombstone = tombstoneTrigger("products");
+exports.onCustomerDeletedTombstone = tombstoneTrigger("customers");
+exports.onSupplierDeletedTombstone = tombstoneTrigger("suppliers");
@@ -4,6 +4,7 @@ plugins {
     alias(libs.plugins.kotlinMultiplatform)
     alias(libs.plugins.androidLibrary)
     alias(libs.plugins.kotlinSerialization)
+    alias(libs.plugins.sqldelight)
 }
 
 kotlin {
@@ -29,7 +30,21 @@ kotlin {
         androidMain.dependencies {
             // Firebase for Android platform implementations
             implementation(libs.firebase.firestore.ktx)
+            implementation(libs.firebase.functions)
             implementation(libs.kotlinx.coroutines.play.services)
+            implementation(libs.sqldelight.android.driver)
+        }
+        jvmMain.dependencies {
+            implementation(libs.sqldelight.sqlite.driver)
+        }
+    }
+}
+
+sqldelight {
+    databases {
+        // Local read model of the master-data collections, see MasterDataCache
+        create("InventoryCacheDatabase") {
+            packageName.set("com.bsoft.inventorymanager.cache")
         }
     }
 }
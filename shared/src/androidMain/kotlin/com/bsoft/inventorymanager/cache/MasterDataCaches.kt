@@ -0,0 +1,14 @@
+@file:JvmName("MasterDataCaches")
+
+package com.bsoft.inventorymanager.cache
+
+import android.content.Context
+import app.cash.sqldelight.driver.android.AndroidSqliteDriver
+
+/**
+ * Opens the app's [MasterDataCache], creating the database on first use.
+ */
+fun openMasterDataCache(context: Context): MasterDataCache =
+    MasterDataCache(
+        AndroidSqliteDriver(InventoryCacheDatabase.Schema, context.applicationContext, MasterDataCache.DATABASE_NAME)
+    )
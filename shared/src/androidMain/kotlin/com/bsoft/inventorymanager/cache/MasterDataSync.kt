@@ -0,0 +1,74 @@
+package com.bsoft.inventorymanager.cache
+
+import com.bsoft.inventorymanager.model.Customer
+import com.bsoft.inventorymanager.model.Product
+import com.bsoft.inventorymanager.model.Supplier
+import com.bsoft.inventorymanager.repository.CustomerRepositoryImpl
+import com.bsoft.inventorymanager.repository.ProductRepositoryImpl
+import com.bsoft.inventorymanager.repository.SupplierRepositoryImpl
+import com.google.firebase.firestore.FirebaseFirestore
+
+/**
+ * Keeps [MasterDataCache] current with Firestore through a [SyncClient].
+ *
+ * Blocking; call off the main thread.
+ */
+class MasterDataSync(
+    db: FirebaseFirestore,
+    private val cache: MasterDataCache
+) {
+
+    private val client = SyncClient(db)
+
+    private val products = object : SyncClient.Store<Product> {
+        override fun watermark(key: String) = cache.watermark(key)
+
+        override fun apply(changed: List<Product>, removedIds: List<String>, key: String, watermark: Long?, replaceAll: Boolean) =
+            cache.applyProducts(changed, removedIds, watermark, replaceAll, key)
+    }
+
+    private val customers = object : SyncClient.Store<Customer> {
+        override fun watermark(key: String) = cache.watermark(key)
+
+        override fun apply(changed: List<Customer>, removedIds: List<String>, key: String, watermark: Long?, replaceAll: Boolean) =
+            cache.applyCustomers(changed, removedIds, watermark, replaceAll, key)
+    }
+
+    private val suppliers = object : SyncClient.Store<Supplier> {
+        override fun watermark(key: String) = cache.watermark(key)
+
+        override fun apply(changed: List<Supplier>, removedIds: List<String>, key: String, watermark: Long?, replaceAll: Boolean) =
+            cache.applySuppliers(changed, removedIds, watermark, replaceAll, key)
+    }
+
+    /**
+     * Pulls what changed, then [read]s the cache; when offline, a cache that was synced before
+     * still answers.
+     */
+    fun <R> readProducts(read: (MasterDataCache) -> R): R = readAfter(MasterDataCache.PRODUCTS, ::syncProducts, read)
+
+    /** As [readProducts], for customers. */
+    fun <R> readCustomers(read: (MasterDataCache) -> R): R = readAfter(MasterDataCache.CUSTOMERS, ::syncCustomers, read)
+
+    /** As [readProducts], for suppliers. */
+    fun <R> readSuppliers(read: (MasterDataCache) -> R): R = readAfter(MasterDataCache.SUPPLIERS, ::syncSuppliers, read)
+
+    private fun <R> readAfter(collection: String, sync: () -> Any, read: (MasterDataCache) -> R): R {
+        try {
+            sync()
+        } catch (e: Exception) {
+            // Never synced: the cache holds nothing to answer with
+            if (cache.watermark(collection) == null) throw e
+        }
+        return read(cache)
+    }
+
+    fun syncProducts(): SyncClient.Changes<Product> =
+        client.pull(MasterDataCache.PRODUCTS, { data, id -> ProductRepositoryImpl.mapToProduct(data, id) }, products)
+
+    fun syncCustomers(): SyncClient.Changes<Customer> =
+        client.pull(MasterDataCache.CUSTOMERS, { data, id -> CustomerRepositoryImpl.mapToCustomer(data, id) }, customers)
+
+    fun syncSuppliers(): SyncClient.Changes<Supplier> =
+        client.pull(MasterDataCache.SUPPLIERS, { data, id -> SupplierRepositoryImpl.mapToSupplier(data, id) }, suppliers)
+}
@@ -0,0 +1,165 @@
+package com.bsoft.inventorymanager.cache
+
+import com.google.android.gms.tasks.Tasks
+import com.google.firebase.Timestamp
+import com.google.firebase.firestore.DocumentSnapshot
+import com.google.firebase.firestore.FieldPath
+import com.google.firebase.firestore.FirebaseFirestore
+import com.google.firebase.firestore.Query
+import com.google.firebase.firestore.Source
+import java.util.Date
+
+/**
+ * Delta sync protocol for collections whose every write stamps a server [UPDATED_AT].
+ *
+ * A collection that was never pulled is downloaded once, in pages by document id. After that only
+ * documents with `updatedAt` above the collection's watermark are fetched, in pages by `updatedAt`,
+ * and deletions are read from [TOMBSTONES], where a server trigger records every deleted document.
+ * Documents and tombstones have a watermark each. Every page goes to the [Store] together with the
+ * watermark it advances to, so an interrupted pull resumes where it stopped and a steady-state pull
+ * costs one read per change.
+ *
+ * Reads go to the server only: results from Firestore's offline cache could be partial and would
+ * otherwise be taken for a full download. Blocking; call off the main thread.
+ */
+class SyncClient(private val db: FirebaseFirestore) {
+
+    /**
+     * What one pull changed in the store. When [replaced], the pull was a full download that dropped
+     * every row first: [changed] is the whole collection and rows missing from it are gone without
+     * being listed in [removedIds], so copies of the store must be rebuilt rather than patched.
+     */
+    class Changes<T>(val changed: List<T>, val removedIds: List<String>, val replaced: Boolean = false) {
+        fun isEmpty(): Boolean = changed.isEmpty() && removedIds.isEmpty()
+    }
+
+    /** Local copy of one collection, e.g. a table of [MasterDataCache]. */
+    interface Store<T> {
+        /** @return the watermark saved under [key], or null if there is none. */
+        fun watermark(key: String): Long?
+
+        /**
+         * In one transaction: drops every row first if [replaceAll], upserts [changed], deletes
+         * [removedIds] and, when given, saves [watermark] under [key].
+         */
+        fun apply(changed: List<T>, removedIds: List<String>, key: String, watermark: Long?, replaceAll: Boolean)
+    }
+
+    // One pull at a time: two concurrent ones would race on the watermarks
+    @Synchronized
+    fun <T> pull(collection: String, map: (Map<String, Any>, String) -> T, store: Store<T>): Changes<T> {
+        val watermark = store.watermark(collection)
+        val deletions = store.watermark(deletionsKey(collection))
+        // Tombstones expire, so a store idle for longer may have missed deletions
+        val now = System.currentTimeMillis()
+        if (watermark == null || deletions == null || deletions < now - TOMBSTONE_RETENTION_MS) {
+            return download(collection, map, store)
+        }
+        // Deletions first: a document deleted and then recreated must end up present
+        val removed = pullDeletions(collection, deletions, store)
+        val changed = pullChanges(collection, watermark, map, store)
+        return Changes(changed, removed)
+    }
+
+    private fun <T> download(collection: String, map: (Map<String, Any>, String) -> T, store: Store<T>): Changes<T> {
+        val startedAt = System.currentTimeMillis()
+        val all = ArrayList<T>()
+        var highest = 0L
+        var last: DocumentSnapshot? = null
+        do {
+            var query = db.collection(collection)
+                .orderBy(FieldPath.documentId())
+                .limit(PAGE_SIZE)
+            last?.let { query = query.startAfter(it) }
+            val documents = Tasks.await(query.get(Source.SERVER)).documents
+
+            val page = documents.mapNotNull { doc -> doc.data?.let { map(it, doc.id) } }
+            store.apply(page, emptyList(), collection, null, last == null)
+            all.addAll(page)
+            documents.forEach { highest = maxOf(highest, updatedAt(it)) }
+            last = documents.lastOrNull()
+        } while (documents.size.toLong() == PAGE_SIZE)
+
+        // A document read on an early page may have changed or been deleted while later pages were
+        // read, at a time below the highest updatedAt seen; start the deltas before the download began.
+        val since = (startedAt - CLOCK_SKEW_MS).coerceAtLeast(0)
+        store.apply(emptyList(), emptyList(), deletionsKey(collection), since, false)
+        store.apply(emptyList(), emptyList(), collection, minOf(highest, since), false)
+        return Changes(all, emptyList(), replaced = true)
+    }
+
+    private fun <T> pullChanges(
+        collection: String,
+        watermark: Long,
+        map: (Map<String, Any>, String) -> T,
+        store: Store<T>
+    ): List<T> {
+        val changed = ArrayList<T>()
+        forEachPage(db.collection(collection), watermark) { documents ->
+            val page = documents.mapNotNull { doc -> doc.data?.let { map(it, doc.id) } }
+            store.apply(page, emptyList(), collection, documents.lastOrNull()?.let(::updatedAt), false)
+            changed.addAll(page)
+        }
+        return changed
+    }
+
+    private fun <T> pullDeletions(collection: String, watermark: Long, store: Store<T>): List<String> {
+        val startedAt = System.currentTimeMillis()
+        val key = deletionsKey(collection)
+        val removed = ArrayList<String>()
+        forEachPage(db.collection(TOMBSTONES).whereEqualTo(TOMBSTONE_COLLECTION, collection), watermark) { documents ->
+            val ids = documents.mapNotNull { it.getString(TOMBSTONE_DOCUMENT_ID) }
+            store.apply(emptyList(), ids, key, documents.lastOrNull()?.let(::updatedAt), false)
+            removed.addAll(ids)
+        }
+        // Every tombstone older than this was visible to the query. Advancing past it while nothing
+        // is deleted keeps the watermark within the retention window.
+        val drained = (startedAt - CLOCK_SKEW_MS).coerceAtLeast(0)
+        if (drained > (store.watermark(key) ?: 0L)) {
+            store.apply(emptyList(), emptyList(), key, drained, false)
+        }
+        return removed
+    }
+
+    private fun forEachPage(base: Query, watermark: Long, onPage: (List<DocumentSnapshot>) -> Unit) {
+        var last: DocumentSnapshot? = null
+        do {
+            // Millisecond watermarks are floored, so documents at the watermark are fetched again
+            // rather than missed
+            var query = base
+                .whereGreaterThan(UPDATED_AT, Timestamp(Date(watermark)))
+                .orderBy(UPDATED_AT, Query.Direction.ASCENDING)
+                .orderBy(FieldPath.documentId())
+                .limit(PAGE_SIZE)
+            last?.let { query = query.startAfter(it) }
+            val documents = Tasks.await(query.get(Source.SERVER)).documents
+            onPage(documents)
+            last = documents.lastOrNull()
+        } while (documents.size.toLong() == PAGE_SIZE)
+    }
+
+    private fun updatedAt(document: DocumentSnapshot): Long =
+        document.getTimestamp(UPDATED_AT)?.toDate()?.time ?: 0L
+
+    companion object {
+        /** Server timestamp of the last write, set by every write to a synced document. */
+        const val UPDATED_AT = "updatedAt"
+
+        /**
+         * One document per deleted id, `{collection}_{documentId}`, written by the server's delete
+         * triggers and removed by a TTL policy on `expireAt`.
+         */
+        const val TOMBSTONES = "tombstones"
+        const val TOMBSTONE_COLLECTION = "collection"
+        const val TOMBSTONE_DOCUMENT_ID = "documentId"
+
+        /** Matches the `expireAt` the server gives tombstones. */
+        const val TOMBSTONE_RETENTION_MS = 90L * 24 * 60 * 60_000L
+
+        private const val PAGE_SIZE = 500L
+        private const val CLOCK_SKEW_MS = 5 * 60_000L
+
+        /** Key the watermark of [collection]'s tombstones is saved under. */
+        fun deletionsKey(collection: String): String = "$collection/$TOMBSTONES"
+    }
+}
@@ -1,10 +1,21 @@
 package com.bsoft.inventorymanager.repository
 
+import com.bsoft.inventorymanager.cache.MasterDataCache
+import com.bsoft.inventorymanager.cache.MasterDataSync
+import com.bsoft.inventorymanager.cache.SyncClient
 import com.bsoft.inventorymanager.model.Customer
+import com.google.firebase.firestore.FieldValue
 import com.google.firebase.firestore.FirebaseFirestore
+import com.google.firebase.firestore.SetOptions
+import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.tasks.await
+import kotlinx.coroutines.withContext
 
-class CustomerRepositoryImpl(private val db: FirebaseFirestore) : CustomerRepository {
+class CustomerRepositoryImpl(
+    private val db: FirebaseFirestore,
+    private val cache: MasterDataCache,
+    private val sync: MasterDataSync
+) : CustomerRepository {
 
     override suspend fun getCustomer(customerId: String): Result<Customer> {
         return try {
@@ -20,17 +31,10 @@ class CustomerRepositoryImpl(private val db: FirebaseFirestore) : CustomerReposi
         }
     }
 
-    override suspend fun getCustomers(): Result<List<Customer>> {
-        return try {
-            val snapshot = db.collection("customers")
-                .whereEqualTo("isActive", true)
-                .get()
-                .await()
-            
-            val customers = snapshot.documents.mapNotNull { doc ->
-                doc.data?.let { mapToCustomer(it, doc.id) }
-            }
-            Result.success(customers)
+    override suspend fun getCustomers(): Result<List<Customer>> = withContext(Dispatchers.IO) {
+        try {
+            // Only the customers changed since the last sync are downloaded; the list comes from the cache
+            Result.success(sync.readCustomers { it.activeCustomers() })
         } catch (e: Exception) {
             Result.failure(e)
         }
@@ -45,7 +49,8 @@ class CustomerRepositoryImpl(private val db: FirebaseFirestore) : CustomerReposi
             }
             
             val customerMap = mapFromCustomer(customer.copy(documentId = customerRef.id))
-            customerRef.set(customerMap).await()
+            customerRef.set(customerMap, SetOptions.merge()).await()
+            cache.applyCustomers(listOf(customer.copy(documentId = customerRef.id)))
             
             Result.success(customerRef.id)
         } catch (e: Exception) {
@@ -59,7 +64,8 @@ class CustomerRepositoryImpl(private val db: FirebaseFirestore) : CustomerReposi
                 return Result.failure(Exception("Customer ID is required for update"))
             }
             val customerMap = mapFromCustomer(customer)
-            db.collection("customers").document(customer.documentId).set(customerMap).await()
+            db.collection("customers").document(customer.documentId).set(customerMap, SetOptions.merge()).await()
+            cache.applyCustomers(listOf(customer))
             Result.success(Unit)
         } catch (e: Exception) {
             Result.failure(e)
@@ -69,45 +75,19 @@ class CustomerRepositoryImpl(private val db: FirebaseFirestore) : CustomerReposi
     override suspend fun deleteCustomer(customerId: String): Result<Unit> {
         return try {
              // Soft delete by setting isActive to false
-            db.collection("customers").document(customerId).update("isActive", false).await()
+            db.collection("customers").document(customerId).update(
+                "isActive", false,
+                SyncClient.UPDATED_AT, FieldValue.serverTimestamp()
+            ).await()
+            cache.customer(customerId)?.let { cache.applyCustomers(listOf(it.copy(isActive = false))) }
             Result.success(Unit)
         } catch (e: Exception) {
             Result.failure(e)
         }
     }
 
-    private fun mapToCustomer(data: Map<String, Any>, id: String): Customer {
-        return Customer(
-            documentId = id,
-            name = data["name"] as? String ?: "",
-            contactNumber = data["contactNumber"] as? String ?: "",
-            address = data["address"] as? String ?: "",
-            age = (data["age"] as? Number)?.toInt() ?: 0,
-            photo = data["photo"] as? String,
-            isActive = data["isActive"] as? Boolean ?: true,
-            creationDate = (data["creationDate"] as? com.google.firebase.Timestamp)?.toDate()?.time
-                ?: (data["creationDate"] as? Number)?.toLong() ?: 0L,
-            creditLimit = (data["creditLimit"] as? Number)?.toDouble() ?: 0.0,
-            outstandingBalance = (data["outstandingBalance"] as? Number)?.toDouble() ?: 0.0,
-            customerType = data["customerType"] as? String,
-            customerTier = data["customerTier"] as? String,
-            lastPurchaseDate = (data["lastPurchaseDate"] as? com.google.firebase.Timestamp)?.toDate()?.time
-                ?: (data["lastPurchaseDate"] as? Number)?.toLong() ?: 0L,
-            totalPurchaseAmount = (data["totalPurchaseAmount"] as? Number)?.toDouble() ?: 0.0,
-            purchaseFrequency = (data["purchaseFrequency"] as? Number)?.toInt() ?: 0,
-            paymentTerms = data["paymentTerms"] as? String,
-            discountRate = (data["discountRate"] as? Number)?.toDouble() ?: 0.0,
-            rating = (data["rating"] as? Number)?.toDouble() ?: 0.0,
-            leadTime = (data["leadTime"] as? Number)?.toInt() ?: 0,
-            performanceScore = (data["performanceScore"] as? Number)?.toDouble() ?: 0.0,
-            preferredCustomer = data["preferredCustomer"] as? Boolean ?: false,
-            contractDetails = data["contractDetails"] as? String,
-            productsPurchased = data["productsPurchased"] as? String,
-            bankAccount = data["bankAccount"] as? String,
-            taxId = data["taxId"] as? String
-        )
-    }
-
+    // lastPurchaseDate, totalPurchaseAmount and purchaseFrequency are kept by the server from the
+    // customer's sales (functions/customerAggregates.js); saves merge so they are left alone
     private fun mapFromCustomer(customer: Customer): Map<String, Any?> {
         return mapOf(
             "documentId" to customer.documentId,
@@ -122,9 +102,6 @@ class CustomerRepositoryImpl(private val db: FirebaseFirestore) : CustomerReposi
             "outstandingBalance" to customer.outstandingBalance,
             "customerType" to customer.customerType,
             "customerTier" to customer.customerTier,
-            "lastPurchaseDate" to customer.lastPurchaseDate,
-            "totalPurchaseAmount" to customer.totalPurchaseAmount,
-            "purchaseFrequency" to customer.purchaseFrequency,
             "paymentTerms" to customer.paymentTerms,
             "discountRate" to customer.discountRate,
             "rating" to customer.rating,
@@ -134,7 +111,42 @@ class CustomerRepositoryImpl(private val db: FirebaseFirestore) : CustomerReposi
             "contractDetails" to customer.contractDetails,
             "productsPurchased" to customer.productsPurchased,
             "bankAccount" to customer.bankAccount,
-            "taxId" to customer.taxId
+            "taxId" to customer.taxId,
+            SyncClient.UPDATED_AT to FieldValue.serverTimestamp()
         )
     }
+
+    companion object {
+        internal fun mapToCustomer(data: Map<String, Any>, id: String): Customer {
+            return Customer(
+                documentId = id,
+                name = data["name"] as? String ?: "",
+                contactNumber = data["contactNumber"] as? String ?: "",
+                address = data["address"] as? String ?: "",
+                age = (data["age"] as? Number)?.toInt() ?: 0,
+                photo = data["photo"] as? String,
+                isActive = data["isActive"] as? Boolean ?: true,
+                creationDate = (data["creationDate"] as? com.google.firebase.Timestamp)?.toDate()?.time
+                    ?: (data["creationDate"] as? Number)?.toLong() ?: 0L,
+                creditLimit = (data["creditLimit"] as? Number)?.toDouble() ?: 0.0,
+                outstandingBalance = (data["outstandingBalance"] as? Number)?.toDouble() ?: 0.0,
+                customerType = data["customerType"] as? String,
+                customerTier = data["customerTier"] as? String,
+                lastPurchaseDate = (data["lastPurchaseDate"] as? com.google.firebase.Timestamp)?.toDate()?.time
+                    ?: (data["lastPurchaseDate"] as? Number)?.toLong() ?: 0L,
+                totalPurchaseAmount = (data["totalPurchaseAmount"] as? Number)?.toDouble() ?: 0.0,
+                purchaseFrequency = (data["purchaseFrequency"] as? Number)?.toInt() ?: 0,
+                paymentTerms = data["paymentTerms"] as? String,
+                discountRate = (data["discountRate"] as? Number)?.toDouble() ?: 0.0,
+                rating = (data["rating"] as? Number)?.toDouble() ?: 0.0,
+                leadTime = (data["leadTime"] as? Number)?.toInt() ?: 0,
+                performanceScore = (data["performanceScore"] as? Number)?.toDouble() ?: 0.0,
+                preferredCustomer = data["preferredCustomer"] as? Boolean ?: false,
+                contractDetails = data["contractDetails"] as? String,
+                productsPurchased = data["productsPurchased"] as? String,
+                bankAccount = data["bankAccount"] as? String,
+                taxId = data["taxId"] as? String
+            )
+        }
+    }
 }
@@ -1,18 +1,27 @@
 package com.bsoft.inventorymanager.repository
 
+import com.bsoft.inventorymanager.cache.MasterDataCache
+import com.bsoft.inventorymanager.cache.MasterDataSync
+import com.bsoft.inventorymanager.cache.SyncClient
 import com.bsoft.inventorymanager.model.Product
-import com.google.firebase.firestore.DocumentSnapshot
+import com.bsoft.inventorymanager.search.ProductSearch
+import com.google.firebase.firestore.FieldPath
+import com.google.firebase.firestore.FieldValue
 import com.google.firebase.firestore.FirebaseFirestore
 import com.google.firebase.firestore.Query
+import com.google.firebase.firestore.SetOptions
+import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.tasks.await
+import kotlinx.coroutines.withContext
 
-class ProductRepositoryImpl(private val db: FirebaseFirestore) : ProductRepository {
-
-    // Cache for cursor-based pagination
-    private var lastVisibleSnapshot: DocumentSnapshot? = null
+class ProductRepositoryImpl(
+    private val db: FirebaseFirestore,
+    private val cache: MasterDataCache,
+    private val sync: MasterDataSync
+) : ProductRepository {
 
     override suspend fun fetchPaginatedProducts(
-        lastDocumentId: String?,
+        pageToken: String?,
         brand: String?,
         category: String?,
         searchQuery: String?,
@@ -20,8 +29,6 @@ class ProductRepositoryImpl(private val db: FirebaseFirestore) : ProductReposito
     ): Result<ProductPage> {
         return try {
             var query: Query = db.collection("products")
-                .orderBy("name")
-                .limit(pageSize.toLong() + 1) // Fetch one extra to check hasMore
 
             // Apply filters
             if (!brand.isNullOrEmpty()) {
@@ -30,17 +37,21 @@ class ProductRepositoryImpl(private val db: FirebaseFirestore) : ProductReposito
             if (!category.isNullOrEmpty()) {
                 query = query.whereEqualTo("category", category)
             }
+            // Server-maintained index: only matching products are read
+            val searchToken = ProductSearch.queryToken(searchQuery)
+            if (searchToken != null) {
+                query = query.whereArrayContains(ProductSearch.FIELD, searchToken)
+            }
+
+            // Document id breaks ties between equal names, so a cursor is always exact
+            query = query.orderBy("name")
+                .orderBy(FieldPath.documentId())
+                .limit(pageSize.toLong() + 1) // Fetch one extra to check hasMore
 
-            // Handle cursor-based pagination
-            if (lastDocumentId != null && lastVisibleSnapshot != null && 
-                lastVisibleSnapshot?.id == lastDocumentId) {
-                query = query.startAfter(lastVisibleSnapshot!!)
-            } else if (lastDocumentId != null) {
-                // Fetch the document to use as cursor
-                val cursorDoc = db.collection("products").document(lastDocumentId).get().await()
-                if (cursorDoc.exists()) {
-                    query = query.startAfter(cursorDoc)
-                }
+            val filterKey = PageToken.filterKeyOf("brand" to brand, "category" to category, "q" to searchToken)
+            if (pageToken != null) {
+                val token = PageToken.decode(pageToken).requireCompatible(ORDER_BY, filterKey)
+                query = query.startAfter(*token.cursorValues().toTypedArray())
             }
 
             val querySnapshot = query.get().await()
@@ -50,47 +61,38 @@ class ProductRepositoryImpl(private val db: FirebaseFirestore) : ProductReposito
             val hasMore = documents.size > pageSize
             val productsToReturn = if (hasMore) documents.dropLast(1) else documents
 
-            // Cache the last visible for next page
-            if (productsToReturn.isNotEmpty()) {
-                lastVisibleSnapshot = productsToReturn.last()
-            }
+            val nextPageToken = if (hasMore) {
+                val last = productsToReturn.last()
+                PageToken(
+                    orderBy = ORDER_BY,
+                    values = ORDER_BY.map { last.getString(it) },
+                    documentId = last.id,
+                    filterKey = filterKey
+                ).encode()
+            } else null
 
             val products = productsToReturn.mapNotNull { doc ->
                 doc.data?.let { mapToProduct(it, doc.id) }
             }.filter { product ->
-                // Client-side search filter if searchQuery provided
-                if (searchQuery.isNullOrEmpty()) true
-                else product.name.contains(searchQuery, ignoreCase = true) ||
-                     (product.productCode?.contains(searchQuery, ignoreCase = true) == true)
+                // The index query covers the longest word, check the others of multi-word queries
+                searchToken == null ||
+                    ProductSearch.matches(searchQuery, product.name, product.productCode, product.barcode)
             }
 
             Result.success(ProductPage(
                 products = products,
                 hasMore = hasMore,
-                lastDocumentId = lastVisibleSnapshot?.id
+                nextPageToken = nextPageToken
             ))
         } catch (e: Exception) {
             Result.failure(e)
         }
     }
 
-    override suspend fun fetchUniqueBrandsAndCategories(): Result<BrandsAndCategories> {
-        return try {
-            val snapshot = db.collection("products").get().await()
-            
-            val brands = snapshot.documents
-                .mapNotNull { it.getString("brand") }
-                .filter { it.isNotEmpty() }
-                .distinct()
-                .sorted()
-            
-            val categories = snapshot.documents
-                .mapNotNull { it.getString("category") }
-                .filter { it.isNotEmpty() }
-                .distinct()
-                .sorted()
-
-            Result.success(BrandsAndCategories(brands, categories))
+    override suspend fun fetchUniqueBrandsAndCategories(): Result<BrandsAndCategories> = withContext(Dispatchers.IO) {
+        try {
+            // Only the products changed since the last sync are downloaded; the lists come from the cache
+            Result.success(sync.readProducts { BrandsAndCategories(it.productBrands(), it.productCategories()) })
         } catch (e: Exception) {
             Result.failure(e)
         }
@@ -105,7 +107,9 @@ class ProductRepositoryImpl(private val db: FirebaseFirestore) : ProductReposito
             }
             
             val productMap = mapFromProduct(product.copy(documentId = productRef.id))
-            productRef.set(productMap).await()
+            // Merged: fields the server keeps, e.g. stockShards, are not in the map
+            productRef.set(productMap, SetOptions.merge()).await()
+            cache.applyProducts(listOf(product.copy(documentId = productRef.id)))
             
             Result.success(Unit)
         } catch (e: Exception) {
@@ -118,7 +122,9 @@ class ProductRepositoryImpl(private val db: FirebaseFirestore) : ProductReposito
             if (product.documentId.isEmpty()) {
                 return Result.failure(Exception("Product ID is required for deletion"))
             }
+            // The server records a tombstone, so other devices drop it on their next sync
             db.collection("products").document(product.documentId).delete().await()
+            cache.applyProducts(emptyList(), listOf(product.documentId))
             Result.success(Unit)
         } catch (e: Exception) {
             Result.failure(e)
@@ -139,35 +145,8 @@ class ProductRepositoryImpl(private val db: FirebaseFirestore) : ProductReposito
         }
     }
 
-    // Reset pagination cache
-    fun resetPagination() {
-        lastVisibleSnapshot = null
-    }
-
     // --- Mappers ---
 
-    private fun mapToProduct(data: Map<String, Any>, id: String): Product {
-        return Product(
-            documentId = id,
-            name = data["name"] as? String ?: "",
-            imageUrl = data["imageUrl"] as? String,
-            brand = data["brand"] as? String,
-            category = data["category"] as? String,
-            productCode = data["productCode"] as? String,
-            barcode = data["barcode"] as? String,
-            quantity = (data["quantity"] as? Number)?.toInt() ?: 0,
-            minStockLevel = (data["minStockLevel"] as? Number)?.toInt() ?: 0,
-            unit = data["unit"] as? String,
-            costPrice = (data["costPrice"] as? Number)?.toDouble() ?: 0.0,
-            purchasePrice = (data["purchasePrice"] as? Number)?.toDouble() ?: 0.0,
-            mrp = (data["mrp"] as? Number)?.toDouble() ?: 0.0,
-            wholesalePrice = (data["wholesalePrice"] as? Number)?.toDouble() ?: 0.0,
-            dealerPrice = (data["dealerPrice"] as? Number)?.toDouble() ?: 0.0,
-            supplierId = data["supplierId"] as? String,
-            supplierName = data["supplierName"] as? String
-        )
-    }
-
     private fun mapFromProduct(product: Product): Map<String, Any?> {
         return mapOf(
             "documentId" to product.documentId,
@@ -186,7 +165,39 @@ class ProductRepositoryImpl(private val db: FirebaseFirestore) : ProductReposito
             "wholesalePrice" to product.wholesalePrice,
             "dealerPrice" to product.dealerPrice,
             "supplierId" to product.supplierId,
-            "supplierName" to product.supplierName
+            "supplierName" to product.supplierName,
+            // Written with the product so it is searchable at once; the server trigger keeps it in sync
+            ProductSearch.FIELD to ProductSearch.searchTokens(product.name, product.productCode, product.barcode),
+            ProductSearch.VERSION_FIELD to ProductSearch.INDEX_VERSION,
+            SyncClient.UPDATED_AT to FieldValue.serverTimestamp()
         )
     }
+
+    companion object {
+        internal fun mapToProduct(data: Map<String, Any>, id: String): Product {
+            return Product(
+                documentId = id,
+                name = data["name"] as? String ?: "",
+                imageUrl = data["imageUrl"] as? String,
+                brand = data["brand"] as? String,
+                category = data["category"] as? String,
+                productCode = data["productCode"] as? String,
+                barcode = data["barcode"] as? String,
+                quantity = (data["quantity"] as? Number)?.toInt() ?: 0,
+                minStockLevel = (data["minStockLevel"] as? Number)?.toInt() ?: 0,
+                unit = data["unit"] as? String,
+                costPrice = (data["costPrice"] as? Number)?.toDouble() ?: 0.0,
+                purchasePrice = (data["purchasePrice"] as? Number)?.toDouble() ?: 0.0,
+                mrp = (data["mrp"] as? Number)?.toDouble() ?: 0.0,
+                wholesalePrice = (data["wholesalePrice"] as? Number)?.toDouble() ?: 0.0,
+                dealerPrice = (data["dealerPrice"] as? Number)?.toDouble() ?: 0.0,
+                supplierId = data["supplierId"] as? String,
+                supplierName = data["supplierName"] as? String,
+                expiryDate = (data["expiryDate"] as? com.google.firebase.Timestamp)?.toDate()?.time,
+                batchNumber = data["batchNumber"] as? String
+            )
+        }
+
+        private val ORDER_BY = listOf("name")
+    }
 }
@@ -5,12 +5,17 @@ import com.bsoft.inventorymanager.model.Product
 import com.bsoft.inventorymanager.model.Sale
 import com.bsoft.inventorymanager.model.SaleItem
 import com.google.firebase.Timestamp
-import com.google.firebase.firestore.FieldValue
 import com.google.firebase.firestore.FirebaseFirestore
+import com.google.firebase.functions.FirebaseFunctions
+import com.google.firebase.functions.FirebaseFunctionsException
 import kotlinx.coroutines.tasks.await
 import java.util.Date
 
-class SaleRepositoryImpl(private val db: FirebaseFirestore) : SaleRepository {
+class SaleRepositoryImpl(
+    private val db: FirebaseFirestore,
+    private val functions: FirebaseFunctions,
+    private val customers: CustomerRepository
+) : SaleRepository {
 
     override suspend fun getSale(saleId: String): Result<Sale> {
         return try {
@@ -27,50 +32,46 @@ class SaleRepositoryImpl(private val db: FirebaseFirestore) : SaleRepository {
         }
     }
 
+    // Stock is checked and taken by the server's commitSale, in the transaction that writes the sale.
+    // The id is chosen here, so retrying a call whose response was lost does not sell twice.
     override suspend fun saveSale(sale: Sale, items: List<SaleItem>): Result<String> {
-        return try {
-            val batch = db.batch()
-            val saleRef = if (sale.documentId.isNotEmpty()) {
-                db.collection("sales").document(sale.documentId)
-            } else {
-                db.collection("sales").document()
-            }
-            
-            val finalSale = sale.copy(documentId = saleRef.id, items = items)
-            val saleMap = mapFromSale(finalSale)
-            
-            batch.set(saleRef, saleMap)
-
-            // Update stock (decrease for sales)
-            for (item in items) {
-                if (item.productId.isNotEmpty()) {
-                    val productRef = db.collection("products").document(item.productId)
-                    batch.update(productRef, "quantity", FieldValue.increment(-item.quantity.toLong()))
-                }
-            }
-            
-            batch.commit().await()
-            Result.success(saleRef.id)
-        } catch (e: Exception) {
-            Result.failure(e)
-        }
+        val saleId = sale.documentId.ifEmpty { db.collection("sales").document().id }
+        return call(COMMIT_SALE, sale.copy(documentId = saleId), items).map { saleId }
     }
 
-    override suspend fun updateSale(sale: Sale, items: List<SaleItem>): Result<Unit> {
+    // editSale diffs the edit against the stored sale and applies only the net stock and customer
+    // changes, in one transaction
+    override suspend fun updateSale(sale: Sale, items: List<SaleItem>): Result<Unit> =
+        call(EDIT_SALE, sale, items).map { }
+
+    private suspend fun call(function: String, sale: Sale, items: List<SaleItem>): Result<Unit> {
         return try {
-            val batch = db.batch()
-            val saleRef = db.collection("sales").document(sale.documentId)
-            val saleMap = mapFromSale(sale.copy(items = items))
-            
-            batch.set(saleRef, saleMap)
-            
-            batch.commit().await()
+            val fields = mapFromSale(sale.copy(items = items)).toMutableMap()
+            // Callables carry JSON; the server turns the millis back into a Timestamp
+            fields["saleDate"] = sale.saleDate
+            fields.remove("productIds")
+
+            functions.getHttpsCallable(function)
+                .call(mapOf("saleId" to sale.documentId, "sale" to fields))
+                .await()
             Result.success(Unit)
+        } catch (e: FirebaseFunctionsException) {
+            Result.failure(shortageOf(e) ?: e)
         } catch (e: Exception) {
             Result.failure(e)
         }
     }
 
+    private fun shortageOf(e: FirebaseFunctionsException): Exception? {
+        if (e.code != FirebaseFunctionsException.Code.FAILED_PRECONDITION) return null
+        val shortages = (e.details as? Map<*, *>)?.get("shortages") as? List<*> ?: return null
+        val lines = shortages.filterIsInstance<Map<*, *>>().map {
+            val name = (it["productName"] as? String)?.ifEmpty { null } ?: it["productId"]
+            "$name: ${it["available"]} left, ${it["requested"]} requested"
+        }
+        return Exception(lines.joinToString("\n", prefix = "Not enough stock:\n"), e)
+    }
+
     override suspend fun getProductByBarcode(barcode: String): Result<Product?> {
         return try {
             val query = db.collection("products")
@@ -105,20 +106,12 @@ class SaleRepositoryImpl(private val db: FirebaseFirestore) : SaleRepository {
         }
     }
 
-    override suspend fun getCustomers(): Result<List<Customer>> {
-        return try {
-            val query = db.collection("customers")
-                .whereEqualTo("isActive", true)
-                .get()
-                .await()
-            
-            val customers = query.map { doc ->
-                mapToCustomer(doc.data, doc.id)
-            }
-            Result.success(customers)
-        } catch (e: Exception) {
-            Result.failure(e)
-        }
+    // Served from the delta-synced customer cache
+    override suspend fun getCustomers(): Result<List<Customer>> = customers.getCustomers()
+
+    private companion object {
+        const val COMMIT_SALE = "commitSale"
+        const val EDIT_SALE = "editSale"
     }
 
     // --- Mappers ---
@@ -146,7 +139,10 @@ class SaleRepositoryImpl(private val db: FirebaseFirestore) : SaleRepository {
             items = (data["items"] as? List<Map<String, Any>>)?.map { mapToSaleItem(it) } ?: emptyList(),
             productIds = (data["productIds"] as? List<String>) ?: emptyList(),
             userId = data["userId"] as? String ?: "",
-            status = data["status"] as? String ?: ""
+            status = data["status"] as? String ?: "",
+            subtotal = (data["subtotal"] as? Number)?.toDouble() ?: 0.0,
+            totalCost = (data["totalCost"] as? Number)?.toDouble(),
+            totalProfit = (data["totalProfit"] as? Number)?.toDouble()
         )
     }
     
@@ -173,7 +169,10 @@ class SaleRepositoryImpl(private val db: FirebaseFirestore) : SaleRepository {
             "items" to sale.items.map { mapFromSaleItem(it) },
             "productIds" to sale.productIds,
             "userId" to sale.userId,
-            "status" to sale.status
+            "status" to sale.status,
+            "subtotal" to sale.subtotal,
+            "totalCost" to sale.totalCost,
+            "totalProfit" to sale.totalProfit
         )
     }
 
@@ -184,7 +183,10 @@ class SaleRepositoryImpl(private val db: FirebaseFirestore) : SaleRepository {
             quantity = (data["quantity"] as? Number)?.toInt() ?: 0,
             pricePerItem = (data["pricePerItem"] as? Number)?.toDouble() ?: 0.0,
             totalPrice = (data["totalPrice"] as? Number)?.toDouble() ?: 0.0,
-            returnedQuantity = (data["returnedQuantity"] as? Number)?.toInt() ?: 0
+            returnedQuantity = (data["returnedQuantity"] as? Number)?.toInt() ?: 0,
+            category = data["category"] as? String,
+            brand = data["brand"] as? String,
+            costPrice = (data["costPrice"] as? Number)?.toDouble() ?: 0.0
         )
     }
 
@@ -195,7 +197,10 @@ class SaleRepositoryImpl(private val db: FirebaseFirestore) : SaleRepository {
             "quantity" to item.quantity,
             "pricePerItem" to item.pricePerItem,
             "totalPrice" to item.totalPrice,
-            "returnedQuantity" to item.returnedQuantity
+            "returnedQuantity" to item.returnedQuantity,
+            "category" to item.category,
+            "brand" to item.brand,
+            "costPrice" to item.costPrice
         )
     }
     
@@ -208,13 +213,4 @@ class SaleRepositoryImpl(private val db: FirebaseFirestore) : SaleRepository {
             productCode = data["productCode"] as? String ?: ""
         )
     }
-
-    private fun mapToCustomer(data: Map<String, Any>, id: String): Customer {
-        return Customer(
-            documentId = id,
-            name = data["name"] as? String ?: "",
-            contactNumber = data["contactNumber"] as? String ?: "",
-            address = data["address"] as? String ?: ""
-        )
-    }
 }
@@ -1,10 +1,20 @@
 package com.bsoft.inventorymanager.repository
 
+import com.bsoft.inventorymanager.cache.MasterDataCache
+import com.bsoft.inventorymanager.cache.MasterDataSync
+import com.bsoft.inventorymanager.cache.SyncClient
 import com.bsoft.inventorymanager.model.Supplier
+import com.google.firebase.firestore.FieldValue
 import com.google.firebase.firestore.FirebaseFirestore
+import kotlinx.coroutines.Dispatchers
 import kotlinx.coroutines.tasks.await
+import kotlinx.coroutines.withContext
 
-class SupplierRepositoryImpl(private val db: FirebaseFirestore) : SupplierRepository {
+class SupplierRepositoryImpl(
+    private val db: FirebaseFirestore,
+    private val cache: MasterDataCache,
+    private val sync: MasterDataSync
+) : SupplierRepository {
 
     override suspend fun getSupplier(supplierId: String): Result<Supplier> {
         return try {
@@ -20,17 +30,10 @@ class SupplierRepositoryImpl(private val db: FirebaseFirestore) : SupplierReposi
         }
     }
 
-    override suspend fun getSuppliers(): Result<List<Supplier>> {
-        return try {
-            val snapshot = db.collection("suppliers")
-                .whereEqualTo("isActive", true)
-                .get()
-                .await()
-            
-            val suppliers = snapshot.documents.mapNotNull { doc ->
-                doc.data?.let { mapToSupplier(it, doc.id) }
-            }
-            Result.success(suppliers)
+    override suspend fun getSuppliers(): Result<List<Supplier>> = withContext(Dispatchers.IO) {
+        try {
+            // Only the suppliers changed since the last sync are downloaded; the list comes from the cache
+            Result.success(sync.readSuppliers { it.activeSuppliers() })
         } catch (e: Exception) {
             Result.failure(e)
         }
@@ -46,6 +49,7 @@ class SupplierRepositoryImpl(private val db: FirebaseFirestore) : SupplierReposi
             
             val supplierMap = mapFromSupplier(supplier.copy(documentId = supplierRef.id))
             supplierRef.set(supplierMap).await()
+            cache.applySuppliers(listOf(supplier.copy(documentId = supplierRef.id)))
             
             Result.success(supplierRef.id)
         } catch (e: Exception) {
@@ -60,6 +64,7 @@ class SupplierRepositoryImpl(private val db: FirebaseFirestore) : SupplierReposi
             }
             val supplierMap = mapFromSupplier(supplier)
             db.collection("suppliers").document(supplier.documentId).set(supplierMap).await()
+            cache.applySuppliers(listOf(supplier))
             Result.success(Unit)
         } catch (e: Exception) {
             Result.failure(e)
@@ -69,43 +74,17 @@ class SupplierRepositoryImpl(private val db: FirebaseFirestore) : SupplierReposi
     override suspend fun deleteSupplier(supplierId: String): Result<Unit> {
         return try {
              // Soft delete by setting isActive to false
-            db.collection("suppliers").document(supplierId).update("isActive", false).await()
+            db.collection("suppliers").document(supplierId).update(
+                "isActive", false,
+                SyncClient.UPDATED_AT, FieldValue.serverTimestamp()
+            ).await()
+            cache.supplier(supplierId)?.let { cache.applySuppliers(listOf(it.copy(isActive = false))) }
             Result.success(Unit)
         } catch (e: Exception) {
             Result.failure(e)
         }
     }
 
-    private fun mapToSupplier(data: Map<String, Any>, id: String): Supplier {
-        return Supplier(
-            documentId = id,
-            name = data["name"] as? String ?: "",
-            contactNumber = data["contactNumber"] as? String ?: "",
-            address = data["address"] as? String ?: "",
-            age = (data["age"] as? Number)?.toInt() ?: 0,
-            photo = data["photo"] as? String,
-            isActive = data["isActive"] as? Boolean ?: true,
-            rating = (data["rating"] as? Number)?.toDouble() ?: 0.0,
-            paymentTerms = data["paymentTerms"] as? String,
-            leadTime = (data["leadTime"] as? Number)?.toInt() ?: 0,
-            performanceScore = (data["performanceScore"] as? Number)?.toDouble() ?: 0.0,
-            preferredSupplier = data["preferredSupplier"] as? Boolean ?: false,
-            outstandingPayment = (data["outstandingPayment"] as? Number)?.toDouble() ?: 0.0,
-            contractDetails = data["contractDetails"] as? String,
-            productsSupplied = data["productsSupplied"] as? String,
-            lastDeliveryDate = (data["lastDeliveryDate"] as? com.google.firebase.Timestamp)?.toDate()?.time
-                ?: (data["lastDeliveryDate"] as? Number)?.toLong() ?: 0L,
-            bankAccount = data["bankAccount"] as? String,
-            taxId = data["taxId"] as? String,
-            creationDate = (data["creationDate"] as? com.google.firebase.Timestamp)?.toDate()?.time
-                ?: (data["creationDate"] as? Number)?.toLong() ?: 0L,
-            totalSupplyAmount = (data["totalSupplyAmount"] as? Number)?.toDouble() ?: 0.0,
-            supplyFrequency = (data["supplyFrequency"] as? Number)?.toInt() ?: 0,
-            supplierType = data["supplierType"] as? String,
-            supplierTier = data["supplierTier"] as? String
-        )
-    }
-
     private fun mapFromSupplier(supplier: Supplier): Map<String, Any?> {
         return mapOf(
             "documentId" to supplier.documentId,
@@ -130,7 +109,40 @@ class SupplierRepositoryImpl(private val db: FirebaseFirestore) : SupplierReposi
             "totalSupplyAmount" to supplier.totalSupplyAmount,
             "supplyFrequency" to supplier.supplyFrequency,
             "supplierType" to supplier.supplierType,
-            "supplierTier" to supplier.supplierTier
+            "supplierTier" to supplier.supplierTier,
+            SyncClient.UPDATED_AT to FieldValue.serverTimestamp()
         )
     }
+
+    companion object {
+        internal fun mapToSupplier(data: Map<String, Any>, id: String): Supplier {
+            return Supplier(
+                documentId = id,
+                name = data["name"] as? String ?: "",
+                contactNumber = data["contactNumber"] as? String ?: "",
+                address = data["address"] as? String ?: "",
+                age = (data["age"] as? Number)?.toInt() ?: 0,
+                photo = data["photo"] as? String,
+                isActive = data["isActive"] as? Boolean ?: true,
+                rating = (data["rating"] as? Number)?.toDouble() ?: 0.0,
+                paymentTerms = data["paymentTerms"] as? String,
+                leadTime = (data["leadTime"] as? Number)?.toInt() ?: 0,
+                performanceScore = (data["performanceScore"] as? Number)?.toDouble() ?: 0.0,
+                preferredSupplier = data["preferredSupplier"] as? Boolean ?: false,
+                outstandingPayment = (data["outstandingPayment"] as? Number)?.toDouble() ?: 0.0,
+                contractDetails = data["contractDetails"] as? String,
+                productsSupplied = data["productsSupplied"] as? String,
+                lastDeliveryDate = (data["lastDeliveryDate"] as? com.google.firebase.Timestamp)?.toDate()?.time
+                    ?: (data["lastDeliveryDate"] as? Number)?.toLong() ?: 0L,
+                bankAccount = data["bankAccount"] as? String,
+                taxId = data["taxId"] as? String,
+                creationDate = (data["creationDate"] as? com.google.firebase.Timestamp)?.toDate()?.time
+                    ?: (data["creationDate"] as? Number)?.toLong() ?: 0L,
+                totalSupplyAmount = (data["totalSupplyAmount"] as? Number)?.toDouble() ?: 0.0,
+                supplyFrequency = (data["supplyFrequency"] as? Number)?.toInt() ?: 0,
+                supplierType = data["supplierType"] as? String,
+                supplierTier = data["supplierTier"] as? String
+            )
+        }
+    }
 }
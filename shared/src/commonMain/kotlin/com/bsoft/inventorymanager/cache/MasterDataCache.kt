@@ -0,0 +1,198 @@
+package com.bsoft.inventorymanager.cache
+
+import app.cash.sqldelight.db.SqlDriver
+import com.bsoft.inventorymanager.model.Customer
+import com.bsoft.inventorymanager.model.Product
+import com.bsoft.inventorymanager.model.Supplier
+import kotlinx.serialization.json.Json
+
+/**
+ * On-device relational cache of products, customers and suppliers: the read model pickers, filters
+ * and sorts query instead of downloading the collections.
+ *
+ * Documents are stored whole as JSON, next to indexed columns for the lookups pickers make (name
+ * order, brand, category, barcode, contact number). The watermarks a sync saves, such as the highest
+ * server `updatedAt` applied to a collection, live in the same database, so they move in the same
+ * transaction as the rows.
+ *
+ * A cached product's `quantity` leaves out the stock shards of a hot product (functions/stockShards.js)
+ * until the server folds them back, every five minutes, so listed stock can lag by that long. Stock
+ * checks run on the server, and the low stock report adds the shards itself.
+ *
+ * Blocking; call off the main thread. SQLite serializes access, so any thread may use it.
+ */
+class MasterDataCache(driver: SqlDriver) {
+
+    private val database = InventoryCacheDatabase(driver)
+    private val queries = database.masterDataQueries
+
+    // ---------------------------------------------------------------- products
+
+    /**
+     * Applies one page of a sync, in one transaction: drops every row first if [replaceAll] (the
+     * first page of a full download), upserts [changed], deletes [removedIds] and, when given,
+     * saves [watermark] under [watermarkKey].
+     */
+    fun applyProducts(
+        changed: List<Product>,
+        removedIds: Collection<String> = emptyList(),
+        watermark: Long? = null,
+        replaceAll: Boolean = false,
+        watermarkKey: String = PRODUCTS
+    ) {
+        database.transaction {
+            if (replaceAll) queries.clearProducts()
+            for (product in changed) {
+                queries.upsertProduct(
+                    documentId = product.documentId,
+                    sortName = sortKey(product.name),
+                    brand = product.brand,
+                    category = product.category,
+                    barcode = product.barcode?.takeIf { it.isNotEmpty() },
+                    productCode = product.productCode?.takeIf { it.isNotEmpty() },
+                    json = json.encodeToString(Product.serializer(), product)
+                )
+            }
+            removedIds.forEach { queries.deleteProduct(it) }
+            watermark?.let { queries.setWatermark(watermarkKey, it) }
+        }
+    }
+
+    fun product(documentId: String): Product? =
+        queries.productById(documentId).executeAsOneOrNull()?.let(::decodeProduct)
+
+    /** Product whose barcode, or else product code, is [code]. */
+    fun productByCode(code: String): Product? =
+        queries.productByCode(code).executeAsOneOrNull()?.let(::decodeProduct)
+
+    /**
+     * Products by name, optionally of one brand and/or category; every combination has an index.
+     */
+    fun products(brand: String? = null, category: String? = null): List<Product> {
+        val rows = when {
+            brand != null && category != null -> queries.productsByBrandAndCategory(brand, category)
+            brand != null -> queries.productsByBrand(brand)
+            category != null -> queries.productsByCategory(category)
+            else -> queries.allProducts()
+        }
+        return rows.executeAsList().map(::decodeProduct)
+    }
+
+    fun productBrands(): List<String> = queries.productBrands().executeAsList().filterNotNull()
+
+    fun productCategories(): List<String> = queries.productCategories().executeAsList().filterNotNull()
+
+    fun productCount(): Long = queries.countProducts().executeAsOne()
+
+    // ---------------------------------------------------------------- customers
+
+    /** As [applyProducts], for [CUSTOMERS]. */
+    fun applyCustomers(
+        changed: List<Customer>,
+        removedIds: Collection<String> = emptyList(),
+        watermark: Long? = null,
+        replaceAll: Boolean = false,
+        watermarkKey: String = CUSTOMERS
+    ) {
+        database.transaction {
+            if (replaceAll) queries.clearCustomers()
+            for (customer in changed) {
+                queries.upsertCustomer(
+                    documentId = customer.documentId,
+                    sortName = sortKey(customer.name),
+                    contactNumber = customer.contactNumber,
+                    isActive = if (customer.isActive) 1L else 0L,
+                    json = json.encodeToString(Customer.serializer(), customer)
+                )
+            }
+            removedIds.forEach { queries.deleteCustomer(it) }
+            watermark?.let { queries.setWatermark(watermarkKey, it) }
+        }
+    }
+
+    fun customer(documentId: String): Customer? =
+        queries.customerById(documentId).executeAsOneOrNull()?.let(::decodeCustomer)
+
+    /** Active customers by name, those whose name starts with [namePrefix] if given. */
+    fun activeCustomers(namePrefix: String? = null): List<Customer> {
+        val prefix = namePrefix?.let(::sortKey)
+        val rows = if (prefix.isNullOrEmpty()) queries.activeCustomers()
+        else queries.activeCustomersByNamePrefix(prefix, prefix + PREFIX_END)
+        return rows.executeAsList().map(::decodeCustomer)
+    }
+
+    fun customerByContactNumber(contactNumber: String): Customer? =
+        queries.customerByContactNumber(contactNumber).executeAsOneOrNull()?.let(::decodeCustomer)
+
+    // ---------------------------------------------------------------- suppliers
+
+    /** As [applyProducts], for [SUPPLIERS]. */
+    fun applySuppliers(
+        changed: List<Supplier>,
+        removedIds: Collection<String> = emptyList(),
+        watermark: Long? = null,
+        replaceAll: Boolean = false,
+        watermarkKey: String = SUPPLIERS
+    ) {
+        database.transaction {
+            if (replaceAll) queries.clearSuppliers()
+            for (supplier in changed) {
+                queries.upsertSupplier(
+                    documentId = supplier.documentId,
+                    sortName = sortKey(supplier.name),
+                    contactNumber = supplier.contactNumber,
+                    isActive = if (supplier.isActive) 1L else 0L,
+                    json = json.encodeToString(Supplier.serializer(), supplier)
+                )
+            }
+            removedIds.forEach { queries.deleteSupplier(it) }
+            watermark?.let { queries.setWatermark(watermarkKey, it) }
+        }
+    }
+
+    fun supplier(documentId: String): Supplier? =
+        queries.supplierById(documentId).executeAsOneOrNull()?.let(::decodeSupplier)
+
+    /** Active suppliers by name, those whose name starts with [namePrefix] if given. */
+    fun activeSuppliers(namePrefix: String? = null): List<Supplier> {
+        val prefix = namePrefix?.let(::sortKey)
+        val rows = if (prefix.isNullOrEmpty()) queries.activeSuppliers()
+        else queries.activeSuppliersByNamePrefix(prefix, prefix + PREFIX_END)
+        return rows.executeAsList().map(::decodeSupplier)
+    }
+
+    // ---------------------------------------------------------------- sync state
+
+    /**
+     * @return the watermark saved under [key], e.g. the highest server `updatedAt` applied to the
+     * collection [key], or null if there is none.
+     */
+    fun watermark(key: String): Long? = queries.watermark(key).executeAsOneOrNull()
+
+    /** Forgets the watermark so the next sync of [collection] downloads it in full again. */
+    fun resetWatermark(collection: String) {
+        queries.clearWatermark(collection)
+    }
+
+    private fun decodeProduct(value: String) = json.decodeFromString(Product.serializer(), value)
+
+    private fun decodeCustomer(value: String) = json.decodeFromString(Customer.serializer(), value)
+
+    private fun decodeSupplier(value: String) = json.decodeFromString(Supplier.serializer(), value)
+
+    companion object {
+        const val DATABASE_NAME = "inventory_cache.db"
+
+        const val PRODUCTS = "products"
+        const val CUSTOMERS = "customers"
+        const val SUPPLIERS = "suppliers"
+
+        // Sorts after every character a name can contain, closing the prefix range
+        private const val PREFIX_END = '\uFFFF'
+
+        // Rows written by an older app version may lack fields added since
+        private val json = Json { ignoreUnknownKeys = true }
+
+        fun sortKey(name: String): String = name.trim().lowercase()
+    }
+}
@@ -0,0 +1,102 @@
+package com.bsoft.inventorymanager.reports
+
+/** Dashboard totals of one time bucket, as returned in getDashboardStats' `buckets`. */
+data class DashboardBucket(
+    val start: Long,
+    val revenue: Double,
+    val profit: Double,
+    val transactions: Int,
+    val expenses: Double
+)
+
+/**
+ * Caches dashboard buckets per [BucketSpec.cacheKey] together with the time intervals they fully
+ * cover, so a range contained in an earlier response (e.g. Week after Month) is answered locally.
+ *
+ * Not thread-safe; confine to a single thread.
+ */
+class BucketCache(private val maxSpecs: Int = DEFAULT_MAX_SPECS) {
+
+    private class Entry {
+        val buckets = HashMap<Long, DashboardBucket>()
+        // Disjoint, sorted [from, toExclusive) intervals
+        val covered = ArrayList<LongArray>()
+    }
+
+    // Insertion order doubles as recency order: entries are re-inserted on access
+    private val entries = LinkedHashMap<String, Entry>()
+
+    /**
+     * Stores the buckets of an inclusive [rangeStart, rangeEnd] response. Partial buckets at either
+     * edge of an unaligned range are dropped.
+     */
+    fun put(spec: BucketSpec, rangeStart: Long, rangeEnd: Long, buckets: List<DashboardBucket>) {
+        val from = alignUp(spec, rangeStart)
+        val to = spec.bucketStart(rangeEnd + 1)
+        if (from >= to) return
+
+        val entry = touch(spec.cacheKey) ?: Entry().also { entries[spec.cacheKey] = it }
+        // Replace whatever was cached inside the interval, a newer response wins
+        entry.buckets.keys.removeAll { it in from until to }
+        for (bucket in buckets) {
+            if (bucket.start in from until to) {
+                entry.buckets[bucket.start] = bucket
+            }
+        }
+        addCoverage(entry.covered, from, to)
+
+        while (entries.size > maxSpecs) {
+            entries.remove(entries.keys.first())
+        }
+    }
+
+    /**
+     * @return the non-empty buckets of the inclusive range in ascending order, or null unless the
+     * range is bucket-aligned and fully covered.
+     */
+    fun get(spec: BucketSpec, rangeStart: Long, rangeEnd: Long): List<DashboardBucket>? {
+        val toExclusive = rangeEnd + 1
+        if (!spec.isAligned(rangeStart) || !spec.isAligned(toExclusive)) return null
+        val entry = touch(spec.cacheKey) ?: return null
+        val covered = entry.covered.any { it[0] <= rangeStart && toExclusive <= it[1] }
+        if (!covered) return null
+        return entry.buckets.values
+            .filter { it.start >= rangeStart && it.start < toExclusive }
+            .sortedBy { it.start }
+    }
+
+    fun clear() {
+        entries.clear()
+    }
+
+    private fun touch(key: String): Entry? {
+        val entry = entries.remove(key) ?: return null
+        entries[key] = entry
+        return entry
+    }
+
+    private fun alignUp(spec: BucketSpec, millis: Long): Long {
+        val start = spec.bucketStart(millis)
+        return if (start == millis) start else spec.nextBucketStart(start)
+    }
+
+    private fun addCoverage(covered: ArrayList<LongArray>, from: Long, to: Long) {
+        var mergedFrom = from
+        var mergedTo = to
+        val iterator = covered.iterator()
+        while (iterator.hasNext()) {
+            val interval = iterator.next()
+            if (interval[1] >= mergedFrom && interval[0] <= mergedTo) {
+                mergedFrom = minOf(mergedFrom, interval[0])
+                mergedTo = maxOf(mergedTo, interval[1])
+                iterator.remove()
+            }
+        }
+        val index = covered.indexOfFirst { it[0] > mergedFrom }.let { if (it < 0) covered.size else it }
+        covered.add(index, longArrayOf(mergedFrom, mergedTo))
+    }
+
+    companion object {
+        const val DEFAULT_MAX_SPECS = 4
+    }
+}
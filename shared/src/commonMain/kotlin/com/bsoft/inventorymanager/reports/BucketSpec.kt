@@ -0,0 +1,96 @@
+package com.bsoft.inventorymanager.reports
+
+import kotlinx.datetime.DateTimeUnit
+import kotlinx.datetime.Instant
+import kotlinx.datetime.LocalDate
+import kotlinx.datetime.TimeZone
+import kotlinx.datetime.atStartOfDayIn
+import kotlinx.datetime.offsetAt
+import kotlinx.datetime.plus
+import kotlinx.datetime.toLocalDateTime
+import kotlin.jvm.JvmStatic
+
+enum class BucketGranularity(val wireName: String) {
+    HOUR("hour"),
+    DAY("day")
+}
+
+/**
+ * How report time series are bucketed: granularity, zone and bucket boundaries.
+ *
+ * Mirrors `functions/bucketSpec.js`; both sides must pick the same granularity for a range
+ * and align buckets to local hour / local midnight in [timeZone], so buckets computed by
+ * either side share a [cacheKey].
+ */
+data class BucketSpec(
+    val granularity: BucketGranularity,
+    val timeZone: String
+) {
+    private val zone: TimeZone = runCatching { TimeZone.of(timeZone) }.getOrDefault(TimeZone.UTC)
+
+    val cacheKey: String
+        get() = "v$VERSION:${granularity.wireName}:$timeZone"
+
+    /** Start of the bucket containing [epochMillis]. */
+    fun bucketStart(epochMillis: Long): Long {
+        val instant = Instant.fromEpochMilliseconds(epochMillis)
+        return when (granularity) {
+            BucketGranularity.HOUR -> {
+                val offsetMillis = zone.offsetAt(instant).totalSeconds * 1000L
+                epochMillis - (epochMillis + offsetMillis).mod(HOUR_MILLIS)
+            }
+            BucketGranularity.DAY -> localDate(epochMillis).atStartOfDayIn(zone).toEpochMilliseconds()
+        }
+    }
+
+    /** Start of the bucket following the one that starts at [bucketStart]. */
+    fun nextBucketStart(bucketStart: Long): Long = when (granularity) {
+        BucketGranularity.HOUR -> bucketStart + HOUR_MILLIS
+        BucketGranularity.DAY -> localDate(bucketStart).plus(1, DateTimeUnit.DAY)
+            .atStartOfDayIn(zone).toEpochMilliseconds()
+    }
+
+    /** Chart x index of [epochMillis] for a range starting at [rangeStart]. */
+    fun bucketIndex(rangeStart: Long, epochMillis: Long): Long = when (granularity) {
+        BucketGranularity.HOUR -> (bucketStart(epochMillis) - bucketStart(rangeStart)) / HOUR_MILLIS
+        BucketGranularity.DAY ->
+            (localDate(epochMillis).toEpochDays() - localDate(rangeStart).toEpochDays()).toLong()
+    }
+
+    /** Inverse of [bucketIndex]. */
+    fun bucketStartAt(rangeStart: Long, index: Long): Long = when (granularity) {
+        BucketGranularity.HOUR -> bucketStart(rangeStart) + index * HOUR_MILLIS
+        BucketGranularity.DAY -> LocalDate.fromEpochDays((localDate(rangeStart).toEpochDays() + index).toInt())
+            .atStartOfDayIn(zone).toEpochMilliseconds()
+    }
+
+    /** True when [epochMillis] falls exactly on a bucket boundary. */
+    fun isAligned(epochMillis: Long): Boolean = bucketStart(epochMillis) == epochMillis
+
+    private fun localDate(epochMillis: Long): LocalDate =
+        Instant.fromEpochMilliseconds(epochMillis).toLocalDateTime(zone).date
+
+    companion object {
+        const val VERSION = 1
+
+        /** Ranges shorter than this are bucketed hourly, longer ones daily. */
+        const val HOURLY_MAX_DAYS = 31
+
+        const val HOUR_MILLIS = 3_600_000L
+        const val DAY_MILLIS = 86_400_000L
+
+        /**
+         * @param startMillis inclusive range start
+         * @param endMillis inclusive range end
+         */
+        @JvmStatic
+        fun forRange(startMillis: Long, endMillis: Long, timeZone: String): BucketSpec {
+            val granularity = if (endMillis - startMillis < HOURLY_MAX_DAYS * DAY_MILLIS) {
+                BucketGranularity.HOUR
+            } else {
+                BucketGranularity.DAY
+            }
+            return BucketSpec(granularity, timeZone)
+        }
+    }
+}
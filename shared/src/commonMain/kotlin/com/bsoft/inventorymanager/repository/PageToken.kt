@@ -0,0 +1,70 @@
+package com.bsoft.inventorymanager.repository
+
+import kotlinx.serialization.SerialName
+import kotlinx.serialization.Serializable
+import kotlinx.serialization.json.Json
+import kotlin.io.encoding.Base64
+import kotlin.io.encoding.ExperimentalEncodingApi
+
+/**
+ * Stateless pagination cursor: the order-by values and document id of the last row of a page.
+ *
+ * A page query resumes with `startAfter(values..., documentId)` on the same ordering, so no snapshot
+ * has to be cached or re-fetched and any number of pagers can run concurrently. Tokens are opaque
+ * URL-safe strings to callers and platform independent, so a token issued on Android works on the
+ * JVM target and vice versa.
+ */
+@Serializable
+data class PageToken(
+    @SerialName("v") val version: Int = VERSION,
+    /** Order-by fields the values belong to, document id excluded. */
+    @SerialName("o") val orderBy: List<String>,
+    @SerialName("x") val values: List<String?>,
+    @SerialName("id") val documentId: String,
+    /** Identifies the filters of the query that issued the token. */
+    @SerialName("f") val filterKey: String = ""
+) {
+
+    /** Values to pass to `startAfter`, ending with the document id tie-breaker. */
+    fun cursorValues(): List<Any?> = values + documentId
+
+    /**
+     * @throws IllegalArgumentException if the token was issued for a different ordering or filters.
+     */
+    fun requireCompatible(orderBy: List<String>, filterKey: String): PageToken {
+        require(version == VERSION) { "Unsupported page token version $version" }
+        require(this.orderBy == orderBy && this.filterKey == filterKey) {
+            "Page token was issued for a different query"
+        }
+        require(values.size == orderBy.size) { "Malformed page token" }
+        return this
+    }
+
+    @OptIn(ExperimentalEncodingApi::class)
+    fun encode(): String =
+        Base64.UrlSafe.encode(json.encodeToString(serializer(), this).encodeToByteArray()).trimEnd('=')
+
+    companion object {
+        const val VERSION = 1
+
+        private val json = Json { ignoreUnknownKeys = true }
+
+        /**
+         * @throws IllegalArgumentException if the token is not one produced by [encode].
+         */
+        @OptIn(ExperimentalEncodingApi::class)
+        fun decode(token: String): PageToken {
+            val padded = token + "=".repeat((4 - token.length % 4) % 4)
+            return try {
+                json.decodeFromString(serializer(), Base64.UrlSafe.decode(padded).decodeToString())
+            } catch (e: Exception) {
+                throw IllegalArgumentException("Invalid page token", e)
+            }
+        }
+
+        /** Filter key for equality filters; null and empty values are ignored. */
+        fun filterKeyOf(vararg filters: Pair<String, String?>): String =
+            filters.filter { !it.second.isNullOrEmpty() }
+                .joinToString("&") { "${it.first}=${it.second}" }
+    }
+}
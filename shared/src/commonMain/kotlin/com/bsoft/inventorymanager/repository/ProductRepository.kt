@@ -5,7 +5,8 @@ import com.bsoft.inventorymanager.model.Product
 interface ProductRepository {
     /**
      * Fetch paginated products with optional filters.
-     * @param lastDocumentId ID of the last document for cursor-based pagination, null for first page
+     * @param pageToken [ProductPage.nextPageToken] of the previous page, null for the first page.
+     * A token is only valid for the brand/category filters it was issued with.
      * @param brand Optional brand filter
      * @param category Optional category filter
      * @param searchQuery Optional search query
@@ -13,7 +14,7 @@ interface ProductRepository {
      * @return Result with list of products and whether more pages exist
      */
     suspend fun fetchPaginatedProducts(
-        lastDocumentId: String?,
+        pageToken: String?,
         brand: String?,
         category: String?,
         searchQuery: String?,
@@ -32,7 +33,8 @@ interface ProductRepository {
 data class ProductPage(
     val products: List<Product>,
     val hasMore: Boolean,
-    val lastDocumentId: String?
+    /** Opaque [PageToken] for the next page, null if there is none. */
+    val nextPageToken: String?
 )
 
 data class BrandsAndCategories(
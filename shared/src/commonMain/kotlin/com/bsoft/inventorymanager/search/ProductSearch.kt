@@ -0,0 +1,73 @@
+package com.bsoft.inventorymanager.search
+
+import kotlin.jvm.JvmStatic
+
+/**
+ * Client side of the product search index maintained by functions/productSearch.js.
+ *
+ * Products carry [FIELD]: lowercase prefixes of every word of name, product code and barcode (and of
+ * code/barcode with separators removed). A search runs one `array-contains` on [queryToken], which
+ * only returns products having a word that starts with the query's longest word; [matches] checks
+ * the remaining words of multi-word queries. Rules must stay identical to the function's.
+ */
+object ProductSearch {
+
+    const val FIELD = "searchTokens"
+    const val VERSION_FIELD = "searchIndexVersion"
+    const val INDEX_VERSION = 1
+    const val MAX_PREFIX_LENGTH = 20
+    private const val MAX_TOKENS = 400
+
+    @JvmStatic
+    fun words(text: String?): List<String> {
+        if (text.isNullOrEmpty()) return emptyList()
+        val words = ArrayList<String>()
+        val current = StringBuilder()
+        for (c in text.lowercase()) {
+            if (c.isLetterOrDigit()) {
+                current.append(c)
+            } else if (current.isNotEmpty()) {
+                words.add(current.toString())
+                current.clear()
+            }
+        }
+        if (current.isNotEmpty()) words.add(current.toString())
+        return words
+    }
+
+    @JvmStatic
+    fun searchTokens(name: String?, productCode: String?, barcode: String?): List<String> {
+        val tokens = LinkedHashSet<String>()
+        words(name).forEach { addPrefixes(tokens, it) }
+        for (field in listOf(productCode, barcode)) {
+            val parts = words(field)
+            parts.forEach { addPrefixes(tokens, it) }
+            if (parts.size > 1) addPrefixes(tokens, parts.joinToString(""))
+        }
+        return tokens.take(MAX_TOKENS)
+    }
+
+    /**
+     * @return the token to query [FIELD] with, or null if the query has no searchable characters.
+     */
+    @JvmStatic
+    fun queryToken(query: String?): String? =
+        words(query).maxByOrNull { it.length }?.take(MAX_PREFIX_LENGTH)
+
+    /**
+     * @return whether every word of the query is a prefix of a word of the product.
+     */
+    @JvmStatic
+    fun matches(query: String?, name: String?, productCode: String?, barcode: String?): Boolean {
+        val queryWords = words(query)
+        if (queryWords.isEmpty()) return true
+        val tokens = searchTokens(name, productCode, barcode).toHashSet()
+        return queryWords.all { it.take(MAX_PREFIX_LENGTH) in tokens }
+    }
+
+    private fun addPrefixes(tokens: MutableSet<String>, word: String) {
+        for (i in 1..minOf(word.length, MAX_PREFIX_LENGTH)) {
+            tokens.add(word.substring(0, i))
+        }
+    }
+}
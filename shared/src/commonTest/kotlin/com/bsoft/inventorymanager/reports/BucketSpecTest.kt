@@ -0,0 +1,62 @@
+package com.bsoft.inventorymanager.reports
+
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertNotNull
+import kotlin.test.assertNull
+
+class BucketSpecTest {
+
+    private val hour = BucketSpec.HOUR_MILLIS
+    private val day = BucketSpec.DAY_MILLIS
+
+    // 2026-03-01T00:00:00Z
+    private val march1 = 1_772_323_200_000L
+
+    @Test
+    fun granularityFollowsRangeLength() {
+        assertEquals(BucketGranularity.HOUR, BucketSpec.forRange(march1, march1 + 31 * day - 1, "UTC").granularity)
+        assertEquals(BucketGranularity.DAY, BucketSpec.forRange(march1, march1 + 365 * day - 1, "UTC").granularity)
+        assertEquals("v1:hour:UTC", BucketSpec.forRange(march1, march1 + day - 1, "UTC").cacheKey)
+    }
+
+    @Test
+    fun hourBucketsAlignToLocalHourInHalfHourZones() {
+        val spec = BucketSpec(BucketGranularity.HOUR, "Asia/Kolkata")
+        // 10:10Z is 15:40 IST, the bucket starts at 15:00 IST = 09:30Z
+        val start = spec.bucketStart(march1 + 10 * hour + 10 * 60_000)
+        assertEquals(march1 + 9 * hour + 30 * 60_000, start)
+        assertEquals(start + hour, spec.nextBucketStart(start))
+    }
+
+    @Test
+    fun dayBucketsFollowLocalMidnightAcrossDst() {
+        val spec = BucketSpec(BucketGranularity.DAY, "Europe/Berlin")
+        // Berlin switches to CEST on 2026-03-29, so that day is 23 hours long
+        val march28 = march1 + 27 * day - hour // local midnight, CET
+        val march30 = spec.bucketStartAt(march28, 2)
+        assertEquals(march28 + 47 * hour, march30)
+        assertEquals(2L, spec.bucketIndex(march28, march30 + 30 * 60_000))
+        assertEquals(march30, spec.nextBucketStart(spec.bucketStartAt(march28, 1)))
+    }
+
+    @Test
+    fun cacheServesContainedAlignedRanges() {
+        val spec = BucketSpec(BucketGranularity.HOUR, "UTC")
+        val cache = BucketCache()
+        val buckets = listOf(
+            DashboardBucket(march1 + hour, 10.0, 2.0, 1, 0.0),
+            DashboardBucket(march1 + 30 * hour, 5.0, 1.0, 1, 3.0)
+        )
+        cache.put(spec, march1, march1 + 31 * day - 1, buckets)
+
+        val week = assertNotNull(cache.get(spec, march1, march1 + 7 * day - 1))
+        assertEquals(2, week.size)
+        assertEquals(buckets[0], week[0])
+
+        // Unaligned or uncovered ranges are not answered from the cache
+        assertNull(cache.get(spec, march1 + 1, march1 + 7 * day - 1))
+        assertNull(cache.get(spec, march1, march1 + 40 * day - 1))
+        assertNull(cache.get(BucketSpec(BucketGranularity.HOUR, "Asia/Dhaka"), march1, march1 + day - 1))
+    }
+}
@@ -0,0 +1,38 @@
+package com.bsoft.inventorymanager.repository
+
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFailsWith
+import kotlin.test.assertFalse
+
+class PageTokenTest {
+
+    private val orderBy = listOf("name")
+
+    @Test
+    fun roundTripsThroughOpaqueString() {
+        val token = PageToken(
+            orderBy = orderBy,
+            values = listOf("Café au lait / 500g?"),
+            documentId = "p_42",
+            filterKey = PageToken.filterKeyOf("brand" to "Acme", "category" to null)
+        )
+        val encoded = token.encode()
+
+        assertFalse(encoded.any { it == '+' || it == '/' || it == '=' })
+        val decoded = PageToken.decode(encoded)
+        assertEquals(token, decoded)
+        assertEquals(listOf<Any?>("Café au lait / 500g?", "p_42"), decoded.cursorValues())
+        assertEquals("brand=Acme", decoded.filterKey)
+    }
+
+    @Test
+    fun rejectsTokensOfOtherQueries() {
+        val token = PageToken(orderBy = orderBy, values = listOf("Soap"), documentId = "p_1", filterKey = "brand=Acme")
+
+        token.requireCompatible(orderBy, "brand=Acme")
+        assertFailsWith<IllegalArgumentException> { token.requireCompatible(orderBy, "") }
+        assertFailsWith<IllegalArgumentException> { token.requireCompatible(listOf("price"), "brand=Acme") }
+        assertFailsWith<IllegalArgumentException> { PageToken.decode("not a token") }
+    }
+}
@@ -0,0 +1,33 @@
+package com.bsoft.inventorymanager.search
+
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertFalse
+import kotlin.test.assertNull
+import kotlin.test.assertTrue
+
+class ProductSearchTest {
+
+    @Test
+    fun tokensArePrefixesOfNormalizedWords() {
+        val tokens = ProductSearch.searchTokens("Coca-Cola 500ml", "AB-12", "8901234")
+
+        assertEquals(
+            listOf("c", "co", "coc", "coca", "col", "cola", "5", "50", "500", "500m", "500ml",
+                "a", "ab", "1", "12", "ab1", "ab12", "8", "89", "890", "8901", "89012", "890123", "8901234"),
+            tokens
+        )
+    }
+
+    @Test
+    fun queryUsesLongestWordAndMatchesEveryWord() {
+        assertEquals("cola", ProductSearch.queryToken("  Cola 5 "))
+        assertNull(ProductSearch.queryToken(" - "))
+
+        assertTrue(ProductSearch.matches("cola 500", "Coca-Cola 500ml", null, null))
+        assertTrue(ProductSearch.matches("ab12", "Soap", "AB-12", null))
+        assertFalse(ProductSearch.matches("cola 1l", "Coca-Cola 500ml", null, null))
+        // Prefix, not infix, matching
+        assertFalse(ProductSearch.matches("ola", "Coca-Cola", null, null))
+    }
+}
@@ -0,0 +1,89 @@
+package com.bsoft.inventorymanager.cache
+
+import app.cash.sqldelight.driver.jdbc.sqlite.JdbcSqliteDriver
+import com.bsoft.inventorymanager.model.Customer
+import com.bsoft.inventorymanager.model.Product
+import kotlin.test.Test
+import kotlin.test.assertEquals
+import kotlin.test.assertNull
+
+class MasterDataCacheTest {
+
+    private fun newCache(): MasterDataCache {
+        val driver = JdbcSqliteDriver(JdbcSqliteDriver.IN_MEMORY)
+        InventoryCacheDatabase.Schema.create(driver)
+        return MasterDataCache(driver)
+    }
+
+    @Test
+    fun listsAndFiltersProductsByName() {
+        val cache = newCache()
+        cache.applyProducts(
+            listOf(
+                Product(documentId = "p1", name = "soap", brand = "Acme", category = "Bath", barcode = "111"),
+                Product(documentId = "p2", name = "Brush", brand = "Zen", category = "Bath", productCode = "B-2"),
+                Product(documentId = "p3", name = "apple", brand = "Acme", category = "Food")
+            )
+        )
+
+        assertEquals(listOf("apple", "Brush", "soap"), cache.products().map { it.name })
+        assertEquals(listOf("apple", "soap"), cache.products(brand = "Acme").map { it.name })
+        assertEquals(listOf("soap"), cache.products(brand = "Acme", category = "Bath").map { it.name })
+        assertEquals(listOf("Acme", "Zen"), cache.productBrands())
+        assertEquals("p1", cache.productByCode("111")?.documentId)
+        assertEquals("p2", cache.productByCode("B-2")?.documentId)
+        assertNull(cache.productByCode("999"))
+    }
+
+    @Test
+    fun upsertsRemovesAndReplacesRows() {
+        val cache = newCache()
+        cache.applyProducts(listOf(Product(documentId = "p1", name = "Soap", quantity = 3)))
+        cache.applyProducts(listOf(Product(documentId = "p1", name = "Soap", quantity = 7)))
+        assertEquals(7, cache.product("p1")?.quantity)
+
+        cache.applyProducts(emptyList(), removedIds = listOf("p1"))
+        assertEquals(0L, cache.productCount())
+
+        cache.applyProducts(listOf(Product(documentId = "p2", name = "Brush")))
+        cache.applyProducts(listOf(Product(documentId = "p3", name = "Comb")), replaceAll = true)
+        assertEquals(listOf("p3"), cache.products().map { it.documentId })
+    }
+
+    @Test
+    fun keepsOnlyActiveCustomersInPrefixLookups() {
+        val cache = newCache()
+        cache.applyCustomers(
+            listOf(
+                Customer(documentId = "c1", name = "Rahim", contactNumber = "0171"),
+                Customer(documentId = "c2", name = "rakib", contactNumber = "0172"),
+                Customer(documentId = "c3", name = "Ratul", contactNumber = "0173", isActive = false),
+                Customer(documentId = "c4", name = "Karim", contactNumber = "0174")
+            )
+        )
+
+        assertEquals(listOf("c1", "c2"), cache.activeCustomers("Ra").map { it.documentId })
+        assertEquals(3, cache.activeCustomers().size)
+        assertEquals("c1", cache.customerByContactNumber("0171")?.documentId)
+        assertNull(cache.customerByContactNumber("0173"))
+    }
+
+    @Test
+    fun tracksWatermarkPerCollection() {
+        val cache = newCache()
+        assertNull(cache.watermark(MasterDataCache.PRODUCTS))
+
+        cache.applyProducts(emptyList(), watermark = 1_000L)
+        cache.applyCustomers(emptyList(), watermark = 2_000L)
+        assertEquals(1_000L, cache.watermark(MasterDataCache.PRODUCTS))
+        assertEquals(2_000L, cache.watermark(MasterDataCache.CUSTOMERS))
+
+        cache.applyProducts(emptyList(), watermark = 3_000L, watermarkKey = "products/tombstones")
+        assertEquals(1_000L, cache.watermark(MasterDataCache.PRODUCTS))
+        assertEquals(3_000L, cache.watermark("products/tombstones"))
+
+        cache.resetWatermark(MasterDataCache.PRODUCTS)
+        assertNull(cache.watermark(MasterDataCache.PRODUCTS))
+        assertNull(cache.watermark(MasterDataCache.SUPPLIERS))
+    }
+}